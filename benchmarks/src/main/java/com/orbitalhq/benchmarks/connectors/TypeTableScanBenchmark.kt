@@ -0,0 +1,105 @@
+package com.orbitalhq.benchmarks.connectors
+
+import com.orbitalhq.connectors.calcite.TypeTableRowSource
+import com.orbitalhq.connectors.calcite.VyneCalciteDataSource
+import com.orbitalhq.models.Provided
+import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.schemas.QualifiedName
+import com.orbitalhq.schemas.taxi.TaxiSchema
+import org.apache.commons.csv.CSVFormat
+import org.apache.commons.csv.CSVRecord
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares querying a CSV file through Calcite (as the S3 and Azure Blob connectors do),
+ * when every record is parsed into a TypedInstance up front, against parsing records lazily,
+ * where only the projected and filtered columns are parsed.
+ *
+ * The query reads two of the ten columns, and filters on a third.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class TypeTableScanBenchmark {
+
+   @Param("10000", "100000")
+   var rowCount: Int = 0
+
+   private val schema = TaxiSchema.from(
+      """
+      @com.orbitalhq.formats.Csv(delimiter = ",")
+      model Trade {
+         tradeId : TradeId inherits Int by column(1)
+         symbol : Symbol inherits String by column(2)
+         price : Price inherits Decimal by column(3)
+         quantity : Quantity inherits Decimal by column(4)
+         trader : TraderName inherits String by column(5)
+         desk : DeskName inherits String by column(6)
+         venue : Venue inherits String by column(7)
+         fee : Fee inherits Decimal by column(8)
+         settled : IsSettled inherits Boolean by column(9)
+         notes : Notes inherits String by column(10)
+      }
+   """.trimIndent()
+   )
+   private val tradeType = schema.type("Trade")
+   private val sql = """select t0."tradeId", t0."price" from TRADE t0 where t0."symbol" = 'GBPUSD'"""
+
+   private lateinit var records: List<CSVRecord>
+
+   @Setup
+   fun setup() {
+      val symbols = listOf("GBPUSD", "EURUSD", "USDJPY", "AUDUSD")
+      val csv = (0 until rowCount).joinToString("\n") { index ->
+         listOf(
+            index,
+            symbols[index % symbols.size],
+            1.2 + (index % 100) / 1000.0,
+            (index % 50) * 1000,
+            "trader-${index % 20}",
+            "desk-${index % 5}",
+            "venue-${index % 3}",
+            (index % 10) / 100.0,
+            index % 2 == 0,
+            "Trade number $index"
+         ).joinToString(",")
+      }
+      records = CSVFormat.DEFAULT.parse(csv.reader()).records
+   }
+
+   @Benchmark
+   fun eagerlyParsedRows(): Int {
+      val instances = records.stream().map { TypedInstance.from(tradeType, it, schema, source = Provided) }
+      return query(TypeTableRowSource.of(instances))
+   }
+
+   @Benchmark
+   fun lazilyParsedRows(): Int {
+      return query(TypeTableRowSource.lazilyParsed(tradeType, records.stream(), schema))
+   }
+
+   private fun query(rowSource: TypeTableRowSource): Int {
+      return VyneCalciteDataSource(schema, QualifiedName.from("Trade"), rowSource).connection.use { connection ->
+         val resultSet = connection.createStatement().executeQuery(sql)
+         var count = 0
+         while (resultSet.next()) {
+            count++
+         }
+         count
+      }
+   }
+}
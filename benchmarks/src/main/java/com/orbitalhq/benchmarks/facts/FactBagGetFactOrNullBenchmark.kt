@@ -0,0 +1,85 @@
+package com.orbitalhq.benchmarks.facts
+
+import com.orbitalhq.benchmarks.fixtures.FilmsSchema
+import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.models.facts.CopyOnWriteFactBag
+import com.orbitalhq.models.facts.FactDiscoveryStrategy
+import com.orbitalhq.models.facts.FactSearch
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures CopyOnWriteFactBag.getFactOrNull(), which the query engine calls when
+ * looking up inputs for operations and projected fields.
+ *
+ * "cached" lookups repeat a search against an unchanged bag, which is served from the fact cache.
+ * "afterAdd" lookups add a fact first, which invalidates the cache - as happens during projection,
+ * when facts are discovered between searches.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class FactBagGetFactOrNullBenchmark {
+
+   @Param("10", "100", "1000")
+   var factCount: Int = 0
+
+   private val schema = FilmsSchema.schema()
+
+   private val topLevelSearch = FactSearch.findType(schema.type("films.FilmTitle"), FactDiscoveryStrategy.TOP_LEVEL_ONLY)
+   private val anyDepthSearch =
+      FactSearch.findType(schema.type("films.AgentName"), FactDiscoveryStrategy.ANY_DEPTH_ALLOW_MANY)
+
+   private lateinit var facts: List<TypedInstance>
+   private lateinit var factToAdd: TypedInstance
+   private lateinit var factBag: CopyOnWriteFactBag
+
+   @Setup(Level.Trial)
+   fun createFacts() {
+      facts = (0 until factCount).map { FilmsSchema.film(schema, it) }
+      factToAdd = FilmsSchema.film(schema, factCount)
+   }
+
+   @Setup(Level.Invocation)
+   fun createFactBag() {
+      factBag = CopyOnWriteFactBag(facts, schema)
+      factBag.getFactOrNull(topLevelSearch)
+      factBag.getFactOrNull(anyDepthSearch)
+   }
+
+   @Benchmark
+   fun topLevelCached(): TypedInstance? {
+      return factBag.getFactOrNull(topLevelSearch)
+   }
+
+   @Benchmark
+   fun anyDepthCached(): TypedInstance? {
+      return factBag.getFactOrNull(anyDepthSearch)
+   }
+
+   @Benchmark
+   fun topLevelAfterAdd(): TypedInstance? {
+      factBag.addFact(factToAdd)
+      return factBag.getFactOrNull(topLevelSearch)
+   }
+
+   @Benchmark
+   fun anyDepthAfterAdd(): TypedInstance? {
+      factBag.addFact(factToAdd)
+      return factBag.getFactOrNull(anyDepthSearch)
+   }
+}
@@ -0,0 +1,159 @@
+package com.orbitalhq.benchmarks.facts
+
+import com.diffplug.common.base.TreeDef
+import com.diffplug.common.base.TreeStream
+import com.orbitalhq.models.MixedSources
+import com.orbitalhq.models.TypedCollection
+import com.orbitalhq.models.TypedEnumValue
+import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.models.TypedObject
+import com.orbitalhq.models.facts.CopyOnWriteFactBag
+import com.orbitalhq.models.facts.EvaluateSpecificFields
+import com.orbitalhq.models.facts.FactDiscoveryStrategy
+import com.orbitalhq.models.facts.FactMapTraversalStrategy
+import com.orbitalhq.models.facts.FactSearch
+import com.orbitalhq.models.facts.FullScan
+import com.orbitalhq.models.facts.IgnoreThisElement
+import com.orbitalhq.schemas.taxi.TaxiSchema
+import lang.taxi.types.PrimitiveType
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+import java.util.stream.Collectors
+
+/**
+ * Compares searching a CopyOnWriteFactBag by type using the incremental type index,
+ * against the previous approach of rebuilding a breadth-first walk of the whole fact tree
+ * after each added fact, and filtering every node.
+ *
+ * The "afterAdd" benchmarks model the projection use-case, where facts are discovered and added
+ * to the bag between searches.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class FactBagSearchBenchmark {
+
+   @Param("10", "100", "1000")
+   var factCount: Int = 0
+
+   private val schema = TaxiSchema.from(
+      """
+      model Person {
+         id : PersonId inherits Int
+         name : FirstName inherits String
+      }
+      model Actor inherits Person {
+         agentName : AgentName inherits String
+      }
+      model Film {
+        title : FilmTitle inherits String
+        cast : Actor[]
+        crew : Person[]
+        imdbScore : ImdbScore inherits Decimal
+      }
+   """.trimIndent()
+   )
+
+   private val search = FactSearch.findType(schema.type("AgentName"), FactDiscoveryStrategy.ANY_DEPTH_ALLOW_MANY)
+   private val traversalStrategy = FactMapTraversalStrategy.enterIfHasFieldOfType(search.targetType)
+
+   private lateinit var facts: List<TypedInstance>
+   private lateinit var factToAdd: TypedInstance
+   private lateinit var factBag: CopyOnWriteFactBag
+
+   @Setup(Level.Trial)
+   fun createFacts() {
+      facts = (0 until factCount).map { film(it) }
+      factToAdd = film(factCount)
+   }
+
+   /**
+    * Each invocation gets a fresh bag, which has already been searched once,
+    * so that the index (where used) has been populated.
+    */
+   @Setup(Level.Invocation)
+   fun createFactBag() {
+      factBag = CopyOnWriteFactBag(facts, schema)
+      factBag.breadthFirstFilter(search.strategy, traversalStrategy, search.filterPredicate)
+   }
+
+   @Benchmark
+   fun indexedSearch(): List<TypedInstance> {
+      return factBag.breadthFirstFilter(search.strategy, traversalStrategy, search.filterPredicate)
+   }
+
+   @Benchmark
+   fun treeWalkSearch(): List<TypedInstance> {
+      return legacyTreeWalk(factBag.rootAndScopedFacts()).filter(search.filterPredicate.predicate)
+   }
+
+   @Benchmark
+   fun indexedSearchAfterAdd(): List<TypedInstance> {
+      factBag.addFact(factToAdd)
+      return factBag.breadthFirstFilter(search.strategy, traversalStrategy, search.filterPredicate)
+   }
+
+   @Benchmark
+   fun treeWalkSearchAfterAdd(): List<TypedInstance> {
+      factBag.addFact(factToAdd)
+      return legacyTreeWalk(factBag.rootAndScopedFacts()).filter(search.filterPredicate.predicate)
+   }
+
+   private fun film(index: Int): TypedInstance {
+      return TypedInstance.from(
+         schema.type("Film"), """{
+            "title" : "Film $index",
+            "cast": [ { "name" : "Jack $index", "agentName" : "Agent $index" } , { "name" : "Jimmy $index" } ],
+            "crew" : [ { "name" : "Pete $index" } , { "name" : "Paul $index" } ],
+            "imdbScore" : 5.5
+            }""", schema
+      )
+   }
+
+   /**
+    * The breadth-first walk that CopyOnWriteFactBag used to rebuild after every added fact.
+    */
+   private fun legacyTreeWalk(rootFacts: List<TypedInstance>): List<TypedInstance> {
+      val root = TypedCollection.arrayOf(schema.type(PrimitiveType.ANY), rootFacts.distinct(), source = MixedSources)
+      val visitedNodes = mutableSetOf<TypedInstance>()
+      val treeDef: TreeDef<TypedInstance> = TreeDef.of { instance ->
+         if (!visitedNodes.add(instance)) {
+            emptyList()
+         } else {
+            children(instance)
+         }
+      }
+      return TreeStream.breadthFirst(treeDef, root).collect(Collectors.toList())
+   }
+
+   private fun children(instance: TypedInstance): List<TypedInstance> {
+      val instruction = traversalStrategy.predicate(instance)
+      if (instruction == IgnoreThisElement) {
+         return emptyList()
+      }
+      return when (instance) {
+         is TypedObject -> when (instruction) {
+            is EvaluateSpecificFields -> instruction.filter(instance)
+            else -> instance.values.toList()
+         }
+
+         is TypedEnumValue -> instance.synonyms
+         is TypedCollection -> instance.value
+         else -> emptyList()
+      }
+   }
+}
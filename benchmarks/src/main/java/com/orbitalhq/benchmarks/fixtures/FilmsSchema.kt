@@ -0,0 +1,122 @@
+package com.orbitalhq.benchmarks.fixtures
+
+import com.orbitalhq.models.Provided
+import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.schemas.taxi.TaxiSchema
+
+/**
+ * A films domain shared by the benchmark suites, modelled on the schemas used in the query engine tests:
+ * semantic types with inheritance, nested collections, an enum, and services that need to be chained
+ * to enrich a film.
+ *
+ * Data is generated in-process, so benchmarks don't need any external services.
+ */
+object FilmsSchema {
+   val source = """
+      namespace films
+
+      type FilmId inherits Int
+      type FilmTitle inherits String
+      type ReleaseYear inherits Int
+      type DurationMinutes inherits Int
+      type DirectorId inherits Int
+      type DirectorName inherits String
+      type ActorId inherits Int
+      type ActorName inherits String
+      type AgentName inherits String
+      type ReviewScore inherits Decimal
+      type ReviewText inherits String
+
+      enum Genre {
+         Action,
+         Comedy,
+         Drama,
+         Horror,
+         Documentary
+      }
+
+      model Actor {
+         id : ActorId
+         name : ActorName
+         agent : AgentName?
+      }
+
+      model Film {
+         id : FilmId
+         title : FilmTitle
+         released : ReleaseYear
+         duration : DurationMinutes
+         genre : Genre
+         directorId : DirectorId
+         cast : Actor[]
+      }
+
+      model Director {
+         id : DirectorId
+         name : DirectorName
+      }
+
+      model Review {
+         filmId : FilmId
+         score : ReviewScore
+         text : ReviewText
+      }
+
+      service FilmService {
+         operation findAllFilms() : Film[]
+         operation findFilm(FilmId) : Film
+      }
+
+      service DirectorService {
+         operation findDirector(DirectorId) : Director
+      }
+
+      service ReviewService {
+         operation findReview(FilmId) : Review
+      }
+   """.trimIndent()
+
+   fun schema(): TaxiSchema = TaxiSchema.from(source)
+
+   private val genres = listOf("Action", "Comedy", "Drama", "Horror", "Documentary")
+
+   fun filmJson(index: Int, castSize: Int = 3): String {
+      val cast = (0 until castSize).joinToString(",") { castIndex ->
+         val actorId = index * castSize + castIndex
+         """{ "id" : $actorId, "name" : "Actor $actorId", "agent" : "Agent ${actorId % 50}" }"""
+      }
+      return """{
+         "id" : $index,
+         "title" : "Film $index",
+         "released" : ${1950 + index % 70},
+         "duration" : ${80 + index % 90},
+         "genre" : "${genres[index % genres.size]}",
+         "directorId" : ${index % 200},
+         "cast" : [ $cast ]
+      }"""
+   }
+
+   fun filmsJson(count: Int): String = (0 until count).joinToString(",", prefix = "[", postfix = "]") { filmJson(it) }
+
+   fun film(schema: TaxiSchema, index: Int): TypedInstance {
+      return TypedInstance.from(schema.type("films.Film"), filmJson(index), schema, source = Provided)
+   }
+
+   fun director(schema: TaxiSchema, id: Int): TypedInstance {
+      return TypedInstance.from(
+         schema.type("films.Director"),
+         mapOf("id" to id, "name" to "Director $id"),
+         schema,
+         source = Provided
+      )
+   }
+
+   fun review(schema: TaxiSchema, filmId: Int): TypedInstance {
+      return TypedInstance.from(
+         schema.type("films.Review"),
+         mapOf("filmId" to filmId, "score" to (filmId % 50) / 10.0, "text" to "Review of film $filmId"),
+         schema,
+         source = Provided
+      )
+   }
+}
@@ -0,0 +1,111 @@
+package com.orbitalhq.benchmarks.graph
+
+import com.orbitalhq.SchemaPathFindingGraph
+import com.orbitalhq.benchmarks.fixtures.FilmsSchema
+import com.orbitalhq.models.Provided
+import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.models.facts.FactBag
+import com.orbitalhq.query.graph.Element
+import com.orbitalhq.query.graph.EvaluatedPathSet
+import com.orbitalhq.query.graph.VyneGraphBuilder
+import com.orbitalhq.query.graph.providedInstance
+import com.orbitalhq.query.graph.type
+import com.orbitalhq.schemas.Relationship
+import es.usc.citius.hipster.model.impl.WeightedNode
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures SchemaPathFindingGraph.findPath(), searching from a provided FilmId to a ReviewScore and a DirectorName
+ * (which needs two operations to be chained, via the Film).
+ *
+ * - cachedSearch repeats the same search on the same graph, so is served from the search cache
+ * - newFactSearch builds a graph for a fact that hasn't been seen before (using a shared builder, so the
+ *   base schema connections are cached) and searches it, as happens for each row of a projection
+ * - coldSearch also creates the graph builder, so includes building the base schema connections
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class PathFindingBenchmark {
+
+   private val schema = FilmsSchema.schema()
+   private val filmIdType = schema.type("films.FilmId")
+   private val reviewScore = type(schema.type("films.ReviewScore"))
+   private val directorName = type(schema.type("films.DirectorName"))
+
+   private val graphBuilder = VyneGraphBuilder(schema)
+
+   /**
+    * More distinct facts than the graph builder caches graphs for, so cycling through them
+    * always builds a new graph.
+    */
+   private val filmIds = (0 until 1000).map { TypedInstance.from(filmIdType, it, schema, source = Provided) }
+   private var nextFilmId = 0
+
+   private lateinit var cachedGraph: SchemaPathFindingGraph
+   private lateinit var cachedFact: TypedInstance
+   private lateinit var cachedFactBag: FactBag
+   private val cachedEvaluatedPaths = EvaluatedPathSet()
+
+   @Setup
+   fun setup() {
+      cachedFact = filmIds.first()
+      cachedFactBag = FactBag.of(listOf(cachedFact), schema)
+      cachedGraph = buildGraph(graphBuilder, cachedFact)
+      cachedGraph.findPath(providedInstance(cachedFact), reviewScore, cachedEvaluatedPaths, cachedFactBag)
+   }
+
+   @Benchmark
+   fun cachedSearch(): WeightedNode<Relationship, Element, Double>? {
+      return cachedGraph.findPath(providedInstance(cachedFact), reviewScore, cachedEvaluatedPaths, cachedFactBag)
+   }
+
+   @Benchmark
+   fun newFactSearch(): List<WeightedNode<Relationship, Element, Double>?> {
+      return search(graphBuilder, nextFilmId())
+   }
+
+   @Benchmark
+   fun coldSearch(): List<WeightedNode<Relationship, Element, Double>?> {
+      return search(VyneGraphBuilder(schema), nextFilmId())
+   }
+
+   private fun search(builder: VyneGraphBuilder, fact: TypedInstance): List<WeightedNode<Relationship, Element, Double>?> {
+      val graph = buildGraph(builder, fact)
+      val facts = FactBag.of(listOf(fact), schema)
+      val evaluatedPaths = EvaluatedPathSet()
+      val start = providedInstance(fact)
+      return listOf(
+         graph.findPath(start, reviewScore, evaluatedPaths, facts),
+         graph.findPath(start, directorName, evaluatedPaths, facts)
+      )
+   }
+
+   private fun buildGraph(builder: VyneGraphBuilder, fact: TypedInstance): SchemaPathFindingGraph {
+      return builder.build(
+         listOf(fact),
+         excludedOperations = emptySet(),
+         excludedEdges = emptyList(),
+         excludedServices = emptySet()
+      ).graph
+   }
+
+   private fun nextFilmId(): TypedInstance {
+      val fact = filmIds[nextFilmId]
+      nextFilmId = (nextFilmId + 1) % filmIds.size
+      return fact
+   }
+}
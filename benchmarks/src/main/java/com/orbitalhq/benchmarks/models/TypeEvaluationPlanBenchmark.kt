@@ -0,0 +1,77 @@
+package com.orbitalhq.benchmarks.models
+
+import com.orbitalhq.models.Provided
+import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.models.TypedObjectFactory
+import com.orbitalhq.schemas.taxi.TaxiSchema
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures building records whose fields are populated by expressions (concat, arithmetic and when),
+ * as happens when ingesting CSV / Json with derived fields.
+ *
+ * Compares building with TypeEvaluationPlans (where field and expression types are resolved,
+ * and accessors compiled, once per type) against resolving and dispatching them for every record.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+open class TypeEvaluationPlanBenchmark {
+
+   @Param("100", "1000")
+   var recordCount: Int = 0
+
+   private val schema = TaxiSchema.from(
+      """
+      model Trade {
+         firstName : FirstName inherits String by jsonPath("/firstName")
+         lastName : LastName inherits String by jsonPath("/lastName")
+         price : Price inherits Decimal by jsonPath("/price")
+         quantity : Quantity inherits Int by jsonPath("/quantity")
+         traderName : TraderName inherits String by concat(this.firstName, " ", this.lastName)
+         consideration : Consideration inherits Decimal by (this.price * this.quantity)
+         size : TradeSize inherits String by when {
+            this.quantity > 100 -> "Large"
+            else -> "Small"
+         }
+      }
+      """.trimIndent()
+   )
+   private val tradeType = schema.type("Trade")
+
+   private lateinit var records: List<String>
+
+   @Setup
+   fun setup() {
+      records = (0 until recordCount).map { index ->
+         """{ "firstName" : "Jimmy$index", "lastName" : "Smith", "price" : ${index % 50}.25, "quantity" : ${index % 200} }"""
+      }
+   }
+
+   private fun buildRecords(useEvaluationPlan: Boolean): List<TypedInstance> {
+      return records.map { json ->
+         TypedObjectFactory(tradeType, json, schema, source = Provided, useEvaluationPlan = useEvaluationPlan).build()
+      }
+   }
+
+   @Benchmark
+   @Fork(1)
+   fun buildWithPlans(): List<TypedInstance> = buildRecords(useEvaluationPlan = true)
+
+   @Benchmark
+   @Fork(1)
+   fun buildWithoutPlans(): List<TypedInstance> = buildRecords(useEvaluationPlan = false)
+}
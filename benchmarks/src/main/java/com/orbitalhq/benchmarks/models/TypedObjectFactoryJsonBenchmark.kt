@@ -0,0 +1,58 @@
+package com.orbitalhq.benchmarks.models
+
+import com.orbitalhq.benchmarks.fixtures.FilmsSchema
+import com.orbitalhq.models.Provided
+import com.orbitalhq.models.TypedInstance
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures parsing JSON responses into TypedInstances (via TypedObjectFactory),
+ * as happens for every response from an http operation.
+ *
+ * Covers both a single object, and an array response of filmCount films.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class TypedObjectFactoryJsonBenchmark {
+
+   @Param("10", "100")
+   var filmCount: Int = 0
+
+   private val schema = FilmsSchema.schema()
+   private val filmType = schema.type("films.Film")
+   private val filmArrayType = schema.type("films.Film[]")
+
+   private lateinit var filmJson: String
+   private lateinit var filmsJson: String
+
+   @Setup
+   fun setup() {
+      filmJson = FilmsSchema.filmJson(1)
+      filmsJson = FilmsSchema.filmsJson(filmCount)
+   }
+
+   @Benchmark
+   fun parseObject(): TypedInstance {
+      return TypedInstance.from(filmType, filmJson, schema, source = Provided)
+   }
+
+   @Benchmark
+   fun parseArray(): TypedInstance {
+      return TypedInstance.from(filmArrayType, filmsJson, schema, source = Provided)
+   }
+}
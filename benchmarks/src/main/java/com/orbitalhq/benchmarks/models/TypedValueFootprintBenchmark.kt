@@ -0,0 +1,73 @@
+package com.orbitalhq.benchmarks.models
+
+import com.orbitalhq.models.Provided
+import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.models.TypedObject
+import com.orbitalhq.schemas.taxi.TaxiSchema
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures the cost of building a row of scalar values, as happens for every row of a projection.
+ *
+ * Run with the GC profiler to see the bytes allocated per row (gc.alloc.rate.norm):
+ *   java -jar benchmarks/target/benchmarks.jar TypedValueFootprintBenchmark -prof gc
+ *
+ * The readingNodeIds variant models rows where lineage is captured, so every node id is generated.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class TypedValueFootprintBenchmark {
+
+   private val schema = TaxiSchema.from(
+      """
+      enum Genre { Action, Comedy, Drama }
+      model Film {
+         id : FilmId inherits Int
+         title : FilmTitle inherits String
+         genre : Genre
+         rating : Rating inherits Int
+         isReleased : IsReleased inherits Boolean
+         revenue : Revenue inherits Decimal
+      }
+   """.trimIndent()
+   )
+
+   private val filmType = schema.type("Film")
+   private var rowIndex = 0
+
+   private fun row(): Map<String, Any> {
+      rowIndex++
+      return mapOf(
+         "id" to rowIndex,
+         "title" to "Film $rowIndex",
+         "genre" to "Comedy",
+         "rating" to rowIndex % 10,
+         "isReleased" to (rowIndex % 2 == 0),
+         "revenue" to rowIndex * 1000.5
+      )
+   }
+
+   @Benchmark
+   fun buildRow(): TypedInstance {
+      return TypedInstance.from(filmType, row(), schema, source = Provided)
+   }
+
+   @Benchmark
+   fun buildRowReadingNodeIds(): List<String> {
+      val instance = TypedInstance.from(filmType, row(), schema, source = Provided)
+      return (instance as TypedObject).values.map { it.nodeId } + instance.nodeId
+   }
+}
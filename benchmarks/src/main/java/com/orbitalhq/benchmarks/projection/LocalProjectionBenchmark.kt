@@ -0,0 +1,75 @@
+package com.orbitalhq.benchmarks.projection
+
+import com.orbitalhq.StubService
+import com.orbitalhq.Vyne
+import com.orbitalhq.benchmarks.fixtures.FilmsSchema
+import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.query.projection.LocalProjectionProvider
+import com.orbitalhq.testVyne
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.runBlocking
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures running a query which projects rowCount films with LocalProjectionProvider.
+ * Each projected row is enriched with a Director and a Review, which are looked up from stubbed services,
+ * so the benchmark covers the per-row graph search, operation invocation and fact lookups - but not any network i/o.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class LocalProjectionBenchmark {
+
+   @Param("10", "100", "1000")
+   var rowCount: Int = 0
+
+   @Param("true", "false")
+   var preserveOrder: Boolean = true
+
+   private val schema = FilmsSchema.schema()
+   private val query = """
+      find { films.Film[] } as {
+         title : films.FilmTitle
+         director : films.DirectorName
+         score : films.ReviewScore
+      }[]
+   """.trimIndent()
+
+   private lateinit var vyne: Vyne
+   private lateinit var stub: StubService
+
+   @Setup
+   fun setup() {
+      val (vyne, stub) = testVyne(schema, LocalProjectionProvider(preserveOrder = preserveOrder))
+      this.vyne = vyne
+      this.stub = stub
+
+      val films = (0 until rowCount).map { FilmsSchema.film(schema, it) }
+      stub.addResponse("findAllFilms", films)
+      stub.addResponse("findDirector") { _, parameters ->
+         listOf(FilmsSchema.director(schema, parameters.single().second.value as Int))
+      }
+      stub.addResponse("findReview") { _, parameters ->
+         listOf(FilmsSchema.review(schema, parameters.single().second.value as Int))
+      }
+   }
+
+   @Benchmark
+   fun projectRows(): List<TypedInstance> = runBlocking {
+      vyne.query(query).results.toList()
+   }
+}
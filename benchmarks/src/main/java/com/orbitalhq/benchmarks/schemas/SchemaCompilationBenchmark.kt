@@ -0,0 +1,54 @@
+package com.orbitalhq.benchmarks.schemas
+
+import com.orbitalhq.benchmarks.fixtures.FilmsSchema
+import com.orbitalhq.schemas.taxi.TaxiSchema
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures compiling a schema with TaxiSchema.from(), as happens whenever a schema is published
+ * or changed.
+ *
+ * As well as the films schema, compiles a schema of namespaceCount copies of it (each in its own namespace),
+ * to show how compilation scales with the size of the schema.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class SchemaCompilationBenchmark {
+
+   @Param("10", "50")
+   var namespaceCount: Int = 0
+
+   private lateinit var largeSchemaSource: String
+
+   @Setup
+   fun setup() {
+      largeSchemaSource = (0 until namespaceCount).joinToString("\n\n") { index ->
+         FilmsSchema.source.replace("namespace films", "namespace films$index")
+      }
+   }
+
+   @Benchmark
+   fun compileFilmsSchema(): TaxiSchema {
+      return TaxiSchema.from(FilmsSchema.source)
+   }
+
+   @Benchmark
+   fun compileLargeSchema(): TaxiSchema {
+      return TaxiSchema.from(largeSchemaSource)
+   }
+}
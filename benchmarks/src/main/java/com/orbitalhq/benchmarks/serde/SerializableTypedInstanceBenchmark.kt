@@ -0,0 +1,66 @@
+package com.orbitalhq.benchmarks.serde
+
+import com.orbitalhq.benchmarks.fixtures.FilmsSchema
+import com.orbitalhq.models.Provided
+import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.models.serde.SerializableTypedInstance
+import com.orbitalhq.models.serde.toSerializable
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures converting TypedInstances to and from the CBOR bytes of SerializableTypedInstance,
+ * which is how TypedInstances are sent between cluster members (eg., for distributed projection).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class SerializableTypedInstanceBenchmark {
+
+   @Param("1", "100")
+   var filmCount: Int = 0
+
+   private val schema = FilmsSchema.schema()
+
+   private lateinit var instance: TypedInstance
+   private lateinit var bytes: ByteArray
+
+   @Setup
+   fun setup() {
+      instance = TypedInstance.from(
+         schema.type("films.Film[]"),
+         FilmsSchema.filmsJson(filmCount),
+         schema,
+         source = Provided
+      )
+      bytes = instance.toSerializable().toBytes()
+   }
+
+   @Benchmark
+   fun serialize(): ByteArray {
+      return instance.toSerializable().toBytes()
+   }
+
+   @Benchmark
+   fun deserialize(): TypedInstance {
+      return SerializableTypedInstance.fromBytes(bytes).toTypedInstance(schema)
+   }
+
+   @Benchmark
+   fun roundTrip(): TypedInstance {
+      return SerializableTypedInstance.fromBytes(instance.toSerializable().toBytes()).toTypedInstance(schema)
+   }
+}
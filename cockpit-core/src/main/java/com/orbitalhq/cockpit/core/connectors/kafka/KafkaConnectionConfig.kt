@@ -2,6 +2,7 @@ package com.orbitalhq.cockpit.core.connectors.kafka
 
 import com.orbitalhq.connectors.VyneConnectionsConfig
 import com.orbitalhq.connectors.config.SourceLoaderConnectorsRegistry
+import com.orbitalhq.connectors.kafka.KafkaConsumerSettings
 import com.orbitalhq.connectors.kafka.KafkaInvoker
 import com.orbitalhq.connectors.kafka.KafkaStreamManager
 import com.orbitalhq.connectors.kafka.KafkaStreamPublisher
@@ -10,6 +11,8 @@ import com.orbitalhq.connectors.kafka.registry.SourceLoaderKafkaConnectionRegist
 import com.orbitalhq.models.format.FormatRegistry
 import com.orbitalhq.schema.api.SchemaProvider
 import org.springframework.boot.context.properties.EnableConfigurationProperties
+import io.micrometer.core.instrument.MeterRegistry
+import org.springframework.beans.factory.annotation.Value
 import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.Configuration
 
@@ -26,8 +29,17 @@ class KafkaConnectionConfig {
    fun kafkaStreamManager(
       connectionRegistry: KafkaConnectionRegistry,
       schemaProvider: SchemaProvider,
-      formatRegistry: FormatRegistry
-   ) = KafkaStreamManager(connectionRegistry, schemaProvider, formatRegistry = formatRegistry)
+      formatRegistry: FormatRegistry,
+      meterRegistry: MeterRegistry,
+      @Value("\${vyne.kafka.consumer.concurrency:1}") consumerConcurrency: Int,
+      @Value("\${vyne.kafka.consumer.commit-offsets:false}") commitOffsets: Boolean
+   ) = KafkaStreamManager(
+      connectionRegistry,
+      schemaProvider,
+      formatRegistry = formatRegistry,
+      settings = KafkaConsumerSettings(consumerConcurrency = consumerConcurrency, commitOffsets = commitOffsets),
+      meterRegistry = meterRegistry
+   )
 
    @Bean
    fun kafkaStreamPublisher(     connectionRegistry: KafkaConnectionRegistry,
@@ -3,6 +3,7 @@ package com.orbitalhq.connectors.aws.s3
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.google.common.base.Stopwatch
 import com.orbitalhq.connectors.aws.core.registry.AwsConnectionRegistry
+import com.orbitalhq.connectors.calcite.TypeTableRowSource
 import com.orbitalhq.connectors.calcite.VyneCalciteDataSource
 import com.orbitalhq.connectors.config.aws.AwsConnectionConfiguration
 import com.orbitalhq.connectors.convertToTypedInstances
@@ -35,7 +36,7 @@ import mu.KotlinLogging
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate
 import java.time.Duration
 import java.time.Instant
-import java.util.stream.Stream
+import java.util.stream.StreamSupport
 
 class S3Invoker(
     private val connectionRegistry: AwsConnectionRegistry,
@@ -91,7 +92,7 @@ class S3Invoker(
         val dataSource = VyneCalciteDataSource(
             schema,
             resultTypeQualifiedName.toVyneQualifiedName(),
-            fetchAsStream(s3ConnectionConfiguration, parametrisedType, null)
+            fetchRows(s3ConnectionConfiguration, parametrisedType, null)
         )
 
         val stopwatch = Stopwatch.createStarted()
@@ -143,36 +144,37 @@ class S3Invoker(
         )
     }
 
-    private fun fetchAsStream(
+    /**
+     * CSV records are parsed lazily, so that only the columns used by the query are parsed.
+     * Other content is parsed up front, using the format spec.
+     */
+    private fun fetchRows(
         s3connectionConfig: S3BucketConfig,
         messageType: Type,
         s3ObjectKey: String?
-    ): Stream<TypedInstance> {
+    ): TypeTableRowSource {
         val schema = schemaProvider.schema
         return messageType
             .metadata.firstOrNull { metadata -> metadata.name == CsvAnnotationSpec.NAME }?.let {
                 val csvModelFormatAnnotation = formatDetector.getFormatType(messageType)
                     ?.let { if (it.second is CsvFormatSpec) CsvFormatSpecAnnotation.from(it.first) else null }
-                S3Connection(s3connectionConfig.connection, s3connectionConfig.bucketName)
-                    .fetchAsCsv(s3ObjectKey, csvModelFormatAnnotation!!).flatMap { messageValue ->
-                        messageValue.records.map { csvRecord ->
-                            TypedInstance.from(
-                                messageType,
-                                csvRecord,
-                                schema
-                            )
-                        }.stream()
+                val csvRecords = S3Connection(s3connectionConfig.connection, s3connectionConfig.bucketName)
+                    .fetchAsCsv(s3ObjectKey, csvModelFormatAnnotation!!).flatMap { parser ->
+                        StreamSupport.stream(parser.spliterator(), false).onClose { parser.close() }
                     }
+                TypeTableRowSource.lazilyParsed(messageType, csvRecords, schema)
             }
-            ?: S3Connection(s3connectionConfig.connection, s3connectionConfig.bucketName)
-                .fetch(s3ObjectKey).map { messageValue ->
-                    TypedInstance.from(
-                        type = messageType,
-                        value = messageValue,
-                        schema = schema,
-                        formatSpecs = listOf(CsvFormatSpec)
-                    )
-                }
+            ?: TypeTableRowSource.of(
+                S3Connection(s3connectionConfig.connection, s3connectionConfig.bucketName)
+                    .fetch(s3ObjectKey).map { messageValue ->
+                        TypedInstance.from(
+                            type = messageType,
+                            value = messageValue,
+                            schema = schema,
+                            formatSpecs = listOf(CsvFormatSpec)
+                        )
+                    }
+            )
     }
 
 
@@ -65,7 +65,7 @@ class StoreInvoker(
       val dataSource = VyneCalciteDataSource(
          schema,
          resultTypeQualifiedName.toVyneQualifiedName(),
-         streamProvider.stream(parametrisedType, schema, azureStoreConnection, fetchContainer(operation), null)
+         streamProvider.rows(parametrisedType, schema, azureStoreConnection, fetchContainer(operation), null)
       )
       val stopwatch = Stopwatch.createStarted()
       val result = NamedParameterJdbcTemplate(dataSource).queryForList(sql, paramMap)
@@ -3,6 +3,10 @@ package com.orbitalhq.connectors.azure.blob
 import com.azure.storage.blob.BlobServiceClientBuilder
 import com.orbitalhq.connectors.azure.blob.StreamProvider.Companion.typedInstanceStream
 import com.orbitalhq.connectors.azure.blob.registry.AzureStorageConnectorConfiguration
+import com.orbitalhq.connectors.calcite.LazilyParsedRow
+import com.orbitalhq.connectors.calcite.TypeTableRow
+import com.orbitalhq.connectors.calcite.TypeTableRowSource
+import com.orbitalhq.connectors.calcite.TypedInstanceRow
 import com.orbitalhq.models.Provided
 import com.orbitalhq.models.TypedInstance
 import com.orbitalhq.formats.csv.CsvFormatFactory
@@ -28,11 +32,43 @@ interface StreamProvider {
               azureStoreConnection: AzureStorageConnectorConfiguration,
               containerName: String,
               blobName: String?): Stream<TypedInstance>
+
+   /**
+    * Returns the rows for querying with Calcite.
+    * By default, these are the fully parsed instances from stream()
+    */
+   fun rows(targetType: Type,
+            schema: Schema,
+            azureStoreConnection: AzureStorageConnectorConfiguration,
+            containerName: String,
+            blobName: String?): TypeTableRowSource {
+      return TypeTableRowSource.of(stream(targetType, schema, azureStoreConnection, containerName, blobName))
+   }
+
    fun formatDetector(): FormatDetector {
       return FormatDetector.get(listOf(CsvFormatSpec))
    }
 
    companion object {
+      /**
+       * Returns the content as a stream of rows, where CSV records are parsed lazily.
+       */
+      fun typeTableRowStream(
+         inputStream: InputStream,
+         targetType: Type,
+         schema: Schema,
+         formatDetector: FormatDetector): Stream<out TypeTableRow> {
+         val csvModelFormatAnnotation = formatDetector.getFormatType(targetType)?.let { if (it.second is CsvFormatSpec) CsvFormatSpecAnnotation.from(it.first) else null }
+         return if (csvModelFormatAnnotation != null) {
+            val csvFormat = CsvFormatFactory.fromParameters(csvModelFormatAnnotation.ingestionParameters)
+            val parser = csvFormat.parse(inputStream.bufferedReader())
+            StreamSupport.stream(parser.spliterator(), false)
+               .map { csvRecord -> LazilyParsedRow(targetType, csvRecord, schema) }
+         } else {
+            typedInstanceStream(inputStream, targetType, schema, formatDetector).map { TypedInstanceRow(it) }
+         }
+      }
+
       fun typedInstanceStream(
          inputStream: InputStream,
          targetType: Type,
@@ -72,6 +108,23 @@ class AzureStreamProvider : StreamProvider {
                        azureStoreConnection: AzureStorageConnectorConfiguration,
                        containerName: String,
                        blobName: String?): Stream<TypedInstance> {
+      return openBlobs(azureStoreConnection, containerName, blobName)
+         .flatMap { inputStream -> typedInstanceStream(inputStream, targetType, schema, formatDetector()) }
+   }
+
+   override fun rows(targetType: Type,
+                     schema: Schema,
+                     azureStoreConnection: AzureStorageConnectorConfiguration,
+                     containerName: String,
+                     blobName: String?): TypeTableRowSource {
+      val rows = openBlobs(azureStoreConnection, containerName, blobName)
+         .flatMap { inputStream -> typeTableRowStream(inputStream, targetType, schema, formatDetector()) }
+      return TypeTableRowSource { rows }
+   }
+
+   private fun openBlobs(azureStoreConnection: AzureStorageConnectorConfiguration,
+                         containerName: String,
+                         blobName: String?): Stream<InputStream> {
       val connectStr = azureStoreConnection.connectionString
       val blobServiceClient = BlobServiceClientBuilder().connectionString(connectStr).buildAsyncClient()
       val blobContainerAsyncClient = blobServiceClient.getBlobContainerAsyncClient(containerName)
@@ -84,10 +137,9 @@ class AzureStreamProvider : StreamProvider {
                val tempFile =  File.createTempFile("azure", "vyne")
                blobContainerAsyncClient.getBlobAsyncClient(blobItem.name).downloadToFile(tempFile.absolutePath, true)
                   .subscribeOn(Schedulers.boundedElastic())
-                  .map { typedInstanceStream(tempFile.inputStream(), targetType, schema, formatDetector()) }
+                  .map<InputStream> { tempFile.inputStream() }
 
             }.toStream()
-            .flatMap { it }
 
       } else {
 
@@ -98,7 +150,7 @@ class AzureStreamProvider : StreamProvider {
             .doOnComplete { pipedOutputStream.close() }
             .subscribe { byteBuffer -> pipedOutputStream.write(byteBuffer.array()) }
 
-          typedInstanceStream(pipedInputStream, targetType, schema, formatDetector())
+         Stream.of(pipedInputStream)
       }
    }
 }
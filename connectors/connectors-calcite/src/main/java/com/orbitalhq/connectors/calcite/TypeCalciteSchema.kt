@@ -1,15 +1,13 @@
 package com.orbitalhq.connectors.calcite
 
-import com.orbitalhq.models.TypedInstance
 import com.orbitalhq.schemas.Type
 import lang.taxi.types.ArrayType
 import org.apache.calcite.schema.Table
 import org.apache.calcite.schema.impl.AbstractSchema
-import java.util.stream.Stream
 
 class SingleVyneTypeCalciteSchema(
    private val type: Type,
-   private val dataSource: Stream<TypedInstance>,
+   private val dataSource: TypeTableRowSource,
    private val schema: com.orbitalhq.schemas.Schema): AbstractSchema() {
    override fun getTableMap(): MutableMap<String, Table> {
       val parametrizedTypeName = type.collectionTypeName ?: type.qualifiedName
@@ -1,6 +1,7 @@
 package com.orbitalhq.connectors.calcite
 
 import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.schemas.AttributeName
 import com.orbitalhq.schemas.Schema
 import com.orbitalhq.schemas.Type
 import lang.taxi.jvm.common.PrimitiveTypes
@@ -14,37 +15,71 @@ import org.apache.calcite.linq4j.Enumerable
 import org.apache.calcite.linq4j.Enumerator
 import org.apache.calcite.rel.type.RelDataType
 import org.apache.calcite.rel.type.RelDataTypeFactory
-import org.apache.calcite.schema.ScannableTable
+import org.apache.calcite.rex.RexNode
+import org.apache.calcite.schema.ProjectableFilterableTable
 import org.apache.calcite.schema.impl.AbstractTable
 import java.util.stream.Stream
 
 private val logger = KotlinLogging.logger {  }
-class TypeTable(private val type: Type, private val dataSource: Stream<TypedInstance>, private val schema: Schema): AbstractTable(), ScannableTable {
+
+/**
+ * A table over rows of a single type.
+ *
+ * Scans are projectable and filterable, so only the columns that are used by a query are read,
+ * and simple predicates (see TypeTableFilter) are evaluated as the rows are read, rather than by Calcite afterwards.
+ * Where rows are parsed lazily (see LazilyParsedRow), this means columns which aren't used are never parsed.
+ */
+class TypeTable(private val type: Type, private val rowSource: TypeTableRowSource, private val schema: Schema): AbstractTable(), ProjectableFilterableTable {
+   constructor(type: Type, dataSource: Stream<TypedInstance>, schema: Schema) : this(type, TypeTableRowSource.of(dataSource), schema)
+
+   private val columns: List<Pair<AttributeName, Class<*>>> by lazy {
+      type.attributes.map { (fieldName, field) ->
+         fieldName to CalciteMapping.getJavaType(field.resolveType(schema).taxiType)
+      }
+   }
+
    override fun getRowType(relDataTypeFactory: RelDataTypeFactory): RelDataType {
-      val structure =  type.attributes.map { (fieldName, field) ->
-         val relDataType =
-         relDataTypeFactory.createJavaType( CalciteMapping.getJavaType(field.resolveType(schema).taxiType))
+      val structure =  columns.map { (fieldName, javaType) ->
+         val relDataType = relDataTypeFactory.createJavaType(javaType)
          fieldName to relDataType
       }.toMap().entries.toList()
      return  relDataTypeFactory.createStructType(structure)
    }
 
-   override fun scan(dataContex: DataContext): Enumerable<Array<Any?>> {
-      return TypedInstanceStreamEnumerable(dataSource)
+   override fun scan(root: DataContext, filters: MutableList<RexNode>, projects: IntArray?): Enumerable<Array<Any?>> {
+      // Filters we can evaluate are removed from the list, which tells Calcite it doesn't need to evaluate them again.
+      val pushedDownFilters = mutableListOf<TypeTableFilter>()
+      val filterIterator = filters.iterator()
+      while (filterIterator.hasNext()) {
+         val filter = TypeTableFilter.from(filterIterator.next(), columns) ?: continue
+         pushedDownFilters.add(filter)
+         filterIterator.remove()
+      }
+      val projectedAttributes = (projects?.toList() ?: columns.indices).map { columns[it].first }
+      logger.debug { "Scanning ${type.name.shortDisplayName} for columns $projectedAttributes with filters $pushedDownFilters" }
+      return TypeTableRowEnumerable(rowSource, projectedAttributes, pushedDownFilters)
    }
 }
 
-class  TypedInstanceStreamEnumerable(private val dataSource: Stream<TypedInstance>): AbstractEnumerable<Array<Any?>>() {
+class TypeTableRowEnumerable(
+   private val rowSource: TypeTableRowSource,
+   private val projectedAttributes: List<AttributeName>,
+   private val filters: List<TypeTableFilter>
+): AbstractEnumerable<Array<Any?>>() {
    override fun enumerator(): Enumerator<Array<Any?>> {
-      return TypedInstanceStreamEnumerator(dataSource)
+      return TypeTableRowEnumerator(rowSource.rows(), projectedAttributes, filters)
    }
 }
 
-class TypedInstanceStreamEnumerator(private val dataSource: Stream<TypedInstance>): Enumerator<Array<Any?>> {
-   private val streamIterator = dataSource.iterator()
+class TypeTableRowEnumerator(
+   private val rows: Stream<out TypeTableRow>,
+   private val projectedAttributes: List<AttributeName>,
+   private val filters: List<TypeTableFilter>
+): Enumerator<Array<Any?>> {
+   private val rowIterator = rows.iterator()
    private var current: Array<Any?>? = null
    override fun close() {
-      dataSource.close()
+      rows.close()
    }
 
    override fun current(): Array<Any?>? {
@@ -52,11 +87,14 @@ class TypedInstanceStreamEnumerator(private val dataSource: Stream<TypedInstance
    }
 
    override fun moveNext(): Boolean {
-      return if (streamIterator.hasNext()) {
-         val typedObjectAttrMap = streamIterator.next().value as Map<String, TypedInstance>
-         this.current = typedObjectAttrMap.values.map { it.value }.toTypedArray()
-         true
-      } else false
+      while (rowIterator.hasNext()) {
+         val row = rowIterator.next()
+         if (filters.all { it.matches(row) }) {
+            this.current = Array(projectedAttributes.size) { index -> row.getValue(projectedAttributes[index]) }
+            return true
+         }
+      }
+      return false
    }
 
    override fun reset() {
@@ -0,0 +1,123 @@
+package com.orbitalhq.connectors.calcite
+
+import com.orbitalhq.schemas.AttributeName
+import org.apache.calcite.rex.RexCall
+import org.apache.calcite.rex.RexInputRef
+import org.apache.calcite.rex.RexLiteral
+import org.apache.calcite.rex.RexNode
+import org.apache.calcite.sql.SqlKind
+import org.apache.calcite.sql.type.SqlTypeFamily
+import java.math.BigDecimal
+
+/**
+ * A simple predicate (eg., column = literal) which is evaluated against rows as they're read,
+ * before they're passed to Calcite.
+ *
+ * Only comparisons between a column and a literal of a numeric, string or boolean type are supported.
+ * Anything else is left for Calcite to evaluate.
+ */
+class TypeTableFilter private constructor(
+   val attributeName: AttributeName,
+   private val kind: SqlKind,
+   private val literal: Comparable<Any>?
+) {
+   companion object {
+      private val comparisons = setOf(
+         SqlKind.EQUALS,
+         SqlKind.NOT_EQUALS,
+         SqlKind.LESS_THAN,
+         SqlKind.LESS_THAN_OR_EQUAL,
+         SqlKind.GREATER_THAN,
+         SqlKind.GREATER_THAN_OR_EQUAL
+      )
+
+      /**
+       * Returns a filter for the node, or null if the node isn't a predicate that we can evaluate.
+       *
+       * @param columns The name and java type of each column of the table, in the order of the row type
+       */
+      fun from(node: RexNode, columns: List<Pair<AttributeName, Class<*>>>): TypeTableFilter? {
+         if (node !is RexCall) return null
+         return when (node.kind) {
+            SqlKind.IS_NULL, SqlKind.IS_NOT_NULL -> {
+               val inputRef = node.operands.single() as? RexInputRef ?: return null
+               TypeTableFilter(columns[inputRef.index].first, node.kind, null)
+            }
+
+            in comparisons -> {
+               val (left, right) = node.operands
+               when {
+                  left is RexInputRef && right is RexLiteral -> comparison(columns[left.index], node.kind, right)
+                  // literal on the left (eg., 5 < x), so flip the operator (x > 5)
+                  left is RexLiteral && right is RexInputRef -> comparison(columns[right.index], node.kind.reverse(), left)
+                  else -> null
+               }
+            }
+
+            else -> null
+         }
+      }
+
+      @Suppress("UNCHECKED_CAST")
+      private fun comparison(column: Pair<AttributeName, Class<*>>, kind: SqlKind, literal: RexLiteral): TypeTableFilter? {
+         // Comparisons against null are never true, so leave those for Calcite to simplify
+         if (literal.isNull) return null
+         val (attributeName, columnType) = column
+         val columnClass = columnType.kotlin.javaObjectType
+         // Only evaluate comparisons where the column and literal are of the same family.
+         // Otherwise, Calcite applies its own type coercion rules, which we leave it to do.
+         val value: Comparable<*> = when {
+            literal.type.sqlTypeName.family == SqlTypeFamily.NUMERIC && Number::class.java.isAssignableFrom(columnClass) ->
+               literal.getValueAs(BigDecimal::class.java)
+
+            literal.type.sqlTypeName.family == SqlTypeFamily.CHARACTER && columnClass == String::class.java ->
+               literal.getValueAs(String::class.java)
+
+            literal.type.sqlTypeName.family == SqlTypeFamily.BOOLEAN && columnClass == Boolean::class.javaObjectType ->
+               literal.getValueAs(Boolean::class.javaObjectType)
+
+            else -> null
+         } ?: return null
+         return TypeTableFilter(attributeName, kind, value as Comparable<Any>)
+      }
+   }
+
+   fun matches(row: TypeTableRow): Boolean {
+      val value = row.getValue(attributeName)
+      return when (kind) {
+         SqlKind.IS_NULL -> value == null
+         SqlKind.IS_NOT_NULL -> value != null
+         else -> {
+            val comparison = compareToLiteral(value) ?: return false
+            when (kind) {
+               SqlKind.EQUALS -> comparison == 0
+               SqlKind.NOT_EQUALS -> comparison != 0
+               SqlKind.LESS_THAN -> comparison < 0
+               SqlKind.LESS_THAN_OR_EQUAL -> comparison <= 0
+               SqlKind.GREATER_THAN -> comparison > 0
+               SqlKind.GREATER_THAN_OR_EQUAL -> comparison >= 0
+               else -> error("Unhandled filter kind $kind")
+            }
+         }
+      }
+   }
+
+   /**
+    * Compares the row value to the literal.
+    * Returns null if the value is null, or can't be compared - in which case (as in SQL) the predicate isn't matched.
+    */
+   @Suppress("UNCHECKED_CAST")
+   private fun compareToLiteral(value: Any?): Int? {
+      val comparableValue = when {
+         value == null -> return null
+         literal is BigDecimal && value is BigDecimal -> value
+         // Numbers are compared as decimals, so that (eg) an Int column can be compared to 5.0
+         literal is BigDecimal && value is Number -> value.toString().toBigDecimalOrNull() ?: return null
+         else -> value
+      }
+      if (comparableValue::class != literal!!::class) return null
+      return (comparableValue as Comparable<Any>).compareTo(literal)
+   }
+
+   override fun toString(): String = "$attributeName $kind ${literal ?: ""}".trim()
+}
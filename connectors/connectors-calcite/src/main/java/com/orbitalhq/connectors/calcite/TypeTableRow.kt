@@ -0,0 +1,70 @@
+package com.orbitalhq.connectors.calcite
+
+import com.orbitalhq.models.DataSource
+import com.orbitalhq.models.Provided
+import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.models.TypedObject
+import com.orbitalhq.models.TypedObjectFactory
+import com.orbitalhq.schemas.AttributeName
+import com.orbitalhq.schemas.Schema
+import com.orbitalhq.schemas.Type
+import java.util.stream.Stream
+
+/**
+ * A single row read by a TypeTable.
+ * Values are read by attribute name, so that a table scan only reads the columns
+ * that are used by the query.
+ */
+interface TypeTableRow {
+   fun getValue(attributeName: AttributeName): Any?
+}
+
+/**
+ * Provides the rows for a TypeTable.
+ * Sources are typically backed by a stream that can only be read once.
+ */
+fun interface TypeTableRowSource {
+   fun rows(): Stream<out TypeTableRow>
+
+   companion object {
+      fun of(typedInstances: Stream<TypedInstance>): TypeTableRowSource {
+         val rows = typedInstances.map { TypedInstanceRow(it) }
+         return TypeTableRowSource { rows }
+      }
+
+      /**
+       * Rows which are parsed on demand from the raw values (eg., CSVRecords).
+       * Only use this for values that the type can read attribute-by-attribute using accessors
+       * (rather than values which need to be parsed by a ModelFormatSpec).
+       */
+      fun lazilyParsed(type: Type, values: Stream<out Any>, schema: Schema, source: DataSource = Provided): TypeTableRowSource {
+         val rows = values.map { LazilyParsedRow(type, it, schema, source) }
+         return TypeTableRowSource { rows }
+      }
+   }
+}
+
+/**
+ * A row which has already been fully parsed.
+ */
+class TypedInstanceRow(private val instance: TypedInstance) : TypeTableRow {
+   private val attributes = (instance as TypedObject).value
+
+   override fun getValue(attributeName: AttributeName): Any? = attributes[attributeName]?.value
+}
+
+/**
+ * A row which is parsed from the underlying value (eg., a CSVRecord) on demand.
+ * Only the attributes which are read (either to evaluate a filter, or because they're
+ * projected) are parsed. Each attribute is parsed at most once.
+ */
+class LazilyParsedRow(
+   type: Type,
+   value: Any,
+   schema: Schema,
+   source: DataSource = Provided
+) : TypeTableRow {
+   private val factory = TypedObjectFactory(type, value, schema, source = source)
+
+   override fun getValue(attributeName: AttributeName): Any? = factory.getValue(attributeName).value
+}
@@ -19,7 +19,9 @@ private val logger = KotlinLogging.logger {  }
 class VyneCalciteDataSource(
    private val schema: Schema,
    private val fullyQualifiedName: QualifiedName,
-   private val  source: Stream<TypedInstance>): DataSource {
+   private val  source: TypeTableRowSource): DataSource {
+   constructor(schema: Schema, fullyQualifiedName: QualifiedName, source: Stream<TypedInstance>) : this(schema, fullyQualifiedName, TypeTableRowSource.of(source))
+
    private val connection = vyneSqlConnection()
    private lateinit var logWriter: PrintWriter
    private var loginTimeout: Int = 30
@@ -2,10 +2,12 @@ package com.orbitalhq.connectors
 
 import com.google.common.io.Resources
 import com.winterbe.expekt.should
+import com.orbitalhq.connectors.calcite.TypeTableRowSource
 import com.orbitalhq.connectors.calcite.VyneCalciteDataSource
 import com.orbitalhq.models.TypedInstance
 import com.orbitalhq.schemas.QualifiedName
 import com.orbitalhq.schemas.taxi.TaxiSchema
+import org.apache.commons.csv.CSVFormat
 import org.junit.Test
 import java.math.BigDecimal
 
@@ -51,4 +53,38 @@ class CsvQueryTest {
          resultSet.next().should.be.`false`
       }
    }
+
+   @Test
+   fun `only columns used by the query are parsed from lazily parsed csv rows`() {
+      val schema = TaxiSchema.from(
+         """
+         type alias Price as Decimal
+         type alias Symbol as String
+         type alias Hour as Int
+         model $testType {
+             // Not an Int in the source data, so fails if it's ever parsed
+             hour : Hour by column(1)
+             symbol : Symbol by column(2)
+             open : Price by column(3)
+             close : Price by column(6)
+         }
+      """.trimIndent()
+      )
+      val orderWindowType = schema.type(testType)
+      val csvRecords = CSVFormat.DEFAULT.parse(
+         Resources.getResource("Coinbase_BTCUSD_3rows.csv").openStream().bufferedReader()
+      ).records.stream()
+
+      val rowSource = TypeTableRowSource.lazilyParsed(orderWindowType, csvRecords, schema)
+      VyneCalciteDataSource(schema, QualifiedName.from(testType), rowSource).connection.use { connection ->
+         val resultSet = connection.createStatement()
+            .executeQuery("""select t0."symbol", t0."close" from $testType t0 where t0."open" > 6260""")
+         val closePrices = mutableListOf<Any>()
+         while (resultSet.next()) {
+            resultSet.getString(1).should.equal("BTCUSD")
+            closePrices.add(resultSet.getObject(2))
+         }
+         closePrices.should.equal(listOf(BigDecimal("6235.2"), BigDecimal("6300")))
+      }
+   }
 }
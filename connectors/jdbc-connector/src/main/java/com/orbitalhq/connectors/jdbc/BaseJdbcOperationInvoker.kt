@@ -14,6 +14,7 @@ import com.orbitalhq.schemas.Parameter
 import com.orbitalhq.schemas.RemoteOperation
 import com.orbitalhq.schemas.Schema
 import com.orbitalhq.schemas.Service
+import com.orbitalhq.schemas.Type
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.asFlow
 import lang.taxi.query.TaxiQlQuery
@@ -24,6 +25,7 @@ import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate
 import org.springframework.util.LinkedCaseInsensitiveMap
 import java.time.Duration
 import java.time.Instant
+import java.util.UUID
 
 abstract class BaseJdbcOperationInvoker(
    protected val connectionFactory: JdbcConnectionFactory,
@@ -52,29 +54,38 @@ abstract class BaseJdbcOperationInvoker(
       schema: Schema,
       datasource: DataSource
    ): Flow<TypedInstance> {
-      val resultTypeName = query.resultType()
-
-      val resultTaxiType = collectionTypeOrType(schema.taxi.type(resultTypeName))
-
+      val resultType = resultMemberType(query, schema)
       val typedInstances = resultList
-         .map { columnMap ->
-            TypedInstance.from(
-               schema.type(resultTaxiType),
-               convertColumnMapToGeneralPurposeTypes(columnMap),
-               schema,
-               source = datasource,
-               evaluateAccessors = false
-            )
-         }
+         .map { columnMap -> convertToTypedInstance(columnMap, resultType, schema, datasource) }
       return typedInstances.asFlow()
    }
 
+   protected fun resultMemberType(query: TaxiQlQuery, schema: Schema): Type {
+      val resultTypeName = query.resultType()
+      return schema.type(collectionTypeOrType(schema.taxi.type(resultTypeName)))
+   }
+
+   protected fun convertToTypedInstance(
+      columnMap: Map<String, Any?>,
+      resultType: Type,
+      schema: Schema,
+      datasource: DataSource
+   ): TypedInstance {
+      return TypedInstance.from(
+         resultType,
+         convertColumnMapToGeneralPurposeTypes(columnMap),
+         schema,
+         source = datasource,
+         evaluateAccessors = false
+      )
+   }
+
    /**
     * TODO This shouldn't be needed..
     * The TypedInstance generation relies on the map being an insensitive one, so we need to utilize LinkedCaseInsensitiveMap.
     */
-   private fun convertColumnMapToGeneralPurposeTypes(columnMap: Map<String, Any>): LinkedCaseInsensitiveMap<Any> {
-      val result = LinkedCaseInsensitiveMap<Any>()
+   private fun convertColumnMapToGeneralPurposeTypes(columnMap: Map<String, Any?>): LinkedCaseInsensitiveMap<Any?> {
+      val result = LinkedCaseInsensitiveMap<Any?>()
       columnMap.forEach {
          val value = when (it.value) {
             is PGobject -> it.value.toString()
@@ -95,10 +106,12 @@ abstract class BaseJdbcOperationInvoker(
       jdbcUrl: String,
       elapsed: Duration,
       recordCount: Int,
-      verb: String = "SELECT"
+      verb: String = "SELECT",
+      remoteCallId: String = UUID.randomUUID().toString(),
+      responseId: String = UUID.randomUUID().toString()
    ): OperationResult {
 
-      val remoteCall = buildRemoteCall(service, jdbcUrl, operation, sql, elapsed, recordCount, verb)
+      val remoteCall = buildRemoteCall(service, jdbcUrl, operation, sql, elapsed, recordCount, verb, remoteCallId, responseId)
       return OperationResult.fromTypedInstances(
          parameters,
          remoteCall
@@ -112,8 +125,12 @@ abstract class BaseJdbcOperationInvoker(
       sql: String,
       elapsed: Duration,
       recordCount: Int,
-      verb: String
+      verb: String,
+      remoteCallId: String,
+      responseId: String
    ) = RemoteCall(
+      remoteCallId = remoteCallId,
+      responseId = responseId,
       service = service.name,
       address = jdbcUrl,
       operation = operation.name,
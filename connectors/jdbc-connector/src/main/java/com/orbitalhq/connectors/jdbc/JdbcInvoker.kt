@@ -22,11 +22,16 @@ import mu.KotlinLogging
 class JdbcInvoker(
    connectionFactory: JdbcConnectionFactory,
    schemaProvider: SchemaProvider,
-   objectMapper: ObjectMapper = Jackson.defaultObjectMapper
+   objectMapper: ObjectMapper = Jackson.defaultObjectMapper,
+   /**
+    * Rows fetched at a time when streaming query results.
+    * Set to null to read the full result set before emitting results.
+    */
+   streamingFetchSize: Int? = JdbcQueryInvoker.DEFAULT_STREAMING_FETCH_SIZE
 ) :
    OperationInvoker {
 
-   private val queryInvoker = JdbcQueryInvoker(connectionFactory, schemaProvider)
+   private val queryInvoker = JdbcQueryInvoker(connectionFactory, schemaProvider, streamingFetchSize)
    private val upsertInvoker = JdbcUpsertInvoker(connectionFactory, schemaProvider)
    override fun canSupport(service: Service, operation: RemoteOperation): Boolean {
       return service.hasMetadata(JdbcConnectorTaxi.Annotations.DatabaseOperation.NAME)
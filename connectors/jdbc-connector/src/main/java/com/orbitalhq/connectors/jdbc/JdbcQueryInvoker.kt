@@ -1,6 +1,7 @@
 package com.orbitalhq.connectors.jdbc
 
 import com.google.common.base.Stopwatch
+import com.orbitalhq.connectors.config.jdbc.JdbcConnectionConfiguration
 import com.orbitalhq.connectors.jdbc.sql.dml.SelectStatementGenerator
 import com.orbitalhq.models.TypedInstance
 import com.orbitalhq.query.ConstructedQueryDataSource
@@ -8,18 +9,42 @@ import com.orbitalhq.query.QueryContextEventDispatcher
 import com.orbitalhq.schema.api.SchemaProvider
 import com.orbitalhq.schemas.Parameter
 import com.orbitalhq.schemas.RemoteOperation
+import com.orbitalhq.schemas.Schema
 import com.orbitalhq.schemas.Service
 import com.orbitalhq.utils.withQueryId
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.channels.trySendBlocking
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.buffer
+import kotlinx.coroutines.flow.channelFlow
+import kotlinx.coroutines.flow.flowOn
+import kotlinx.coroutines.isActive
+import lang.taxi.query.TaxiQlQuery
 import mu.KotlinLogging
+import org.springframework.jdbc.core.ColumnMapRowMapper
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.core.RowCallbackHandler
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate
+import org.springframework.jdbc.datasource.DataSourceTransactionManager
+import org.springframework.transaction.support.TransactionTemplate
+import java.time.Duration
+import java.util.UUID
 
 class JdbcQueryInvoker(
    connectionFactory: JdbcConnectionFactory,
    private val schemaProvider: SchemaProvider,
+   /**
+    * If set, results are read from the database using a cursor, fetching this many rows
+    * at a time, and emitted as they're read.
+    * Otherwise, the full result set is read before any results are emitted.
+    */
+   private val streamingFetchSize: Int? = DEFAULT_STREAMING_FETCH_SIZE
 ) : BaseJdbcOperationInvoker(connectionFactory, ) {
 
    companion object {
       private val logger = KotlinLogging.logger {}
+      const val DEFAULT_STREAMING_FETCH_SIZE = 500
    }
 
    override suspend fun invoke(
@@ -38,6 +63,13 @@ class JdbcQueryInvoker(
       val (sql, paramList) = SelectStatementGenerator(taxiSchema).toSql(query, connectionConfig.sqlBuilder())
       val paramMap = paramList.associate { param -> param.nameUsedInTemplate to param.value }
 
+      if (streamingFetchSize != null) {
+         return streamResults(
+            service, operation, constructedQueryDataSource, connectionConfig, jdbcTemplate,
+            sql, paramMap, query, schema, eventDispatcher, queryId, streamingFetchSize
+         )
+      }
+
       logger.withQueryId(queryId).debug { "Starting JDBC Query $sql" }
       val stopwatch = Stopwatch.createStarted()
       val resultList = jdbcTemplate.queryForList(sql, paramMap)
@@ -56,4 +88,84 @@ class JdbcQueryInvoker(
       return convertToTypedInstances(resultList, query, schema, operationResult.asOperationReferenceDataSource())
    }
 
+   /**
+    * Reads rows using a cursor, emitting them as they're read.
+    *
+    * Rows are read on the IO dispatcher, and reading blocks once fetchSize rows are waiting
+    * to be collected.  If the collector is cancelled, reading stops, and the statement and
+    * connection are released.
+    *
+    * As the record count and duration aren't known until the last row is read, the operation
+    * is reported once reading has finished (or was cancelled).  Rows reference the operation by
+    * its ids, which are allocated up front.
+    */
+   private fun streamResults(
+      service: Service,
+      operation: RemoteOperation,
+      constructedQueryDataSource: ConstructedQueryDataSource,
+      connectionConfig: JdbcConnectionConfiguration,
+      jdbcTemplate: NamedParameterJdbcTemplate,
+      sql: String,
+      paramMap: Map<String, Any?>,
+      query: TaxiQlQuery,
+      schema: Schema,
+      eventDispatcher: QueryContextEventDispatcher,
+      queryId: String,
+      fetchSize: Int
+   ): Flow<TypedInstance> {
+      val remoteCallId = UUID.randomUUID().toString()
+      val responseId = UUID.randomUUID().toString()
+      fun operationResult(elapsed: Duration, recordCount: Int) = buildOperationResult(
+         service,
+         operation,
+         constructedQueryDataSource.inputs,
+         sql,
+         connectionConfig.address,
+         elapsed,
+         recordCount = recordCount,
+         remoteCallId = remoteCallId,
+         responseId = responseId
+      )
+      val datasource = operationResult(Duration.ZERO, 0).asOperationReferenceDataSource()
+      val resultType = resultMemberType(query, schema)
+
+      // Use a template of our own, so the fetch size doesn't leak into other users of the shared template
+      val dataSource = jdbcTemplate.jdbcTemplate.dataSource!!
+      val streamingTemplate = NamedParameterJdbcTemplate(JdbcTemplate(dataSource).apply { this.fetchSize = fetchSize })
+      // Some drivers (eg., Postgres) only use a cursor when not in auto-commit mode, so read within a transaction
+      val transactionTemplate = TransactionTemplate(DataSourceTransactionManager(dataSource)).apply { isReadOnly = true }
+      val rowMapper = ColumnMapRowMapper()
+
+      return channelFlow {
+         logger.withQueryId(queryId).debug { "Starting streaming JDBC Query $sql" }
+         val stopwatch = Stopwatch.createStarted()
+         var recordCount = 0
+         try {
+            transactionTemplate.executeWithoutResult {
+               streamingTemplate.query(sql, paramMap, RowCallbackHandler { resultSet ->
+                  if (!isActive) {
+                     throw CancellationException("Query $queryId was cancelled")
+                  }
+                  val columnMap = rowMapper.mapRow(resultSet, recordCount)
+                  val typedInstance = convertToTypedInstance(columnMap, resultType, schema, datasource)
+                  // Blocks while the collector is behind, holding the cursor open rather than reading further rows
+                  trySendBlocking(typedInstance).onFailure { cause ->
+                     throw cause ?: CancellationException("Query $queryId stopped collecting results")
+                  }
+                  recordCount++
+               })
+            }
+         } catch (e: CancellationException) {
+            logger.withQueryId(queryId).info { "Streaming JDBC Query cancelled after $recordCount rows" }
+            eventDispatcher.reportRemoteOperationInvoked(operationResult(stopwatch.elapsed(), recordCount), queryId)
+            throw e
+         }
+         val elapsed = stopwatch.elapsed()
+         logger.withQueryId(queryId).debug { "Streaming JDBC Query completed in $elapsed, returning $recordCount rows" }
+         eventDispatcher.reportRemoteOperationInvoked(operationResult(elapsed, recordCount), queryId)
+      }
+         .buffer(fetchSize)
+         .flowOn(Dispatchers.IO)
+   }
+
 }
@@ -86,6 +86,50 @@ class JdbcQueryTest {
          .should.equal(mapOf("TITLE" to "A New Hope", "ID" to 1))
    }
 
+   private val movieSchema = """
+         ${JdbcConnectorTaxi.Annotations.imports}
+         import ${VyneQlGrammar.QUERY_TYPE_NAME}
+         type MovieId inherits Int
+         type MovieTitle inherits String
+
+         @Table(connection = "movies", schema = "public", table = "MOVIE")
+         model Movie {
+            ID : MovieId
+            TITLE : MovieTitle
+         }
+
+         @DatabaseService( connection = "movies" )
+         service MovieDb {
+            table movie : Movie[]
+         }
+      """
+
+   @Test
+   fun `streams results which span multiple fetches`(): Unit = runBlocking {
+      movieRepository.saveAll((100 until 125).map { Movie(it.toString(), "Sequel") })
+      val vyne = testVyne(
+         listOf(JdbcConnectorTaxi.schema, VyneQlGrammar.QUERY_TYPE_TAXI, movieSchema)
+      ) { schema -> listOf(JdbcInvoker(connectionFactory, SimpleSchemaProvider(schema), streamingFetchSize = 10)) }
+      val result = vyne.query("""find { Movie[]( MovieTitle == "Sequel" ) } """)
+         .typedObjects()
+      result.map { it.toRawObject() as Map<String, Any> }
+         .map { it["ID"] }
+         .toSet()
+         .should.equal((100 until 125).toSet())
+   }
+
+   @Test
+   fun `can read full result set without streaming`(): Unit = runBlocking {
+      movieRepository.save(Movie("200", "Prequel"))
+      val vyne = testVyne(
+         listOf(JdbcConnectorTaxi.schema, VyneQlGrammar.QUERY_TYPE_TAXI, movieSchema)
+      ) { schema -> listOf(JdbcInvoker(connectionFactory, SimpleSchemaProvider(schema), streamingFetchSize = null)) }
+      val result = vyne.query("""find { Movie[]( MovieTitle == "Prequel" ) } """)
+         .typedObjects()
+      result.single().toRawObject()
+         .should.equal(mapOf("TITLE" to "Prequel", "ID" to 200))
+   }
+
    @Test
    fun `can issue a query that starts with jdbc and joins to api`(): Unit = runBlocking {
       movieRepository.save(
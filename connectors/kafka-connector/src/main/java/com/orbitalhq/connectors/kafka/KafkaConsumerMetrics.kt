@@ -0,0 +1,82 @@
+package com.orbitalhq.connectors.kafka
+
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.Meter
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Tags
+import io.micrometer.core.instrument.Timer
+import org.apache.kafka.common.TopicPartition
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Per-partition lag and parse time metrics for a topic being consumed.
+ *
+ * Lag is the difference between the end offset of the partition (refreshed periodically)
+ * and the next offset to be consumed.
+ *
+ * Where a topic is consumed by more than one stream, the tags must identify the stream,
+ * as meters with the same name and tags are shared by the registry.
+ */
+internal class KafkaConsumerMetrics(
+   private val topic: String,
+   private val meterRegistry: MeterRegistry,
+   private val tags: Tags = Tags.empty()
+) {
+   private class PartitionOffsets {
+      val nextOffset = AtomicLong(-1)
+      val endOffset = AtomicLong(-1)
+
+      fun lag(): Double {
+         val next = nextOffset.get()
+         val end = endOffset.get()
+         return if (next < 0 || end < 0) 0.0 else (end - next).coerceAtLeast(0).toDouble()
+      }
+   }
+
+   private val partitions = ConcurrentHashMap<Int, PartitionOffsets>()
+   private val meters = mutableListOf<Meter>()
+
+   private val parseTimer = Timer.builder("vyne.kafka.consumer.parse-time")
+      .tag("topic", topic)
+      .tags(tags)
+      .description("Time taken to parse a message into a TypedInstance")
+      .register(meterRegistry)
+      .also { synchronized(meters) { meters.add(it) } }
+
+   private fun partition(partition: Int): PartitionOffsets {
+      return partitions.computeIfAbsent(partition) {
+         val offsets = PartitionOffsets()
+         val gauge = Gauge.builder("vyne.kafka.consumer.lag", offsets) { it.lag() }
+            .tag("topic", topic)
+            .tag("partition", partition.toString())
+            .tags(tags)
+            .description("Number of messages on the partition which haven't yet been consumed")
+            .register(meterRegistry)
+         synchronized(meters) { meters.add(gauge) }
+         offsets
+      }
+   }
+
+   fun recordParsed(partition: Int, offset: Long, parseTimeNanos: Long) {
+      parseTimer.record(parseTimeNanos, TimeUnit.NANOSECONDS)
+      partition(partition).nextOffset.set(offset + 1)
+   }
+
+   fun updateEndOffsets(endOffsets: Map<TopicPartition, Long>) {
+      endOffsets.forEach { (topicPartition, endOffset) ->
+         partition(topicPartition.partition()).endOffset.set(endOffset)
+      }
+   }
+
+   /**
+    * Called when the topic is no longer being consumed
+    */
+   fun close() {
+      synchronized(meters) {
+         meters.forEach { meterRegistry.remove(it) }
+         meters.clear()
+      }
+   }
+}
@@ -0,0 +1,40 @@
+package com.orbitalhq.connectors.kafka
+
+import java.time.Duration
+
+data class KafkaConsumerSettings(
+   /**
+    * The number of consumers (each with its own receiver, and poll thread) reading from a topic.
+    * Partitions of the topic are shared between the consumers, so there's no benefit
+    * in having more consumers than partitions.
+    */
+   val consumerConcurrency: Int = 1,
+
+   /**
+    * The number of threads parsing messages into TypedInstances, shared across all topics.
+    * Partitions are parsed in parallel, but messages within a partition are always parsed in order.
+    */
+   val parseThreads: Int = Runtime.getRuntime().availableProcessors(),
+
+   /**
+    * Whether offsets of messages are committed to the broker (under the connection's group id).
+    * Off by default, as committed offsets take precedence over the offset requested by a query
+    * (eg., a stream requesting the earliest offset would resume from the last committed offset, rather than replaying).
+    *
+    * When enabled, offsets are acknowledged once a message has been delivered to the stream's subscribers,
+    * and committed in batches, after either commitBatchSize messages or commitInterval has elapsed.
+    */
+   val commitOffsets: Boolean = false,
+   val commitBatchSize: Int = 500,
+   val commitInterval: Duration = Duration.ofSeconds(5),
+
+   /**
+    * How often the end offsets of assigned partitions are read, to calculate consumer lag
+    */
+   val lagRefreshInterval: Duration = Duration.ofSeconds(10)
+) {
+   init {
+      require(consumerConcurrency > 0) { "consumerConcurrency must be greater than 0" }
+      require(parseThreads > 0) { "parseThreads must be greater than 0" }
+   }
+}
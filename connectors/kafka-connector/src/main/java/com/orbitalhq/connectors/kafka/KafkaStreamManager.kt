@@ -19,19 +19,32 @@ import com.orbitalhq.query.ResponseMessageType
 import com.orbitalhq.schema.api.SchemaProvider
 import com.orbitalhq.schemas.RemoteOperation
 import com.orbitalhq.schemas.Service
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Tags
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.SharedFlow
 import kotlinx.coroutines.flow.SharingStarted
+import kotlinx.coroutines.flow.buffer
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.shareIn
 import kotlinx.coroutines.reactive.asFlow
 import mu.KotlinLogging
+import reactor.core.Disposable
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import reactor.core.scheduler.Schedulers
 import reactor.kafka.receiver.KafkaReceiver
+import reactor.kafka.receiver.ReceiverOffset
 import reactor.kafka.receiver.ReceiverOptions
+import reactor.kafka.receiver.ReceiverRecord
 import java.time.Duration
 import java.time.Instant
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.atomic.AtomicInteger
 
 data class KafkaConsumerRequest(
@@ -49,15 +62,24 @@ class KafkaStreamManager(
    private val schemaProvider: SchemaProvider,
    private val scope: CoroutineScope = CoroutineScope(Dispatchers.IO),
    private val objectMapper: ObjectMapper = Jackson.defaultObjectMapper,
-   private val formatRegistry: FormatRegistry
-) {
+   private val formatRegistry: FormatRegistry,
+   private val settings: KafkaConsumerSettings = KafkaConsumerSettings(),
+   private val meterRegistry: MeterRegistry? = null
+) : AutoCloseable {
+   companion object {
+      // groupBy requires that all groups (partitions) are subscribed concurrently,
+      // otherwise the receiver stalls
+      private const val MAX_PARTITIONS_PER_RECEIVER = 1024
+   }
 
    private val logger = KotlinLogging.logger {}
 
    private val cache = CacheBuilder.newBuilder()
       .build<KafkaConsumerRequest, SharedFlow<TypedInstance>>()
 
-   private val messageCounter = mutableMapOf<KafkaConsumerRequest, AtomicInteger>()
+   private val messageCounter = ConcurrentHashMap<KafkaConsumerRequest, AtomicInteger>()
+
+   private val parseScheduler = Schedulers.newParallel("kafka-parser", settings.parseThreads, true)
 
    /**
     * Returns the message counts received on topics where we're still subscribed.
@@ -68,6 +90,10 @@ class KafkaStreamManager(
 
    fun getActiveRequests(): List<KafkaConsumerRequest> = cache.asMap().keys.toList()
 
+   override fun close() {
+      parseScheduler.dispose()
+   }
+
    fun getStream(request: KafkaConsumerRequest): Flow<TypedInstance> {
       return cache.get(request) {
          messageCounter[request] = AtomicInteger(0)
@@ -83,7 +109,7 @@ class KafkaStreamManager(
    }
 
    private fun buildSharedFlow(request: KafkaConsumerRequest): SharedFlow<TypedInstance> {
-      logger.info { "Creating new kafka subscription for request $request" }
+      logger.info { "Creating new kafka subscription for request $request with ${settings.consumerConcurrency} consumer(s)" }
       val (connectionConfiguration, receiverOptions) = buildReceiverOptions(request)
       val messageType = schemaProvider.schema.type(request.messageType).let { type ->
          require(type.name.name == "Stream") { "Expected to receive a Stream type for consuming from Kafka. Instead found ${type.name.parameterizedName}" }
@@ -92,39 +118,107 @@ class KafkaStreamManager(
       val encoding = MessageEncodingType.forType(messageType)
       val schema = schemaProvider.schema
       val dataSource = buildDataSource(request, connectionConfiguration)
-      val flow = KafkaReceiver.create(receiverOptions)
-         .receive()
+      val metrics = meterRegistry?.let { KafkaConsumerMetrics(request.topicName, it, metricTags(request)) }
+
+      fun parse(record: ReceiverRecord<Int, ByteArray>): TypedInstance {
+         messageCounter[request]?.incrementAndGet()
+            ?: logger.warn { "Attempt to increment message counter for consumer on Kafka topic ${request.topicName} failed - the counter was not present" }
+
+         logger.trace { "Received message on topic ${record.topic()} with offset ${record.offset()}" }
+         val startTime = System.nanoTime()
+         val messageValue = if (encoding == MessageEncodingType.BYTE_ARRAY) {
+            record.value()!!
+         } else {
+            String(record.value())
+         }
+
+         val instance = TypedInstance.from(
+            messageType,
+            messageValue,
+            schema,
+            formatSpecs = formatRegistry.formats,
+            source = dataSource
+         )
+         metrics?.recordParsed(record.partition(), record.offset(), System.nanoTime() - startTime)
+         return instance
+      }
+
+      // Each consumer is assigned a share of the topic's partitions by the broker
+      val consumers = (0 until settings.consumerConcurrency).map {
+         receiveAndParse(KafkaReceiver.create(receiverOptions), metrics, ::parse)
+      }
+      val records = Flux.merge(consumers)
          .doOnSubscribe {
             logger.info { "Subscriber detected for Kafka consumer on ${request.connectionName} / ${request.topicName}" }
          }
          .doOnCancel {
             logger.info { "Subscriber cancel detected for Kafka consumer on ${request.connectionName} / ${request.topicName}" }
+            metrics?.close()
             evictConnection(request)
          }
-         .map { record ->
-
-            messageCounter[request]?.incrementAndGet()
-               ?: logger.warn { "Attempt to increment message counter for consumer on Kafka topic ${request.topicName} failed - the counter was not present" }
-
-            logger.trace { "Received message on topic ${record.topic()} with offset ${record.offset()}" }
-            val messageValue = if (encoding == MessageEncodingType.BYTE_ARRAY) {
-               record.value()!!
-            } else {
-               String(record.value())
+         .asFlow()
+      val flow = if (settings.commitOffsets) {
+         flow {
+            records.collect { (instance, offset) ->
+               emit(instance)
+               // With no buffer, emit() only returns once the value has been received by the subscribers,
+               // so offsets are only committed for messages which have been delivered.
+               offset.acknowledge()
             }
+         }.buffer(Channel.RENDEZVOUS)
+      } else {
+         records.map { (instance, _) -> instance }
+      }
+      // SharingStarted.WhileSubscribed() means that we unsubscribe when all subscribers have gone away.
+      return flow.shareIn(scope, SharingStarted.WhileSubscribed())
+   }
+
+   /**
+    * Tags identifying the stream, so that the meters of streams from the same topic
+    * (eg., requested with different offsets) don't collide
+    */
+   private fun metricTags(request: KafkaConsumerRequest): Tags {
+      return Tags.of(
+         "connection", request.connectionName,
+         "operation", request.operation.qualifiedName.parameterizedName,
+         "offset", request.offset.toString().lowercase(Locale.getDefault())
+      )
+   }
 
-            TypedInstance.from(
-               messageType,
-               messageValue,
-               schema,
-               formatSpecs = formatRegistry.formats,
-               source = dataSource
-            )
+   /**
+    * Parses records from the receiver, in parallel across partitions, but in order within
+    * each partition.
+    * Parsed records are returned with their offset, which is acknowledged once the record has been emitted
+    * (when offsets are committed - see KafkaConsumerSettings.commitOffsets)
+    */
+   private fun receiveAndParse(
+      receiver: KafkaReceiver<Int, ByteArray>,
+      metrics: KafkaConsumerMetrics?,
+      parse: (ReceiverRecord<Int, ByteArray>) -> TypedInstance
+   ): Flux<Pair<TypedInstance, ReceiverOffset>> {
+      val parsed = receiver.receive()
+         .groupBy { record -> record.partition() }
+         .flatMap({ partitionRecords ->
+            // publishOn uses a single worker per partition, so records within the partition stay in order
+            partitionRecords
+               .publishOn(parseScheduler)
+               .map { record -> parse(record) to record.receiverOffset() }
+         }, MAX_PARTITIONS_PER_RECEIVER)
+      if (metrics == null) {
+         return parsed
+      }
+      var lagRefresh: Disposable? = null
+      return parsed
+         .doOnSubscribe {
+            lagRefresh = Flux.interval(settings.lagRefreshInterval)
+               .flatMap {
+                  receiver.doOnConsumer { consumer -> consumer.endOffsets(consumer.assignment()) }
+                     // The consumer may not have started yet, or may be rebalancing. Try again next time.
+                     .onErrorResume { Mono.empty() }
+               }
+               .subscribe { endOffsets -> metrics.updateEndOffsets(endOffsets) }
          }
-         .asFlow()
-         // SharingStarted.WhileSubscribed() means that we unsubscribe when all subscribers have gone away.
-         .shareIn(scope, SharingStarted.WhileSubscribed())
-      return flow
+         .doFinally { lagRefresh?.dispose() }
    }
 
    private fun buildDataSource(
@@ -164,8 +258,16 @@ class KafkaStreamManager(
       val topic = request.topicName
       val offset = request.offset.toString().lowercase(Locale.getDefault())
 
-      return connectionConfiguration to connectionConfiguration.toReceiverOptions(offset)
+      val receiverOptions = connectionConfiguration.toReceiverOptions(offset)
          .subscription(listOf(topic))
+      // When offsets aren't committed, nothing is acknowledged, so there's nothing for the receiver to commit
+      return connectionConfiguration to if (settings.commitOffsets) {
+         receiverOptions
+            .commitBatchSize(settings.commitBatchSize)
+            .commitInterval(settings.commitInterval)
+      } else {
+         receiverOptions
+      }
    }
 }
 
@@ -0,0 +1,60 @@
+package com.orbitalhq.connectors.kafka
+
+import com.winterbe.expekt.should
+import io.micrometer.core.instrument.Tags
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.apache.kafka.common.TopicPartition
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class KafkaConsumerMetricsTest {
+
+   @Test
+   fun `lag is reported per partition`() {
+      val registry = SimpleMeterRegistry()
+      val metrics = KafkaConsumerMetrics("films", registry)
+
+      metrics.recordParsed(partition = 0, offset = 9, parseTimeNanos = TimeUnit.MILLISECONDS.toNanos(2))
+      metrics.recordParsed(partition = 1, offset = 4, parseTimeNanos = TimeUnit.MILLISECONDS.toNanos(2))
+      metrics.updateEndOffsets(
+         mapOf(
+            TopicPartition("films", 0) to 25L,
+            TopicPartition("films", 1) to 5L
+         )
+      )
+
+      registry.get("vyne.kafka.consumer.lag").tag("partition", "0").gauge().value().should.equal(15.0)
+      registry.get("vyne.kafka.consumer.lag").tag("partition", "1").gauge().value().should.equal(0.0)
+      registry.get("vyne.kafka.consumer.parse-time").tag("topic", "films").timer().count().should.equal(2L)
+   }
+
+   @Test
+   fun `meters are removed when closed`() {
+      val registry = SimpleMeterRegistry()
+      val metrics = KafkaConsumerMetrics("films", registry)
+      metrics.recordParsed(partition = 0, offset = 0, parseTimeNanos = 100)
+
+      metrics.close()
+
+      registry.meters.should.be.empty
+   }
+
+   @Test
+   fun `streams from the same topic have their own meters`() {
+      val registry = SimpleMeterRegistry()
+      val fromEarliest = KafkaConsumerMetrics("films", registry, Tags.of("offset", "earliest"))
+      val fromLatest = KafkaConsumerMetrics("films", registry, Tags.of("offset", "latest"))
+      fromEarliest.recordParsed(partition = 0, offset = 4, parseTimeNanos = 100)
+      fromLatest.recordParsed(partition = 0, offset = 19, parseTimeNanos = 100)
+      val endOffsets = mapOf(TopicPartition("films", 0) to 20L)
+      fromEarliest.updateEndOffsets(endOffsets)
+      fromLatest.updateEndOffsets(endOffsets)
+
+      registry.get("vyne.kafka.consumer.lag").tag("offset", "earliest").gauge().value().should.equal(15.0)
+      registry.get("vyne.kafka.consumer.lag").tag("offset", "latest").gauge().value().should.equal(0.0)
+
+      fromLatest.close()
+      registry.get("vyne.kafka.consumer.lag").tag("offset", "earliest").gauge().value().should.equal(15.0)
+      registry.get("vyne.kafka.consumer.parse-time").tag("offset", "earliest").timer().count().should.equal(1L)
+   }
+}
@@ -0,0 +1,111 @@
+package com.orbitalhq.history.db
+
+import mu.KotlinLogging
+import org.reactivestreams.Subscriber
+import org.reactivestreams.Subscription
+import reactor.core.Disposable
+import reactor.core.scheduler.Schedulers
+import java.time.Duration
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Reads from a persistence queue in batches, which are flushed when either batchSize records
+ * have been received, or the oldest pending record has waited for maxWait.
+ *
+ * At most batchSize records are requested from the queue at once, so that records
+ * remain on disk (rather than on-heap) until the database has caught up.
+ *
+ * (Flux.bufferTimeout() isn't used here, as it requests from upstream without
+ * respecting downstream demand)
+ */
+class BatchingQueueSubscriber<T>(
+   private val queueName: String,
+   private val batchSize: Int,
+   private val maxWait: Duration,
+   private val persist: (List<T>) -> Unit
+) : Subscriber<T> {
+   companion object {
+      private val logger = KotlinLogging.logger {}
+   }
+
+   private val pending = mutableListOf<T>()
+   private var oldestPendingTime: Long = 0
+   private var subscription: Subscription? = null
+   private var flushTimer: Disposable? = null
+   @Volatile
+   private var terminated = false
+   private val persistedRecords = AtomicLong(0)
+
+   val persistedCount: Long
+      get() = persistedRecords.get()
+
+   override fun onSubscribe(subscription: Subscription) {
+      this.subscription = subscription
+      logger.debug { "Subscribing to $queueName Queue for All Queries, with batches of $batchSize" }
+      flushTimer = Schedulers.boundedElastic().schedulePeriodically(
+         { flushIfWaitExceeded() },
+         maxWait.toMillis(),
+         maxWait.toMillis(),
+         TimeUnit.MILLISECONDS
+      )
+      subscription.request(batchSize.toLong())
+   }
+
+   override fun onNext(record: T) {
+      val isFull = synchronized(this) {
+         if (pending.isEmpty()) {
+            oldestPendingTime = System.currentTimeMillis()
+         }
+         pending.add(record)
+         pending.size >= batchSize
+      }
+      if (isFull) {
+         flush()
+      }
+   }
+
+   private fun flushIfWaitExceeded() {
+      val waitExceeded = synchronized(this) {
+         pending.isNotEmpty() && System.currentTimeMillis() - oldestPendingTime >= maxWait.toMillis()
+      }
+      if (waitExceeded) {
+         flush()
+      }
+   }
+
+   @Synchronized
+   private fun flush() {
+      if (pending.isEmpty()) {
+         return
+      }
+      val batch = pending.toList()
+      pending.clear()
+      try {
+         persist(batch)
+      } catch (e: Exception) {
+         logger.error(e) { "Failed to persist batch of ${batch.size} records from $queueName Queue - ${e.message}" }
+      }
+      val persisted = persistedRecords.addAndGet(batch.size.toLong())
+      if (persisted / 500 != (persisted - batch.size) / 500) {
+         logger.info { "Processing $queueName on Queue for All Queries - position $persisted" }
+      }
+      if (!terminated) {
+         subscription?.request(batch.size.toLong())
+      }
+   }
+
+   override fun onError(t: Throwable) {
+      logger.error(t) { "Subscription to $queueName Queue for All Queries encountered an error ${t.message}" }
+      terminated = true
+      flush()
+      flushTimer?.dispose()
+   }
+
+   override fun onComplete() {
+      logger.info { "Subscription to $queueName Queue for All Queries has completed" }
+      terminated = true
+      flush()
+      flushTimer?.dispose()
+   }
+}
@@ -5,10 +5,12 @@ import com.orbitalhq.history.QueryAnalyticsConfig
 import com.orbitalhq.models.json.Jackson
 import com.orbitalhq.query.HistoryEventConsumerProvider
 import mu.KotlinLogging
+import org.springframework.beans.factory.ObjectProvider
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
 import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.Configuration
 import org.springframework.context.annotation.Import
+import org.springframework.jdbc.core.JdbcTemplate
 
 /**
  * Activates when Query history is handled in process.
@@ -38,7 +40,8 @@ class InProcessHistoryConfiguration {
       remoteCallResponseRepository: RemoteCallResponseRepository,
       sankeyChartRowRepository: QuerySankeyChartRowRepository,
       config: QueryAnalyticsConfig = QueryAnalyticsConfig(),
-      meterRegistry: MeterRegistry
+      meterRegistry: MeterRegistry,
+      jdbcTemplate: ObjectProvider<JdbcTemplate>
    ): HistoryEventConsumerProvider {
       logger.info { "Analytics Data will be stored in a disk database." }
       return QueryHistoryDbWriter(
@@ -48,7 +51,8 @@ class InProcessHistoryConfiguration {
          remoteCallResponseRepository,
          sankeyChartRowRepository,
          Jackson.defaultObjectMapper,
-         config, meterRegistry
+         config, meterRegistry,
+         jdbcTemplate.ifAvailable
       )
    }
 }
@@ -49,6 +49,7 @@ class PersistingQueryEventConsumer(
    fun shutDown() {
       logger.info { "Query result handler shutting down - $queryId" }
       queryHistoryDao.persistSankeyChart(queryId, sankeyViewBuilder)
+      resultRowPersistenceStrategy.queryCompleted(queryId)
    }
 
    override fun handleEvent(event: QueryEvent) {
@@ -8,7 +8,9 @@ import com.orbitalhq.query.QueryResponse
 import com.orbitalhq.query.history.*
 import kotlinx.serialization.encodeToString
 import mu.KotlinLogging
-import java.sql.SQLIntegrityConstraintViolationException
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.datasource.DataSourceTransactionManager
+import org.springframework.transaction.support.TransactionTemplate
 import java.time.Instant
 import java.util.concurrent.TimeUnit
 
@@ -22,8 +24,21 @@ class QueryHistoryDao(
    private val resultRowRepository: QueryResultRowRepository,
    private val lineageRecordRepository: LineageRecordRepository,
    private val remoteCallResponseRepository: RemoteCallResponseRepository,
-   private val sankeyChartRowRepository: QuerySankeyChartRowRepository
+   private val sankeyChartRowRepository: QuerySankeyChartRowRepository,
+   private val jdbcTemplate: JdbcTemplate? = null
 ) {
+   companion object {
+      // QueryResultRow uses an IDENTITY id, which prevents Hibernate from batching inserts,
+      // so we insert directly when a JdbcTemplate is available.
+      private const val INSERT_RESULT_ROW =
+         "INSERT INTO QUERY_RESULT_ROW (query_id, json, value_hash) VALUES (?, ?, ?)"
+      private const val INSERT_LINEAGE_RECORD =
+         "INSERT INTO LINEAGE_RECORD (record_id, data_source_id, query_id, data_source_type, data_source_json) VALUES (?, ?, ?, ?, ?)"
+   }
+
+   // Batches are inserted in a transaction, so that a failed batch can be retried without duplicating rows
+   private val transactionTemplate = jdbcTemplate?.dataSource?.let { TransactionTemplate(DataSourceTransactionManager(it)) }
+
    fun persistLineageRecordBatch(lineageRecords: List<LineageRecord>) {
       val sw = Stopwatch.createStarted()
       val existingRecords =
@@ -31,9 +46,25 @@ class QueryHistoryDao(
             .map { it.dataSourceId }
       val newRecords = lineageRecords.filter { !existingRecords.contains(it.dataSourceId) }
       try {
-         lineageRecordRepository.saveAll(newRecords)
-      } catch (e: SQLIntegrityConstraintViolationException) {
-         logger.warn(e) { "Failed to persist lineage records, as a SQLIntegrityConstraintViolationException was thrown" }
+         if (jdbcTemplate == null || transactionTemplate == null) {
+            // saveAll() runs in a single transaction
+            lineageRecordRepository.saveAll(newRecords)
+         } else {
+            transactionTemplate.executeWithoutResult {
+               jdbcTemplate.batchUpdate(INSERT_LINEAGE_RECORD, newRecords, newRecords.size) { statement, record ->
+                  statement.setString(1, record.recordId)
+                  statement.setString(2, record.dataSourceId)
+                  statement.setString(3, record.queryId)
+                  statement.setString(4, record.dataSourceType)
+                  statement.setString(5, record.dataSourceJson)
+               }
+            }
+         }
+      } catch (e: Exception) {
+         // Nothing from the batch has been written, so upsert individually, so that a single
+         // duplicate (or otherwise bad) record doesn't prevent the others being persisted.
+         logger.warn { "Failed to save batch of ${newRecords.size} LineageRecords (${e::class.simpleName} - ${e.message}).  Will save individually" }
+         newRecords.forEach { upsertLineageRecord(it) }
       }
       logger.debug {
          "Persisting batch of ${lineageRecords.size} LineageRecords for query ${
@@ -83,16 +114,59 @@ class QueryHistoryDao(
       }
    }
 
+   /**
+    * Saves the rows in a single batch.
+    * If the batch fails, nothing is written, and rows are saved individually, so that a single bad row
+    * doesn't prevent the others being persisted.
+    */
    fun saveQueryResultRows(queryResults: List<QueryResultRow>) {
-      resultRowRepository.saveAll(queryResults)
+      if (queryResults.isEmpty()) {
+         return
+      }
+      try {
+         if (jdbcTemplate == null || transactionTemplate == null) {
+            // saveAll() runs in a single transaction
+            resultRowRepository.saveAll(queryResults)
+         } else {
+            transactionTemplate.executeWithoutResult {
+               jdbcTemplate.batchUpdate(INSERT_RESULT_ROW, queryResults, queryResults.size) { statement, row ->
+                  statement.setString(1, row.queryId)
+                  statement.setString(2, row.json)
+                  statement.setInt(3, row.valueHash)
+               }
+            }
+         }
+      } catch (e: Exception) {
+         logger.warn { "Failed to save batch of ${queryResults.size} QueryResultRows (${e::class.simpleName} - ${e.message}).  Will save individually" }
+         queryResults.forEach { saveQueryResultRow(it) }
+      }
    }
 
    fun saveRemoteCallResponse(remoteCallResponse: RemoteCallResponse) {
       remoteCallResponseRepository.save(remoteCallResponse)
    }
 
+   /**
+    * Saves the responses in a single batch.
+    * If the batch fails, responses are saved individually, so that a single bad response doesn't
+    * prevent the others being persisted.
+    */
    fun saveRemoteCallResponses(remoteCallResponses: List<RemoteCallResponse>) {
-      remoteCallResponseRepository.saveAll(remoteCallResponses)
+      if (remoteCallResponses.isEmpty()) {
+         return
+      }
+      try {
+         remoteCallResponseRepository.saveAll(remoteCallResponses)
+      } catch (e: Exception) {
+         logger.warn { "Failed to save batch of ${remoteCallResponses.size} RemoteCallResponses (${e::class.simpleName} - ${e.message}).  Will save individually" }
+         remoteCallResponses.forEach { remoteCallResponse ->
+            try {
+               saveRemoteCallResponse(remoteCallResponse)
+            } catch (exception: Exception) {
+               logger.warn { "Persisting remote call failed: ${exception::class.simpleName} - ${exception.message}" }
+            }
+         }
+      }
    }
 
    fun setQueryEnded(
@@ -2,6 +2,7 @@ package com.orbitalhq.history.db
 
 import com.fasterxml.jackson.databind.ObjectMapper
 import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.Gauge
 import io.micrometer.core.instrument.MeterRegistry
 import com.orbitalhq.history.HistoryPersistenceQueue
 import com.orbitalhq.history.QueryAnalyticsConfig
@@ -16,11 +17,9 @@ import com.orbitalhq.utils.timed
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.asCoroutineDispatcher
 import mu.KotlinLogging
-import org.reactivestreams.Subscriber
-import org.reactivestreams.Subscription
+import org.springframework.jdbc.core.JdbcTemplate
 import org.springframework.scheduling.annotation.Scheduled
 import reactor.core.scheduler.Schedulers
-import reactor.util.function.Tuple2
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.Executors
 import java.util.concurrent.TimeUnit
@@ -36,112 +35,74 @@ class QueryHistoryDbWriter(
    private val objectMapper: ObjectMapper = Jackson.defaultObjectMapper,
    // Visible for testing
    internal val config: QueryAnalyticsConfig = QueryAnalyticsConfig(),
-   meterRegistry: MeterRegistry
+   meterRegistry: MeterRegistry,
+   // If provided, result rows are written using JDBC batch inserts
+   jdbcTemplate: JdbcTemplate? = null
 ): HistoryEventConsumerProvider {
 
-   private val queryHistoryDao = QueryHistoryDao(queryHistoryRecordRepository, resultRowRepository, lineageRecordRepository, remoteCallResponseRepository, sankeyChartRowRepository)
+   private val queryHistoryDao = QueryHistoryDao(queryHistoryRecordRepository, resultRowRepository, lineageRecordRepository, remoteCallResponseRepository, sankeyChartRowRepository, jdbcTemplate)
    var eventConsumers: ConcurrentHashMap<PersistingQueryEventConsumer, String> = ConcurrentHashMap()
 
    private val persistenceQueue = HistoryPersistenceQueue("combined", config.persistenceQueueStorePath)
    private val createdRemoteCallRecordIds = ConcurrentHashMap<String, String>()
 
-   private var lineageSubscription: Subscription? = null
-   private var resultRowSubscription: Subscription? = null
-   private var remoteCallResponseSubscription: Subscription? = null
    private val historyDispatcher = Executors.newFixedThreadPool(10).asCoroutineDispatcher()
 
    init {
-
-      persistenceQueue.retrieveNewResultRows().index()
-         .publishOn(Schedulers.boundedElastic())
-         .subscribe(object : Subscriber<Tuple2<Long, QueryResultRow>> {
-
-            override fun onSubscribe(subscription: Subscription) {
-               resultRowSubscription = subscription
-               logger.debug { "Subscribing to QueryResultRow Queue for All Queries " }
-               subscription.request(1)
-            }
-
-            override fun onNext(rows: Tuple2<Long, QueryResultRow>) {
-               val duration = timed(TimeUnit.MILLISECONDS) {
-                  queryHistoryDao.saveQueryResultRow(rows.t2)
-               }
-               logger.trace { "Persistence of ${1} QueryResultRow records took ${duration}ms" }
-               if (rows.t1 % 500 == 0L) { logger.info { "Processing QueryResultRows on Queue for All Queries - position ${rows.t1}" } }
-               resultRowSubscription!!.request(1)
-            }
-
-            override fun onError(t: Throwable) {
-               logger.error(t) { "Subscription to QueryResultRow Queue for All Queries encountered an error ${t.message}" }
-            }
-
-            override fun onComplete() {
-               logger.info { "Subscription to QueryResultRow Queue for All Queries has completed" }
-            }
-         })
-
-      persistenceQueue.retrieveNewLineageRecords().index()
-         .publishOn(Schedulers.boundedElastic())
-         .subscribe(object : Subscriber<Tuple2<Long, LineageRecord>> {
-            override fun onSubscribe(subscription: Subscription) {
-               lineageSubscription = subscription
-               logger.debug { "Subscribing to LineageRecord Queue for All Queries" }
-               subscription.request(1)
-            }
-
-            override fun onNext(lineageRecords: Tuple2<Long, LineageRecord>) {
-               if (lineageRecords.t1 % 500 == 0L) { logger.info { "Processing LineageRecords on Queue for All Queries - position ${lineageRecords.t1}" } }
-               queryHistoryDao.persistLineageRecordBatch(listOf(lineageRecords.t2))
-               lineageSubscription!!.request(1)
-            }
-
-            override fun onError(t: Throwable) {
-               logger.error(t) { "Subscription to LineageRecord Queue for All Queries encountered an error" }
-            }
-
-            override fun onComplete() {
-               logger.info { "Subscription to LineageRecord queue for All Queries  has completed" }
-            }
-         })
-
-      persistenceQueue.retrieveNewRemoteCalls().index()
-         .publishOn(Schedulers.boundedElastic())
-         .subscribe(object : Subscriber<Tuple2<Long, RemoteCallResponse>> {
-            override fun onSubscribe(subscription: Subscription) {
-               remoteCallResponseSubscription = subscription
-               logger.debug { "Subscribing to RemoteCallResponse Queue for All Queries" }
-               subscription.request(1)
-            }
-
-            override fun onNext(rows: Tuple2<Long, RemoteCallResponse>) {
-               rows.let { remoteCallResponse ->
-                  if (!config.persistRemoteCallResponses && !config.persistRemoteCallMetadata) {
-                     return@let
-                  }
-                  createdRemoteCallRecordIds.computeIfAbsent(remoteCallResponse.t2.responseId) {
-                     try {
-                        queryHistoryDao.saveRemoteCallResponse(remoteCallResponse.t2)
-                     } catch (exception: Exception) {
-                        logger.warn { "Persisting remote call failed: ${exception::class.simpleName} - ${exception.message}" }
-                     }
-                     remoteCallResponse.t2.responseId
-                  }
-               }
-               if (rows.t1 % 500 == 0L) {
-                  logger.info { "Processing RemoteCallResponse on Queue for All Queries - position ${rows.t1}" } }
-               remoteCallResponseSubscription?.request(1)
-            }
-
-            override fun onError(t: Throwable?) {
-               logger.error { "Subscription to RemoteCallResponse Queue for All Queries encountered an error ${t?.message}" }
-            }
-
-            override fun onComplete() {
-               logger.info { "Subscription to RemoteCallResponse Queue for All Queries has completed" }
+      val resultRowSubscriber = BatchingQueueSubscriber<QueryResultRow>(
+         "QueryResultRow", config.persistenceBatchSize, config.persistenceBatchMaxWait
+      ) { rows ->
+         val duration = timed(TimeUnit.MILLISECONDS) {
+            queryHistoryDao.saveQueryResultRows(rows)
+         }
+         logger.trace { "Persistence of ${rows.size} QueryResultRow records took ${duration}ms" }
+      }
+      persistenceQueue.retrieveNewResultRows()
+         .publishOn(Schedulers.boundedElastic(), config.persistenceBatchSize)
+         .subscribe(resultRowSubscriber)
+
+      val lineageSubscriber = BatchingQueueSubscriber<LineageRecord>(
+         "LineageRecord", config.persistenceBatchSize, config.persistenceBatchMaxWait
+      ) { lineageRecords ->
+         queryHistoryDao.persistLineageRecordBatch(lineageRecords)
+      }
+      persistenceQueue.retrieveNewLineageRecords()
+         .publishOn(Schedulers.boundedElastic(), config.persistenceBatchSize)
+         .subscribe(lineageSubscriber)
+
+      val remoteCallResponseSubscriber = BatchingQueueSubscriber<RemoteCallResponse>(
+         "RemoteCallResponse", config.persistenceBatchSize, config.persistenceBatchMaxWait
+      ) { remoteCallResponses ->
+         if (config.persistRemoteCallResponses || config.persistRemoteCallMetadata) {
+            val newResponses = remoteCallResponses.filter { remoteCallResponse ->
+               createdRemoteCallRecordIds.putIfAbsent(remoteCallResponse.responseId, remoteCallResponse.responseId) == null
             }
-         })
+            queryHistoryDao.saveRemoteCallResponses(newResponses)
+         }
+      }
+      persistenceQueue.retrieveNewRemoteCalls()
+         .publishOn(Schedulers.boundedElastic(), config.persistenceBatchSize)
+         .subscribe(remoteCallResponseSubscriber)
 
+      registerQueueLagGauge(meterRegistry, "QueryResultRow", resultRowSubscriber) { persistenceQueue.storedResultRowCount }
+      registerQueueLagGauge(meterRegistry, "LineageRecord", lineageSubscriber) { persistenceQueue.storedLineageRecordCount }
+      registerQueueLagGauge(meterRegistry, "RemoteCallResponse", remoteCallResponseSubscriber) { persistenceQueue.storedRemoteCallResponseCount }
+   }
 
+   /**
+    * Publishes the number of records written to the persistence queue,
+    * but not yet persisted to the database
+    */
+   private fun registerQueueLagGauge(
+      meterRegistry: MeterRegistry,
+      queueName: String,
+      subscriber: BatchingQueueSubscriber<*>,
+      storedCount: () -> Long
+   ) {
+      Gauge.builder("vyne.analytics.persistence.queue.lag") { (storedCount() - subscriber.persistedCount).coerceAtLeast(0).toDouble() }
+         .tag("queue", queueName)
+         .description("Number of history records waiting to be written to the database")
+         .register(meterRegistry)
    }
 
    var persistedQueryHistoryRecordsCounter: Counter = Counter
@@ -0,0 +1,51 @@
+package com.orbitalhq.history.db
+
+import com.jayway.awaitility.Awaitility.await
+import com.winterbe.expekt.should
+import org.junit.Test
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Sinks
+import java.time.Duration
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
+
+class BatchingQueueSubscriberTest {
+
+   @Test
+   fun `records are persisted in batches of the configured size`() {
+      val batches = CopyOnWriteArrayList<List<Int>>()
+      val subscriber = BatchingQueueSubscriber<Int>("test", 10, Duration.ofSeconds(30)) { batches.add(it) }
+      Flux.range(0, 25).subscribe(subscriber)
+
+      // The final partial batch is flushed on completion
+      batches.map { it.size }.should.equal(listOf(10, 10, 5))
+      batches.flatten().should.equal((0 until 25).toList())
+      subscriber.persistedCount.should.equal(25L)
+   }
+
+   @Test
+   fun `partial batches are persisted after the max wait`() {
+      val batches = CopyOnWriteArrayList<List<Int>>()
+      val subscriber = BatchingQueueSubscriber<Int>("test", 10, Duration.ofMillis(50)) { batches.add(it) }
+      val sink = Sinks.many().unicast().onBackpressureBuffer<Int>()
+      sink.asFlux().subscribe(subscriber)
+
+      sink.tryEmitNext(1)
+      sink.tryEmitNext(2)
+
+      await().atMost(5, TimeUnit.SECONDS).until<Boolean> { batches.isNotEmpty() }
+      batches.single().should.equal(listOf(1, 2))
+   }
+
+   @Test
+   fun `no more than a batch is requested until the batch is persisted`() {
+      val requested = CopyOnWriteArrayList<Long>()
+      val subscriber = BatchingQueueSubscriber<Int>("test", 10, Duration.ofSeconds(30)) { }
+      Flux.range(0, 25)
+         .doOnRequest { requested.add(it) }
+         .subscribe(subscriber)
+
+      requested.first().should.equal(10L)
+      requested.all { it <= 10L }.should.be.`true`
+   }
+}
@@ -0,0 +1,76 @@
+package com.orbitalhq.history.db
+
+import com.nhaarman.mockito_kotlin.any
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.times
+import com.nhaarman.mockito_kotlin.verify
+import com.nhaarman.mockito_kotlin.whenever
+import com.orbitalhq.query.history.LineageRecord
+import com.orbitalhq.query.history.QueryResultRow
+import com.winterbe.expekt.should
+import org.h2.jdbcx.JdbcDataSource
+import org.junit.Before
+import org.junit.Test
+import org.springframework.jdbc.core.JdbcTemplate
+
+class QueryHistoryDaoTest {
+   private lateinit var jdbcTemplate: JdbcTemplate
+   private val resultRowRepository = mock<QueryResultRowRepository>()
+   private val lineageRecordRepository = mock<LineageRecordRepository>()
+
+   @Before
+   fun setup() {
+      val dataSource = JdbcDataSource().apply {
+         setURL("jdbc:h2:mem:${javaClass.simpleName}-${System.nanoTime()};DB_CLOSE_DELAY=-1")
+      }
+      jdbcTemplate = JdbcTemplate(dataSource)
+      jdbcTemplate.execute("CREATE TABLE QUERY_RESULT_ROW (row_id BIGINT AUTO_INCREMENT PRIMARY KEY, query_id VARCHAR(10), json CLOB, value_hash INT)")
+      jdbcTemplate.execute("CREATE TABLE LINEAGE_RECORD (record_id VARCHAR(255) PRIMARY KEY, data_source_id VARCHAR(255), query_id VARCHAR(255), data_source_type VARCHAR(255), data_source_json CLOB)")
+      whenever(lineageRecordRepository.findAllById(any())).thenReturn(emptyList())
+   }
+
+   private fun dao() = QueryHistoryDao(mock(), resultRowRepository, lineageRecordRepository, mock(), mock(), jdbcTemplate)
+
+   private fun persistedRowCount() = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM QUERY_RESULT_ROW", Int::class.java)
+
+   @Test
+   fun `result rows are inserted in a batch`() {
+      val rows = (0 until 5).map { QueryResultRow(queryId = "query", json = """{ "id" : $it }""", valueHash = it) }
+      dao().saveQueryResultRows(rows)
+
+      persistedRowCount().should.equal(5)
+      verify(resultRowRepository, times(0)).save(any<QueryResultRow>())
+   }
+
+   @Test
+   fun `when a batch fails nothing is written and rows are saved individually`() {
+      val rows = (0 until 5).map { QueryResultRow(queryId = "query", json = """{ "id" : $it }""", valueHash = it) } +
+         // query_id is too long for the column, so fails the batch
+         QueryResultRow(queryId = "a-query-id-too-long-for-the-column", json = "{}", valueHash = 0)
+      dao().saveQueryResultRows(rows)
+
+      persistedRowCount().should.equal(0)
+      rows.forEach { verify(resultRowRepository).save(it) }
+   }
+
+   private fun lineageRecord(dataSourceId: String) = LineageRecord(dataSourceId, "query", "Provided", "{}")
+
+   private fun persistedLineageCount() = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM LINEAGE_RECORD", Int::class.java)
+
+   @Test
+   fun `lineage records are inserted in a batch`() {
+      dao().persistLineageRecordBatch((0 until 5).map { lineageRecord("source-$it") })
+      persistedLineageCount().should.equal(5)
+   }
+
+   @Test
+   fun `when a lineage batch fails nothing is written and records are upserted individually`() {
+      // The duplicate record id fails the batch
+      val records = (0 until 5).map { lineageRecord("source-$it") } + lineageRecord("source-0")
+      dao().persistLineageRecordBatch(records)
+
+      persistedLineageCount().should.equal(0)
+      verify(lineageRecordRepository, times(records.size))
+         .upsertLineageRecord(any(), any(), any(), any(), any())
+   }
+}
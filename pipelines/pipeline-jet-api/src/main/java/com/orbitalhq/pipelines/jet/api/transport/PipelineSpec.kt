@@ -9,6 +9,7 @@ import com.google.common.annotations.VisibleForTesting
 import com.orbitalhq.models.Provided
 import com.orbitalhq.models.TypedInstance
 import com.orbitalhq.models.json.Jackson
+import com.orbitalhq.schemas.QualifiedName
 import com.orbitalhq.schemas.Schema
 import com.orbitalhq.schemas.Type
 import com.orbitalhq.utils.Ids
@@ -136,6 +137,38 @@ interface MessageContentProvider {
    val sourceMessageMetadata: SourceMessageMetadata?
 }
 
+/**
+ * A MessageContentProvider which parses its content at most once per type.
+ *
+ * Several stages of a pipeline read the same message as a TypedInstance (validation, transformation, and sinks
+ * such as the JdbcSink).  Parsing dominates the cost of high-volume pipelines, so the first parse is kept
+ * on the message and reused by the later stages.
+ *
+ * The parsed value is transient - if a message is serialized between Jet members, only the raw content is sent,
+ * and it's parsed again on the receiving member.
+ */
+abstract class ParseOnceContentProvider : MessageContentProvider, Serializable {
+   /**
+    * The parsed value, along with the type and schema it was parsed with.
+    * A message read against an updated schema is parsed again, even if the type name is unchanged.
+    */
+   private class ParsedContent(val typeName: QualifiedName, val schema: Schema, val value: TypedInstance)
+
+   @Transient
+   @Volatile
+   private var parsed: ParsedContent? = null
+
+   final override fun readAsTypedInstance(inputType: Type, schema: Schema): TypedInstance {
+      val cached = parsed
+      if (cached != null && cached.typeName == inputType.name && cached.schema === schema) {
+         return cached.value
+      }
+      return parse(inputType, schema).also { parsed = ParsedContent(inputType.name, schema, it) }
+   }
+
+   protected abstract fun parse(inputType: Type, schema: Schema): TypedInstance
+}
+
 data class TypedInstanceContentProvider(
    @VisibleForTesting
    val content: TypedInstance,
@@ -146,8 +179,16 @@ data class TypedInstanceContentProvider(
       return mapper.writeValueAsString(content.toRawObject())
    }
 
+   /**
+    * Returns the content as-is where it's already of the requested type.  Otherwise, the content
+    * is converted, by building the requested type from its raw value.
+    */
    override fun readAsTypedInstance(inputType: Type, schema: Schema): TypedInstance {
-      return content
+      return if (content.type.isAssignableTo(inputType)) {
+         content
+      } else {
+         TypedInstance.from(inputType, content.toRawObject(), schema, source = Provided)
+      }
    }
 }
 
@@ -156,12 +197,12 @@ data class JacksonContentProvider(
    private val content: Any,
    override val sourceMessageMetadata: SourceMessageMetadata? = null
 ) :
-   MessageContentProvider {
+   ParseOnceContentProvider() {
    override fun asString(): String {
       return objectMapper.writeValueAsString(content)
    }
 
-   override fun readAsTypedInstance(inputType: Type, schema: Schema): TypedInstance {
+   override fun parse(inputType: Type, schema: Schema): TypedInstance {
       return TypedInstance.from(
          inputType,
          content,
@@ -175,12 +216,12 @@ data class StringContentProvider(
    val content: String,
    override val sourceMessageMetadata: SourceMessageMetadata? = null
 ) :
-   MessageContentProvider {
+   ParseOnceContentProvider() {
    override fun asString(): String {
       return content
    }
 
-   override fun readAsTypedInstance(inputType: Type, schema: Schema): TypedInstance {
+   override fun parse(inputType: Type, schema: Schema): TypedInstance {
       return TypedInstance.from(
          inputType,
          content,
@@ -194,12 +235,12 @@ data class CsvRecordContentProvider(
    val content: CSVRecord,
    val nullValues: Set<String>,
    override val sourceMessageMetadata: SourceMessageMetadata? = null
-) : MessageContentProvider {
+) : ParseOnceContentProvider() {
    override fun asString(): String {
       return content.joinToString()
    }
 
-   override fun readAsTypedInstance(inputType: Type, schema: Schema): TypedInstance {
+   override fun parse(inputType: Type, schema: Schema): TypedInstance {
       return TypedInstance.from(
          inputType,
          content,
@@ -0,0 +1,86 @@
+package com.orbitalhq.pipelines.runner.transport
+
+import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.pipelines.jet.api.transport.StringContentProvider
+import com.orbitalhq.pipelines.jet.api.transport.TypedInstanceContentProvider
+import com.orbitalhq.schemas.taxi.TaxiSchema
+import com.winterbe.expekt.should
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.ObjectInputStream
+import java.io.ObjectOutputStream
+
+class ParseOnceContentProviderTest {
+   private val schema = TaxiSchema.from(
+      """
+      model Person {
+         firstName : FirstName inherits String
+      }
+      model Name {
+         firstName : FirstName
+      }
+   """.trimIndent()
+   )
+
+   @Test
+   fun `content is only parsed once when read repeatedly as the same type`() {
+      val message = StringContentProvider("""{ "firstName" : "Jimmy" }""")
+      val first = message.readAsTypedInstance(schema.type("Person"), schema)
+      val second = message.readAsTypedInstance(schema.type("Person"), schema)
+      (second === first).should.be.`true`
+   }
+
+   @Test
+   fun `content is parsed again when read as a different type`() {
+      val message = StringContentProvider("""{ "firstName" : "Jimmy" }""")
+      message.readAsTypedInstance(schema.type("Person"), schema)
+      val name = message.readAsTypedInstance(schema.type("Name"), schema)
+      name.type.qualifiedName.should.equal("Name")
+   }
+
+   @Test
+   fun `content is parsed again when read against a different schema`() {
+      val message = StringContentProvider("""{ "firstName" : "Jimmy" }""")
+      val first = message.readAsTypedInstance(schema.type("Person"), schema)
+      val updatedSchema = TaxiSchema.from(
+         """
+         model Person {
+            firstName : FirstName inherits String
+            lastName : LastName inherits String
+         }
+      """.trimIndent()
+      )
+      val reparsed = message.readAsTypedInstance(updatedSchema.type("Person"), updatedSchema)
+      (reparsed === first).should.be.`false`
+      reparsed.type.attributes.keys.should.contain("lastName")
+   }
+
+   @Test
+   fun `typed instance content is converted when read as a different type`() {
+      val person = TypedInstance.from(schema.type("Person"), """{ "firstName" : "Jimmy" }""", schema)
+      val message = TypedInstanceContentProvider(person)
+      (message.readAsTypedInstance(schema.type("Person"), schema) === person).should.be.`true`
+
+      val name = message.readAsTypedInstance(schema.type("Name"), schema)
+      name.type.qualifiedName.should.equal("Name")
+      name.toRawObject().should.equal(mapOf("firstName" to "Jimmy"))
+   }
+
+   @Test
+   fun `parsed content is not serialized with the message`() {
+      val message = StringContentProvider("""{ "firstName" : "Jimmy" }""")
+      val parsed = message.readAsTypedInstance(schema.type("Person"), schema)
+
+      val bytes = ByteArrayOutputStream().use { bytes ->
+         ObjectOutputStream(bytes).use { it.writeObject(message) }
+         bytes.toByteArray()
+      }
+      val deserialized = ObjectInputStream(ByteArrayInputStream(bytes)).use { it.readObject() } as StringContentProvider
+
+      deserialized.should.equal(message)
+      val reparsed = deserialized.readAsTypedInstance(schema.type("Person"), schema)
+      (reparsed === parsed).should.be.`false`
+      reparsed.toRawObject().should.equal(parsed.toRawObject())
+   }
+}
@@ -10,6 +10,7 @@ import com.orbitalhq.connectors.azure.blob.StoreInvoker
 import com.orbitalhq.connectors.azure.blob.registry.AzureStoreConnectionFileRegistry
 import com.orbitalhq.connectors.jdbc.JdbcConnectionFactory
 import com.orbitalhq.connectors.jdbc.JdbcInvoker
+import com.orbitalhq.connectors.kafka.KafkaConsumerSettings
 import com.orbitalhq.connectors.kafka.KafkaInvoker
 import com.orbitalhq.connectors.kafka.KafkaStreamManager
 import com.orbitalhq.connectors.kafka.KafkaStreamPublisher
@@ -17,6 +18,8 @@ import com.orbitalhq.connectors.kafka.registry.KafkaConnectionRegistry
 import com.orbitalhq.models.format.FormatRegistry
 import com.orbitalhq.schema.api.SchemaProvider
 import org.apache.kafka.clients.producer.internals.BuiltInPartitioner
+import io.micrometer.core.instrument.MeterRegistry
+import org.springframework.beans.factory.annotation.Value
 import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.Configuration
 
@@ -59,8 +62,17 @@ class InvokerConfiguration {
    fun kafkaStreamManager(
       connectionRegistry: KafkaConnectionRegistry,
       schemaProvider: SchemaProvider,
-      formatRegistry: FormatRegistry
-   ) = KafkaStreamManager(connectionRegistry, schemaProvider, formatRegistry = formatRegistry)
+      formatRegistry: FormatRegistry,
+      meterRegistry: MeterRegistry,
+      @Value("\${vyne.kafka.consumer.concurrency:1}") consumerConcurrency: Int,
+      @Value("\${vyne.kafka.consumer.commit-offsets:false}") commitOffsets: Boolean
+   ) = KafkaStreamManager(
+      connectionRegistry,
+      schemaProvider,
+      formatRegistry = formatRegistry,
+      settings = KafkaConsumerSettings(consumerConcurrency = consumerConcurrency, commitOffsets = commitOffsets),
+      meterRegistry = meterRegistry
+   )
 
    @Bean
    fun kafkaStreamPublisher(
@@ -5,7 +5,6 @@ import com.hazelcast.jet.pipeline.SinkBuilder
 import com.hazelcast.logging.ILogger
 import com.hazelcast.spring.context.SpringAware
 import com.orbitalhq.embedded.EmbeddedVyneClientWithSchema
-import com.orbitalhq.models.TypedInstance
 import com.orbitalhq.pipelines.jet.api.transport.MessageContentProvider
 import com.orbitalhq.pipelines.jet.api.transport.PipelineTransportSpec
 import com.orbitalhq.pipelines.jet.api.transport.http.TaxiOperationOutputSpec
@@ -53,7 +52,7 @@ class TaxiOperationSinkBuilder : SingleMessagePipelineSinkBuilder<TaxiOperationO
             val (service, operation) = schema.operation(context.outputSpec.operationName.fqn())
             val inputPayloadParam = operation.parameters.first()
             val inputPayloadType = inputPayloadParam.type
-            val input = TypedInstance.from(inputPayloadType, message.asString(), schema)
+            val input = message.readAsTypedInstance(inputPayloadType, schema)
 
             runBlocking {
                context.logger.info("Invoking operation ${operation.qualifiedName} with arg ${input.toRawObject()}")
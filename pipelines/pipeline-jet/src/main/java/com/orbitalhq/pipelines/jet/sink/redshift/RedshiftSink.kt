@@ -61,9 +61,8 @@ class RedshiftSinkBuilder :
 
             val postgresDdlGenerator = PostgresDdlGenerator()
             val schema = context.vyneClient.schema
-            val input = TypedInstance.from(
+            val input = message.readAsTypedInstance(
                schema.versionedType(pipelineTransportSpec.targetType.typeName).type,
-               message.asString(),
                schema
             )
 
@@ -36,7 +36,7 @@ data class CompressedQueryResultWrapper(val r: ByteArray, val error: String? = n
          mapper.writeValue(gzip, result)
          gzip.close()
          val byteArray = byteArrayOutputStream.toByteArray()
-         logger.info { "Message response compressed to approx. ${byteArray.size.formatAsFileSize}" }
+         logger.debug { "Message response compressed to approx. ${byteArray.size.formatAsFileSize}" }
          return CompressedQueryResultWrapper(byteArray)
       }
 
@@ -64,7 +64,7 @@ data class CompressedQueryResultWrapper(val r: ByteArray, val error: String? = n
          val gzip = GZIPInputStream(ByteArrayInputStream(r))
          mapper.readValue<Any>(gzip)
       }
-      logger.info { "Decompressing result took ${timedResult.duration}" }
+      logger.debug { "Decompressing result took ${timedResult.duration}" }
       return timedResult.value
    }
 
@@ -73,7 +73,7 @@ data class CompressedQueryResultWrapper(val r: ByteArray, val error: String? = n
          val gzip: GZIPInputStream = GZIPInputStream(ByteArrayInputStream(r))
          String(gzip.readAllBytes())
       }
-      logger.info { "Decompressing result took ${timedResult.duration}" }
+      logger.debug { "Decompressing result took ${timedResult.duration}" }
       return timedResult.value
    }
 
@@ -0,0 +1,36 @@
+package com.orbitalhq.query.runtime
+
+import com.google.common.cache.CacheBuilder
+import com.orbitalhq.SourcePackage
+import com.orbitalhq.SourcePackageHasher
+import com.orbitalhq.schemas.Schema
+
+/**
+ * The sources of a schema, compressed for sending in a QueryMessage,
+ * along with the hash used to reference them.
+ */
+class CompressedSourcePackages(
+   val hash: String,
+   val zip: ByteArray
+) {
+   companion object {
+      // Hashing and compressing a large schema is expensive, so only do it
+      // once per schema, rather than for every query dispatched.
+      // Schemas are compared by identity (as weakKeys() is used), which is fine,
+      // as a new Schema instance is created whenever the schema changes
+      private val schemaCache = CacheBuilder.newBuilder()
+         .weakKeys()
+         .build<Schema, CompressedSourcePackages>()
+
+      fun from(packages: List<SourcePackage>): CompressedSourcePackages {
+         return CompressedSourcePackages(
+            SourcePackageHasher.hash(packages),
+            QueryMessage.compressSourcePackages(packages)
+         )
+      }
+
+      fun forSchema(schema: Schema): CompressedSourcePackages {
+         return schemaCache.get(schema) { from(schema.packages) }
+      }
+   }
+}
@@ -0,0 +1,125 @@
+package com.orbitalhq.query.runtime
+
+import com.fasterxml.jackson.module.kotlin.convertValue
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.channels.ChannelResult
+import kotlinx.coroutines.channels.ReceiveChannel
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.buffer
+import kotlinx.coroutines.flow.channelFlow
+import kotlinx.coroutines.flow.produceIn
+import kotlinx.coroutines.reactive.asFlow
+import kotlinx.coroutines.reactor.asFlux
+import kotlinx.coroutines.selects.onTimeout
+import kotlinx.coroutines.selects.select
+import reactor.core.publisher.Flux
+import java.time.Duration
+
+data class QueryResultFrameSettings(
+   /**
+    * The max number of results written in a single frame
+    */
+   val maxResultsPerFrame: Int = 250,
+   /**
+    * The max time to wait for a frame to fill before sending it.
+    * Keeps latency low for stream {} queries, which emit results slowly
+    */
+   val maxFrameWait: Duration = Duration.ofMillis(250)
+)
+
+/**
+ * Encodes and decodes query results sent from standalone query nodes.
+ *
+ * Rather than collecting the entire result (which can exhaust memory for large queries),
+ * results are grouped into frames of at most maxResultsPerFrame results, and each frame is compressed
+ * independently as a CompressedQueryResultWrapper.
+ *
+ * Frames are produced on demand, so a transport which only requests more frames once the
+ * previous ones have been written provides flow control back to the query.
+ */
+object QueryResultFrames {
+   /**
+    * Groups the results into compressed frames.
+    * Errors are propagated, so callers can decide how to report them
+    * (eg., as an error frame)
+    */
+   fun encode(
+      results: Flux<Any>,
+      settings: QueryResultFrameSettings = QueryResultFrameSettings()
+   ): Flux<CompressedQueryResultWrapper> {
+      return results.asFlow()
+         .chunked(settings.maxResultsPerFrame, settings.maxFrameWait)
+         .asFlux()
+         .map { frame -> CompressedQueryResultWrapper.forResult(frame) }
+   }
+
+   fun errorFrame(error: Throwable): CompressedQueryResultWrapper {
+      return CompressedQueryResultWrapper.forError(
+         error.message ?: "An unknown error occurred, with error type ${error::class.simpleName}"
+      )
+   }
+
+   /**
+    * Decodes a single frame into its results.
+    * Throws a QueryFailedException if the frame is an error frame.
+    */
+   fun decode(frame: CompressedQueryResultWrapper): List<Any> {
+      return frame.decompressOrThrow() as List<Any>
+   }
+
+   /**
+    * Decodes a frame that has been read as a generic payload
+    * (eg., from within a QueryResponseMessage)
+    */
+   fun decodePayload(payload: Any): List<Any> {
+      return decode(CompressedQueryResultWrapper.mapper.convertValue<CompressedQueryResultWrapper>(payload))
+   }
+
+   fun decode(frames: Flux<CompressedQueryResultWrapper>): Flux<Any> {
+      return frames.concatMapIterable { frame -> decode(frame) }
+   }
+}
+
+/**
+ * Groups the flow into lists of at most maxSize, emitting early when
+ * maxWait has elapsed since the first item in the list was received.
+ *
+ * Unlike Flux.bufferTimeout(), this respects downstream demand.
+ */
+@OptIn(ExperimentalCoroutinesApi::class)
+internal fun <T> Flow<T>.chunked(maxSize: Int, maxWait: Duration): Flow<List<T>> = channelFlow {
+   require(maxSize > 0) { "maxSize must be greater than 0" }
+   val upstream: ReceiveChannel<T> = this@chunked.buffer(maxSize).produceIn(this)
+   var upstreamCompleted = false
+   while (!upstreamCompleted) {
+      val first = upstream.receiveCatching()
+      if (first.isClosed) {
+         first.exceptionOrNull()?.let { throw it }
+         break
+      }
+      val chunk = mutableListOf(first.getOrThrow())
+      val deadline = System.nanoTime() + maxWait.toNanos()
+      while (chunk.size < maxSize) {
+         val remainingMillis = (deadline - System.nanoTime()) / 1_000_000
+         if (remainingMillis <= 0) {
+            break
+         }
+         // Using select (rather than withTimeout) ensures that an item is never
+         // received and then lost when the timeout fires
+         val next = select<ChannelResult<T>?> {
+            upstream.onReceiveCatching { it }
+            onTimeout(remainingMillis) { null }
+         } ?: break
+         if (next.isClosed) {
+            next.exceptionOrNull()?.let { throw it }
+            upstreamCompleted = true
+            break
+         }
+         chunk.add(next.getOrThrow())
+      }
+      send(chunk)
+   }
+}
+   // Don't buffer chunks, so that demand is passed upstream
+   .buffer(Channel.RENDEZVOUS)
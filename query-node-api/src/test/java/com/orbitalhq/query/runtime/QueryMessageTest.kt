@@ -4,6 +4,7 @@ import io.kotest.matchers.shouldBe
 import com.orbitalhq.PackageIdentifier
 import com.orbitalhq.PackageMetadata
 import com.orbitalhq.SourcePackage
+import com.orbitalhq.SourcePackageHasher
 import com.orbitalhq.VersionedSource
 import com.orbitalhq.auth.schemes.AuthTokens
 import com.orbitalhq.auth.tokens.AuthConfig
@@ -19,24 +20,50 @@ import java.time.Instant
 
 @OptIn(ExperimentalSerializationApi::class)
 class QueryMessageTest {
+   private val sourcePackages = listOf(
+      SourcePackage(
+         PackageMetadata.from(
+            PackageIdentifier.fromId("com.foo/Test/1.0.0"),
+            submissionDate = Instant.parse("2023-04-01T02:10:00Z")
+         ),
+         sources = listOf(
+            VersionedSource(
+               name = "Source.taxi",
+               version = "1.0.90",
+               content = "type Hello"
+            )
+         ),
+         additionalSources = emptyMap()
+      )
+   )
+
    @Test
-   fun `can serde to CBOR`() {
-      val sourcePackages = listOf(
-         SourcePackage(
-            PackageMetadata.from(
-               PackageIdentifier.fromId("com.foo/Test/1.0.0"),
-               submissionDate = Instant.parse("2023-04-01T02:10:00Z")
-            ),
-            sources = listOf(
-               VersionedSource(
-                  name = "Source.taxi",
-                  version = "1.0.90",
-                  content = "type Hello"
-               )
-            ),
-            additionalSources = emptyMap()
-         )
+   fun `can serde schema reference to CBOR without sources`() {
+      val sources = CompressedSourcePackages.from(sourcePackages)
+      val message = QueryMessage(
+         query = "find { Hello }",
+         sources = sources,
+         includeSources = false,
+         connections = ConnectionsConfig.empty(),
+         authTokens = AuthTokens.empty(),
+         services = ServicesConfig.DEFAULT,
+         mediaType = "application/json",
+         clientQueryId = "123",
       )
+      message.includesSources.shouldBe(false)
+      message.sourcePackageHash.shouldBe(SourcePackageHasher.hash(sourcePackages))
+
+      val fromBytes = QueryMessage.cbor.decodeFromByteArray<QueryMessage>(QueryMessage.cbor.encodeToByteArray(message))
+      fromBytes.shouldBe(message)
+      fromBytes.includesSources.shouldBe(false)
+
+      val withSources = fromBytes.withSources(sources)
+      withSources.includesSources.shouldBe(true)
+      withSources.sourcePackages().shouldBe(sourcePackages)
+   }
+
+   @Test
+   fun `can serde to CBOR`() {
       val message = QueryMessage(
          query = "find { Hello }",
          sourcePackages = sourcePackages,
@@ -0,0 +1,73 @@
+package com.orbitalhq.query.runtime
+
+import com.orbitalhq.query.QueryFailedException
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.matchers.collections.shouldContainExactly
+import io.kotest.matchers.shouldBe
+import org.junit.jupiter.api.Test
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Sinks
+import java.time.Duration
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
+
+class QueryResultFramesTest {
+
+   @Test
+   fun `results are written in frames of the configured size`() {
+      val results = Flux.range(0, 25).map { mapOf("id" to it) as Any }
+      val frames = QueryResultFrames.encode(results, QueryResultFrameSettings(maxResultsPerFrame = 10))
+         .collectList()
+         .block()!!
+
+      frames.map { QueryResultFrames.decode(it).size }.shouldContainExactly(10, 10, 5)
+      QueryResultFrames.decode(Flux.fromIterable(frames))
+         .collectList()
+         .block()!!
+         .shouldBe((0 until 25).map { mapOf("id" to it) })
+   }
+
+   @Test
+   fun `partial frames are sent after the max wait`() {
+      val sink = Sinks.many().unicast().onBackpressureBuffer<Any>()
+      val frames = CopyOnWriteArrayList<CompressedQueryResultWrapper>()
+      QueryResultFrames.encode(
+         sink.asFlux(),
+         QueryResultFrameSettings(maxResultsPerFrame = 10, maxFrameWait = Duration.ofMillis(50))
+      ).subscribe { frames.add(it) }
+
+      sink.tryEmitNext("first")
+      sink.tryEmitNext("second")
+
+      val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5)
+      while (frames.isEmpty() && System.nanoTime() < deadline) {
+         Thread.sleep(10)
+      }
+      QueryResultFrames.decode(frames.single()).shouldBe(listOf("first", "second"))
+   }
+
+   @Test
+   fun `results are only requested as frames are consumed`() {
+      val requested = CopyOnWriteArrayList<Long>()
+      val results = Flux.range(0, 10_000)
+         .map { it as Any }
+         .doOnRequest { requested.add(it) }
+
+      QueryResultFrames.encode(results, QueryResultFrameSettings(maxResultsPerFrame = 10))
+         .take(1)
+         .blockLast()
+
+      // Nowhere near the full result should have been requested to produce a single frame
+      requested.contains(Long.MAX_VALUE).shouldBe(false)
+      (requested.sum() < 1_000).shouldBe(true)
+   }
+
+   @Test
+   fun `error frames throw when decoded`() {
+      val frame = QueryResultFrames.errorFrame(RuntimeException("Boom"))
+      val exception = shouldThrow<QueryFailedException> {
+         QueryResultFrames.decode(frame)
+      }
+      exception.message.shouldBe("Boom")
+   }
+}
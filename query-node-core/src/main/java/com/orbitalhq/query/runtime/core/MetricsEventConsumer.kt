@@ -2,6 +2,7 @@ package com.orbitalhq.query.runtime.core
 
 import io.micrometer.core.instrument.Counter
 import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Timer
 import com.orbitalhq.models.OperationResult
 import com.orbitalhq.query.QueryCompletedEvent
 import com.orbitalhq.query.QueryEvent
@@ -14,6 +15,7 @@ import com.orbitalhq.query.TaxiQlQueryResultEvent
 import com.orbitalhq.query.VyneQueryStatistics
 import com.orbitalhq.query.VyneQueryStatisticsEvent
 import org.springframework.stereotype.Component
+import java.util.concurrent.TimeUnit
 
 
 @Component
@@ -66,7 +68,10 @@ class MetricsEventConsumer(val meterRegistry: MeterRegistry) : QueryEventConsume
         when (event) {
             is TaxiQlQueryResultEvent -> counterQueryResults.increment()
             is RestfulQueryResultEvent ->  counterQueryResults.increment()
-            is QueryCompletedEvent -> counterSuccessfulQueries.increment()
+            is QueryCompletedEvent -> {
+               counterSuccessfulQueries.increment()
+               recordActivityTimings(event)
+            }
             is QueryFailureEvent -> counterFailedQueries.increment()
             is RestfulQueryExceptionEvent -> counterQueryException.increment()
             is TaxiQlQueryExceptionEvent -> counterQueryException.increment()
@@ -79,6 +84,20 @@ class MetricsEventConsumer(val meterRegistry: MeterRegistry) : QueryEventConsume
         }
     }
 
+    /**
+     * Records the time each completed query spent in engine activities, giving a per-query distribution
+     * alongside the node-wide totals published by EngineInstrumentationMetrics
+     */
+    private fun recordActivityTimings(event: QueryCompletedEvent) {
+        event.activityTimings.forEach { (activity, timing) ->
+            Timer.builder("vyne.query.activity")
+                .tag("activity", activity.tagValue)
+                .description("Time per query spent in: ${activity.description}")
+                .register(meterRegistry)
+                .record(timing.totalNanos, TimeUnit.NANOSECONDS)
+        }
+    }
+
     override fun recordResult(operation: OperationResult, queryId: String) {
 
     }
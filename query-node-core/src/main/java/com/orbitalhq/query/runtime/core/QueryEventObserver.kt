@@ -88,7 +88,8 @@ class QueryLifecycleEventObserver(
                      message = "",
                      query = query.toString(),
                      recordCount = activeQueryMonitor?.queryMetaData(queryResult.queryResponseId)?.completedProjections
-                        ?: 0
+                        ?: 0,
+                     activityTimings = queryResult.activityTimings?.summary() ?: emptyMap()
                   )
 
                   consumer.handleEvent(event)
@@ -171,7 +172,8 @@ class QueryLifecycleEventObserver(
                      message = "",
                      query = query,
                      recordCount = activeQueryMonitor?.queryMetaData(queryResult.queryResponseId)?.completedProjections
-                        ?: 0
+                        ?: 0,
+                     activityTimings = queryResult.activityTimings?.summary() ?: emptyMap()
                   )
 
                   consumer.handleEvent(event)
@@ -9,8 +9,10 @@ import com.orbitalhq.models.json.Jackson
 import com.orbitalhq.query.QueryFailedException
 import com.orbitalhq.query.QueryResponseMessage
 import com.orbitalhq.query.ResultMode
+import com.orbitalhq.query.runtime.CompressedSourcePackages
 import com.orbitalhq.query.runtime.QueryMessage
 import com.orbitalhq.query.runtime.QueryMessageCborWrapper
+import com.orbitalhq.query.runtime.QueryResultFrames
 import com.orbitalhq.query.runtime.core.dispatcher.StreamingQueryDispatcher
 import com.orbitalhq.schema.api.SchemaProvider
 import com.orbitalhq.utils.Ids
@@ -48,11 +50,16 @@ class AwsSqsQueryDispatcher(
       arguments: Map<String, Any?>
    ): Flux<Any> {
 
+      val sources = CompressedSourcePackages.forSchema(schemaProvider.schema)
       return createTemporaryQueue(clientQueryId)
          .map { tempQueue ->
+            // Sources are always sent, as query nodes consuming from SQS (eg., Lambdas)
+            // treat a missing schema as a failed query, rather than asking for the sources.
+            // The hash and compressed sources are still only computed once per schema.
             QueryMessage(
                query = query,
-               sourcePackages = schemaProvider.schema.packages,
+               sources = sources,
+               includeSources = true,
                connections = connectionsConfigProvider.load(),
                authTokens = authTokenRepository.getAllTokens(),
                services = servicesRepository.load(),
@@ -82,7 +89,7 @@ class AwsSqsQueryDispatcher(
          .flatMapMany { response ->
             logger.debug { "Query ${queryMessage.clientQueryId} received a new batch of ${response.messages().size} response messages" }
             val responsePayloads = response.messages()
-               .mapNotNull { message ->
+               .flatMap { message ->
                   val responseJson = message.body()
                   val responsePayload = objectMapper.readValue<QueryResponseMessage>(responseJson)
                   queryCompleted.set(responsePayload.messageKind.isFinalMessage)
@@ -94,17 +101,28 @@ class AwsSqsQueryDispatcher(
 
                      QueryResponseMessage.QueryResponseMessageKind.RESULT -> {
                         logger.info { "Query ${queryMessage.clientQueryId} received result" }
-                        responsePayload.payload!!
+                        listOf(responsePayload.payload!!)
                      }
 
                      QueryResponseMessage.QueryResponseMessageKind.STREAM_MESSAGE -> {
                         logger.info { "Query ${queryMessage.clientQueryId} received result stream update - AWS Message Id ${message.messageId()}" }
-                        responsePayload.payload!!
+                        listOf(responsePayload.payload!!)
+                     }
+
+                     QueryResponseMessage.QueryResponseMessageKind.STREAM_FRAME -> {
+                        logger.info { "Query ${queryMessage.clientQueryId} received result stream frame - AWS Message Id ${message.messageId()}" }
+                        QueryResultFrames.decodePayload(responsePayload.payload!!)
                      }
 
                      QueryResponseMessage.QueryResponseMessageKind.END_OF_STREAM -> {
                         logger.info { "Query ${queryMessage.clientQueryId} has finished" }
-                        null
+                        emptyList<Any>()
+                     }
+
+                     QueryResponseMessage.QueryResponseMessageKind.SCHEMA_REQUIRED -> {
+                        // Not expected, as sources are always sent
+                        logger.warn { "Query node requested schema ${queryMessage.sourcePackageHash} for query ${queryMessage.clientQueryId}, which was already sent" }
+                        throw QueryFailedException("Query node could not load schema ${queryMessage.sourcePackageHash}")
                      }
                   }
                }
@@ -5,14 +5,17 @@ import com.orbitalhq.connectors.config.SourceLoaderConnectorsRegistry
 import com.orbitalhq.http.ServicesConfigRepository
 import com.orbitalhq.query.ResultMode
 import com.orbitalhq.query.runtime.CompressedQueryResultWrapper
+import com.orbitalhq.query.runtime.CompressedSourcePackages
 import com.orbitalhq.query.runtime.QueryMessage
 import com.orbitalhq.query.runtime.QueryMessageCborWrapper
+import com.orbitalhq.query.runtime.QueryResultFrames
 import com.orbitalhq.query.runtime.core.dispatcher.StreamingQueryDispatcher
 import com.orbitalhq.schema.api.SchemaProvider
 import com.orbitalhq.utils.formatAsFileSize
 import mu.KotlinLogging
 import org.springframework.beans.factory.annotation.Value
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
+import org.springframework.http.MediaType
 import org.springframework.stereotype.Component
 import org.springframework.web.reactive.function.client.WebClient
 import org.springframework.web.reactive.function.client.WebClientResponseException.BadGateway
@@ -36,7 +39,13 @@ class HttpQueryDispatcher(
    private val authTokenRepository: AuthSchemeRepository,
    private val connectionsConfigProvider: SourceLoaderConnectorsRegistry,
    private val schemaProvider: SchemaProvider,
-   @Value("\${vyne.dispatcher.http.url}") private val queryRouterUrl: String
+   @Value("\${vyne.dispatcher.http.url}") private val queryRouterUrl: String,
+   /**
+    * If provided, queries are sent to this url, and results are streamed back
+    * as compressed frames, rather than as a single response.
+    * (Use with the /query/stream endpoint on query nodes)
+    */
+   @Value("\${vyne.dispatcher.http.streaming-url:}") private val streamingQueryUrl: String
 ) : StreamingQueryDispatcher {
 
    init {
@@ -54,9 +63,11 @@ class HttpQueryDispatcher(
       resultMode: ResultMode,
       arguments: Map<String, Any?>
    ): Flux<Any> {
+      // Http dispatched queries can't ask for the sources, so they're always sent.
       val message = QueryMessage(
          query = query,
-         sourcePackages = schemaProvider.schema.packages,
+         sources = CompressedSourcePackages.forSchema(schemaProvider.schema),
+         includeSources = true,
          connections = connectionsConfigProvider.load(),
          authTokens = authTokenRepository.getAllTokens(),
          services = servicesRepository.load(),
@@ -64,8 +75,11 @@ class HttpQueryDispatcher(
          arguments
       )
 
-      // HACK: We can't currently support streaming messages,
-      // so we get back a Mono<T>, where T could either be a collection
+      if (streamingQueryUrl.isNotBlank()) {
+         return dispatchStreamingQuery(message)
+      }
+
+      // HACK: Where streaming isn't enabled, we get back a Mono<T>, where T could either be a collection
       // or a single item, depending on what the query was.
       // If it's a collection, we don't want to return Flux<Collection<T>>,
       // as that serializes as [ [ { ... } , { .. } ] ]
@@ -115,6 +129,29 @@ class HttpQueryDispatcher(
          }
    }
 
+   /**
+    * Sends the query, and reads the results as a stream of compressed frames.
+    * Frames are read as they arrive, so the full result is never held in memory.
+    */
+   fun dispatchStreamingQuery(message: QueryMessage): Flux<Any> {
+      val encodedWrapper = QueryMessageCborWrapper.from(message)
+      logger.info { "Dispatching streaming query ${message.clientQueryId} - ${encodedWrapper.size().formatAsFileSize}" }
+
+      val frames = webClient.build().post()
+         .uri(streamingQueryUrl)
+         .accept(MediaType.APPLICATION_NDJSON)
+         .body(Mono.just(encodedWrapper))
+         .retrieve()
+         .bodyToFlux(CompressedQueryResultWrapper::class.java)
+      return QueryResultFrames.decode(frames)
+         .doOnError { error ->
+            when (error) {
+               is BadGateway -> handleBadGateway(error, message.clientQueryId)
+               else -> logger.error(error) { "Query ${message.clientQueryId} failed: ${error.message}" }
+            }
+         }
+   }
+
    private fun handleBadGateway(error: BadGateway, clientQueryId: String) {
       // Grab the tracing headers:
       val requestId = error.headers["x-amzn-RequestId"]?.joinToString() ?: "Not provided"
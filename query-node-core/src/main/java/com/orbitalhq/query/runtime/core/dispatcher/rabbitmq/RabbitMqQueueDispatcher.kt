@@ -10,8 +10,10 @@ import com.orbitalhq.models.json.Jackson
 import com.orbitalhq.query.QueryFailedException
 import com.orbitalhq.query.QueryResponseMessage
 import com.orbitalhq.query.ResultMode
+import com.orbitalhq.query.runtime.CompressedSourcePackages
 import com.orbitalhq.query.runtime.QueryMessage
 import com.orbitalhq.query.runtime.QueryMessageCborWrapper
+import com.orbitalhq.query.runtime.QueryResultFrames
 import com.orbitalhq.query.runtime.core.dispatcher.StreamingQueryDispatcher
 import com.orbitalhq.query.runtime.core.dispatcher.rabbitmq.RabbitAdmin.QUERIES_QUEUE_NAME
 import com.orbitalhq.query.runtime.core.dispatcher.rabbitmq.RabbitAdmin.QUERY_EXCHANGE_NAME
@@ -62,13 +64,16 @@ class RabbitMqQueueDispatcher(
    ): Flux<Any> {
 
       val replyQueueName = RabbitAdmin.replyQueueName(clientQueryId)
+      val sources = CompressedSourcePackages.forSchema(schemaProvider.schema)
       return Mono.just(replyQueueName)
          .publishOn(Schedulers.boundedElastic())
          .flatMap { createTemporaryQueue(replyQueueName, clientQueryId) }
          .map { _ ->
+            // Sources are only sent if the query node asks for them.
             QueryMessage(
                query = query,
-               sourcePackages = schemaProvider.schema.packages,
+               sources = sources,
+               includeSources = false,
                connections = connectionsConfigProvider.load(),
                authTokens = authTokenRepository.getAllTokens(),
                services = servicesRepository.load(),
@@ -79,16 +84,31 @@ class RabbitMqQueueDispatcher(
          }
          .flatMap { sendMessageToQueue(it) }
          .flatMapMany { queryMessage ->
-            consumeResponses(queryMessage)
+            consumeResponses(queryMessage, sources)
          }
    }
 
-   private fun consumeResponses(queryMessage: QueryMessage): Flux<Any> {
+   private fun consumeResponses(queryMessage: QueryMessage, sources: CompressedSourcePackages): Flux<Any> {
       return rabbitReceiver.consumeAutoAck(queryMessage.replyTo!!)
          .map { messageDelivery ->
             logger.withQueryId(queryMessage.clientQueryId).debug { "Inbound message for query ${queryMessage.clientQueryId} received" }
             objectMapper.readValue<QueryResponseMessage>(messageDelivery.body)
          }
+         .concatMap { responseMessage ->
+            when (responseMessage.messageKind) {
+               QueryResponseMessage.QueryResponseMessageKind.SCHEMA_REQUIRED -> {
+                  logger.withQueryId(queryMessage.clientQueryId).info { "Query node does not have schema ${queryMessage.sourcePackageHash}, resending query ${queryMessage.clientQueryId} with sources" }
+                  sendMessageToQueue(queryMessage.withSources(sources))
+                     .thenMany(Flux.empty<QueryResponseMessage>())
+               }
+               // Unpack frames into their individual messages
+               QueryResponseMessage.QueryResponseMessageKind.STREAM_FRAME -> {
+                  Flux.fromIterable(QueryResultFrames.decodePayload(responseMessage.payload!!))
+                     .map { QueryResponseMessage.streamResult(it) }
+               }
+               else -> Flux.just(responseMessage)
+            }
+         }
          .handle { responseMessage, sink ->
             when (responseMessage.messageKind) {
                QueryResponseMessage.QueryResponseMessageKind.ERROR -> {
@@ -111,6 +131,11 @@ class RabbitMqQueueDispatcher(
                   logger.withQueryId(queryMessage.clientQueryId).info { "Query ${queryMessage.clientQueryId} has finished" }
                   sink.complete()
                }
+
+               QueryResponseMessage.QueryResponseMessageKind.SCHEMA_REQUIRED,
+               QueryResponseMessage.QueryResponseMessageKind.STREAM_FRAME -> {
+                  // Handled above
+               }
             }
          }
    }
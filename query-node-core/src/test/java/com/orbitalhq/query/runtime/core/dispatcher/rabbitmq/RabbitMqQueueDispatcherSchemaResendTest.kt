@@ -0,0 +1,116 @@
+package com.orbitalhq.query.runtime.core.dispatcher.rabbitmq
+
+import com.fasterxml.jackson.module.kotlin.readValue
+import com.jayway.awaitility.Awaitility
+import com.nhaarman.mockito_kotlin.any
+import com.nhaarman.mockito_kotlin.mock
+import com.nhaarman.mockito_kotlin.whenever
+import com.orbitalhq.auth.schemes.EmptyAuthSchemeRepository
+import com.orbitalhq.connectors.config.SourceLoaderConnectorsRegistry
+import com.orbitalhq.http.ServicesConfigRepository
+import com.orbitalhq.models.json.Jackson
+import com.orbitalhq.query.QueryResponseMessage
+import com.orbitalhq.query.runtime.CompressedSourcePackages
+import com.orbitalhq.query.runtime.QueryMessage
+import com.orbitalhq.query.runtime.QueryMessageCborWrapper
+import com.orbitalhq.schema.api.SimpleSchemaProvider
+import com.orbitalhq.schemas.taxi.TaxiSchema
+import com.orbitalhq.utils.Ids
+import com.rabbitmq.client.AMQP
+import com.rabbitmq.client.Delivery
+import io.kotest.matchers.booleans.shouldBeFalse
+import io.kotest.matchers.booleans.shouldBeTrue
+import io.kotest.matchers.collections.shouldHaveSize
+import io.kotest.matchers.shouldBe
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.reactivestreams.Publisher
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import reactor.core.publisher.Sinks
+import reactor.kotlin.test.test
+import reactor.rabbitmq.BindingSpecification
+import reactor.rabbitmq.OutboundMessage
+import reactor.rabbitmq.QueueSpecification
+import reactor.rabbitmq.Receiver
+import reactor.rabbitmq.Sender
+import java.time.Duration
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
+
+/**
+ * Tests the SCHEMA_REQUIRED handshake between the dispatcher and a query node,
+ * using a stubbed Sender and Receiver, so doesn't need a running broker
+ */
+class RabbitMqQueueDispatcherSchemaResendTest {
+   @Rule
+   @JvmField
+   val configRoot = TemporaryFolder()
+
+   private val objectMapper = Jackson.newObjectMapperWithDefaults()
+   private val schema = TaxiSchema.from("model Foo { name : Name inherits String }")
+
+   private val sentQueries = CopyOnWriteArrayList<QueryMessage>()
+   private val responses = Sinks.many().unicast().onBackpressureBuffer<Delivery>()
+
+   private fun createDispatcher(): RabbitMqQueueDispatcher {
+      val sender = mock<Sender>()
+      whenever(sender.declareQueue(any<QueueSpecification>())).thenReturn(Mono.just(AMQP.Queue.DeclareOk.Builder().build()))
+      whenever(sender.bindQueue(any<BindingSpecification>())).thenReturn(Mono.just(AMQP.Queue.BindOk.Builder().build()))
+      whenever(sender.send(any<Publisher<OutboundMessage>>())).thenAnswer { invocation ->
+         Flux.from(invocation.getArgument<Publisher<OutboundMessage>>(0))
+            .doOnNext { outboundMessage ->
+               sentQueries.add(objectMapper.readValue<QueryMessageCborWrapper>(outboundMessage.body).message())
+            }
+            .then()
+      }
+      val receiver = mock<Receiver>()
+      whenever(receiver.consumeAutoAck(any<String>())).thenReturn(responses.asFlux())
+
+      return RabbitMqQueueDispatcher(
+         sender,
+         receiver,
+         ServicesConfigRepository(configRoot.root.resolve("services.conf").toPath()),
+         EmptyAuthSchemeRepository,
+         SourceLoaderConnectorsRegistry(configRoot.root.resolve("connections.conf").toPath()),
+         SimpleSchemaProvider(schema),
+      )
+   }
+
+   private fun reply(message: QueryResponseMessage) {
+      responses.tryEmitNext(Delivery(null, null, objectMapper.writeValueAsBytes(message)))
+   }
+
+   private fun awaitSentQueries(count: Int) {
+      // Queries are sent asynchronously, after the reply queue is created
+      Awaitility.await().atMost(5, TimeUnit.SECONDS).until<Boolean> { sentQueries.size >= count }
+      sentQueries.shouldHaveSize(count)
+   }
+
+   @Test
+   fun `resends the query with sources when the query node asks for the schema`() {
+      val payload = mapOf("message" to "Hello, world")
+      val expectedSources = CompressedSourcePackages.forSchema(schema)
+      createDispatcher().dispatchQuery("find { Foo }", clientQueryId = Ids.id("query"))
+         .test()
+         .expectSubscription()
+         .then {
+            awaitSentQueries(1)
+            sentQueries.single().includesSources.shouldBeFalse()
+            sentQueries.single().sourcePackageHash.shouldBe(expectedSources.hash)
+            reply(QueryResponseMessage.schemaRequired(expectedSources.hash))
+         }
+         .then {
+            awaitSentQueries(2)
+            val resent = sentQueries.last()
+            resent.includesSources.shouldBeTrue()
+            resent.sourcePackageHash.shouldBe(expectedSources.hash)
+            resent.clientQueryId.shouldBe(sentQueries.first().clientQueryId)
+            reply(QueryResponseMessage(payload, QueryResponseMessage.QueryResponseMessageKind.RESULT))
+         }
+         .expectNext(payload)
+         .expectComplete()
+         .verify(Duration.ofSeconds(5))
+   }
+}
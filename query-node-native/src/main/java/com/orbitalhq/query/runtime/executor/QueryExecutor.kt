@@ -45,11 +45,9 @@ class QueryExecutor(
    /**
     * Executes the query.
     *
-    * Currently, there's no support for streaming results,
-    * so we can't support stream {} queries, or support streaming
-    * incremental results out.
-    *
-    * As a result, large queries may result in OOM.
+    * Results are emitted as they're produced.  Transports should
+    * send them in frames (see QueryResultFrames), rather than collecting the full result,
+    * which can exhaust memory on large queries.
     */
    fun executeQuery(message: QueryMessage, context: CoroutineContext = EmptyCoroutineContext): Flux<Any> {
       val queryId = Ids.fastUuid()
@@ -17,6 +17,7 @@ import io.micrometer.core.instrument.simple.SimpleMeterRegistry
 import mu.KotlinLogging
 import org.springframework.aot.hint.*
 import org.springframework.aot.hint.annotation.RegisterReflectionForBinding
+import org.springframework.beans.factory.annotation.Value
 import org.springframework.boot.autoconfigure.SpringBootApplication
 import org.springframework.boot.autoconfigure.data.jdbc.JdbcRepositoriesAutoConfiguration
 import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration
@@ -28,6 +29,7 @@ import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.ImportRuntimeHints
 import org.springframework.web.reactive.function.client.WebClient
 import reactivefeign.spring.config.ReactiveFeignAutoConfiguration
+import java.nio.file.Paths
 
 private val logger = KotlinLogging.logger {}
 
@@ -64,6 +66,27 @@ class QueryFunctionApp {
    @Bean
    fun formatSpecRegistry():FormatSpecRegistry = FormatSpecRegistry.default()
 
+   /**
+    * Schemas are referenced by hash in query messages, and cached here.
+    * Sources are cached on disk under vyne.consumer.schema-cache.path (defaults to a temp directory).
+    * Set vyne.consumer.schema-cache.disk-enabled=false to cache in memory only.
+    * At most vyne.consumer.schema-cache.max-schemas-on-disk schemas are kept on disk.
+    */
+   @Bean
+   fun queryNodeSchemaCache(
+      sourceConverterRegistry: SourceConverterRegistry,
+      @Value("\${vyne.consumer.schema-cache.path:}") cachePath: String,
+      @Value("\${vyne.consumer.schema-cache.disk-enabled:true}") diskCacheEnabled: Boolean,
+      @Value("\${vyne.consumer.schema-cache.max-schemas-on-disk:50}") maxSchemasOnDisk: Int,
+   ): QueryNodeSchemaCache {
+      val cacheDirectory = when {
+         !diskCacheEnabled -> null
+         cachePath.isNotBlank() -> Paths.get(cachePath)
+         else -> Paths.get(System.getProperty("java.io.tmpdir"), "orbital-schema-cache")
+      }
+      return QueryNodeSchemaCache(sourceConverterRegistry, cacheDirectory, maxSchemasOnDisk = maxSchemasOnDisk)
+   }
+
    @Bean
    fun sourceConverterRegistry(): SourceConverterRegistry = SourceConverterRegistry(
       setOf(
@@ -0,0 +1,158 @@
+package com.orbitalhq.query.runtime.executor
+
+import com.google.common.cache.CacheBuilder
+import com.google.common.util.concurrent.UncheckedExecutionException
+import com.orbitalhq.query.runtime.QueryMessage
+import com.orbitalhq.schema.api.SchemaProvider
+import com.orbitalhq.schema.api.SchemaWithSourcesSchemaProvider
+import com.orbitalhq.schemas.readers.SourceConverterRegistry
+import com.orbitalhq.schemas.taxi.TaxiSchema
+import mu.KotlinLogging
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.attribute.FileTime
+import java.time.Instant
+import kotlin.time.ExperimentalTime
+import kotlin.time.measureTimedValue
+
+/**
+ * Thrown when a query message references a schema by hash,
+ * which isn't cached on this node.
+ *
+ * Callers should ask the dispatcher to resend the query with the sources included.
+ */
+class SchemaNotCachedException(val sourcePackageHash: String) :
+   RuntimeException("Schema $sourcePackageHash is not cached on this node, and the query did not include sources")
+
+/**
+ * Caches schemas on a query node, keyed by the hash of their sources.
+ *
+ * Compiled schemas are held in memory.  The compressed sources are also written to disk
+ * (if a cacheDirectory is provided), so that evicted schemas can be recompiled
+ * without asking the dispatcher for the sources again.
+ *
+ * The disk cache holds at most maxSchemasOnDisk schemas.  Once exceeded, the least recently
+ * used schemas (by the file's last modified time, which is updated on read) are deleted.
+ */
+class QueryNodeSchemaCache(
+   private val sourceConverterRegistry: SourceConverterRegistry,
+   private val cacheDirectory: Path?,
+   maxSchemasInMemory: Long = 5,
+   private val maxSchemasOnDisk: Int = 50
+) {
+   companion object {
+      private val logger = KotlinLogging.logger {}
+   }
+
+   private val schemaCache = CacheBuilder.newBuilder()
+      .maximumSize(maxSchemasInMemory)
+      .build<String, SchemaProvider>()
+
+   init {
+      if (cacheDirectory != null) {
+         Files.createDirectories(cacheDirectory)
+         logger.info { "Schema sources will be cached at $cacheDirectory" }
+      }
+   }
+
+   /**
+    * Returns the schema referenced by the message.
+    * Throws SchemaNotCachedException if the schema isn't cached, and the message doesn't include the sources
+    */
+   fun getSchemaProvider(message: QueryMessage): SchemaProvider {
+      return try {
+         schemaCache.get(message.sourcePackageHash) { loadSchema(message) }
+      } catch (e: UncheckedExecutionException) {
+         throw e.cause ?: e
+      }
+   }
+
+   @OptIn(ExperimentalTime::class)
+   private fun loadSchema(message: QueryMessage): SchemaProvider {
+      val sourcePackageHash = message.sourcePackageHash
+      val sourcePackageZip = message.sourcePackageZip
+         ?: readFromDisk(sourcePackageHash)
+         ?: throw SchemaNotCachedException(sourcePackageHash)
+      val sources = QueryMessage.decompressSourcePackages(sourcePackageZip)
+      val timedSchema = measureTimedValue {
+         TaxiSchema.from(sources, sourceConverters = sourceConverterRegistry.converters)
+      }
+      logger.info { "Building schema $sourcePackageHash took ${timedSchema.duration}" }
+      if (message.includesSources) {
+         writeToDisk(sourcePackageHash, sourcePackageZip)
+      }
+      return SchemaWithSourcesSchemaProvider(timedSchema.value, sources)
+   }
+
+   private fun cachePath(sourcePackageHash: String): Path? = cacheDirectory?.resolve("$sourcePackageHash.json.gz")
+
+   private fun readFromDisk(sourcePackageHash: String): ByteArray? {
+      val path = cachePath(sourcePackageHash) ?: return null
+      return if (Files.exists(path)) {
+         logger.info { "Reading schema $sourcePackageHash from disk cache" }
+         val bytes = Files.readAllBytes(path)
+         touch(path)
+         bytes
+      } else {
+         null
+      }
+   }
+
+   private fun writeToDisk(sourcePackageHash: String, sourcePackageZip: ByteArray) {
+      val path = cachePath(sourcePackageHash) ?: return
+      try {
+         // Write to a temp file and move, so that concurrent readers never see a partially written file
+         val tempFile = Files.createTempFile(cacheDirectory!!, sourcePackageHash, ".tmp")
+         Files.write(tempFile, sourcePackageZip)
+         Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+      } catch (e: Exception) {
+         logger.warn(e) { "Failed to write schema $sourcePackageHash to the disk cache at $path - ${e.message}" }
+      }
+      evictFromDisk(keep = path)
+   }
+
+   private fun touch(path: Path) {
+      try {
+         Files.setLastModifiedTime(path, FileTime.from(Instant.now()))
+      } catch (e: Exception) {
+         logger.debug { "Failed to update last modified time of $path - ${e.message}" }
+      }
+   }
+
+   /**
+    * Deletes the least recently used schemas from disk, once there are more than maxSchemasOnDisk.
+    * The schema that was just written is always kept.
+    */
+   private fun evictFromDisk(keep: Path) {
+      val directory = cacheDirectory ?: return
+      try {
+         val cachedFiles = Files.list(directory).use { files ->
+            files.filter { it.fileName.toString().endsWith(".json.gz") }
+               .toList()
+         }
+         if (cachedFiles.size <= maxSchemasOnDisk) {
+            return
+         }
+         cachedFiles
+            .filter { it != keep }
+            .sortedByDescending { lastModifiedOrEpoch(it) }
+            .drop((maxSchemasOnDisk - 1).coerceAtLeast(0))
+            .forEach { path ->
+               logger.info { "Removing ${path.fileName} from the schema disk cache, as it holds more than $maxSchemasOnDisk schemas" }
+               Files.deleteIfExists(path)
+            }
+      } catch (e: Exception) {
+         logger.warn(e) { "Failed to evict schemas from the disk cache at $directory - ${e.message}" }
+      }
+   }
+
+   private fun lastModifiedOrEpoch(path: Path): FileTime {
+      return try {
+         Files.getLastModifiedTime(path)
+      } catch (e: Exception) {
+         // Deleted by another thread / process
+         FileTime.from(Instant.EPOCH)
+      }
+   }
+}
@@ -2,13 +2,16 @@ package com.orbitalhq.query.runtime.executor
 
 import com.orbitalhq.DefaultPackageMetadata
 import com.orbitalhq.connectors.jdbc.registry.JdbcConnections
+import com.orbitalhq.query.runtime.CompressedQueryResultWrapper
 import com.orbitalhq.query.runtime.QueryMessageCborWrapper
 import com.orbitalhq.query.runtime.executor.serverless.ServerlessQueryExecutor
 import kotlinx.serialization.ExperimentalSerializationApi
 import org.springframework.aot.hint.annotation.RegisterReflectionForBinding
+import org.springframework.http.MediaType
 import org.springframework.web.bind.annotation.PostMapping
 import org.springframework.web.bind.annotation.RequestBody
 import org.springframework.web.bind.annotation.RestController
+import reactor.core.publisher.Flux
 import reactor.core.publisher.Mono
 import reactor.core.scheduler.Schedulers
 
@@ -31,6 +34,17 @@ class StandaloneQueryService(
       }.subscribeOn(Schedulers.boundedElastic())
    }
 
+   /**
+    * Executes the query, streaming results back as newline delimited
+    * compressed frames (see QueryResultFrames).
+    * Frames are only produced as fast as the client reads them.
+    */
+   @PostMapping("/query/stream", produces = [MediaType.APPLICATION_NDJSON_VALUE])
+   fun executeStreamingQuery(@RequestBody message: QueryMessageCborWrapper): Flux<CompressedQueryResultWrapper> {
+      return queryExecutor.executeQueryStreaming(message)
+         .subscribeOn(Schedulers.boundedElastic())
+   }
+
 //   @PostMapping("/query/cbor", consumes = [MediaType.APPLICATION_CBOR_VALUE])
 //   fun executeQuery(@RequestBody bytes: ByteArray): Any {
 //      return Mono.create { sink ->
@@ -6,7 +6,6 @@ import com.google.common.cache.CacheBuilder
 import com.zaxxer.hikari.HikariConfig
 import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory
 import io.micrometer.core.instrument.MeterRegistry
-import com.orbitalhq.SourcePackageHasher
 import com.orbitalhq.Vyne
 import com.orbitalhq.connectors.aws.core.registry.AwsInMemoryConnectionRegistry
 import com.orbitalhq.connectors.aws.dynamodb.DynamoDbInvoker
@@ -17,14 +16,13 @@ import com.orbitalhq.connectors.jdbc.registry.InMemoryJdbcConnectionRegistry
 import com.orbitalhq.query.QueryEngineFactory
 import com.orbitalhq.query.graph.operationInvocation.CacheAwareOperationInvocationDecorator
 import com.orbitalhq.query.graph.operationInvocation.OperationCacheFactory
+import com.orbitalhq.query.projection.LocalProjectionProvider
 import com.orbitalhq.query.runtime.QueryMessage
 import com.orbitalhq.schema.api.SchemaProvider
-import com.orbitalhq.schema.api.SchemaWithSourcesSchemaProvider
-import com.orbitalhq.schemas.readers.SourceConverterRegistry
-import com.orbitalhq.schemas.taxi.TaxiSchema
 import com.orbitalhq.spring.config.StaticServicesConfigDiscoveryClient
 import com.orbitalhq.spring.config.VyneSpringCacheConfiguration
 import com.orbitalhq.spring.http.DefaultRequestFactory
+import com.orbitalhq.spring.query.CompiledQueryCacheMetrics
 import com.orbitalhq.spring.http.auth.schemes.AuthWebClientCustomizer
 import com.orbitalhq.spring.invokers.RestTemplateInvoker
 import com.orbitalhq.spring.query.formats.FormatSpecRegistry
@@ -32,8 +30,6 @@ import mu.KotlinLogging
 import org.springframework.cloud.client.discovery.DiscoveryClient
 import org.springframework.stereotype.Component
 import org.springframework.web.reactive.function.client.WebClient
-import kotlin.time.ExperimentalTime
-import kotlin.time.measureTimedValue
 
 /**
  * Vyne factory that doesn't use any shared state.
@@ -52,8 +48,7 @@ class StandaloneVyneFactory(
    private val webClientBuilder: WebClient.Builder,
    private val cacheConfiguration: VyneSpringCacheConfiguration,
    private val formatSpecRegistry: FormatSpecRegistry,
-   private val sourceConverterRegistry: SourceConverterRegistry
-//   private val schemaCache: ?
+   private val schemaCache: QueryNodeSchemaCache
 ) {
    companion object {
       private val logger = KotlinLogging.logger {}
@@ -63,27 +58,23 @@ class StandaloneVyneFactory(
    // Turns out, a constructor param with a variable with default value breaks Spring Native
    // ( Parameter specified as non-null is null: method com.orbitalhq.query.runtime.executor.StandaloneVyneFactory.<init>, parameter operationCacheFactory)
    // So, since we weren't injecting, just use the static value.
-   private val operationCacheFactory: OperationCacheFactory = OperationCacheFactory()
+   private val operationCacheFactory: OperationCacheFactory = OperationCacheFactory(meterRegistry = meterRegistry)
 
-   private val schemaCache = CacheBuilder.newBuilder()
-      .maximumSize(5)
-      .build<String, SchemaProvider>()
+   init {
+      // Queries are compiled for every message, so publish how often the compiled query cache is used
+      CompiledQueryCacheMetrics().bindTo(meterRegistry)
+   }
 
    private val lenientObjectMapper = objectMapper
       .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
 
-   @OptIn(ExperimentalTime::class)
+   /**
+    * Builds a Vyne instance for the query.
+    * Throws SchemaNotCachedException if the message references a schema
+    * by hash that isn't cached on this node.
+    */
    fun buildVyne(message: QueryMessage): Pair<Vyne, DiscoveryClient> {
-      val sources = message.sourcePackages()
-      val sourcesHash = SourcePackageHasher.hash(sources)
-      val schemaProvider = schemaCache.get(sourcesHash) {
-         val timedSchema = measureTimedValue {
-            TaxiSchema.from(sources, sourceConverters = sourceConverterRegistry.converters )
-         }
-         logger.info { "Building schema took ${timedSchema.duration}" }
-         val schema = timedSchema.value
-         SchemaWithSourcesSchemaProvider(schema, sources)
-      }
+      val schemaProvider = schemaCache.getSchemaProvider(message)
 
       val (query, options) = schemaProvider.schema.parseQuery(message.query)
       val discoveryClient = StaticServicesConfigDiscoveryClient(message.services)
@@ -99,8 +90,11 @@ class StandaloneVyneFactory(
             cacheConfiguration,
             CacheAwareOperationInvocationDecorator.decorateAll(
                invokers,
-               operationCache = operationCacheFactory.getCache(options.cachingStrategy)
-            )
+               operationCache = operationCacheFactory.getCache(options.cachingStrategy),
+               refreshAfterWrite = operationCacheFactory.getSettings(options.cachingStrategy).refreshAfterWrite,
+               serializedResultCache = operationCacheFactory.getSerializedResultCache(options.cachingStrategy)
+            ),
+            projectionProvider = LocalProjectionProvider(preserveOrder = !options.unordered)
          ),
          formatSpecRegistry.formats
       ) to discoveryClient
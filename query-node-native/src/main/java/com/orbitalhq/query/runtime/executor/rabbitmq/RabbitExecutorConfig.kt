@@ -1,5 +1,6 @@
 package com.orbitalhq.query.runtime.executor.rabbitmq
 
+import com.orbitalhq.query.runtime.QueryResultFrameSettings
 import com.orbitalhq.query.runtime.core.dispatcher.rabbitmq.RabbitAdmin
 import com.orbitalhq.query.runtime.executor.QueryExecutor
 import mu.KotlinLogging
@@ -24,6 +25,7 @@ class RabbitExecutorConfig {
       @Value("\${vyne.consumer.rabbit.username:''}") rabbitUsername: String = "",
       @Value("\${vyne.consumer.rabbit.password:''}") rabbitPassword: String = "",
       @Value("\${vyne.consumer.rabbit.subscribeForQueries:true}") subscribeForNewQueries: Boolean = true,
+      @Value("\${vyne.consumer.rabbit.maxResultsPerFrame:250}") maxResultsPerFrame: Int = 250,
       queryExecutor: QueryExecutor
    ): RabbitMqQueryExecutor? {
 
@@ -49,7 +51,8 @@ class RabbitExecutorConfig {
          receiver,
          parallelism = concurrency,
          queryExecutor = queryExecutor,
-         subscribeForNewQueries = subscribeForNewQueries
+         subscribeForNewQueries = subscribeForNewQueries,
+         frameSettings = QueryResultFrameSettings(maxResultsPerFrame = maxResultsPerFrame)
       )
       RabbitAdmin.configureRabbit(executor.setupRabbit())
       return executor
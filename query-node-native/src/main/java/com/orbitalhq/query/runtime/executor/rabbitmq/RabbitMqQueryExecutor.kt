@@ -8,8 +8,11 @@ import com.orbitalhq.models.json.Jackson
 import com.orbitalhq.query.QueryResponseMessage
 import com.orbitalhq.query.runtime.QueryMessage
 import com.orbitalhq.query.runtime.QueryMessageCborWrapper
+import com.orbitalhq.query.runtime.QueryResultFrameSettings
+import com.orbitalhq.query.runtime.QueryResultFrames
 import com.orbitalhq.query.runtime.core.dispatcher.rabbitmq.RabbitAdmin
 import com.orbitalhq.query.runtime.executor.QueryExecutor
+import com.orbitalhq.query.runtime.executor.SchemaNotCachedException
 import com.orbitalhq.utils.withQueryId
 import jakarta.annotation.PostConstruct
 import mu.KotlinLogging
@@ -19,6 +22,7 @@ import reactor.core.publisher.ParallelFlux
 import reactor.core.scheduler.Schedulers
 import reactor.rabbitmq.*
 import java.time.Duration
+import java.util.concurrent.atomic.AtomicBoolean
 
 /**
  * Subscribes to a RabbitMQ queue for queries, and executes a query
@@ -30,7 +34,8 @@ class RabbitMqQueryExecutor(
    private val queryExecutor: QueryExecutor,
    private val objectMapper: ObjectMapper = Jackson.newObjectMapperWithDefaults(),
    private val parallelism: Int = 1,
-   private val subscribeForNewQueries: Boolean = true
+   private val subscribeForNewQueries: Boolean = true,
+   private val frameSettings: QueryResultFrameSettings = QueryResultFrameSettings()
 ) {
    init {
       require(parallelism > 0) { "Parallelism must be greater than 0" }
@@ -88,11 +93,13 @@ class RabbitMqQueryExecutor(
 
    fun executeQueryAndWriteResponsesToRabbit(queryMessage: QueryMessage): Flux<Pair<QueryResponseMessage.QueryResponseMessageKind, OutboundMessageResult<OutboundMessage>>> =
       executeQuery(queryMessage)
-         // This flatMap consumes the results from the query, and sends them to Rabbit.
+         // This concatMap consumes the results from the query, and sends them to Rabbit.
          // Keeping it inside the parent flatMap() ensures we can control the rate of consumption from
          // rabbit.
-
-         .flatMap { (messageKind, outboundMessage) ->
+         // Frames are sent one at a time (waiting for the publish confirm), which preserves their
+         // order, and means the query is only asked for more results once the previous frame has been written.
+         // (The prefetch of 1 allows the next frame to be prepared while the current one is being confirmed)
+         .concatMap({ (messageKind, outboundMessage) ->
             // Write the response to Rabbit.
             // We capture the first reciept - in theory there should be only one
             writeResultToRabbitMq(outboundMessage)
@@ -104,7 +111,7 @@ class RabbitMqQueryExecutor(
                   logger.withQueryId(outboundMessage.routingKey)
                      .error { "Rabbit failed to ACK a response message" }
                }
-         }
+         }, 1)
 
 
    private fun consumeQueries(): ParallelFlux<QueryMessage> {
@@ -158,13 +165,22 @@ class RabbitMqQueryExecutor(
    }
 
    private fun executeQuery(queryMessage: QueryMessage): Flux<Pair<QueryResponseMessage.QueryResponseMessageKind, OutboundMessage>> {
-      return queryExecutor.executeQuery(queryMessage)
+      val schemaRequired = AtomicBoolean(false)
+      // Defer, so that errors building the query (including a missing schema)
+      // are handled below, rather than thrown
+      val results = Flux.defer { queryExecutor.executeQuery(queryMessage) }
          .subscribeOn(Schedulers.boundedElastic())
-         .map { result ->
-            logger.debug { "Query ${queryMessage.clientQueryId} emitting result" }
-            QueryResponseMessage.streamResult(result)
+      return QueryResultFrames.encode(results, frameSettings)
+         .map { frame ->
+            logger.debug { "Query ${queryMessage.clientQueryId} emitting result frame" }
+            QueryResponseMessage.streamFrame(frame)
          }
          .onErrorResume { error ->
+            if (error is SchemaNotCachedException) {
+               logger.withQueryId(queryMessage.clientQueryId).info { "Schema ${error.sourcePackageHash} is not cached, requesting the query is resent with sources" }
+               schemaRequired.set(true)
+               return@onErrorResume Mono.just(QueryResponseMessage.schemaRequired(error.sourcePackageHash))
+            }
             logger.withQueryId(queryMessage.clientQueryId).error(error) { "An error occurred in processing the query" }
             Mono.just(
                QueryResponseMessage.error(
@@ -179,7 +195,10 @@ class RabbitMqQueryExecutor(
          // concatMap() didn't work here - only the termination message (ie., the
          // second flux)
          // was sent.  Needs to be concatWith().
-         .concatWith(streamEndedMessage(queryMessage))
+         // If the schema was requested, the query will be resent, so the stream hasn't ended.
+         .concatWith(Mono.defer {
+            if (schemaRequired.get()) Mono.empty<Pair<QueryResponseMessage.QueryResponseMessageKind, OutboundMessage>>() else streamEndedMessage(queryMessage)
+         })
    }
 
    private fun wrapInRabbitMessage(
@@ -2,9 +2,13 @@ package com.orbitalhq.query.runtime.executor.serverless
 
 import com.orbitalhq.query.runtime.CompressedQueryResultWrapper
 import com.orbitalhq.query.runtime.QueryMessageCborWrapper
+import com.orbitalhq.query.runtime.QueryResultFrameSettings
+import com.orbitalhq.query.runtime.QueryResultFrames
 import com.orbitalhq.query.runtime.executor.QueryExecutor
 import mu.KotlinLogging
 import org.springframework.stereotype.Component
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
 
 @Component
 class ServerlessQueryExecutor(
@@ -26,4 +30,20 @@ class ServerlessQueryExecutor(
          CompressedQueryResultWrapper.forError(message)
       }
    }
+
+   /**
+    * Executes the query, returning the results as a stream of compressed frames.
+    * If the query fails, the final frame contains the error.
+    */
+   fun executeQueryStreaming(
+      messageCborWrapper: QueryMessageCborWrapper,
+      frameSettings: QueryResultFrameSettings = QueryResultFrameSettings()
+   ): Flux<CompressedQueryResultWrapper> {
+      return Flux.defer { executor.executeQuery(messageCborWrapper.message()) }
+         .let { results -> QueryResultFrames.encode(results, frameSettings) }
+         .onErrorResume { error ->
+            logger.error(error) { "Query execution failed: ${error.message}" }
+            Mono.just(QueryResultFrames.errorFrame(error))
+         }
+   }
 }
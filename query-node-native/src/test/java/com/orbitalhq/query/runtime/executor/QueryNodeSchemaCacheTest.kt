@@ -0,0 +1,93 @@
+package com.orbitalhq.query.runtime.executor
+
+import com.orbitalhq.PackageIdentifier
+import com.orbitalhq.PackageMetadata
+import com.orbitalhq.SourcePackage
+import com.orbitalhq.VersionedSource
+import com.orbitalhq.auth.schemes.AuthTokens
+import com.orbitalhq.connectors.config.ConnectionsConfig
+import com.orbitalhq.http.ServicesConfig
+import com.orbitalhq.query.runtime.CompressedSourcePackages
+import com.orbitalhq.query.runtime.QueryMessage
+import com.orbitalhq.schemas.readers.SourceConverterRegistry
+import com.orbitalhq.schemas.readers.TaxiSourceConverter
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.matchers.booleans.shouldBeTrue
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class QueryNodeSchemaCacheTest {
+   @Rule
+   @JvmField
+   val cacheRoot = TemporaryFolder()
+
+   private val sourceConverterRegistry = SourceConverterRegistry(setOf(TaxiSourceConverter))
+
+   private val sources = sourcesOf("type Hello inherits String")
+
+   private fun sourcesOf(taxi: String) = CompressedSourcePackages.from(
+      listOf(
+         SourcePackage(
+            PackageMetadata.from(PackageIdentifier.fromId("com.foo/test/1.0.0")),
+            sources = listOf(VersionedSource("Hello.taxi", "1.0.0", taxi))
+         )
+      )
+   )
+
+   private fun queryMessage(includeSources: Boolean, sources: CompressedSourcePackages = this.sources) = QueryMessage(
+      query = "find { Hello }",
+      sources = sources,
+      includeSources = includeSources,
+      connections = ConnectionsConfig.empty(),
+      authTokens = AuthTokens.empty(),
+      services = ServicesConfig.DEFAULT,
+      mediaType = "application/json",
+      clientQueryId = "123"
+   )
+
+   @Test
+   fun `throws when schema is referenced but not cached`() {
+      val cache = QueryNodeSchemaCache(sourceConverterRegistry, cacheRoot.root.toPath())
+      val exception = shouldThrow<SchemaNotCachedException> {
+         cache.getSchemaProvider(queryMessage(includeSources = false))
+      }
+      exception.sourcePackageHash.shouldBe(sources.hash)
+   }
+
+   @Test
+   fun `once sources have been received the schema can be referenced by hash`() {
+      val cache = QueryNodeSchemaCache(sourceConverterRegistry, cacheRoot.root.toPath())
+      val schemaProvider = cache.getSchemaProvider(queryMessage(includeSources = true))
+      schemaProvider.schema.hasType("Hello").shouldBeTrue()
+
+      cache.getSchemaProvider(queryMessage(includeSources = false)).shouldBeSameInstanceAs(schemaProvider)
+   }
+
+   @Test
+   fun `schemas are read from the disk cache when not held in memory`() {
+      QueryNodeSchemaCache(sourceConverterRegistry, cacheRoot.root.toPath())
+         .getSchemaProvider(queryMessage(includeSources = true))
+
+      // A new cache, (eg., after a restart) with the same directory
+      val cache = QueryNodeSchemaCache(sourceConverterRegistry, cacheRoot.root.toPath())
+      cache.getSchemaProvider(queryMessage(includeSources = false))
+         .schema.hasType("Hello").shouldBeTrue()
+   }
+
+   @Test
+   fun `disk cache is limited to the configured number of schemas`() {
+      val cache = QueryNodeSchemaCache(sourceConverterRegistry, cacheRoot.root.toPath(), maxSchemasOnDisk = 2)
+      val schemas = listOf("type Hello inherits String", "type Hello inherits Int", "type Hello inherits Decimal")
+         .map { sourcesOf(it) }
+      schemas.forEach { sources ->
+         cache.getSchemaProvider(queryMessage(includeSources = true, sources = sources))
+      }
+      val cachedFiles = cacheRoot.root.listFiles()!!.filter { it.name.endsWith(".json.gz") }
+      cachedFiles.size.shouldBe(2)
+      // The most recently written schema is always kept
+      cachedFiles.map { it.name }.contains("${schemas.last().hash}.json.gz").shouldBeTrue()
+   }
+}
@@ -19,6 +19,7 @@ import com.orbitalhq.models.json.Jackson
 import com.orbitalhq.query.QueryResponseMessage
 import com.orbitalhq.query.runtime.QueryMessage
 import com.orbitalhq.query.runtime.QueryMessageCborWrapper
+import com.orbitalhq.query.runtime.QueryResultFrames
 import com.orbitalhq.query.runtime.core.dispatcher.rabbitmq.RabbitAdmin
 import com.orbitalhq.query.runtime.executor.QueryExecutor
 import com.orbitalhq.query.runtime.executor.StandaloneVyneFactory
@@ -93,8 +94,8 @@ class RabbitMqQueryExecutorTest {
             verifyReceivedMessageMatches(
                outboundMessageResult,
                queryId,
-               QueryResponseMessage.QueryResponseMessageKind.STREAM_MESSAGE,
-               mapOf("response" to "Hello, world")
+               QueryResponseMessage.QueryResponseMessageKind.STREAM_FRAME,
+               listOf(mapOf("response" to "Hello, world"))
             )
          }
          .expectNextMatches { (messageKind, outboundMessageResult) ->
@@ -143,7 +144,7 @@ class RabbitMqQueryExecutorTest {
          val messagesForQuery = collectedMessages.filter { it.outboundMessage.routingKey == queryId }
             .map { objectMapper.readValue<QueryResponseMessage>(it.outboundMessage.body) }
          messagesForQuery.shouldHaveSize(2)
-         messagesForQuery[0].messageKind.shouldBe(QueryResponseMessage.QueryResponseMessageKind.STREAM_MESSAGE)
+         messagesForQuery[0].messageKind.shouldBe(QueryResponseMessage.QueryResponseMessageKind.STREAM_FRAME)
          messagesForQuery[1].messageKind.shouldBe(QueryResponseMessage.QueryResponseMessageKind.END_OF_STREAM)
       }
    }
@@ -152,14 +153,18 @@ class RabbitMqQueryExecutorTest {
       message: OutboundMessageResult<OutboundMessage>,
       queryId: String,
       messageType: QueryResponseMessage.QueryResponseMessageKind,
-      expectedResult: Map<String, Any>? = null,
+      expectedResults: List<Map<String, Any>>? = null,
    ): Boolean {
       message.outboundMessage.exchange.shouldBe(RabbitAdmin.RESPONSES_EXCHANGE_NAME)
       message.outboundMessage.routingKey.shouldBe(queryId)
       val responseMessage =
          objectMapper.readValue<QueryResponseMessage>(message.outboundMessage.body)
       responseMessage.messageKind.shouldBe(messageType)
-      responseMessage.payload.shouldBe(expectedResult)
+      if (expectedResults == null) {
+         responseMessage.payload.shouldBe(null)
+      } else {
+         QueryResultFrames.decodePayload(responseMessage.payload!!).shouldBe(expectedResults)
+      }
       return true
    }
 
@@ -0,0 +1,69 @@
+package com.orbitalhq.schema.api
+
+import com.google.common.cache.CacheBuilder
+import com.google.common.cache.CacheStats
+import com.orbitalhq.SourcePackage
+import com.orbitalhq.SourcePackageHasher
+import com.orbitalhq.schemas.readers.SourceToTaxiConverter
+import com.orbitalhq.schemas.taxi.TaxiSchema
+import lang.taxi.CompilationError
+import mu.KotlinLogging
+
+/**
+ * Caches compiled schemas, keyed by the content hash of the packages they were compiled from.
+ *
+ * Compiling the full set of packages is expensive, and the same set is often compiled
+ * several times - by the validator when a package is submitted, then again by each SchemaSet
+ * (including ones deserialized after being sent to consumers in the same process).
+ * Also, publishers frequently resubmit packages that haven't changed.
+ *
+ * Taxi packages can reference (and extend) types declared in any other package in the set,
+ * so packages are compiled together, rather than individually.
+ */
+class CompiledSchemaCache(maximumSize: Long = 5) {
+   companion object {
+      private val logger = KotlinLogging.logger {}
+      val DEFAULT = CompiledSchemaCache()
+   }
+
+   private data class CompiledSchemaKey(
+      val packagesHash: String,
+      val sourceConverters: List<SourceToTaxiConverter>
+   )
+
+   private val cache = CacheBuilder.newBuilder()
+      .maximumSize(maximumSize)
+      .recordStats()
+      .build<CompiledSchemaKey, Pair<List<CompilationError>, TaxiSchema>>()
+
+   /**
+    * Returns the compilation result for the packages, compiling (and caching) if
+    * the same set of packages has not been compiled before.
+    *
+    * Concurrent requests for the same set of packages wait for a single compilation.
+    */
+   fun compile(
+      packages: List<SourcePackage>,
+      sourceConverters: List<SourceToTaxiConverter>
+   ): Pair<List<CompilationError>, TaxiSchema> {
+      val key = CompiledSchemaKey(SourcePackageHasher.hash(packages.withPackageIdentifiers()), sourceConverters)
+      return cache.get(key) {
+         logger.info { "Compiling schema from ${packages.size} packages (hash ${key.packagesHash})" }
+         TaxiSchema.fromPackages(packages, sourceConverters = sourceConverters)
+      }
+   }
+
+   fun invalidateAll() {
+      cache.invalidateAll()
+   }
+
+   fun stats(): CacheStats = cache.stats()
+
+   /**
+    * Source hashes include the package identifier, which isn't always set on submitted sources.
+    * Normalize, so that a submitted package and the same package read back from a SchemaSet hash the same.
+    */
+   private fun List<SourcePackage>.withPackageIdentifiers(): List<SourcePackage> {
+      return this.map { sourcePackage -> sourcePackage.copy(sources = sourcePackage.sourcesWithPackageIdentifier) }
+   }
+}
@@ -113,9 +113,15 @@ data class SchemaSet private constructor(
          return this._compositeSchema ?: error("SchemaSet failed to initialize")
       }
 
-   // TODO : This method can take a very long time, and blocks
-   // the thread as it compiles the schema.  We should find a way to initialize (and compile) async
+   // This method can take a very long time, and blocks the thread as it compiles the schema.
+   // Consumers should call it (by reading schema) off the request thread before swapping
+   // the SchemaSet in.  Compiled schemas are shared via the CompiledSchemaCache, so SchemaSets
+   // of the same packages (eg., after deserializing) don't recompile.
+   @Synchronized
    private fun init() {
+      if (this._compositeSchema != null) {
+         return
+      }
       log().info("Initializing schema set with generation $generation")
       if (this.parsedPackages.isEmpty()) {
          this._taxiSchemas = emptyList()
@@ -127,12 +133,11 @@ data class SchemaSet private constructor(
          if (this._taxiSchemas == null) {
             val taxiSources = validPackages.map { it.toSourcePackage() }
             this._taxiSchemas = listOf(
-               TaxiSchema.from(
+               CompiledSchemaCache.DEFAULT.compile(
                   taxiSources,
                   sourceConverters = StaticSourceConverterRegistry.registry.converters
-               ),
-
-               )
+               ).second
+            )
          }
 
          this._rawSchemaStrings = this.validSources.map { it.content }
@@ -141,6 +141,20 @@ class SchemaSetTest {
    }
 
 
+   @Test
+   fun `schema sets with the same packages share the compiled schema`() {
+      val packages = listOf(
+         ParsedPackage(
+            PackageMetadata.from("com.acme", "films", "1.0.0"),
+            listOf(ParsedSource(VersionedSource("films.taxi", "1.0.0", "model Film {}"))),
+            emptyMap()
+         )
+      )
+      val schemaSet = SchemaSet.fromParsed(packages, 1)
+      val nextGeneration = SchemaSet.fromParsed(packages, 2)
+      (nextGeneration.schema.taxi === schemaSet.schema.taxi).should.be.`true`
+   }
+
    private fun List<SourcePackage>.shouldContainExactly(vararg identifiers: PackageIdentifier) {
       this.size.should.equal(identifiers.size)
       identifiers.forEach { identifier ->
@@ -22,6 +22,7 @@ abstract class SchemaSetChangedEventRepository : SchemaChangedEventProvider, Sch
 
    private val logger = KotlinLogging.logger {}
 
+   @Volatile
    private var lastSchemaSet: SchemaSet = SchemaSet.EMPTY
 
     override val schemaSet: SchemaSet
@@ -41,9 +42,14 @@ abstract class SchemaSetChangedEventRepository : SchemaChangedEventProvider, Sch
     * If the schema is considered different, the internal state is updated.
     *
     * The event (which has already been emitted) is returned for convenience.
+    *
+    * The new schema is compiled before it's swapped in, so that queries continue to use the
+    * previous schema (rather than blocking) while compilation is in progress.
+    * Callers should therefore call this off the request thread.
     */
    fun emitNewSchemaIfDifferent(newSchemaSet: SchemaSet): SchemaSetChangedEvent? {
       return SchemaSetChangedEvent.generateFor(lastSchemaSet, newSchemaSet)?.let { event ->
+         newSchemaSet.schema
          logger.info("SchemaSet has been updated / created: $newSchemaSet - dispatching event.")
          lastSchemaSet = newSchemaSet
          schemaSetSink.emitNext(event, ContinueIfNonSerialHandler)
@@ -1,6 +1,7 @@
 package com.orbitalhq.schemaStore
 
 import arrow.core.Either
+import arrow.core.left
 import arrow.core.right
 import com.orbitalhq.*
 import com.orbitalhq.schema.api.SchemaSet
@@ -12,6 +13,7 @@ import com.orbitalhq.schemas.Schema
 import com.orbitalhq.schemas.taxi.TaxiSchema
 import lang.taxi.CompilationError
 import lang.taxi.CompilationException
+import lang.taxi.errors
 import lang.taxi.utils.log
 import mu.KotlinLogging
 import java.io.Serializable
@@ -165,9 +167,36 @@ abstract class ValidatingSchemaStoreClient(
 
    override fun submitPackage(submission: SourcePackage): Either<CompilationException, Schema> {
       logger.info { "Received schema submission ${submission.identifier}" }
+      val existing = packagesById[submission.identifier.unversionedId]
+      if (existing != null && isUnchanged(existing, submission)) {
+         // Publishers frequently resubmit packages (eg., on reconnect).
+         // There's no need to recompile, or to bump the generation (which causes consumers to rebuild)
+         logger.info { "Package ${submission.identifier} is unchanged from the stored version, so not recompiling" }
+         return submissionResult(existing)
+      }
       return submitChanges(submission, emptyList())
    }
 
+   private fun isUnchanged(existing: ParsedPackage, submission: SourcePackage): Boolean {
+      return existing.identifier == submission.identifier &&
+         existing.additionalSources == submission.additionalSources &&
+         existing.sources.map { it.source.fullHash } == submission.sourcesWithPackageIdentifier.map { it.fullHash }
+   }
+
+   /**
+    * The result of submitting a package that's already stored - ie., the errors from the package's own sources,
+    * or the current schema if there are none.
+    * (Not lastSubmissionResult, which is for whichever package was submitted last)
+    */
+   private fun submissionResult(storedPackage: ParsedPackage): Either<CompilationException, Schema> {
+      val errors = storedPackage.sources.flatMap { it.errors.errors() }
+      return if (errors.isEmpty()) {
+         schemaSet.schema.right()
+      } else {
+         CompilationException(errors).left()
+      }
+   }
+
    override fun removeSchemas(identifiers: List<PackageIdentifier>): Either<CompilationException, Schema> {
       return submitChanges(null, identifiers)
    }
@@ -4,12 +4,12 @@ import arrow.core.Either
 import arrow.core.left
 import arrow.core.right
 import com.orbitalhq.*
+import com.orbitalhq.schema.api.CompiledSchemaCache
 import com.orbitalhq.schema.api.SchemaSet
 import com.orbitalhq.schema.api.SchemaValidator
 import com.orbitalhq.schemas.Schema
 import com.orbitalhq.schemas.readers.SourceToTaxiConverter
 import com.orbitalhq.schemas.readers.TaxiSourceConverter
-import com.orbitalhq.schemas.taxi.TaxiSchema
 import lang.taxi.CompilationError
 import lang.taxi.errors
 import lang.taxi.sources.SourceLocation
@@ -20,7 +20,8 @@ private val logger = KotlinLogging.logger { }
 
 @Component
 class TaxiSchemaValidator(
-   private val sourceLoaders: List<SourceToTaxiConverter> = listOf(TaxiSourceConverter)
+   private val sourceLoaders: List<SourceToTaxiConverter> = listOf(TaxiSourceConverter),
+   private val compiledSchemaCache: CompiledSchemaCache = CompiledSchemaCache.DEFAULT
 ) :
    SchemaValidator {
    companion object {
@@ -57,7 +58,7 @@ class TaxiSchemaValidator(
          // But, this could cause problems as schemas are removed, as a schema may reference
          // an import from a removed schema, causing all compilation to fail.
          // Need to consider this, and find a solution.
-         val (messages, schema) = TaxiSchema.fromPackages(packages, sourceConverters = sourceLoaders)
+         val (messages, schema) = compiledSchemaCache.compile(packages, sourceLoaders)
          val errors = messages.errors()
          val errorsByPackage = messages.errors().map { compilationError ->
             val compilationErrorSourceName = compilationError.sourceName
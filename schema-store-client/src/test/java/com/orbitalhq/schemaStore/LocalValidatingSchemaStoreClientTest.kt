@@ -32,6 +32,57 @@ class LocalValidatingSchemaStoreClientTest {
       schema.hasType("Order").should.be.`true`
    }
 
+   @Test
+   fun `resubmitting an unchanged package does not recompile or change the generation`() {
+      val localValidatingSchemaStoreClient = LocalValidatingSchemaStoreClient()
+      val ordersPackage = SourcePackage(
+         PackageMetadata.from("com.foo", "Orders", "0.1.0"),
+         sources = listOf(VersionedSource(name = "order.taxi", version = "0.0.1", content = "model Order {}")),
+         additionalSources = emptyMap()
+      )
+      localValidatingSchemaStoreClient.submitPackage(ordersPackage)
+      val schemaSet = localValidatingSchemaStoreClient.schemaSet
+
+      localValidatingSchemaStoreClient.submitPackage(ordersPackage.copy())
+      localValidatingSchemaStoreClient.schemaSet.should.equal(schemaSet)
+      localValidatingSchemaStoreClient.generation.should.equal(schemaSet.generation)
+
+      localValidatingSchemaStoreClient.submitPackage(
+         ordersPackage.copy(
+            sources = listOf(VersionedSource(name = "order.taxi", version = "0.0.1", content = "model Order2 {}"))
+         )
+      )
+      localValidatingSchemaStoreClient.generation.should.equal(schemaSet.generation + 1)
+      localValidatingSchemaStoreClient.schemaSet.schema.hasType("Order2").should.be.`true`
+   }
+
+
+   @Test
+   fun `resubmitting an unchanged package returns the result for that package`() {
+      val localValidatingSchemaStoreClient = LocalValidatingSchemaStoreClient()
+      val ordersPackage = SourcePackage(
+         PackageMetadata.from("com.foo", "Orders", "0.1.0"),
+         sources = listOf(VersionedSource(name = "order.taxi", version = "0.0.1", content = "model Order {}")),
+         additionalSources = emptyMap()
+      )
+      val brokenPackage = SourcePackage(
+         PackageMetadata.from("com.foo", "Broken", "0.1.0"),
+         sources = listOf(VersionedSource(name = "broken.taxi", version = "0.0.1", content = "model Broken { thing : NotAType }")),
+         additionalSources = emptyMap()
+      )
+      localValidatingSchemaStoreClient.submitPackage(ordersPackage).isRight().should.be.`true`
+      localValidatingSchemaStoreClient.submitPackage(brokenPackage).isLeft().should.be.`true`
+
+      // The last submission failed, but that was a different package
+      val ordersResult = localValidatingSchemaStoreClient.submitPackage(ordersPackage.copy())
+      ordersResult.orNull()!!.hasType("Order").should.be.`true`
+
+      localValidatingSchemaStoreClient.submitPackage(ordersPackage.copy(
+         sources = listOf(VersionedSource(name = "order.taxi", version = "0.0.1", content = "model Order2 {}"))
+      )).isRight().should.be.`true`
+      // The last submission succeeded, but this package still has errors
+      localValidatingSchemaStoreClient.submitPackage(brokenPackage.copy()).isLeft().should.be.`true`
+   }
 
    @Test
    fun `updating a package removes previous sources`() {
@@ -22,7 +22,11 @@ interface VyneCacheConfiguration {
 data class VyneGraphBuilderCacheSettings(
    val baseSchemaCacheSize: Long = 10L,
    val graphWithFactTypesCacheSize: Long = 10L,
-   val baseSchemaGraphCacheSize: Long = 10L
+   val baseSchemaGraphCacheSize: Long = 10L,
+   /**
+    * Number of search targets to hold reachability for.  See SchemaReachabilityIndex
+    */
+   val reachabilityCacheSize: Long = 1000L
 )
 
 data class HipsterDiscoverGraphQueryStrategyCacheConfiguration(
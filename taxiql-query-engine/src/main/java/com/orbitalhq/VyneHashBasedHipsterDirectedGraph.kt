@@ -8,6 +8,8 @@ import es.usc.citius.hipster.model.problem.ProblemBuilder
 import com.orbitalhq.models.facts.FactBag
 import com.orbitalhq.query.graph.Element
 import com.orbitalhq.query.graph.EvaluatedPathSet
+import com.orbitalhq.query.graph.GraphReachability
+import com.orbitalhq.query.graph.SchemaReachabilityIndex
 import com.orbitalhq.query.graph.pathHashExcludingWeights
 import com.orbitalhq.schemas.Relationship
 import com.orbitalhq.utils.ImmutableEquality
@@ -19,8 +21,14 @@ private val logger = KotlinLogging.logger {}
 /**
  * An extension of the HipsterDirectedGraph which
  * caches exact searches, in order to reduce calls to find()
+ *
+ * If reachability is provided, searches for targets which can't be reached
+ * from the start return immediately, without searching.
  */
-class SchemaPathFindingGraph(connections: HashMap<Element, Set<GraphEdge<Element, Relationship>>>) :
+class SchemaPathFindingGraph(
+   connections: HashMap<Element, Set<GraphEdge<Element, Relationship>>>,
+   private val reachability: GraphReachability? = null
+) :
    VyneHashBasedHipsterDirectedGraph<Element, Relationship>() {
    init {
       connected = connections
@@ -79,6 +87,13 @@ class SchemaPathFindingGraph(connections: HashMap<Element, Set<GraphEdge<Element
          executionPath
       }
    }
+   private fun successorsOf(element: Element): List<Element> {
+      return connected[element]
+         ?.filter { edge -> edge.vertex1 == element }
+         ?.map { edge -> edge.vertex2 }
+         ?: emptyList()
+   }
+
    private val searchCache = cached { key: SearchCacheKey ->
      doSearch(key)
    }
@@ -89,6 +104,10 @@ class SchemaPathFindingGraph(connections: HashMap<Element, Set<GraphEdge<Element
       evaluatedEdges: EvaluatedPathSet,
       facts: FactBag
    ): WeightedNode<Relationship, Element, Double>? {
+      if (reachability?.canReach(startFact, targetFact, this::successorsOf) == false) {
+         logger.debug { "No path found between $startFact and $targetFact - target is not reachable" }
+         return null
+      }
       val key = SearchCacheKey(startFact, targetFact, evaluatedEdges, facts)
       return searchCache.get(key)
 
@@ -148,13 +167,16 @@ open class VyneHashBasedHipsterDirectedGraph<V, E>(
       // by allocating sizing up-front, and replacing thread-safety
       // with up-front building.
       // Do not attempt to modify this graph once it's been built
-      fun  createCachingGraph(connections: List<HipsterGraphBuilder.Connection<Element, Relationship>>): SchemaPathFindingGraph {
+      fun  createCachingGraph(
+         connections: List<HipsterGraphBuilder.Connection<Element, Relationship>>,
+         reachabilityIndex: SchemaReachabilityIndex? = null
+      ): SchemaPathFindingGraph {
          val maps = HashMap<Element, Set<GraphEdge<Element,Relationship>>>(connections.size * 2)
          connections.forEach {
             maps[it.vertex1] = mutableSetOf()
             maps[it.vertex2] = mutableSetOf()
          }
-         val graph = SchemaPathFindingGraph(maps)
+         val graph = SchemaPathFindingGraph(maps, reachabilityIndex?.forGraph(connections))
          connections.forEach { connection -> graph.connect(connection) }
          return graph
       }
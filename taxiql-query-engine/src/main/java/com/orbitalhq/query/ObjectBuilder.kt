@@ -165,8 +165,8 @@ class ObjectBuilder(
          }
    }
 
-   private fun buildExpressionScalar(targetType: Type): TypedInstance {
-      return TypedObjectFactory(
+   private suspend fun buildExpressionScalar(targetType: Type): TypedInstance {
+      val factory = TypedObjectFactory(
          targetType,
          emptyList<String>(), // What do I pass here?
          context.schema,
@@ -174,7 +174,8 @@ class ObjectBuilder(
          inPlaceQueryEngine = context,
          formatSpecs = formatSpecs,
          functionResultCache = context.functionResultCache
-      ).evaluateExpressionType(targetType, null) /* { // What's this do?
+      )
+      return factory.discovering { factory.evaluateExpressionType(targetType, null) } /* { // What's this do?
          forSourceValues(sourcedByAttributes, it, targetType)
       } */
    }
@@ -200,23 +201,26 @@ class ObjectBuilder(
     *   items: Thing[] by [ThingToIterate[]   with { CustomerName }]
     * }[]
     */
-   private fun buildCollectionWithProjectionExpression(targetType: Type): TypedInstance {
+   private suspend fun buildCollectionWithProjectionExpression(targetType: Type): TypedInstance {
       val collectionProjectionBuilder = accessorReaders.filterIsInstance<CollectionProjectionBuilder>().firstOrNull()
          ?: error("No CollectionProjectionBuilder was present in the acessor readers")
-      return collectionProjectionBuilder.process(
-         targetType.collectionType?.expression!! as CollectionProjectionExpressionAccessor,
-         TypedObjectFactory(
-            targetType.collectionType!!,
-            context.facts,
-            context.schema,
-            source = MixedSources,
-            inPlaceQueryEngine = context,
-            functionResultCache = context.functionResultCache
-         ),
+      val factory = TypedObjectFactory(
+         targetType.collectionType!!,
+         context.facts,
          context.schema,
-         targetType,
-         MixedSources
+         source = MixedSources,
+         inPlaceQueryEngine = context,
+         functionResultCache = context.functionResultCache
       )
+      return factory.discovering {
+         collectionProjectionBuilder.process(
+            targetType.collectionType?.expression!! as CollectionProjectionExpressionAccessor,
+            factory,
+            context.schema,
+            targetType,
+            MixedSources
+         )
+      }
    }
 
    private suspend fun build(
@@ -13,8 +13,10 @@ import com.orbitalhq.query.graph.ServiceParams
 import com.orbitalhq.query.graph.edges.EvaluatableEdge
 import com.orbitalhq.query.graph.edges.EvaluatedEdge
 import com.orbitalhq.schemas.*
+import com.orbitalhq.utils.ActivityTimingSummary
+import com.orbitalhq.utils.ActivityTimings
+import com.orbitalhq.utils.EngineActivity
 import com.orbitalhq.utils.Ids
-import com.orbitalhq.utils.StrategyPerformanceProfiler
 import com.orbitalhq.utils.orElse
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.emptyFlow
@@ -46,14 +48,19 @@ fun collateRemoteCalls(profilerOperation: ProfilerOperation?): List<RemoteCall>
 data class VyneQueryStatistics(
    val graphCreatedCount: AtomicInteger = AtomicInteger(0),
    val graphSearchSuccessCount: AtomicInteger = AtomicInteger(0),
-   val graphSearchFailedCount: AtomicInteger = AtomicInteger(0)
+   val graphSearchFailedCount: AtomicInteger = AtomicInteger(0),
+   /**
+    * Breakdown of the time spent in engine activities (graph search, operation invocation, etc.) for this query
+    */
+   val activityTimings: ActivityTimings = ActivityTimings()
 ) {
    companion object {
       fun from(serializableVyneQueryStatistics: SerializableVyneQueryStatistics): VyneQueryStatistics {
          return VyneQueryStatistics(
             graphCreatedCount = AtomicInteger(serializableVyneQueryStatistics.graphCreatedCount),
             graphSearchSuccessCount = AtomicInteger(serializableVyneQueryStatistics.graphSearchSuccessCount),
-            graphSearchFailedCount = AtomicInteger(serializableVyneQueryStatistics.graphSearchFailedCount)
+            graphSearchFailedCount = AtomicInteger(serializableVyneQueryStatistics.graphSearchFailedCount),
+            activityTimings = ActivityTimings.from(serializableVyneQueryStatistics.activityTimings)
          )
       }
    }
@@ -63,7 +70,8 @@ data class VyneQueryStatistics(
 data class SerializableVyneQueryStatistics(
    val graphCreatedCount: Int,
    val graphSearchSuccessCount: Int,
-   val graphSearchFailedCount: Int
+   val graphSearchFailedCount: Int,
+   val activityTimings: Map<EngineActivity, ActivityTimingSummary> = emptyMap()
 ) {
    companion object {
       fun from(vyneQueryStatistics: VyneQueryStatistics): SerializableVyneQueryStatistics {
@@ -71,6 +79,7 @@ data class SerializableVyneQueryStatistics(
             graphCreatedCount = vyneQueryStatistics.graphCreatedCount.get(),
             graphSearchSuccessCount = vyneQueryStatistics.graphSearchSuccessCount.get(),
             graphSearchFailedCount = vyneQueryStatistics.graphSearchFailedCount.get(),
+            activityTimings = vyneQueryStatistics.activityTimings.summary()
          )
       }
    }
@@ -350,12 +359,35 @@ data class QueryContext(
       val copied = this.newSearchContext().copy(
          facts = CopyOnWriteFactBag(CopyOnWriteArrayList(facts), scopedFacts, schema),
          parent = parent,
-         vyneQueryStatistics = VyneQueryStatistics()
+         vyneQueryStatistics = childStatistics()
+      )
+      appendExclusionsToContext(copied)
+      return copied
+   }
+
+   /**
+    * Returns a QueryContext, with only the provided facts.
+    * Use this overload when the FactBag has been derived from a shared FactBag (eg., a PersistentFactBag),
+    * to avoid copying the facts.
+    * All other parameters (queryEngine, schema, etc) are retained
+    */
+   fun only(facts: FactBag, inheritParent: Boolean = true): QueryContext {
+      val parent = if (inheritParent) this else null
+      val copied = this.newSearchContext().copy(
+         facts = facts,
+         parent = parent,
+         vyneQueryStatistics = childStatistics()
       )
       appendExclusionsToContext(copied)
       return copied
    }
 
+   /**
+    * Statistics for a context derived from this one (eg., to project a row).
+    * Activity timings are shared, so that the timings of each row add up to the whole query.
+    */
+   private fun childStatistics() = VyneQueryStatistics(activityTimings = vyneQueryStatistics.activityTimings)
+
    fun only(): QueryContext {
       val copied = this.newSearchContext()
       appendExclusionsToContext(copied)
@@ -379,7 +411,7 @@ data class QueryContext(
       val copied = this.newSearchContext().copy(
          facts = CascadingFactBag(additionalFacts, this.facts),
          parent = this,
-         vyneQueryStatistics = VyneQueryStatistics()
+         vyneQueryStatistics = childStatistics()
       )
       appendExclusionsToContext(copied)
       return copied
@@ -564,11 +596,8 @@ class QueryContextEventBroker : QueryContextEventDispatcher {
    }
 
    override fun reportRemoteOperationInvoked(operation: OperationResult, queryId: String) {
-      StrategyPerformanceProfiler.profiled("reportRemoteOperationInvoked") {
-         handlers.filterIsInstance<RemoteCallOperationResultHandler>()
-            .forEach { it.recordResult(operation, queryId) }
-      }
-
+      handlers.filterIsInstance<RemoteCallOperationResultHandler>()
+         .forEach { it.recordResult(operation, queryId) }
    }
 
 }
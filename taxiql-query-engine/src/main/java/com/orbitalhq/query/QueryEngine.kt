@@ -1,6 +1,5 @@
 package com.orbitalhq.query
 
-import com.google.common.base.Stopwatch
 import com.orbitalhq.*
 import com.orbitalhq.models.*
 import com.orbitalhq.models.facts.ScopedFact
@@ -11,9 +10,8 @@ import com.orbitalhq.query.graph.operationInvocation.OperationInvocationService
 import com.orbitalhq.query.graph.operationInvocation.SearchRuntimeException
 import com.orbitalhq.query.projection.ProjectionProvider
 import com.orbitalhq.schemas.*
-import com.orbitalhq.utils.StrategyPerformanceProfiler
-import com.orbitalhq.utils.TimeBucketed
-import com.orbitalhq.utils.timeBucketAsync
+import com.orbitalhq.utils.EngineActivity
+import com.orbitalhq.utils.EngineInstrumentation
 import kotlinx.coroutines.*
 import kotlinx.coroutines.flow.*
 import lang.taxi.mutations.Mutation
@@ -523,6 +521,7 @@ class StatefulQueryEngine(
          queryId = context.queryId,
          clientQueryId = context.clientQueryId,
          statistics = queryResult.statistics,
+         activityTimings = queryResult.activityTimings,
          responseType = context.responseType,
          onCancelRequestHandler = { context.requestCancel() },
          schema = schema
@@ -572,7 +571,7 @@ class StatefulQueryEngine(
             if (resultsReceivedFromStrategy || !isActive || context.cancelRequested) {
                break
             }
-            val stopwatch = Stopwatch.createStarted()
+            val strategyStart = EngineInstrumentation.startTimer()
             logger.debug { "Attempting strategy ${queryStrategy::class.simpleName} to resolve ${target.description}" }
             val strategyResult =
                invokeStrategy(context, queryStrategy, target, InvocationConstraints(spec, excludedOperations))
@@ -581,7 +580,7 @@ class StatefulQueryEngine(
                strategyProvidedFlow = true
                strategyResult.matchedNodes
                   .onCompletion {
-                     StrategyPerformanceProfiler.record(queryStrategy::class.simpleName!!, stopwatch.elapsed())
+                     EngineInstrumentation.record(EngineActivity.QUERY_STRATEGY, strategyStart, context.vyneQueryStatistics.activityTimings)
                   }
                   .takeWhile { !context.cancelRequested }
                   .collectIndexed { _, value ->
@@ -608,7 +607,7 @@ class StatefulQueryEngine(
                   }
             } else {
                logger.debug("Strategy ${queryStrategy::class.simpleName} failed to resolve ${target.description}")
-               StrategyPerformanceProfiler.record(queryStrategy::class.simpleName!!, stopwatch.elapsed())
+               EngineInstrumentation.record(EngineActivity.QUERY_STRATEGY, strategyStart, context.vyneQueryStatistics.activityTimings)
             }
          }
 
@@ -705,6 +704,7 @@ class StatefulQueryEngine(
          clientQueryId = context.clientQueryId,
          anonymousTypes = target.anonymousTypes(),
          statistics = statisticsFlow,
+         activityTimings = context.vyneQueryStatistics.activityTimings,
          responseType = context.responseType,
          onCancelRequestHandler = { context.requestCancel() },
          schema = schema
@@ -739,28 +739,11 @@ class StatefulQueryEngine(
       target: QuerySpecTypeNode,
       invocationConstraints: InvocationConstraints
    ): QueryStrategyResult {
-      val sw = Stopwatch.createStarted()
-      val result =
-         timeBucketAsync("Call ${queryStrategy::class.simpleName} for target ${target.type.name.shortDisplayName}") {
-            queryStrategy.invoke(
-               setOf(target),
-               context,
-               invocationConstraints
-            )
-         }
-      val bucket = TimeBucketed.DEFAULT
-      val successful = if (result.hasMatchesNodes()) {
-         "Success"
-      } else {
-         "Failed"
-      }
-      val name = "Query Strategy ${queryStrategy::class.simpleName} - $successful"
-      bucket.addActivity(name, sw.elapsed())
-      val detailedName =
-         "Invoke Query Strategy ${queryStrategy::class.simpleName} for target ${target.type.name.shortDisplayName} - $successful"
-      bucket.addActivity(detailedName, sw.elapsed())
-      return result
-
+      return queryStrategy.invoke(
+         setOf(target),
+         context,
+         invocationConstraints
+      )
    }
 }
 
@@ -5,6 +5,7 @@ import com.orbitalhq.VyneCacheConfiguration
 import com.orbitalhq.models.format.ModelFormatSpec
 import com.orbitalhq.query.connectors.OperationInvoker
 import com.orbitalhq.query.graph.EdgeNavigator
+import com.orbitalhq.query.graph.GraphSearchPlanCache
 import com.orbitalhq.query.graph.HipsterDiscoverGraphQueryStrategy
 import com.orbitalhq.query.graph.edges.ArrayMappingAttributeEvaluator
 import com.orbitalhq.query.graph.edges.AttributeOfEdgeEvaluator
@@ -75,11 +76,12 @@ interface QueryEngineFactory {
          vyneCacheConfiguration: VyneCacheConfiguration,
          invokers: List<OperationInvoker>,
          formatSpecs:List<ModelFormatSpec> = emptyList(),
-         projectionProvider: ProjectionProvider = LocalProjectionProvider()): QueryEngineFactory {
+         projectionProvider: ProjectionProvider = LocalProjectionProvider(),
+         searchPlanCache: GraphSearchPlanCache? = null): QueryEngineFactory {
          val invocationService = operationInvocationService(invokers)
          val opInvocationEvaluator = OperationInvocationEvaluator(invocationService)
          val edgeEvaluator = EdgeNavigator(edgeEvaluators(opInvocationEvaluator))
-         val graphQueryStrategy = HipsterDiscoverGraphQueryStrategy(edgeEvaluator, vyneCacheConfiguration)
+         val graphQueryStrategy = HipsterDiscoverGraphQueryStrategy(edgeEvaluator, vyneCacheConfiguration, searchPlanCache)
 
          return DefaultQueryEngineFactory(
             strategies = listOf(
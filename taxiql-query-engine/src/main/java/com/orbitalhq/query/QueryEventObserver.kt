@@ -2,6 +2,8 @@ package com.orbitalhq.query
 
 import com.orbitalhq.models.TypedInstance
 import com.orbitalhq.schemas.Type
+import com.orbitalhq.utils.ActivityTimingSummary
+import com.orbitalhq.utils.EngineActivity
 import lang.taxi.query.TaxiQLQueryString
 import java.time.Instant
 
@@ -56,7 +58,11 @@ data class QueryCompletedEvent(
    val query: TaxiQLQueryString,
    val clientQueryId: String?,
    val message: String,
-   val recordCount: Int = 0
+   val recordCount: Int = 0,
+   /**
+    * Time spent in engine activities by the query
+    */
+   val activityTimings: Map<EngineActivity, ActivityTimingSummary> = emptyMap()
 ) : QueryEvent()
 
 data class TaxiQlQueryExceptionEvent(
@@ -22,6 +22,8 @@ data class QueryResponseMessage(
       fun error(message:String) = QueryResponseMessage(null, QueryResponseMessageKind.ERROR, message)
       fun singleResult(payload:Any?) = QueryResponseMessage(payload, QueryResponseMessageKind.RESULT)
       fun streamResult(payload: Any?) = QueryResponseMessage(payload, QueryResponseMessageKind.STREAM_MESSAGE)
+      fun streamFrame(frame: Any) = QueryResponseMessage(frame, QueryResponseMessageKind.STREAM_FRAME)
+      fun schemaRequired(sourcePackageHash: String) = QueryResponseMessage(null, QueryResponseMessageKind.SCHEMA_REQUIRED, sourcePackageHash)
    }
    enum class QueryResponseMessageKind(val isFinalMessage: Boolean) {
       /**
@@ -29,6 +31,12 @@ data class QueryResponseMessage(
        */
       STREAM_MESSAGE(false),
 
+      /**
+       * A compressed frame containing multiple messages within the stream.
+       * There may be more frames to come.
+       */
+      STREAM_FRAME(false),
+
       /**
        * The stream has completed, there are no more results
        */
@@ -42,8 +50,14 @@ data class QueryResponseMessage(
       /**
        * The query has failed.
        */
-      ERROR(true)
+      ERROR(true),
 
+      /**
+       * The query node doesn't have the schema referenced in the query message,
+       * and needs the query resent with the sources included.
+       * The message contains the hash of the requested schema.
+       */
+      SCHEMA_REQUIRED(false)
 
    }
 }
@@ -9,6 +9,7 @@ import com.orbitalhq.models.TypedInstanceConverter
 import com.orbitalhq.schemas.QualifiedName
 import com.orbitalhq.schemas.Schema
 import com.orbitalhq.schemas.Type
+import com.orbitalhq.utils.ActivityTimings
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableSharedFlow
 import kotlinx.coroutines.flow.map
@@ -29,6 +30,12 @@ data class QueryResult(
    override val queryId: String,
    @field:JsonIgnore // we send a lightweight version below
    val statistics: MutableSharedFlow<VyneQueryStatistics>? = null,
+   /**
+    * Time spent in engine activities by the whole query, including every projected row.
+    * Complete once the results have completed.
+    */
+   @field:JsonIgnore
+   val activityTimings: ActivityTimings? = null,
    override val responseType: String? = null,
 
    @field:JsonIgnore
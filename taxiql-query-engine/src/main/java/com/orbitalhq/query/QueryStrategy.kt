@@ -6,7 +6,6 @@ import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.emptyFlow
 import kotlinx.coroutines.flow.flowOf
 import kotlinx.coroutines.flow.toList
-import kotlinx.coroutines.runBlocking
 
 data class QueryStrategyResult(
    // This needs to be nullable at the moment because we use the
@@ -29,11 +28,11 @@ data class QueryStrategyResult(
    }
 
    /**
-    * Consumes the flow (destructively, in a blocking call).
+    * Consumes the flow (destructively).
     * Really, only useful for debugging.
     */
-   fun consumeFlow():List<TypedInstance> {
-      return runBlocking { matchedNodes.toList() }
+   suspend fun consumeFlow():List<TypedInstance> {
+      return matchedNodes.toList()
    }
 
    companion object {
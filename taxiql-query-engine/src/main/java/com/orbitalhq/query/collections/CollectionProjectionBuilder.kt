@@ -10,7 +10,6 @@ import com.orbitalhq.schemas.taxi.toVyneType
 import kotlinx.coroutines.flow.asFlow
 import kotlinx.coroutines.flow.flatMapConcat
 import kotlinx.coroutines.flow.toList
-import kotlinx.coroutines.runBlocking
 import lang.taxi.accessors.CollectionProjectionExpressionAccessor
 import lang.taxi.types.Arrays
 import kotlin.reflect.KClass
@@ -56,7 +55,10 @@ class CollectionProjectionBuilder(val queryContext: QueryContext) :
       } ?: emptyList()
 
       val targetMemberType = targetType.collectionType ?: targetType
-      val buildResults = runBlocking {
+      // AccessorHandlers are synchronous, so building the members is deferred until the
+      // objectFactory can suspend.
+      val buildKey = CollectionProjectionKey(targetMemberType.paramaterizedName, collectionToIterate, additionalScopeFacts)
+      val buildResults = objectFactory.discover(buildKey) {
          collectionToIterate.asFlow()
             .flatMapConcat { collectionMember ->
                queryContext.only(listOf(collectionMember) + additionalScopeFacts)
@@ -68,5 +70,10 @@ class CollectionProjectionBuilder(val queryContext: QueryContext) :
       return builtCollection
    }
 
+   private data class CollectionProjectionKey(
+      val memberTypeName: String,
+      val collection: List<TypedInstance>,
+      val additionalScopeFacts: List<TypedInstance>
+   )
 
 }
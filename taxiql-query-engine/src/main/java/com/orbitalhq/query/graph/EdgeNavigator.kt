@@ -1,11 +1,11 @@
 package com.orbitalhq.query.graph
 
-import com.google.common.base.Stopwatch
 import com.orbitalhq.query.QueryContext
 import com.orbitalhq.query.graph.edges.EdgeEvaluator
 import com.orbitalhq.query.graph.edges.EvaluatableEdge
 import com.orbitalhq.query.graph.edges.EvaluatedEdge
-import com.orbitalhq.utils.StrategyPerformanceProfiler
+import com.orbitalhq.utils.EngineActivity
+import com.orbitalhq.utils.EngineInstrumentation
 
 class EdgeNavigator(linkEvaluators: List<EdgeEvaluator>) {
    private val evaluators = linkEvaluators.associateBy { it.relationship }
@@ -14,9 +14,8 @@ class EdgeNavigator(linkEvaluators: List<EdgeEvaluator>) {
       val relationship = edge.relationship
       val evaluator = evaluators[relationship]
          ?: error("No LinkEvaluator provided for relationship ${relationship.name}")
-      val sw = Stopwatch.createStarted()
-      val evaluationResult = evaluator.evaluate(edge, queryContext)
-       StrategyPerformanceProfiler.record("Hipster.evaluate.${evaluator.relationship}", sw.elapsed())
-      return evaluationResult
+      return EngineInstrumentation.timed(EngineActivity.EDGE_EVALUATION, queryContext.vyneQueryStatistics.activityTimings) {
+         evaluator.evaluate(edge, queryContext)
+      }
    }
 }
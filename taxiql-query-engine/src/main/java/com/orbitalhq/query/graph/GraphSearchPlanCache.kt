@@ -0,0 +1,138 @@
+package com.orbitalhq.query.graph
+
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
+import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.schemas.OperationNames
+import com.orbitalhq.schemas.QualifiedName
+import com.orbitalhq.schemas.Relationship
+import com.orbitalhq.schemas.RemoteOperation
+import com.orbitalhq.schemas.Schema
+import com.orbitalhq.schemas.Type
+import es.usc.citius.hipster.model.impl.WeightedNode
+import mu.KotlinLogging
+
+/**
+ * Remembers the paths which have resolved graph searches, so that later searches of the same shape
+ * (the same start type, known fact types and target, against the same schema) can evaluate those paths directly,
+ * rather than discovering them again.
+ *
+ * The types of all the known facts form part of the key, as the graph (and so the path found)
+ * depends on which facts were available to satisfy operation parameters.
+ *
+ * Unlike the caches held within HipsterDiscoverGraphQueryStrategy (which live as long as the strategy -
+ * typically a single query), this is intended to be shared across queries.
+ *
+ * Plans are held per schema.  However, as schemas are often retained for a while after they've been replaced,
+ * callers should also invalidateAll() when a new schema is published.
+ */
+class GraphSearchPlanCache(
+   private val maxPlansPerSchema: Long = 10_000L,
+   /**
+    * The number of distinct successful paths retained for each search.
+    */
+   private val maxPathsPerPlan: Int = 3
+) {
+   companion object {
+      private val logger = KotlinLogging.logger {}
+   }
+
+   /**
+    * The shape of a search - see SearchPlanKey.of()
+    */
+   data class SearchPlanKey(val startTypeName: String, val factTypeNames: Set<String>, val target: Element) {
+      companion object {
+         fun of(startType: Type, knownFacts: Collection<TypedInstance>, target: Element): SearchPlanKey {
+            return SearchPlanKey(
+               startType.paramaterizedName,
+               knownFacts.mapTo(mutableSetOf()) { it.type.paramaterizedName },
+               target
+            )
+         }
+      }
+   }
+
+   private val plansBySchema = CacheBuilder.newBuilder()
+      .weakKeys()
+      .build<Schema, Cache<SearchPlanKey, List<PlannedPath>>>()
+
+   private fun plans(schema: Schema): Cache<SearchPlanKey, List<PlannedPath>> {
+      return plansBySchema.get(schema) {
+         CacheBuilder.newBuilder()
+            .maximumSize(maxPlansPerSchema)
+            .build()
+      }
+   }
+
+   /**
+    * Returns the paths which have previously succeeded, most recent success first
+    */
+   fun getPlannedPaths(schema: Schema, key: SearchPlanKey): List<PlannedPath> {
+      return plans(schema).getIfPresent(key) ?: emptyList()
+   }
+
+   fun recordSuccess(schema: Schema, key: SearchPlanKey, path: WeightedNode<Relationship, Element, Double>) {
+      val plannedPath = PlannedPath.fromPath(path) ?: return
+      plans(schema).asMap().compute(key) { _, existingPaths ->
+         (listOf(plannedPath) + (existingPaths ?: emptyList()).filter { it != plannedPath })
+            .take(maxPathsPerPlan)
+      }
+   }
+
+   /**
+    * Removes a path which failed when replayed, so that it's not attempted first next time.
+    * (If the path is still the best option, it'll be rediscovered by a search, and recorded again)
+    */
+   fun recordFailure(schema: Schema, key: SearchPlanKey, plannedPath: PlannedPath) {
+      plans(schema).asMap().computeIfPresent(key) { _, existingPaths ->
+         existingPaths.filter { it != plannedPath }.ifEmpty { null }
+      }
+   }
+
+   fun invalidateAll() {
+      logger.debug { "Invalidating all graph search plans" }
+      plansBySchema.invalidateAll()
+   }
+}
+
+/**
+ * A path through the graph, independent of the instance that it starts from.
+ */
+data class PlannedPath(val steps: List<Pair<Relationship, Element>>) {
+   companion object {
+      /**
+       * Returns a PlannedPath for the path, or null if the path can't be reused from other start instances
+       * (ie., because it passes through other specific instances).
+       */
+      fun fromPath(path: WeightedNode<Relationship, Element, Double>): PlannedPath? {
+         val steps = path.path().drop(1).map { node -> node.action() to node.state() }
+         val traversesInstances = steps.any { (_, element) ->
+            element.elementType == ElementType.TYPE_INSTANCE && element.instanceValue != null
+         }
+         return if (traversesInstances) null else PlannedPath(steps)
+      }
+   }
+
+   fun toWeightedNode(start: Element): WeightedNode<Relationship, Element, Double> {
+      return steps.fold(WeightedNode<Relationship, Element, Double>(null, start, null, 0.0, 0.0, 0.0)) { previous, (relationship, element) ->
+         val cost = previous.cost + relationship.defaultCost
+         WeightedNode(previous, element, relationship, cost, 0.0, cost)
+      }
+   }
+
+   /**
+    * Indicates if this path invokes any of the excluded operations or services
+    */
+   fun invokesAnyOf(excludedOperations: Set<QualifiedName>, excludedServices: Set<QualifiedName>): Boolean {
+      if (excludedOperations.isEmpty() && excludedServices.isEmpty()) {
+         return false
+      }
+      return steps.any { (_, element) ->
+         val operation = element.instanceValue as? RemoteOperation
+         element.elementType == ElementType.OPERATION && (
+            (operation != null && excludedOperations.contains(operation.qualifiedName)) ||
+               excludedServices.contains(OperationNames.serviceName(element.valueAsQualifiedName()).fqn())
+            )
+      }
+   }
+}
@@ -19,7 +19,9 @@ import com.orbitalhq.schemas.QualifiedName
 import com.orbitalhq.schemas.Relationship
 import com.orbitalhq.schemas.RemoteOperation
 import com.orbitalhq.schemas.Type
-import com.orbitalhq.utils.StrategyPerformanceProfiler
+import com.orbitalhq.utils.ActivityTimings
+import com.orbitalhq.utils.EngineActivity
+import com.orbitalhq.utils.EngineInstrumentation
 import es.usc.citius.hipster.model.impl.WeightedNode
 import mu.KotlinLogging
 import java.util.concurrent.TimeUnit
@@ -31,7 +33,11 @@ class GraphSearcher(
    private val targetFact: Element,
    private val targetType: Type,
    private val graphBuilder: VyneGraphBuilder,
-   private val invocationConstraints: InvocationConstraints
+   private val invocationConstraints: InvocationConstraints,
+   /**
+    * Timings of the query this search is running for
+    */
+   private val activityTimings: ActivityTimings? = null
 ) {
 
    companion object {
@@ -201,14 +207,39 @@ class GraphSearcher(
    }
 
 
+   /**
+    * Evaluates paths which previously resolved searches of the same shape (see GraphSearchPlanCache),
+    * without searching the graph.
+    *
+    * Returns the result of the first path to succeed, along with the paths that failed.
+    */
+   suspend fun evaluatePlannedPaths(
+      plannedPaths: List<PlannedPath>,
+      queryId: String,
+      evaluator: PathEvaluator
+   ): Pair<SearchResult?, List<PlannedPath>> {
+      val failedPaths = mutableListOf<PlannedPath>()
+      val failedAttempts = mutableListOf<DataSource>()
+      plannedPaths.forEach { plannedPath ->
+         val path = plannedPath.toWeightedNode(startFact)
+         val evaluatedPath = evaluator(path)
+         val (pathEvaluatedSuccessfully, resultValue, errorMessage) = wasSuccessful(evaluatedPath)
+         if (pathEvaluatedSuccessfully && invocationConstraints.typedInstanceValidPredicate.isValid(resultValue)) {
+            logger.debug { "[$queryId] $searchDescription - planned path succeeded and returned instance of type ${resultValue?.typeName}" }
+            return SearchResult(resultValue, path, failedAttempts) to failedPaths
+         }
+         logger.debug { "[$queryId] $searchDescription - planned path failed - last error was $errorMessage" }
+         resultValue?.source?.let { failedAttempts.add(it) }
+         failedPaths.add(plannedPath)
+      }
+      return null to failedPaths
+   }
+
    private fun wasSuccessful(evaluatedPath: List<PathEvaluation>): Triple<Boolean, TypedInstance?, String?> {
       val lastEdge = evaluatedPath.last()
       val success = lastEdge is EvaluatedEdge && lastEdge.wasSuccessful
       val resultValue = if (success) {
-         StrategyPerformanceProfiler.profiled("Hipster.selectResultValue") {
-            selectResultValue(evaluatedPath)
-         }
-
+         selectResultValue(evaluatedPath)
       } else {
          // Even if the edge wasn't successful, operation invocations can return a TypedNull with details of their failure if an http operation failed.
          if (lastEdge.resultValue != null && lastEdge.resultValue is TypedNull) {
@@ -260,14 +291,15 @@ class GraphSearcher(
       excludedServices: Set<QualifiedName>,
       previouslyEvaluatedPaths: EvaluatedPathSet
    ): WeightedNode<Relationship, Element, Double>? {
-      val graphBuildResult = graphBuilder.build(facts, excludedOperations, excludedEdges, excludedServices)
+      val graphBuildResult = EngineInstrumentation.timed(EngineActivity.GRAPH_BUILD, activityTimings) {
+         graphBuilder.build(facts, excludedOperations, excludedEdges, excludedServices)
+      }
       logger.trace { """===================Query graph:========================
          | ${graphBuildResult.graph.displayGraphJson()}
          | ========================================================
       """.trimMargin() }
-      return StrategyPerformanceProfiler.profiled("findPath") {
-         val result = findPath(graphBuildResult.graph, previouslyEvaluatedPaths, FactBag.of(facts.toList(), graphBuilder.schema))
-         result
+      return EngineInstrumentation.timed(EngineActivity.GRAPH_SEARCH, activityTimings) {
+         findPath(graphBuildResult.graph, previouslyEvaluatedPaths, FactBag.of(facts.toList(), graphBuilder.schema))
       }
 
    }
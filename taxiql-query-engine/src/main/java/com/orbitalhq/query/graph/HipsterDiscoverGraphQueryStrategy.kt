@@ -59,7 +59,12 @@ private data class StrategyInvocationCacheKey(
 
 class HipsterDiscoverGraphQueryStrategy(
    private val edgeEvaluator: EdgeNavigator,
-   vyneCacheConfigration: VyneCacheConfiguration
+   vyneCacheConfigration: VyneCacheConfiguration,
+   /**
+    * If provided, paths which resolve searches are remembered across queries, and evaluated
+    * directly for later searches of the same shape.
+    */
+   private val searchPlanCache: GraphSearchPlanCache? = null
 ) : QueryStrategy {
 
    private val searchPathExclusionsCacheSize =
@@ -157,7 +162,8 @@ class HipsterDiscoverGraphQueryStrategy(
       invocationConstraints: InvocationConstraints
    ): QueryStrategyResult {
       val failedAttempts = mutableListOf<DataSource>()
-      val returnValue = context.rootAndScopedFacts()
+      val knownFacts = context.rootAndScopedFacts()
+      val returnValue = knownFacts
          .asFlow()
 
          //    .filter { it is TypedObject }
@@ -179,18 +185,40 @@ class HipsterDiscoverGraphQueryStrategy(
                targetElement,
                targetType,
                schemaGraphCache.get(context.schema),
-               invocationConstraints
+               invocationConstraints,
+               context.vyneQueryStatistics.activityTimings
             )
+            val excludedOperations = invocationConstraints.excludedOperations.plus(context.excludedOperations.map {
+               SearchGraphExclusion(
+                  "@Id",
+                  it
+               )
+            })
+            // Planned paths are only replayed at this point - ie., where discovery would otherwise search the graph
+            // from this fact (so not for facts excluded above), and only for the same set of known fact types.
+            val searchPlanKey = GraphSearchPlanCache.SearchPlanKey.of(fact.type, knownFacts, targetElement)
             val evaluatedPathTempMap = mutableListOf<PathEvaluation>()
+            val plannedResult = evaluatePlannedPaths(
+               searcher,
+               searchPlanKey,
+               context,
+               excludedOperations
+            ) { pathToEvaluate ->
+               val evaluations = evaluatePath(pathToEvaluate, context, startFact)
+               evaluatedPathTempMap.addAll(evaluations)
+               evaluations
+            }
+            if (plannedResult != null) {
+               failedAttempts.addAll(plannedResult.failedAttemptSources)
+               return@mapNotNull plannedResult.typedInstance
+            }
+            // Evaluations of replayed paths are kept alongside those from the search,
+            // so they're considered when excluding this fact from further searches (see below)
+
             val searchResult = searcher.search(
-               context.rootAndScopedFacts(),
+               knownFacts,
                context.excludedServices.toSet(),
-               invocationConstraints.excludedOperations.plus(context.excludedOperations.map {
-                  SearchGraphExclusion(
-                     "@Id",
-                     it
-                  )
-               }),
+               excludedOperations,
                context.queryId
             )
             { pathToEvaluate ->
@@ -224,15 +252,12 @@ class HipsterDiscoverGraphQueryStrategy(
             // Step 2 will fail, but the fact added in the previous step will be used as another start point
             // which leads to an infinite loop
             // so here we try to avoid that.
-            if (searchPathExclusionsCacheSize > 0 && searchResult.path == null && evaluatedPathTempMap.isNotEmpty()) {
-               val duplicatedFact = evaluatedPathTempMap
-                  .filter { it is EvaluatedEdge && it.edge.vertex1.elementType == ElementType.OPERATION && it.resultValue == fact }
-                  .map { it.resultValue }
-                  .firstOrNull()
-               if (duplicatedFact != null) {
-                  logger.info { "[${context.queryId}] duplicate $duplicatedFact" }
-                  searchPathExclusions[exclusionKey] = exclusionKey
-               }
+            if (searchPathExclusionsCacheSize > 0 && searchResult.path == null && producedDuplicateOf(fact, evaluatedPathTempMap)) {
+               logger.info { "[${context.queryId}] duplicate $fact" }
+               searchPathExclusions[exclusionKey] = exclusionKey
+            }
+            if (searchResult.path != null && searchResult.typedInstance != null) {
+               searchPlanCache?.recordSuccess(context.schema, searchPlanKey, searchResult.path)
             }
             failedAttempts.addAll(searchResult.failedAttemptSources)
             searchResult.typedInstance
@@ -249,6 +274,39 @@ class HipsterDiscoverGraphQueryStrategy(
       }
    }
 
+   /**
+    * Indicates if evaluating paths from the fact invoked an operation which returned the fact itself
+    */
+   private fun producedDuplicateOf(fact: TypedInstance, evaluations: List<PathEvaluation>): Boolean {
+      return evaluations.any { it is EvaluatedEdge && it.edge.vertex1.elementType == ElementType.OPERATION && it.resultValue == fact }
+   }
+
+   /**
+    * Evaluates the paths which resolved previous searches of the same shape, if any.
+    * Paths invoking excluded operations or services are skipped.
+    */
+   private suspend fun evaluatePlannedPaths(
+      searcher: GraphSearcher,
+      searchPlanKey: GraphSearchPlanCache.SearchPlanKey,
+      context: QueryContext,
+      excludedOperations: Set<SearchGraphExclusion<RemoteOperation>>,
+      evaluator: PathEvaluator
+   ): SearchResult? {
+      if (searchPlanCache == null) {
+         return null
+      }
+      val excludedOperationNames = excludedOperations.map { it.excludedValue.qualifiedName }.toSet()
+      val excludedServiceNames = context.excludedServices.excludedValues()
+      val plannedPaths = searchPlanCache.getPlannedPaths(context.schema, searchPlanKey)
+         .filter { !it.invokesAnyOf(excludedOperationNames, excludedServiceNames) }
+      if (plannedPaths.isEmpty()) {
+         return null
+      }
+      val (searchResult, failedPaths) = searcher.evaluatePlannedPaths(plannedPaths, context.queryId, evaluator)
+      failedPaths.forEach { searchPlanCache.recordFailure(context.schema, searchPlanKey, it) }
+      return searchResult
+   }
+
    private suspend fun evaluatePath(
       searchResult: WeightedNode<Relationship, Element, Double>,
       queryContext: QueryContext,
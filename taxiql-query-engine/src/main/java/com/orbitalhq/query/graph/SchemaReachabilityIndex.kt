@@ -0,0 +1,129 @@
+package com.orbitalhq.query.graph
+
+import com.google.common.cache.CacheBuilder
+import com.orbitalhq.schemas.Relationship
+import es.usc.citius.hipster.graph.GraphEdge
+
+/**
+ * An index of which elements of the base schema graph (ie., types and services, without any facts)
+ * can reach which other elements.
+ *
+ * Built once per schema by the VyneGraphBuilder, and shared by all the graphs built for searches
+ * (which add connections for the facts of the search, and remove excluded edges).
+ *
+ * Searches only ever penalise edges that have been evaluated (they're never removed), so whether a path
+ * exists is a property of the graph alone.  This allows SchemaPathFindingGraph to reject searches that can't
+ * succeed before running them.  Those searches are otherwise the most expensive, as every element
+ * reachable from the start is expanded.
+ *
+ * The index is built without any exclusions, so it may report that an element is reachable when
+ * excluded edges prevent it - but never the reverse.
+ */
+class SchemaReachabilityIndex(
+   baseConnections: Collection<GraphEdge<Element, Relationship>>,
+   maxCachedTargets: Long = 1000L
+) {
+   private val connections: Set<GraphEdge<Element, Relationship>> = baseConnections.toHashSet()
+   private val predecessors: Map<Element, List<Element>> = baseConnections.groupBy({ it.vertex2 }, { it.vertex1 })
+   private val elements: Set<Element> = baseConnections.flatMap { listOf(it.vertex1, it.vertex2) }.toHashSet()
+
+   private val elementsReachingTarget = CacheBuilder.newBuilder()
+      .maximumSize(maxCachedTargets)
+      .build<Element, Set<Element>>()
+
+   fun contains(element: Element): Boolean = elements.contains(element)
+
+   /**
+    * Returns the connections which aren't part of the base schema graph,
+    * (typically, those added for the facts of a search).
+    */
+   fun connectionsNotInIndex(connections: List<GraphEdge<Element, Relationship>>): List<GraphEdge<Element, Relationship>> {
+      return connections.filter { !this.connections.contains(it) }
+   }
+
+   /**
+    * Returns the elements of the base graph which have a path to the target.
+    */
+   fun elementsReaching(target: Element): Set<Element> {
+      return elementsReachingTarget.get(target) {
+         val visited = mutableSetOf<Element>()
+         val queue = ArrayDeque(listOf(target))
+         while (queue.isNotEmpty()) {
+            val element = queue.removeFirst()
+            predecessors[element]?.forEach { predecessor ->
+               if (visited.add(predecessor)) {
+                  queue.add(predecessor)
+               }
+            }
+         }
+         visited
+      }
+   }
+
+   /**
+    * Returns the reachability of elements within a graph built from the base schema graph,
+    * plus the provided connections.
+    */
+   fun forGraph(graphConnections: List<GraphEdge<Element, Relationship>>): GraphReachability {
+      val entryPoints = connectionsNotInIndex(graphConnections)
+         .map { it.vertex1 }
+         .filter { contains(it) }
+         .toSet()
+      return GraphReachability(this, entryPoints)
+   }
+}
+
+/**
+ * Reachability within a single search graph.
+ *
+ * Search graphs add connections to the base schema graph.  Where these start from an element of the base graph
+ * (an entry point), then base elements which can reach the entry point may also reach further than the
+ * index alone suggests, so need walking.
+ */
+class GraphReachability(
+   private val index: SchemaReachabilityIndex,
+   private val entryPoints: Set<Element>
+) {
+   /**
+    * Indicates if there's any possible path from the start to the target.
+    * If this returns false, a search will not find a path.  If it returns true, a search may still fail.
+    */
+   fun canReach(start: Element, target: Element, successors: (Element) -> List<Element>): Boolean {
+      if (start == target) {
+         return true
+      }
+      if (!index.contains(target)) {
+         // The target only exists within the facts of this graph, so we can't rule anything out.
+         return true
+      }
+      val elementsReachingTarget = index.elementsReaching(target)
+      val elementsReachingEntryPoints by lazy { entryPoints.map { index.elementsReaching(it) } }
+
+      val visited = mutableSetOf(start)
+      val queue = ArrayDeque(listOf(start))
+      while (queue.isNotEmpty()) {
+         val element = queue.removeFirst()
+         if (element == target) {
+            return true
+         }
+         if (index.contains(element)) {
+            if (elementsReachingTarget.contains(element)) {
+               return true
+            }
+            // Elements in the base graph can only reach the target via a connection that isn't in the base graph.
+            // If there are none reachable from here, there's no point walking further.
+            val canReachEntryPoint = entryPoints.contains(element) ||
+               elementsReachingEntryPoints.any { it.contains(element) }
+            if (!canReachEntryPoint) {
+               continue
+            }
+         }
+         successors(element).forEach { successor ->
+            if (visited.add(successor)) {
+               queue.add(successor)
+            }
+         }
+      }
+      return false
+   }
+}
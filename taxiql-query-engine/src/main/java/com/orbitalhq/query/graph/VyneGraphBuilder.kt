@@ -11,7 +11,6 @@ import com.orbitalhq.query.excludedValues
 import com.orbitalhq.query.graph.edges.EvaluatableEdge
 import com.orbitalhq.schemas.*
 import com.orbitalhq.utils.ImmutableEquality
-import com.orbitalhq.utils.StrategyPerformanceProfiler
 import es.usc.citius.hipster.graph.GraphEdge
 import es.usc.citius.hipster.graph.HipsterDirectedGraph
 import lang.taxi.services.OperationScope
@@ -171,6 +170,17 @@ class VyneGraphBuilder(
       .maximumSize(vyneGraphBuilderCache.baseSchemaGraphCacheSize) // arbitary, can tune later
       .build<Int, List<GraphConnection>>()
 
+   /**
+    * Reachability over the full base schema graph (ie., without exclusions), shared by all graphs
+    * built from this schema.
+    */
+   val reachabilityIndex: SchemaReachabilityIndex by lazy {
+      SchemaReachabilityIndex(
+         getBaseSchemaConnections(emptySet(), emptySet()),
+         vyneGraphBuilderCache.reachabilityCacheSize
+      )
+   }
+
    fun build(
       facts: Collection<TypedInstance>,
       excludedOperations: Set<QualifiedName> = emptySet(),
@@ -182,9 +192,7 @@ class VyneGraphBuilder(
       // Our base graph constructing from type and service definitions.
       val baseSchemaConnections = getBaseSchemaConnections(excludedOperations, excludedServices)
 
-      val connectionsForFacts = StrategyPerformanceProfiler.profiled("buildCreatedInstancesConnections") {
-         createdInstances(facts, schema)
-      }
+      val connectionsForFacts = createdInstances(facts, schema)
 
       val connections = baseSchemaConnections + connectionsForFacts
       return buildGraph(connections, excludedEdges)
@@ -197,11 +205,9 @@ class VyneGraphBuilder(
       excludedServices: Set<QualifiedName>
    ): List<GraphConnection> {
       return baseSchemaConnectionsCache.get(excludedOperations.hashCode()) {
-         StrategyPerformanceProfiler.profiled("getBaseSchemaConnections") {
-            val typeConnections = buildTypeConnections(schema)
-            val serviceConnections = buildServiceConnections(schema, excludedOperations, excludedServices)
-            typeConnections + serviceConnections
-         }
+         val typeConnections = buildTypeConnections(schema)
+         val serviceConnections = buildServiceConnections(schema, excludedOperations, excludedServices)
+         typeConnections + serviceConnections
       }
    }
 
@@ -215,26 +221,21 @@ class VyneGraphBuilder(
       connections: List<GraphConnection>,
       excludedEdges: List<EvaluatableEdge> = emptyList()
    ): GraphBuildResult {
-      val filteredFacts = StrategyPerformanceProfiler.profiled("buildGraph.filterExcludedEdges") {
-         if (excludedEdges.isEmpty()) {
-            connections
-         } else {
-            val excludedConnections = excludedEdges.map { it.connection }
-            connections.filter { !excludedConnections.contains(it) }
-         }
+      val filteredFacts = if (excludedEdges.isEmpty()) {
+         connections
+      } else {
+         val excludedConnections = excludedEdges.map { it.connection }
+         connections.filter { !excludedConnections.contains(it) }
       }
 
       return graphCache.get(cacheKeyForFacts(filteredFacts)) {
-         StrategyPerformanceProfiler.profiled("buildGraph") {
-            val timedValue = measureTimedValue {
-               val graph = createCachingGraph(filteredFacts)
-               // TODO : Waiting to see if we actually use GraphBuildResult anymore, if not, just return the graph here.
-               GraphBuildResult(graph, emptyList(), emptyList())
-            }
-            logger.debug { "Building graph for cache took ${timedValue.duration}" }
-            timedValue.value
-
+         val timedValue = measureTimedValue {
+            val graph = createCachingGraph(filteredFacts, reachabilityIndex)
+            // TODO : Waiting to see if we actually use GraphBuildResult anymore, if not, just return the graph here.
+            GraphBuildResult(graph, emptyList(), emptyList())
          }
+         logger.debug { "Building graph for cache took ${timedValue.duration}" }
+         timedValue.value
       }
    }
 
@@ -659,26 +660,24 @@ class VyneGraphBuilder(
       }
       if (value is TypedEnumValue) {
          val synonymConnections =
-            StrategyPerformanceProfiler.profiled("buildCreatedInstancesConnections.buildTypedValueEnums") {
-               value.synonyms.flatMap { synonym ->
-                  // Even though the synonymss are technically providedInstances,
-                  // We're not recursing into createProvidedInstances here as it would create a
-                  // stack overflow, pointing back to this synonym.
-                  // SO, just carefully add the links we care about.
-                  val synonymInstance = providedInstance(synonym)
-                  listOf(
-                     GraphConnection(
-                        providedInstance,
-                        synonymInstance,
-                        Relationship.IS_SYNONYM_OF
-                     ),
-                     GraphConnection(
-                        synonymInstance,
-                        parameter(synonym.typeName),
-                        Relationship.CAN_POPULATE
-                     )
+            value.synonyms.flatMap { synonym ->
+               // Even though the synonymss are technically providedInstances,
+               // We're not recursing into createProvidedInstances here as it would create a
+               // stack overflow, pointing back to this synonym.
+               // SO, just carefully add the links we care about.
+               val synonymInstance = providedInstance(synonym)
+               listOf(
+                  GraphConnection(
+                     providedInstance,
+                     synonymInstance,
+                     Relationship.IS_SYNONYM_OF
+                  ),
+                  GraphConnection(
+                     synonymInstance,
+                     parameter(synonym.typeName),
+                     Relationship.CAN_POPULATE
                   )
-               }
+               )
             }
          createdConnections.addAll(synonymConnections)
       }
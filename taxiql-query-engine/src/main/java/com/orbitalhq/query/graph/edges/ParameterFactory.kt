@@ -14,7 +14,6 @@ import com.orbitalhq.schemas.RemoteOperation
 import com.orbitalhq.schemas.Type
 import com.orbitalhq.utils.log
 import kotlinx.coroutines.flow.firstOrNull
-import kotlinx.coroutines.runBlocking
 import lang.taxi.types.PrimitiveType
 import java.util.concurrent.CopyOnWriteArrayList
 
@@ -88,33 +87,26 @@ class ParameterFactory {
 //      }
 
       // experiment: Are there any collections in the context we can iterate?
-      val builtFromCollection = context.facts.filter { it.type.isCollection }
-         .asSequence()
-         .mapNotNull { collection: TypedInstance ->
-            require(collection is TypedCollection) { "Expected to recieve a TypedCollection" }
-            var exceptionThrown = false
-            val built = collection
-               .takeWhile { !exceptionThrown }
-               .mapNotNull { member ->
-                  runBlocking {
-                     try {
-                        val memberOnlyQueryContext = context.only(member)
-                        val builtFromMember =
-                           attemptToConstruct(paramType.collectionType!!, memberOnlyQueryContext, operation, member)
-                        builtFromMember
-                     } catch (e: UnresolvedOperationParametersException) {
-                        exceptionThrown = true
-                        null
-                     }
-                  }
-               }
-            if (exceptionThrown) {
-               null
-            } else {
-               built
+      // Written as loops (rather than sequences) so that constructing members can suspend.
+      var builtFromCollection: List<TypedInstance>? = null
+      for (collection in context.facts.filter { it.type.isCollection }) {
+         require(collection is TypedCollection) { "Expected to recieve a TypedCollection" }
+         val built = mutableListOf<TypedInstance>()
+         var exceptionThrown = false
+         for (member in collection) {
+            try {
+               val memberOnlyQueryContext = context.only(member)
+               built.add(attemptToConstruct(paramType.collectionType!!, memberOnlyQueryContext, operation, member))
+            } catch (e: UnresolvedOperationParametersException) {
+               exceptionThrown = true
+               break
             }
          }
-         .firstOrNull()
+         if (!exceptionThrown) {
+            builtFromCollection = built
+            break
+         }
+      }
       if (builtFromCollection != null) {
          return TypedCollection.from(builtFromCollection, MixedSources)
       } else {
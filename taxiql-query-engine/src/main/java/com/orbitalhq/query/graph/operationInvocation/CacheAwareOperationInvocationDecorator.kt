@@ -2,17 +2,26 @@ package com.orbitalhq.query.graph.operationInvocation
 
 import com.google.common.cache.Cache
 import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.query.QueryContext
 import com.orbitalhq.query.QueryContextEventDispatcher
+import com.orbitalhq.query.NoOpQueryContextEventDispatcher
+import com.orbitalhq.query.QueryContextSchemaProvider
 import com.orbitalhq.query.connectors.OperationInvoker
 import com.orbitalhq.schemas.Parameter
 import com.orbitalhq.schemas.RemoteOperation
+import com.orbitalhq.schemas.Schema
 import com.orbitalhq.schemas.Service
-import com.orbitalhq.utils.StrategyPerformanceProfiler
+import com.orbitalhq.utils.EngineActivity
+import com.orbitalhq.utils.EngineInstrumentation
+import com.orbitalhq.utils.Ids
 import com.orbitalhq.utils.abbreviate
 import kotlinx.coroutines.*
 import kotlinx.coroutines.channels.actor
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.asFlow
 import kotlinx.coroutines.flow.catch
+import kotlinx.coroutines.flow.collectIndexed
+import kotlinx.coroutines.flow.count
 import kotlinx.coroutines.flow.onCompletion
 import kotlinx.coroutines.flow.onEach
 import kotlinx.coroutines.reactive.asFlow
@@ -21,6 +30,8 @@ import mu.KotlinLogging
 import reactor.core.publisher.Flux
 import java.time.Duration
 import java.time.Instant
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReference
 
 private val logger = KotlinLogging.logger {}
 
@@ -36,11 +47,22 @@ private val logger = KotlinLogging.logger {}
  * When multiple calls are received in parallel for the same operation, only one is executed, and
  * other concurrent requests wait until the result is received.
  *
+ * Responses larger than evictWhenResultSizeExceeds are not held in the actorCache.  If a serializedResultCache
+ * is provided, these are written there instead, and rehydrated on subsequent calls.
+ *
  */
 class CacheAwareOperationInvocationDecorator(
    private val invoker: OperationInvoker,
    val evictWhenResultSizeExceeds: Int = 10,
-   private val actorCache: Cache<String, CachingInvocationActor> = OperationCacheFactory.newCache()
+   private val actorCache: Cache<String, CachingInvocationActor> = OperationCacheFactory.newCache(),
+   /**
+    * See OperationCacheSettings.refreshAfterWrite
+    */
+   private val refreshAfterWrite: Duration? = null,
+   /**
+    * Optional second tier, for responses that are too large to hold in the actorCache.
+    */
+   private val serializedResultCache: SerializedOperationResultCache? = null
 ) :
    OperationInvoker {
 
@@ -71,6 +93,10 @@ class CacheAwareOperationInvocationDecorator(
       }
 
       val (key, params) = getCacheKeyAndParamMessage(service, operation, parameters, eventDispatcher, queryId)
+      getFromSerializedCache(key, eventDispatcher)?.let { records ->
+         params.recordElapsed(true)
+         return records.asFlow()
+      }
       val actor = actorCache.get(key) {
          buildActor(key, evictWhenResultSizeExceeds)
       }
@@ -82,6 +108,7 @@ class CacheAwareOperationInvocationDecorator(
       // This dropped the mean time in this class significantly
       actor.result?.let {
          params.recordElapsed(true)
+         refreshIfStale(key, actor, params)
          return it.asFlow()
       }
 
@@ -118,17 +145,86 @@ class CacheAwareOperationInvocationDecorator(
       }
    }
 
+   /**
+    * Large responses are only held in the serialized cache, so we only check there if
+    * the actorCache doesn't have an entry.
+    * Checks using the map view, which doesn't record stats, as the actorCache.get() which follows
+    * a miss here is the lookup that counts.
+    */
+   private fun getFromSerializedCache(key: String, eventDispatcher: QueryContextEventDispatcher): List<TypedInstance>? {
+      if (serializedResultCache == null || actorCache.asMap().containsKey(key)) {
+         return null
+      }
+      // Rehydrating requires the schema, which is available when we're called with the QueryContext
+      val schema = (eventDispatcher as? QueryContextSchemaProvider)?.schema ?: return null
+      return serializedResultCache.get(key, schema)
+   }
+
    private fun buildActor(key: String, evictWhenResultSizeExceeds: Int): CachingInvocationActor {
-      return CachingInvocationActor(key, invoker, evictWhenResultSizeExceeds)
+      return CachingInvocationActor(key, invoker, evictWhenResultSizeExceeds, serializedResultCache) { loadedActor ->
+         // The actor was weighed when it was added to the cache, before it had loaded anything.
+         // Replacing it with itself causes the cache to re-weigh it, now that the size of the result is known.
+         // Using replace() ensures we don't re-add entries that have been evicted in the meantime.
+         actorCache.asMap().replace(key, loadedActor, loadedActor)
+      }
+   }
+
+   /**
+    * If the actor's result is older than refreshAfterWrite, then loads a new actor in the background,
+    * and swaps it into the cache once it has loaded successfully.
+    * The current request (and any others until the refresh completes) is served the existing result.
+    * If the refresh fails, the existing result is kept, and the refresh is attempted again after refreshAfterWrite.
+    */
+   private fun refreshIfStale(key: String, actor: CachingInvocationActor, params: OperationInvocationParamMessage) {
+      val lastRefreshAttempt = actor.lastRefreshAttempt.get()
+      if (refreshAfterWrite == null || Duration.between(lastRefreshAttempt, Instant.now()) < refreshAfterWrite) {
+         return
+      }
+      // Only one caller wins the race to refresh
+      if (!actor.lastRefreshAttempt.compareAndSet(lastRefreshAttempt, Instant.now())) {
+         return
+      }
+      logger.debug { "Cached response for ${key.abbreviate()} is older than $refreshAfterWrite, so is being refreshed" }
+      val refreshedActor = buildActor(key, evictWhenResultSizeExceeds)
+      val refreshParams = params.forBackgroundRefresh()
+      refreshScope.launch {
+         try {
+            refreshedActor.send(refreshParams)
+            // The result flux is lazy, so needs collecting to trigger the load
+            val recordCount = refreshParams.deferred.await().count()
+            if (recordCount > evictWhenResultSizeExceeds) {
+               // Too large to replay from the actorCache (same as when loading for a query).
+               // If there's a serializedResultCache, the refreshed response has been written there.
+               actorCache.asMap().remove(key, actor)
+            } else {
+               // Using replace() ensures we don't re-add entries that have been evicted in the meantime.
+               actorCache.asMap().replace(key, actor, refreshedActor)
+            }
+         } catch (e: Exception) {
+            logger.info { "Refreshing cached response for ${key.abbreviate()} failed, so the existing response will continue to be served - ${e::class.simpleName} ${e.message}" }
+         }
+      }
    }
 
    companion object {
+      private val refreshScope = CoroutineScope(Dispatchers.IO + SupervisorJob())
+
       fun decorateAll(
          invokers: List<OperationInvoker>,
          evictWhenResultSizeExceeds: Int = 10,
-         operationCache: Cache<String, CachingInvocationActor> = OperationCacheFactory.newCache()
+         operationCache: Cache<String, CachingInvocationActor> = OperationCacheFactory.newCache(),
+         refreshAfterWrite: Duration? = null,
+         serializedResultCache: SerializedOperationResultCache? = null
       ): List<OperationInvoker> {
-         return invokers.map { CacheAwareOperationInvocationDecorator(it, evictWhenResultSizeExceeds, operationCache) }
+         return invokers.map {
+            CacheAwareOperationInvocationDecorator(
+               it,
+               evictWhenResultSizeExceeds,
+               operationCache,
+               refreshAfterWrite,
+               serializedResultCache
+            )
+         }
       }
 
       private fun getCacheKeyAndParamMessage(
@@ -167,8 +263,33 @@ class CacheAwareOperationInvocationDecorator(
 class CachingInvocationActor(
    private val cacheKey: String,
    private val invoker: OperationInvoker,
-   private val evictWhenResultSizeExceeds: Int
+   private val evictWhenResultSizeExceeds: Int,
+   /**
+    * If provided, responses which exceed evictWhenResultSizeExceeds are written here
+    */
+   private val serializedResultCache: SerializedOperationResultCache? = null,
+   /**
+    * Called once the underlying service has completed emitting results
+    */
+   private val onResultLoaded: (CachingInvocationActor) -> Unit = {}
 ) {
+   val createdAt: Instant = Instant.now()
+
+   /**
+    * When this actor's result was loaded, or when it was last attempted to be refreshed.
+    * Used to ensure only a single refresh is in flight, and that failed refreshes aren't retried on every call.
+    */
+   val lastRefreshAttempt = AtomicReference(createdAt)
+
+   private val estimatedSize = AtomicLong(0)
+
+   /**
+    * Estimated size of the cached response.
+    * Note that only the first evictWhenResultSizeExceeds records are retained for replay,
+    * so only those are counted.
+    */
+   val estimatedSizeBytes: Long
+      get() = estimatedSize.get()
 
    // We use a Flux here, instead of a flow, as Fluxes have the concept of a shareable / replayable flux, which
    // also terminates.  A sharedFlow never terminates, so is not a suitable replacement.
@@ -219,6 +340,11 @@ class CachingInvocationActor(
       // caching (not supported in Flow).
       // So we have to do our deferred flux work on the current coroutine context.
       val context = currentCoroutineContext()
+      // The first records are retained (in the flux cache) regardless, so we only start serializing once
+      // the response is too large to be held on-heap.
+      val firstRecords = mutableListOf<TypedInstance>()
+      val serializedResultWriter = serializedResultCache?.newWriter()
+      var recordCount = 0
       return Flux.create<TypedInstance> { sink ->
          CoroutineScope(context).async {
             try {
@@ -227,11 +353,28 @@ class CachingInvocationActor(
                      logger.info { "Operation with cache key ${cacheKey.abbreviate()} failed with exception ${exception::class.simpleName} ${exception.message}.  This operation with params will not be attempted again.  Future attempts will have this error replayed" }
                      sink.error(exception)
                   }
-                  .onCompletion {
+                  .onCompletion { exception ->
                      sink.complete()
+                     if (exception == null) {
+                        if (serializedResultWriter != null && recordCount > evictWhenResultSizeExceeds && !serializedResultWriter.isAbandoned) {
+                           serializedResultCache!!.put(cacheKey, serializedResultWriter)
+                        }
+                        onResultLoaded(this@CachingInvocationActor)
+                     }
                   }
-                  .collect {
-                     sink.next(it)
+                  .collectIndexed { index, value ->
+                     recordCount = index + 1
+                     if (index < evictWhenResultSizeExceeds) {
+                        estimatedSize.addAndGet(TypedInstanceSizeEstimator.estimateSizeBytes(value))
+                        serializedResultWriter?.let { firstRecords.add(value) }
+                     } else if (serializedResultWriter != null) {
+                        if (index == evictWhenResultSizeExceeds) {
+                           firstRecords.forEach { serializedResultWriter.append(it) }
+                           firstRecords.clear()
+                        }
+                        serializedResultWriter.append(value)
+                     }
+                     sink.next(value)
                   }
             } catch (exception: Exception) {
                logger.error(exception) { "An exception was thrown inside the invoker (${invoker::class.simpleName} calling ${operation.name})" }
@@ -258,20 +401,34 @@ data class OperationInvocationParamMessage(
    val eventDispatcher: QueryContextEventDispatcher,
    val queryId: String
 ) {
-   fun recordElapsed(wasFromCache: Boolean) {
-      if (wasFromCache) {
-         StrategyPerformanceProfiler.record(
-            "CacheAwareOperationInvocationDecorator.Load from cache",
-            Duration.between(requestTime, Instant.now())
-         )
+   /**
+    * Returns a copy of these params for refreshing a cached response in the background.
+    * The refresh isn't part of the query that triggered it (which may well have completed by the time
+    * the refresh runs), so uses a detached event dispatcher and query id.
+    */
+   fun forBackgroundRefresh(): OperationInvocationParamMessage {
+      val schema = (eventDispatcher as? QueryContextSchemaProvider)?.schema
+      val detachedDispatcher = if (schema != null) {
+         BackgroundRefreshEventDispatcher(schema)
       } else {
-         StrategyPerformanceProfiler.record(
-            "CacheAwareOperationInvocationDecorator.Load from remote service",
-            Duration.between(requestTime, Instant.now())
-         )
+         NoOpQueryContextEventDispatcher
       }
+      return OperationInvocationParamMessage(service, operation, parameters, detachedDispatcher, Ids.id("cache-refresh-"))
    }
 
-   val requestTime = Instant.now()
+   fun recordElapsed(wasFromCache: Boolean) {
+      val activity = if (wasFromCache) EngineActivity.OPERATION_CACHE_HIT else EngineActivity.OPERATION_INVOCATION
+      val queryTimings = (eventDispatcher as? QueryContext)?.vyneQueryStatistics?.activityTimings
+      EngineInstrumentation.record(activity, requestStart, queryTimings)
+   }
+
+   private val requestStart = EngineInstrumentation.startTimer()
    val deferred = CompletableDeferred<Flow<TypedInstance>>()
 }
+
+/**
+ * Event dispatcher for background refreshes, which aren't part of a query.
+ * Provides the schema (which some invokers require), but otherwise discards events.
+ */
+private class BackgroundRefreshEventDispatcher(override val schema: Schema) : QueryContextEventDispatcher by NoOpQueryContextEventDispatcher,
+   QueryContextSchemaProvider
@@ -2,38 +2,126 @@ package com.orbitalhq.query.graph.operationInvocation
 
 import com.google.common.cache.Cache
 import com.google.common.cache.CacheBuilder
+import com.google.common.cache.RemovalCause
 import com.orbitalhq.schemas.CachingStrategy
 import com.orbitalhq.schemas.GlobalSharedCache
 import com.orbitalhq.schemas.NamedCache
 import com.orbitalhq.schemas.QueryScopedCache
 import com.orbitalhq.utils.abbreviate
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics
 import mu.KotlinLogging
+import java.util.*
 import java.util.concurrent.ConcurrentHashMap
 
-class OperationCacheFactory {
+class OperationCacheFactory(
+   private val config: OperationCacheConfig = OperationCacheConfig(),
+   /**
+    * If provided, long-lived caches publish hit / miss / eviction / load time metrics,
+    * tagged with the name of the cache.
+    */
+   private val meterRegistry: MeterRegistry? = null
+) {
 
    companion object {
       private val logger = KotlinLogging.logger {}
       private val globalCacheName = "GLOBAL"
 
-      fun newCache(): Cache<String, CachingInvocationActor> {
-         return CacheBuilder.newBuilder()
+      fun newCache(settings: OperationCacheSettings = OperationCacheSettings()): Cache<String, CachingInvocationActor> {
+         val builder = CacheBuilder.newBuilder()
+            .recordStats()
             .removalListener<String, CachingInvocationActor> { notification ->
-               logger.info { "Caching operation invoker removing entry for ${notification.key?.abbreviate()} for reason ${notification.cause}" }
+               if (notification.cause == RemovalCause.REPLACED) {
+                  // Entries are replaced when they finish loading, in order to be re-weighed
+                  logger.debug { "Caching operation invoker replaced entry for ${notification.key?.abbreviate()}" }
+               } else {
+                  logger.info { "Caching operation invoker removing entry for ${notification.key?.abbreviate()} for reason ${notification.cause}" }
+               }
             }
-            .build<String, CachingInvocationActor>()
+         when {
+            settings.maxWeightBytes != null -> builder
+               .maximumWeight(settings.maxWeightBytes)
+               .weigher<String, CachingInvocationActor> { key, actor ->
+                  // Keys can be large, so include them
+                  (key.length + actor.estimatedSizeBytes).coerceAtMost(Int.MAX_VALUE.toLong()).toInt()
+               }
+
+            settings.maxEntries != null -> builder.maximumSize(settings.maxEntries)
+         }
+         settings.expireAfterWrite?.let { builder.expireAfterWrite(it) }
+         return builder.build<String, CachingInvocationActor>()
       }
    }
 
    private val caches = ConcurrentHashMap<String, Cache<String, CachingInvocationActor>>()
    fun getCache(strategy: CachingStrategy): Cache<String, CachingInvocationActor> {
       return when (strategy) {
-         is QueryScopedCache -> newCache()
-         is GlobalSharedCache -> caches.getOrPut(globalCacheName) { newCache() }
+         is QueryScopedCache -> newCache(config.defaults)
+         is GlobalSharedCache -> caches.getOrPut(globalCacheName) { newMonitoredCache(globalCacheName) }
          is NamedCache -> caches.getOrPut(strategy.name) {
             logger.info { "Creating new cache ${strategy.name}" }
-            newCache()
+            newMonitoredCache(strategy.name)
+         }
+      }
+   }
+
+   fun getSettings(strategy: CachingStrategy): OperationCacheSettings {
+      return when (strategy) {
+         is QueryScopedCache -> config.defaults
+         is GlobalSharedCache -> config.settingsFor(globalCacheName)
+         is NamedCache -> config.settingsFor(strategy.name)
+      }
+   }
+
+   private val serializedCaches = ConcurrentHashMap<String, Optional<SerializedOperationResultCache>>()
+
+   /**
+    * Returns the serialized (off-heap) tier for the cache, or null if the tier
+    * is not enabled for this cache.
+    * Query scoped caches never have a serialized tier.
+    */
+   fun getSerializedResultCache(strategy: CachingStrategy): SerializedOperationResultCache? {
+      val cacheName = when (strategy) {
+         is QueryScopedCache -> return null
+         is GlobalSharedCache -> globalCacheName
+         is NamedCache -> strategy.name
+      }
+      return serializedCaches.getOrPut(cacheName) {
+         Optional.ofNullable(newSerializedCache(cacheName))
+      }.orElse(null)
+   }
+
+   private fun newSerializedCache(cacheName: String): SerializedOperationResultCache? {
+      val settings = config.settingsFor(cacheName)
+      val maxBytes = settings.serializedTierMaxBytes ?: return null
+      val storage = settings.serializedTierDirectory?.let { MemoryMappedFileStorage(it.resolve(cacheName)) }
+         ?: DirectBufferStorage
+      logger.info { "Creating serialized tier for cache $cacheName, with max size of $maxBytes bytes" }
+      val serializedCache = SerializedOperationResultCache(
+         maxBytes,
+         settings.serializedTierMaxRecords,
+         storage,
+         settings.expireAfterWrite
+      )
+      if (meterRegistry != null) {
+         GuavaCacheMetrics.monitor(meterRegistry, serializedCache.cache, "$cacheName-serialized")
+      }
+      return serializedCache
+   }
+
+   private fun newMonitoredCache(cacheName: String): Cache<String, CachingInvocationActor> {
+      val cache = newCache(config.settingsFor(cacheName))
+      if (meterRegistry != null) {
+         GuavaCacheMetrics.monitor(meterRegistry, cache, cacheName)
+         Gauge.builder("vyne.operation.cache.weight", cache) { monitoredCache ->
+            monitoredCache.asMap().values.sumOf { it.estimatedSizeBytes }.toDouble()
          }
+            .tag("cache", cacheName)
+            .baseUnit("bytes")
+            .description("Estimated size of the responses held in the operation cache")
+            .register(meterRegistry)
       }
+      return cache
    }
 }
@@ -0,0 +1,63 @@
+package com.orbitalhq.query.graph.operationInvocation
+
+import java.nio.file.Path
+import java.time.Duration
+
+/**
+ * Sizing and expiry settings for a single operation cache.
+ *
+ * If both maxEntries and maxWeightBytes are set, maxWeightBytes takes precedence
+ * (the underlying cache only supports one bound).
+ */
+data class OperationCacheSettings(
+   /**
+    * Max number of distinct operation invocations (operation + params) held in the cache.
+    */
+   val maxEntries: Long? = 10_000L,
+   /**
+    * Max estimated size of the cached responses, in bytes.
+    * Responses are weighed once they have completed loading.
+    */
+   val maxWeightBytes: Long? = null,
+   /**
+    * Entries are evicted once they have been in the cache for this long.
+    */
+   val expireAfterWrite: Duration? = null,
+   /**
+    * Entries that have been in the cache for this long are reloaded from the underlying service
+    * by the first caller that requests them.  That caller (and any others until the reload has started)
+    * is served the existing cached value.
+    */
+   val refreshAfterWrite: Duration? = null,
+   /**
+    * Max size of the serialized (off-heap) tier of the cache, in bytes.
+    * Responses too large to be held on-heap (see CacheAwareOperationInvocationDecorator.evictWhenResultSizeExceeds)
+    * are written to this tier.  If null, the tier is disabled.
+    *
+    * Only applies to long-lived caches (GLOBAL and named caches).
+    */
+   val serializedTierMaxBytes: Long? = null,
+   /**
+    * Responses with more records than this are not written to the serialized tier.
+    */
+   val serializedTierMaxRecords: Int = 100_000,
+   /**
+    * If set, the serialized tier is held in memory-mapped files in this directory.
+    * Otherwise, it's held in direct (off-heap) memory.
+    */
+   val serializedTierDirectory: Path? = null
+)
+
+/**
+ * Configures the long-lived operation caches.
+ * Caches are configured by name (either the name of a NamedCache, or GLOBAL for the GlobalSharedCache),
+ * falling back to the defaults.
+ */
+data class OperationCacheConfig(
+   val defaults: OperationCacheSettings = OperationCacheSettings(),
+   val caches: Map<String, OperationCacheSettings> = emptyMap()
+) {
+   fun settingsFor(cacheName: String): OperationCacheSettings {
+      return caches[cacheName] ?: defaults
+   }
+}
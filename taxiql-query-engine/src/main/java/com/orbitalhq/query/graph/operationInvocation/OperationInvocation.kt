@@ -8,12 +8,12 @@ import com.orbitalhq.query.graph.edges.EvaluatableEdge
 import com.orbitalhq.query.graph.edges.EvaluatedEdge
 import com.orbitalhq.query.graph.edges.ParameterFactory
 import com.orbitalhq.schemas.*
-import com.orbitalhq.utils.StrategyPerformanceProfiler
+import com.orbitalhq.utils.EngineActivity
+import com.orbitalhq.utils.EngineInstrumentation
 import com.orbitalhq.utils.log
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.toList
 import mu.KotlinLogging
-import java.time.Duration
 import java.time.Instant
 
 private val logger = KotlinLogging.logger {}
@@ -45,7 +45,7 @@ class DefaultOperationInvocationService(
       val invoker = invokers.firstOrNull { it.canSupport(service, operation) }
          ?: throw IllegalArgumentException("No invokers found for Operation ${operation.name}")
 
-      val paramStart = Instant.now()
+      val paramStart = EngineInstrumentation.startTimer()
       val parameters = try {
          gatherParameters(operation.parameters, preferredParams, context, providedParamValues, operation)
       } catch (e:Exception) {
@@ -54,17 +54,14 @@ class DefaultOperationInvocationService(
       }
       val resolvedParams = ensureParametersSatisfyContracts(parameters, context)
       val validatedParams = resolvedParams
-      StrategyPerformanceProfiler.record(
-         "OperationInvocation.gatherParameters",
-         Duration.between(paramStart, Instant.now())
-      )
+      EngineInstrumentation.record(EngineActivity.OPERATION_PARAMETERS, paramStart, context.vyneQueryStatistics.activityTimings)
 
-      val startTime = Instant.now()
+      val invocationStart = EngineInstrumentation.startTimer()
       val result = invoker.invoke(service, operation, validatedParams, context, context.queryId)
-      StrategyPerformanceProfiler.record(
-         "OperationInvocationService.invoker.invoke",
-         Duration.between(startTime, Instant.now())
-      )
+      // CacheAwareOperationInvocationDecorator records its own timings, distinguishing cache hits from invocations
+      if (invoker !is CacheAwareOperationInvocationDecorator) {
+         EngineInstrumentation.record(EngineActivity.OPERATION_INVOCATION, invocationStart, context.vyneQueryStatistics.activityTimings)
+      }
 //       context.addOperationResult(edge, result, callArgs)
       return result
 
@@ -0,0 +1,215 @@
+package com.orbitalhq.query.graph.operationInvocation
+
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
+import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.models.serde.SerializableTypedInstance
+import com.orbitalhq.models.serde.toSerializable
+import com.orbitalhq.schemas.Schema
+import com.orbitalhq.utils.abbreviate
+import mu.KotlinLogging
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.time.Duration
+
+/**
+ * A second tier for operation caches, which holds responses in their serialized (CBOR) form,
+ * outside of the heap - either in direct buffers, or in memory-mapped files.
+ *
+ * The on-heap cache only holds responses of up to evictWhenResultSizeExceeds records, as the
+ * fully materialized TypedInstances are expensive to retain.  Larger responses (eg., reference data,
+ * such as currency or country tables) are written here instead, and rehydrated against the
+ * schema of the requesting query on a cache hit.
+ *
+ * Note that the DataSource of a rehydrated instance is only a reference to the original
+ * data source (see SerializableTypedInstance), so lineage of cached values is not available.
+ */
+class SerializedOperationResultCache(
+   maxBytes: Long,
+   /**
+    * Responses with more records than this are not cached.
+    */
+   val maxRecordsPerResult: Int = 100_000,
+   private val storage: SerializedResultStorage = DirectBufferStorage,
+   expireAfterWrite: Duration? = null,
+   /**
+    * Responses larger than this (serialized) are not cached.
+    * Responses are buffered on-heap while they're being written, so this also bounds that buffer.
+    * Defaults to the largest entry the cache will retain (entries heavier than a segment of
+    * the cache are evicted immediately).
+    */
+   val maxBytesPerResult: Long = maxBytes / 4
+) {
+   companion object {
+      private val logger = KotlinLogging.logger {}
+   }
+
+   val cache: Cache<String, StoredResult> = buildCache(maxBytes, expireAfterWrite)
+
+   private fun buildCache(maxBytes: Long, expireAfterWrite: Duration?): Cache<String, StoredResult> {
+      val builder = CacheBuilder.newBuilder()
+         .recordStats()
+         .maximumWeight(maxBytes)
+         .weigher<String, StoredResult> { _, result -> result.sizeBytes }
+         .removalListener<String, StoredResult> { notification ->
+            logger.debug { "Serialized operation cache removing entry for ${notification.key?.abbreviate()} for reason ${notification.cause}" }
+            notification.value?.release()
+         }
+      expireAfterWrite?.let { builder.expireAfterWrite(it) }
+      return builder.build()
+   }
+
+   val size: Long
+      get() = cache.size()
+
+   fun newWriter(): SerializedResultWriter = SerializedResultWriter(maxRecordsPerResult, maxBytesPerResult)
+
+   fun put(key: String, writer: SerializedResultWriter) {
+      val bytes = writer.toByteArrayOrNull() ?: return
+      cache.put(key, storage.store(bytes))
+   }
+
+   /**
+    * Returns the rehydrated response for the key, or null if not present.
+    *
+    * If the response can't be rehydrated against the provided schema (eg., because the schema has
+    * changed since it was cached), the entry is removed, and null is returned.
+    */
+   fun get(key: String, schema: Schema): List<TypedInstance>? {
+      val storedResult = cache.getIfPresent(key) ?: return null
+      return try {
+         storedResult.readRecords().map { SerializableTypedInstance.fromBytes(it).toTypedInstance(schema) }
+      } catch (e: Exception) {
+         logger.info { "Failed to rehydrate cached response for ${key.abbreviate()} - ${e::class.simpleName} ${e.message}.  The entry will be removed" }
+         cache.invalidate(key)
+         null
+      }
+   }
+
+   fun invalidateAll() {
+      cache.invalidateAll()
+   }
+}
+
+/**
+ * Incrementally serializes the records of a response, as they're emitted.
+ *
+ * Once more than maxRecords or maxBytes have been appended (or a record can't be serialized),
+ * the writer is abandoned, and the bytes written so far are discarded.
+ */
+class SerializedResultWriter(private val maxRecords: Int, maxBytes: Long = Long.MAX_VALUE) {
+   // ByteArrayOutputStream can't grow beyond the max array size
+   private val maxBytes = maxBytes.coerceAtMost(Int.MAX_VALUE.toLong() - 8)
+
+   private var buffer: ByteArrayOutputStream? = ByteArrayOutputStream()
+   private var output: DataOutputStream? = DataOutputStream(buffer)
+   private var recordCount = 0
+
+   val isAbandoned: Boolean
+      get() = output == null
+
+   fun append(instance: TypedInstance) {
+      val output = this.output ?: return
+      recordCount++
+      if (recordCount > maxRecords) {
+         abandon()
+         return
+      }
+      val bytes = try {
+         instance.toSerializable().toBytes()
+      } catch (e: Exception) {
+         logger.debug { "Response can't be cached in serialized form - ${e::class.simpleName} ${e.message}" }
+         abandon()
+         return
+      }
+      if (output.size().toLong() + Int.SIZE_BYTES + bytes.size > maxBytes) {
+         logger.debug { "Response exceeds $maxBytes bytes, so can't be cached in serialized form" }
+         abandon()
+         return
+      }
+      output.writeInt(bytes.size)
+      output.write(bytes)
+   }
+
+   private fun abandon() {
+      output = null
+      buffer = null
+   }
+
+   fun toByteArrayOrNull(): ByteArray? {
+      val output = this.output ?: return null
+      output.flush()
+      return buffer!!.toByteArray()
+   }
+
+   companion object {
+      private val logger = KotlinLogging.logger {}
+   }
+}
+
+/**
+ * A serialized response, held in a buffer outside the heap.
+ * Records are length-prefixed.
+ */
+class StoredResult(private val buffer: ByteBuffer, private val onRelease: () -> Unit = {}) {
+   val sizeBytes: Int = buffer.capacity()
+
+   fun readRecords(): List<ByteArray> {
+      // Use a duplicate, so concurrent readers don't share a position
+      val reader = buffer.duplicate()
+      reader.rewind()
+      val records = mutableListOf<ByteArray>()
+      while (reader.remaining() > 0) {
+         val record = ByteArray(reader.getInt())
+         reader.get(record)
+         records.add(record)
+      }
+      return records
+   }
+
+   fun release() = onRelease()
+}
+
+interface SerializedResultStorage {
+   fun store(bytes: ByteArray): StoredResult
+}
+
+/**
+ * Stores serialized responses in direct (off-heap) buffers.
+ * The memory is reclaimed once the buffer is garbage collected, after the entry is evicted.
+ */
+object DirectBufferStorage : SerializedResultStorage {
+   override fun store(bytes: ByteArray): StoredResult {
+      val buffer = ByteBuffer.allocateDirect(bytes.size)
+      buffer.put(bytes)
+      buffer.flip()
+      return StoredResult(buffer)
+   }
+}
+
+/**
+ * Stores serialized responses in memory-mapped files in the provided directory,
+ * allowing the OS to page them out to disk.
+ * Files are deleted when the entry is evicted.
+ */
+class MemoryMappedFileStorage(private val directory: Path) : SerializedResultStorage {
+   init {
+      Files.createDirectories(directory)
+   }
+
+   override fun store(bytes: ByteArray): StoredResult {
+      val file = Files.createTempFile(directory, "operation-cache", ".cbor")
+      val buffer = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE).use { channel ->
+         channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes.size.toLong())
+      }
+      buffer.put(bytes)
+      buffer.flip()
+      // The mapping remains valid after the file is deleted, until the buffer is garbage collected
+      return StoredResult(buffer) { Files.deleteIfExists(file) }
+   }
+}
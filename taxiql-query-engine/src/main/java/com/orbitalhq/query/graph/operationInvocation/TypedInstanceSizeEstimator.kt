@@ -0,0 +1,60 @@
+package com.orbitalhq.query.graph.operationInvocation
+
+import com.orbitalhq.models.StaticDataSource
+import com.orbitalhq.models.TypedCollection
+import com.orbitalhq.models.TypedEnumValue
+import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.models.TypedNull
+import com.orbitalhq.models.TypedObject
+import com.orbitalhq.models.TypedValue
+
+/**
+ * Provides a rough estimate of the retained heap size of a TypedInstance,
+ * used for weighing entries in the operation cache.
+ *
+ * This is deliberately cheap, rather than accurate.  Types and data sources
+ * are shared between instances, so are not counted.
+ */
+object TypedInstanceSizeEstimator {
+   private const val OBJECT_OVERHEAD = 16L
+   private const val REFERENCE_SIZE = 8L
+
+   // TypedObjects and TypedCollections generate their nodeId (a UUID string) when created
+   private const val NODE_ID_SIZE = 80L
+   private const val TYPED_INSTANCE_OVERHEAD = OBJECT_OVERHEAD + 3 * REFERENCE_SIZE + NODE_ID_SIZE
+
+   // Scalars only generate their nodeId when it's read (eg., by lineage), so it's not counted.
+   // Fields are the type, value, source, format / enum details, the lazy nodeId and the cached hash.
+   private const val SCALAR_OVERHEAD = OBJECT_OVERHEAD + 5 * REFERENCE_SIZE + 4L
+
+   fun estimateSizeBytes(instance: TypedInstance): Long {
+      return when (instance) {
+         is TypedObject -> TYPED_INSTANCE_OVERHEAD + instance.value.entries.sumOf { (key, value) ->
+            OBJECT_OVERHEAD + estimateValueSize(key) + estimateSizeBytes(value)
+         }
+
+         is TypedCollection -> TYPED_INSTANCE_OVERHEAD + instance.value.sumOf { REFERENCE_SIZE + estimateSizeBytes(it) }
+         // Enum values are shared from the schema when their source is static.
+         // Otherwise, a copy is created carrying the source.
+         is TypedEnumValue -> if (instance.source is StaticDataSource) REFERENCE_SIZE else SCALAR_OVERHEAD
+         is TypedNull -> SCALAR_OVERHEAD
+         is TypedValue -> if (TypedValue.isInternable(instance.value, instance.source, instance.format)) {
+            REFERENCE_SIZE
+         } else {
+            SCALAR_OVERHEAD + estimateValueSize(instance.value)
+         }
+
+         else -> TYPED_INSTANCE_OVERHEAD + estimateValueSize(instance.value)
+      }
+   }
+
+   private fun estimateValueSize(value: Any?): Long {
+      return when (value) {
+         null -> 0L
+         is String -> OBJECT_OVERHEAD + 24L + value.length.toLong()
+         is Boolean -> 0L
+         is Number -> OBJECT_OVERHEAD + 16L
+         else -> OBJECT_OVERHEAD + 32L
+      }
+   }
+}
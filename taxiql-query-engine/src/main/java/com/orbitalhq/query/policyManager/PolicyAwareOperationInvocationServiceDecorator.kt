@@ -57,7 +57,7 @@ class PolicyAwareOperationInvocationServiceDecorator(private val operationServic
       return TypedObject(typedObject.type, processedAttributes, typedObject.source)
    }
 */
-   private fun applyPolicyInstruction(
+   private suspend fun applyPolicyInstruction(
       value: TypedInstance,
       context: QueryContext,
       executionScope: ExecutionScope
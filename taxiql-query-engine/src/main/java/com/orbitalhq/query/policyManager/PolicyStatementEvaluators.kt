@@ -6,7 +6,6 @@ import com.orbitalhq.query.QueryContext
 import com.orbitalhq.query.TypeNameQueryExpression
 import com.orbitalhq.utils.log
 import kotlinx.coroutines.flow.Flow
-import kotlinx.coroutines.runBlocking
 import lang.taxi.policies.*
 
 
@@ -16,45 +15,33 @@ class PolicyStatementEvaluator(private val evaluators: List<ConditionalPolicySta
       private val defaultEvaluators = listOf(ElseConditionEvaluator(), CaseConditionEvaluator())
    }
 
-   private fun evaluate(statement: PolicyStatement, instance: TypedInstance, context: QueryContext): Instruction? {
+   private suspend fun evaluate(statement: PolicyStatement, instance: TypedInstance, context: QueryContext): Instruction? {
       return evaluators.first { it.canSupport(statement.condition) }.evaluate(statement, instance, context)
    }
 
-   fun evaluate(ruleset: RuleSet, instance: TypedInstance, context: QueryContext): Instruction? {
-
-//      var matchedInstruction:Instruction? = null
-
-      val instruction = ruleset.statements
-         .asSequence()
-         .map {
-
-            log().warn("A blocking call is being made - policystatementevaluators.evaluate")
-            val result = runBlocking { evaluate(it, instance, context) }
-            if (result != null) {
-               log().debug("Policy statement \"${it.source.source.content}\" matched with instruction ${result.toString()}")
-            } else {
-               log().debug("Policy statement \"${it.source.source.content}\" did not match")
-            }
-//            matchedInstruction = result
-            result
+   suspend fun evaluate(ruleset: RuleSet, instance: TypedInstance, context: QueryContext): Instruction? {
+      ruleset.statements.forEach { statement ->
+         val result = evaluate(statement, instance, context)
+         if (result != null) {
+            log().debug("Policy statement \"${statement.source.source.content}\" matched with instruction ${result.toString()}")
+            return result
+         } else {
+            log().debug("Policy statement \"${statement.source.source.content}\" did not match")
          }
-         .firstOrNull { it != null }
-
-//         .takeWhile { it == null }
-//         .last()
-      return instruction
+      }
+      return null
    }
 }
 
 interface ConditionalPolicyStatementEvaluator {
    fun canSupport(condition: Condition): Boolean
-   fun evaluate(statement: PolicyStatement, instance: TypedInstance, context: QueryContext): Instruction?
+   suspend fun evaluate(statement: PolicyStatement, instance: TypedInstance, context: QueryContext): Instruction?
 }
 
 class ElseConditionEvaluator : ConditionalPolicyStatementEvaluator {
    override fun canSupport(condition: Condition): Boolean = condition is ElseCondition
 
-   override fun evaluate(statement: PolicyStatement, instance: TypedInstance, context: QueryContext): Instruction? {
+   override suspend fun evaluate(statement: PolicyStatement, instance: TypedInstance, context: QueryContext): Instruction? {
       return statement.instruction
    }
 
@@ -63,7 +50,7 @@ class ElseConditionEvaluator : ConditionalPolicyStatementEvaluator {
 class CaseConditionEvaluator : ConditionalPolicyStatementEvaluator {
    override fun canSupport(condition: Condition) = condition is CaseCondition
 
-   override fun evaluate(statement: PolicyStatement, instance: TypedInstance, context: QueryContext): Instruction? {
+   override suspend fun evaluate(statement: PolicyStatement, instance: TypedInstance, context: QueryContext): Instruction? {
       val condition = statement.condition as CaseCondition
       val lhValue = resolve(condition.lhSubject, instance, context)
       val rhValue = resolve(condition.rhSubject, instance, context)
@@ -75,7 +62,7 @@ class CaseConditionEvaluator : ConditionalPolicyStatementEvaluator {
       }
    }
 
-   private fun resolve(subject: Subject, instance: TypedInstance, context: QueryContext): Any? {
+   private suspend fun resolve(subject: Subject, instance: TypedInstance, context: QueryContext): Any? {
       return when (subject) {
          is RelativeSubject -> resolve(subject, instance, context)
          is LiteralArraySubject -> resolve(subject, context)
@@ -92,7 +79,7 @@ class CaseConditionEvaluator : ConditionalPolicyStatementEvaluator {
       return subject
    }
 
-   private fun resolve(subject: RelativeSubject, instance: TypedInstance, context: QueryContext): Flow<TypedInstance> {
+   private suspend fun resolve(subject: RelativeSubject, instance: TypedInstance, context: QueryContext): Flow<TypedInstance> {
       val contextToUse = when (subject.source) {
          RelativeSubject.RelativeSubjectSource.CALLER -> context.queryEngine.queryContext(
              setOf(FactSets.CALLER),
@@ -108,8 +95,7 @@ class CaseConditionEvaluator : ConditionalPolicyStatementEvaluator {
          )
       }
 
-      log().warn("A blocking call is being made policystatementevaluations resolve")
-      val result = runBlocking { contextToUse.find(TypeNameQueryExpression(subject.targetType.qualifiedName)) }
+      val result = contextToUse.find(TypeNameQueryExpression(subject.targetType.qualifiedName))
       if (result.isFullyResolved) {
          return result.results!!
       } else {
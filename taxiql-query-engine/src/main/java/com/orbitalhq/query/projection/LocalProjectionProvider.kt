@@ -5,27 +5,39 @@ import com.orbitalhq.models.TypedNull
 import com.orbitalhq.models.ValueLookupReturnedNull
 import com.orbitalhq.models.facts.FactBag
 import com.orbitalhq.models.facts.FactDiscoveryStrategy
+import com.orbitalhq.models.facts.PersistentFactBag
 import com.orbitalhq.models.facts.ScopedFact
 import com.orbitalhq.query.Projection
 import com.orbitalhq.query.QueryContext
 import com.orbitalhq.query.TypeQueryExpression
 import com.orbitalhq.query.VyneQueryStatistics
 import com.orbitalhq.schemas.Type
+import com.orbitalhq.utils.EngineActivity
+import com.orbitalhq.utils.EngineInstrumentation
 import kotlinx.coroutines.*
 import kotlinx.coroutines.flow.*
 import lang.taxi.accessors.CollectionProjectionExpressionAccessor
 import lang.taxi.types.ArrayType
 import lang.taxi.types.StreamType
 import mu.KotlinLogging
-import java.util.concurrent.Executors
 
-private val projectingDispatcher = Executors.newFixedThreadPool(16).asCoroutineDispatcher()
 private val logger = KotlinLogging.logger {}
 
+/**
+ * Projects results in-process.
+ *
+ * Projections run on the dispatcher of the (typically node-wide) ProjectionExecutor,
+ * with up to maxConcurrentProjectionsPerQuery rows of a query projected concurrently.
+ *
+ * If preserveOrder is true, projected rows are emitted in the order of the source rows.
+ * Otherwise, they're emitted as soon as they're projected, so a slow row doesn't hold back
+ * the rows behind it.
+ */
 @OptIn(FlowPreview::class)
-class LocalProjectionProvider : ProjectionProvider {
-
-   private val projectingScope = CoroutineScope(projectingDispatcher)
+class LocalProjectionProvider(
+   private val projectionExecutor: ProjectionExecutor = ProjectionExecutor.DEFAULT,
+   private val preserveOrder: Boolean = true
+) : ProjectionProvider {
 
    override fun project(
       results: Flow<TypedInstance>,
@@ -34,17 +46,24 @@ class LocalProjectionProvider : ProjectionProvider {
       globalFacts: FactBag
    ): Flow<Pair<TypedInstance, VyneQueryStatistics>> {
 
-      context.cancelFlux.subscribe {
+      // Each query projects in its own scope, so that cancelling it doesn't affect other queries
+      val projectingScope = projectionExecutor.newQueryScope(context.queryId)
+      val cancelSubscription = context.cancelFlux.subscribe {
          logger.info { "QueryEngine for queryId ${context.queryId} is cancelling" }
          projectingScope.cancel()
       }
 
+      // Each row is projected in a context containing the global facts, plus the row.
+      // Deriving the per-row FactBag from a PersistentFactBag shares both the global facts,
+      // and the indexes built over them, rather than copying them for each row.
+      val projectionFacts = PersistentFactBag.of(globalFacts.rootFacts(), context.schema)
+
       // This pattern aims to allow the concurrent execution of multiple flows.
       // Normally, flow execution is sequential - ie., one flow must complete befre the next
       // item is taken.  buffer() is used here to allow up to n parallel flows to execute.
       // MP: @Anthony - please leave some comments here that describe the rationale for
       // map { async { .. } }.flatMapMerge { await }
-      return results
+      val projections = results
          .buffer()
          .withIndex()
          .takeWhile { !context.cancelRequested }
@@ -54,60 +73,98 @@ class LocalProjectionProvider : ProjectionProvider {
             logger.debug { "Starting to project instance of ${emittedResult.value.type.qualifiedName.shortDisplayName} (index ${emittedResult.index}) to instance of ${projection.type.qualifiedName.shortDisplayName}" }
 
             projectingScope.async {
-               if (!isActive) {
-                  logger.warn { "Query Cancelled exiting!" }
-                  cancel()
-               }
-               val projectionType = selectProjectionType(projection.type)
-               val scopedFact = projection.scope?.let { scope ->
-                  val emittedType = emittedResult.value.type
-                  // Adding this guard clause.
-                  // We're getting the incorrect type passed in.
-                  // It's an upstream problbem, but if we let it flow any further, we spend huge CPU cycles
-                  // trying to project the wrong source type.
-                  // TODO : Investigate the cause - I suspect it's coming from the Graph search strategy, when service invocation fails.
-                  val isAssignable = when (scope.type) {
-                     is ArrayType -> emittedType.taxiType.isAssignableTo((scope.type as ArrayType).memberType)
-                     is StreamType -> emittedType.taxiType.isAssignableTo((scope.type as StreamType).type)
-                     else -> emittedType.taxiType.isAssignableTo(scope.type)
-                  }
+               projectionExecutor.trackProjection { projectRow(emittedResult, projection, context, projectionFacts) }
+            }
+         }
 
-                  val schema = context.schema
-                  if (!isAssignable) {
-                     val scopeType = schema.type(scope.type)
-                     val selectedFact = try {
-                        FactBag.of(emittedResult.value, schema)
-                           .getFact(scopeType, FactDiscoveryStrategy.ANY_DEPTH_EXPECT_ONE_DISTINCT)
-                     } catch (e:Exception) {
-                        TypedNull.create(scopeType, source = ValueLookupReturnedNull(
-                           "Projection scope requested type ${scopeType.qualifiedName.shortDisplayName}, which was not found on the type of ${emittedResult.value.typeName}",
-                           scopeType.name
-                        ))
-                     }
-                     ScopedFact(scope, selectedFact)
-                  } else {
-                     ScopedFact(scope, emittedResult.value)
-                  }
+      val concurrency = projectionExecutor.maxConcurrentProjectionsPerQuery
+      val projectedRows = if (preserveOrder) {
+         // Awaiting in order means a slow row holds back the rows behind it
+         projections.buffer(concurrency).map { it.await() }.flatMapMerge { it }
+      } else {
+         // Rows are emitted as each projection completes
+         projections.flatMapMerge(concurrency) { pendingProjection -> flow { emitAll(pendingProjection.await()) } }
+      }
+      return projectedRows
+         .onStart { projectionExecutor.queryStarted() }
+         .onCompletion {
+            projectionExecutor.queryCompleted()
+            cancelSubscription.dispose()
+            projectingScope.cancel()
+         }
+   }
 
-               } ?: null
+   private suspend fun projectRow(
+      emittedResult: IndexedValue<TypedInstance>,
+      projection: Projection,
+      context: QueryContext,
+      projectionFacts: PersistentFactBag
+   ): Flow<Pair<TypedInstance, VyneQueryStatistics>> = coroutineScope {
+      val projectionStart = EngineInstrumentation.startTimer()
+      if (!isActive) {
+         logger.warn { "Query Cancelled exiting!" }
+         cancel()
+      }
+      val projectionType = selectProjectionType(projection.type)
+      val scopedFact = projection.scope?.let { scope ->
+         val emittedType = emittedResult.value.type
+         // Adding this guard clause.
+         // We're getting the incorrect type passed in.
+         // It's an upstream problbem, but if we let it flow any further, we spend huge CPU cycles
+         // trying to project the wrong source type.
+         // TODO : Investigate the cause - I suspect it's coming from the Graph search strategy, when service invocation fails.
+         val isAssignable = when (scope.type) {
+            is ArrayType -> emittedType.taxiType.isAssignableTo((scope.type as ArrayType).memberType)
+            is StreamType -> emittedType.taxiType.isAssignableTo((scope.type as StreamType).type)
+            else -> emittedType.taxiType.isAssignableTo(scope.type)
+         }
 
-               // If the projection scope was explicitly defined,
-               // add the thing we're projecting as a specific scoped fact.
-               // This makes it available for both type-based-searches (standard),
-               // and when searching by scope.
-               // Otherwise, just add it as a normal fact at the root.
-               // Note: In time, we should probably refactor so that there's ALWAYS a root
-               // scope, with a name of "this" if not otherwise specified.
-               val projectionContext = if (scopedFact == null) {
-                  context.only(globalFacts.rootFacts() + emittedResult.value)
-               } else {
-                  context.only(globalFacts.rootFacts(), scopedFacts = listOf(scopedFact))
-               }
-               val buildResult = projectionContext.build(TypeQueryExpression(projectionType))
-               buildResult.results.map { it to projectionContext.vyneQueryStatistics }
+         val schema = context.schema
+         if (!isAssignable) {
+            val scopeType = schema.type(scope.type)
+            val selectedFact = try {
+               FactBag.of(emittedResult.value, schema)
+                  .getFact(scopeType, FactDiscoveryStrategy.ANY_DEPTH_EXPECT_ONE_DISTINCT)
+            } catch (e:Exception) {
+               TypedNull.create(scopeType, source = ValueLookupReturnedNull(
+                  "Projection scope requested type ${scopeType.qualifiedName.shortDisplayName}, which was not found on the type of ${emittedResult.value.typeName}",
+                  scopeType.name
+               ))
             }
+            ScopedFact(scope, selectedFact)
+         } else {
+            ScopedFact(scope, emittedResult.value)
          }
-         .buffer(16).map { it.await() }.flatMapMerge { it }
+
+      } ?: null
+
+      // If the projection scope was explicitly defined,
+      // add the thing we're projecting as a specific scoped fact.
+      // This makes it available for both type-based-searches (standard),
+      // and when searching by scope.
+      // Otherwise, just add it as a normal fact at the root.
+      // Note: In time, we should probably refactor so that there's ALWAYS a root
+      // scope, with a name of "this" if not otherwise specified.
+      val projectionContext = if (scopedFact == null) {
+         context.only(projectionFacts.merge(emittedResult.value))
+      } else {
+         context.only(projectionFacts.withScopedFacts(listOf(scopedFact)))
+      }
+      val buildResult = projectionContext.build(TypeQueryExpression(projectionType))
+      val statistics = projectionContext.vyneQueryStatistics
+      // Recorded once per projection, when the first result has been built, so that the time is
+      // in the statistics before the row is emitted.  Projections without results are recorded on completion.
+      var recorded = false
+      fun recordProjection() {
+         if (!recorded) {
+            recorded = true
+            EngineInstrumentation.record(EngineActivity.PROJECTION, projectionStart, statistics.activityTimings)
+         }
+      }
+      buildResult.results
+         .onEach { recordProjection() }
+         .map { it to statistics }
+         .onCompletion { recordProjection() }
    }
 
    private fun selectProjectionType(projectResultsTo: Type): Type {
@@ -0,0 +1,165 @@
+package com.orbitalhq.query.projection
+
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineName
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.asCoroutineDispatcher
+import mu.KotlinLogging
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Settings for how projections are run on this node.
+ */
+data class ProjectionConcurrencySettings(
+   /**
+    * The number of threads projecting across all queries on this node.
+    * Projections spend much of their time waiting on service calls, so this defaults
+    * to at least 16, even on nodes with fewer cores.
+    * Ignored when useVirtualThreads is enabled.
+    */
+   val nodeParallelism: Int = maxOf(16, Runtime.getRuntime().availableProcessors()),
+   /**
+    * The max number of rows projected concurrently for a single query.
+    * Higher values give more throughput for large result sets, at the cost of holding more
+    * partially projected rows in memory.
+    */
+   val maxConcurrentProjectionsPerQuery: Int = nodeParallelism,
+   /**
+    * Run projections on virtual threads, rather than a fixed pool.
+    * Projections frequently block on service calls, so this can be more efficient where
+    * projections make many calls.  Requires Java 21 - if not available, the fixed pool is used.
+    */
+   val useVirtualThreads: Boolean = false,
+   /**
+    * The max number of threads added to the pool to stand in for blocked projection threads
+    * (see runBlockingManaged).  Once reached, further blocked projections wait without a replacement thread.
+    * Projections suspend while discovering values (see DiscoveredValues), so only blocking outside of the
+    * projection itself (eg., an AccessorHandler or function which blocks) uses these threads.
+    */
+   val maxCompensatingThreads: Int = 256
+)
+
+/**
+ * Runs projections for all queries on a node.
+ *
+ * The dispatcher (and so the number of threads projecting) is shared across queries,
+ * but each query projects within its own scope, which can be cancelled independently.
+ */
+class ProjectionExecutor(
+   val settings: ProjectionConcurrencySettings = ProjectionConcurrencySettings(),
+   meterRegistry: MeterRegistry? = null
+) {
+   companion object {
+      private val logger = KotlinLogging.logger {}
+
+      /**
+       * Shared default, for use where an executor hasn't been configured
+       * (eg., when a LocalProjectionProvider is created without one)
+       */
+      val DEFAULT: ProjectionExecutor by lazy { ProjectionExecutor() }
+
+      private fun newVirtualThreadExecutorOrNull(): ExecutorService? {
+         return try {
+            Executors::class.java.getMethod("newVirtualThreadPerTaskExecutor").invoke(null) as ExecutorService
+         } catch (e: ReflectiveOperationException) {
+            // NoSuchMethodException before Java 19.  On Java 19 / 20, virtual threads are a preview feature,
+            // and throw an UnsupportedOperationException (wrapped in an InvocationTargetException) unless preview features are enabled
+            logger.warn { "Virtual threads are not available on this JVM (${Runtime.version()}).  Projections will use a thread pool" }
+            null
+         } catch (e: UnsupportedOperationException) {
+            logger.warn { "Virtual threads are not available on this JVM (${Runtime.version()}).  Projections will use a thread pool" }
+            null
+         }
+      }
+   }
+
+   private val inFlightProjections = AtomicInteger(0)
+   private val activeQueries = AtomicInteger(0)
+
+   val dispatcher: CoroutineDispatcher = buildExecutorService().asCoroutineDispatcher()
+
+   private fun buildExecutorService(): ExecutorService {
+      if (settings.useVirtualThreads) {
+         newVirtualThreadExecutorOrNull()?.let {
+            logger.info { "Projections will run on virtual threads" }
+            return it
+         }
+      }
+      logger.info { "Projections will run on ${settings.nodeParallelism} threads, with up to ${settings.maxConcurrentProjectionsPerQuery} concurrent projections per query" }
+      val threadCount = AtomicInteger(0)
+      val threadFactory = ForkJoinPool.ForkJoinWorkerThreadFactory { pool ->
+         ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool).apply {
+            name = "vyne-projection-${threadCount.incrementAndGet()}"
+         }
+      }
+      // Projections suspend, rather than block, while values are discovered (see DiscoveredValues).
+      // A ForkJoinPool, rather than a fixed pool, so that when a projection thread does block
+      // (see runBlockingManaged), the pool can temporarily add a thread in its place.
+      // Once the max pool size is reached, the saturate predicate lets the thread block without a replacement.
+      // Without it, the ForkJoinPool throws a RejectedExecutionException, failing the projection.
+      return ForkJoinPool(
+         settings.nodeParallelism,
+         threadFactory,
+         null,
+         true,
+         0,
+         settings.nodeParallelism + settings.maxCompensatingThreads,
+         1,
+         { true },
+         60,
+         TimeUnit.SECONDS
+      )
+   }
+
+   init {
+      if (meterRegistry != null) {
+         Gauge.builder("vyne.projection.in-flight", inFlightProjections) { it.get().toDouble() }
+            .description("Number of rows currently being projected, across all queries")
+            .register(meterRegistry)
+         Gauge.builder("vyne.projection.active-queries", activeQueries) { it.get().toDouble() }
+            .description("Number of queries currently projecting results")
+            .register(meterRegistry)
+      }
+   }
+
+   val maxConcurrentProjectionsPerQuery: Int
+      get() = settings.maxConcurrentProjectionsPerQuery
+
+   val inFlightProjectionCount: Int
+      get() = inFlightProjections.get()
+
+   val activeQueryCount: Int
+      get() = activeQueries.get()
+
+   /**
+    * Returns a scope for running the projections of a single query.
+    * Cancelling the scope cancels only that query's projections.
+    */
+   fun newQueryScope(queryId: String): CoroutineScope {
+      return CoroutineScope(dispatcher + Job() + CoroutineName("projection-$queryId"))
+   }
+
+   fun queryStarted() {
+      activeQueries.incrementAndGet()
+   }
+
+   fun queryCompleted() {
+      activeQueries.decrementAndGet()
+   }
+
+   suspend fun <T> trackProjection(block: suspend () -> T): T {
+      inFlightProjections.incrementAndGet()
+      try {
+         return block()
+      } finally {
+         inFlightProjections.decrementAndGet()
+      }
+   }
+}
@@ -20,6 +20,19 @@ class QueryOptionsParsingTest {
       options.omitNulls.shouldBeTrue()
    }
 
+   @Test
+   fun `parses unordered option`() {
+      val (vyne, _) = testVyne("""model Person""")
+      val (_, options) = vyne.parseQuery(
+         """@Unordered
+         |query MyQuery {
+         |  find { Person[] }
+         |}
+      """.trimMargin()
+      )
+      options.unordered.shouldBeTrue()
+   }
+
    @Test
    fun `uses defaults when options not provided`() {
       val (vyne, _) = testVyne("""model Person""")
@@ -1,6 +1,7 @@
 package com.orbitalhq
 
 import com.winterbe.expekt.should
+import com.orbitalhq.models.Calculated
 import com.orbitalhq.models.ConversionService
 import com.orbitalhq.models.Provided
 import com.orbitalhq.models.TypedInstance
@@ -146,4 +147,30 @@ class TypedValueTest {
       val localDateTime = instance.value as LocalDateTime
       localDateTime.should.equal(LocalDateTime.parse("2020-12-15T12:17:01.123456"))
    }
+
+   @Test
+   fun `common values with a static source are shared`() {
+      val schema = TaxiSchema.from("type IsActive inherits Boolean")
+      val first = TypedInstance.from(schema.type("IsActive"), true, schema, source = Provided)
+      val second = TypedInstance.from(schema.type("IsActive"), "true", schema, source = Provided)
+      (first === second).should.be.`true`
+      first.nodeId.should.equal(second.nodeId)
+   }
+
+   @Test
+   fun `values with lineage are not shared`() {
+      val schema = TaxiSchema.from("type IsActive inherits Boolean")
+      val first = TypedInstance.from(schema.type("IsActive"), true, schema, source = Calculated)
+      val second = TypedInstance.from(schema.type("IsActive"), true, schema, source = Calculated)
+      (first === second).should.be.`false`
+      first.should.equal(second)
+      first.nodeId.should.not.equal(second.nodeId)
+   }
+
+   @Test
+   fun `node id is stable once generated`() {
+      val schema = TaxiSchema.from("type Name inherits String")
+      val value = TypedInstance.from(schema.type("Name"), "Jimmy", schema, source = Provided)
+      value.nodeId.should.equal(value.nodeId)
+   }
 }
@@ -2,7 +2,12 @@ package com.orbitalhq
 
 import es.usc.citius.hipster.graph.GraphEdge
 import io.kotest.matchers.booleans.shouldBeFalse
+import io.kotest.matchers.collections.shouldContain
+import io.kotest.matchers.collections.shouldNotContain
+import io.kotest.matchers.nulls.shouldBeNull
+import io.kotest.matchers.nulls.shouldNotBeNull
 import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.models.facts.FactBag
 import com.orbitalhq.query.graph.*
 import com.orbitalhq.schemas.OperationNames
 import com.orbitalhq.schemas.Relationship
@@ -104,6 +109,36 @@ class VyneGraphBuilderTest {
          .shouldBeFalse()
    }
 
+   @Test
+   fun `searches for targets which are not reachable return without a path`() {
+      val schema = TaxiSchema.from(
+         """
+         model Person {
+            id : PersonId inherits String
+            name : PersonName inherits String
+         }
+         model Invoice {
+            amount : InvoiceAmount inherits Decimal
+         }
+         service PersonService {
+            operation getPerson(PersonId):Person
+         }
+      """.trimIndent()
+      )
+      val graphBuilder = VyneGraphBuilder(schema, VyneGraphBuilderCacheSettings())
+      val graph = graphBuilder.build(setOf(schema.type("PersonId"))) as SchemaPathFindingGraph
+      val start = instanceOfType(schema.type("PersonId"))
+      val facts = FactBag.empty()
+
+      graph.findPath(start, schema.type("PersonName").asElement(), EvaluatedPathSet(), facts).shouldNotBeNull()
+      graph.findPath(start, schema.type("InvoiceAmount").asElement(), EvaluatedPathSet(), facts).shouldBeNull()
+
+      graphBuilder.reachabilityIndex.elementsReaching(schema.type("InvoiceAmount").asElement())
+         .shouldContain(schema.type("Invoice").asElement())
+      graphBuilder.reachabilityIndex.elementsReaching(schema.type("PersonName").asElement())
+         .shouldNotContain(schema.type("Invoice").asElement())
+   }
+
 //   @Test
 //   fun performanceTestBuildingLargeGraph() {
 //      val schema = TaxiSchema.forPackageAtPath(Paths.get("/home/marty/dev/cacib/cacib-taxonomy"))
@@ -16,13 +16,16 @@ import com.orbitalhq.models.json.parseJsonCollection
 import com.orbitalhq.models.json.parseJsonModel
 import com.orbitalhq.models.json.parseKeyValuePair
 import com.orbitalhq.query.*
+import com.orbitalhq.query.projection.LocalProjectionProvider
 import com.orbitalhq.query.projection.ProjectionProvider
 import com.orbitalhq.schemas.OperationInvocationException
 import com.orbitalhq.schemas.OperationNames
 import com.orbitalhq.schemas.fqn
 import com.orbitalhq.schemas.taxi.TaxiSchema
 import com.orbitalhq.utils.Benchmark
-import com.orbitalhq.utils.StrategyPerformanceProfiler
+import com.orbitalhq.utils.EngineActivity
+import com.orbitalhq.utils.EngineActivitySummary
+import com.orbitalhq.utils.EngineInstrumentation
 import kotlinx.coroutines.ExperimentalCoroutinesApi
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.flow
@@ -2635,20 +2638,84 @@ service Broker1Service {
       }
 
       val start = Stopwatch.createStarted()
-      var summary: StrategyPerformanceProfiler.SearchStrategySummary? = null
+      var summary: EngineActivitySummary? = null
       val f = Benchmark.benchmark("run concurrency test with $movieCount", warmup = 5, iterations = 5) {
          runBlocking {
             val result = vyne.query("find { Movie[] } as OutputModel[]")
                .results.toList()
             result.should.have.size(movieCount)
             val duration = start.elapsed(TimeUnit.MILLISECONDS)
-            summary = StrategyPerformanceProfiler.summarizeAndReset()
+            summary = EngineInstrumentation.summarizeAndReset()
          }
       }
       log().warn("Test completed: $summary")
 
    }
 
+   private fun vyneWithSlowFirstActor(preserveOrder: Boolean): Vyne {
+      val (vyne, stub) = testVyne(
+         """
+         model Actor {
+            @Id actorId : ActorId inherits String
+            name : ActorName inherits String
+         }
+         model Movie {
+            @Id movieId : MovieId inherits String
+            starring : ActorId
+         }
+         model OutputModel {
+            @Id movieId : MovieId
+            starring : ActorName
+         }
+         service Services {
+            operation findAllMovies():Movie[]
+            operation findActor(ActorId):Actor
+         }
+      """.trimIndent(),
+         projectionProvider = LocalProjectionProvider(preserveOrder = preserveOrder)
+      )
+      stub.addResponseFlow("findActor") { _, params ->
+         val actorId = params[0].second.value as String
+         flow {
+            // The first row's projection is slow
+            if (actorId == "0") {
+               kotlinx.coroutines.delay(500)
+            }
+            emit(vyne.parseJsonModel("Actor", """{ "actorId" : ${actorId.quoted()}, "name" : "Actor $actorId" }"""))
+         }
+      }
+      stub.addResponse("findAllMovies") { _, _ ->
+         (0 until 3).map { index ->
+            vyne.parseJsonModel("Movie", """{ "movieId" : "$index", "starring" : "$index" }""")
+         }
+      }
+      return vyne
+   }
+
+   @Test
+   fun `ordered projections emit rows in the order of the source rows`(): Unit = runBlocking {
+      val vyne = vyneWithSlowFirstActor(preserveOrder = true)
+      val result = vyne.query("find { Movie[] } as OutputModel[]").rawObjects()
+      result.map { it["movieId"] }.should.equal(listOf("0", "1", "2"))
+   }
+
+   @Test
+   fun `unordered projections emit fast rows ahead of slow ones`(): Unit = runBlocking {
+      val vyne = vyneWithSlowFirstActor(preserveOrder = false)
+      val result = vyne.query("find { Movie[] } as OutputModel[]").rawObjects()
+      result.map { it["movieId"] }.should.have.size(3)
+      result.last()["movieId"].should.equal("0")
+      result.last()["starring"].should.equal("Actor 0")
+   }
+
+   @Test
+   fun `projection timings of every row are recorded once against the query`(): Unit = runBlocking {
+      val vyne = vyneWithSlowFirstActor(preserveOrder = false)
+      val queryResult = vyne.query("find { Movie[] } as OutputModel[]")
+      queryResult.rawObjects().should.have.size(3)
+      queryResult.activityTimings!!.count(EngineActivity.PROJECTION).should.equal(3)
+   }
+
    @Test
    fun `can use a date format on an anonymous type`(): Unit = runBlocking {
       val (vyne, stub) = testVyne(
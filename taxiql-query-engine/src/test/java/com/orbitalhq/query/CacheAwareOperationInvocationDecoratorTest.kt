@@ -2,6 +2,7 @@ package com.orbitalhq.query
 
 import app.cash.turbine.test
 import app.cash.turbine.testIn
+import com.google.common.cache.CacheBuilder
 import com.jayway.awaitility.Awaitility.await
 import com.nhaarman.mockito_kotlin.any
 import com.nhaarman.mockito_kotlin.mock
@@ -15,6 +16,8 @@ import com.orbitalhq.models.TypedInstance
 import com.orbitalhq.models.TypedValue
 import com.orbitalhq.query.connectors.OperationInvoker
 import com.orbitalhq.query.graph.operationInvocation.CacheAwareOperationInvocationDecorator
+import com.orbitalhq.query.graph.operationInvocation.CachingInvocationActor
+import com.orbitalhq.query.graph.operationInvocation.SerializedOperationResultCache
 import com.orbitalhq.schemas.Operation
 import com.orbitalhq.schemas.Parameter
 import com.orbitalhq.schemas.QualifiedName
@@ -40,6 +43,7 @@ import mu.KotlinLogging
 import org.junit.Test
 import reactor.core.publisher.Sinks
 import reactor.kotlin.test.test
+import java.time.Duration
 import java.util.concurrent.CopyOnWriteArrayList
 import java.util.concurrent.TimeUnit
 import kotlin.test.assertFailsWith
@@ -341,6 +345,73 @@ class CacheAwareOperationInvocationDecoratorTest {
       }
    }
 
+   @Test
+   fun `when a background refresh fails then the cached result continues to be served`(): Unit = runBlocking {
+      val invoker = RecordingInvoker { callIndex ->
+         if (callIndex == 0) flowOf("Hello".asTypedString()) else flow { error("Kaboom") }
+      }
+      val cachingInvoker = CacheAwareOperationInvocationDecorator(invoker, refreshAfterWrite = Duration.ofMillis(50))
+      val (service, operation) = schema.operation("Service@@sayHello".fqn())
+      val invoke = suspend {
+         cachingInvoker.invoke(service, operation, listOf(param("A")), mock { }, Ids.id("queryId")).toList()
+      }
+
+      invoke().single().value.should.equal("Hello")
+      delay(100)
+      // Stale, so triggers a refresh, which fails
+      invoke().single().value.should.equal("Hello")
+      await().atMost(1, TimeUnit.SECONDS).until { invoker.calls.size == 2 }
+      delay(50)
+
+      invoke().single().value.should.equal("Hello")
+      cachingInvoker.cacheSize.should.equal(1)
+   }
+
+   @Test
+   fun `background refreshes are not reported against the query that triggered them`(): Unit = runBlocking {
+      val invoker = RecordingInvoker { callIndex -> flowOf("Hello $callIndex".asTypedString()) }
+      val cachingInvoker = CacheAwareOperationInvocationDecorator(invoker, refreshAfterWrite = Duration.ofMillis(50))
+      val (service, operation) = schema.operation("Service@@sayHello".fqn())
+      val eventDispatcher: QueryContextEventDispatcher = mock { }
+
+      cachingInvoker.invoke(service, operation, listOf(param("A")), eventDispatcher, "query-1").toList()
+      delay(100)
+      cachingInvoker.invoke(service, operation, listOf(param("A")), eventDispatcher, "query-2")
+         .toList().single().value.should.equal("Hello 0")
+      await().atMost(1, TimeUnit.SECONDS).until { invoker.calls.size == 2 }
+
+      val (refreshDispatcher, refreshQueryId) = invoker.calls[1]
+      (refreshDispatcher === eventDispatcher).should.be.`false`
+      refreshQueryId.should.not.equal("query-1")
+      refreshQueryId.should.not.equal("query-2")
+
+      // Once loaded, the refreshed response is served
+      await().atMost(1, TimeUnit.SECONDS).until {
+         runBlocking {
+            cachingInvoker.invoke(service, operation, listOf(param("A")), eventDispatcher, "query-3")
+               .toList().single().value == "Hello 1"
+         }
+      }
+   }
+
+   @Test
+   fun `checking the serialized cache does not count against the operation cache stats`(): Unit = runBlocking {
+      val invoker = RecordingInvoker { flowOf("Hello".asTypedString()) }
+      val actorCache = CacheBuilder.newBuilder().recordStats().build<String, CachingInvocationActor>()
+      val cachingInvoker = CacheAwareOperationInvocationDecorator(
+         invoker,
+         actorCache = actorCache,
+         serializedResultCache = SerializedOperationResultCache(maxBytes = 1_000_000)
+      )
+      val (service, operation) = schema.operation("Service@@sayHello".fqn())
+
+      repeat(2) {
+         cachingInvoker.invoke(service, operation, listOf(param("A")), mock { }, Ids.id("queryId")).toList()
+      }
+      actorCache.stats().missCount().should.equal(1L)
+      actorCache.stats().hitCount().should.equal(1L)
+   }
+
    private fun invokeService(
       inputs: List<Pair<Parameter, TypedInstance>>,
       invoker: ConcurrentAccessProhibitedInvoker
@@ -434,3 +505,22 @@ private class ConcurrentAccessProhibitedInvoker(private val handler: (List<Pair<
    }
 
 }
+
+/**
+ * Stub invoker which records the event dispatcher and query id of each call
+ */
+private class RecordingInvoker(private val handler: (Int) -> Flow<TypedInstance>) : OperationInvoker {
+   val calls = CopyOnWriteArrayList<Pair<QueryContextEventDispatcher, String>>()
+   override fun canSupport(service: Service, operation: RemoteOperation): Boolean = true
+   override suspend fun invoke(
+      service: Service,
+      operation: RemoteOperation,
+      parameters: List<Pair<Parameter, TypedInstance>>,
+      eventDispatcher: QueryContextEventDispatcher,
+      queryId: String
+   ): Flow<TypedInstance> {
+      val callIndex = calls.size
+      calls.add(eventDispatcher to queryId)
+      return handler(callIndex)
+   }
+}
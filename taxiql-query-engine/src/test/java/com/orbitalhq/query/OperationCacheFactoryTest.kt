@@ -0,0 +1,58 @@
+package com.orbitalhq.query
+
+import com.nhaarman.mockito_kotlin.mock
+import com.orbitalhq.query.graph.operationInvocation.CachingInvocationActor
+import com.orbitalhq.query.graph.operationInvocation.OperationCacheConfig
+import com.orbitalhq.query.graph.operationInvocation.OperationCacheFactory
+import com.orbitalhq.query.graph.operationInvocation.OperationCacheSettings
+import com.orbitalhq.schemas.GlobalSharedCache
+import com.orbitalhq.schemas.NamedCache
+import com.orbitalhq.schemas.QueryScopedCache
+import com.winterbe.expekt.should
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.junit.Test
+import java.time.Duration
+
+class OperationCacheFactoryTest {
+
+   private fun actor(key: String) = CachingInvocationActor(key, mock(), 10)
+
+   @Test
+   fun `long lived caches are shared`() {
+      val factory = OperationCacheFactory()
+      factory.getCache(GlobalSharedCache).should.equal(factory.getCache(GlobalSharedCache))
+      factory.getCache(NamedCache("foo")).should.equal(factory.getCache(NamedCache("foo")))
+      factory.getCache(QueryScopedCache).should.not.equal(factory.getCache(QueryScopedCache))
+   }
+
+   @Test
+   fun `named caches use their own settings`() {
+      val factory = OperationCacheFactory(
+         OperationCacheConfig(
+            defaults = OperationCacheSettings(maxEntries = 100),
+            caches = mapOf("small" to OperationCacheSettings(maxEntries = 2, refreshAfterWrite = Duration.ofMinutes(5)))
+         )
+      )
+      val cache = factory.getCache(NamedCache("small"))
+      (1..5).forEach { cache.put("key$it", actor("key$it")) }
+      cache.cleanUp()
+      cache.size().should.equal(2L)
+      factory.getSettings(NamedCache("small")).refreshAfterWrite.should.equal(Duration.ofMinutes(5))
+      factory.getSettings(GlobalSharedCache).maxEntries.should.equal(100L)
+   }
+
+   @Test
+   fun `publishes metrics for long lived caches`() {
+      val meterRegistry = SimpleMeterRegistry()
+      val factory = OperationCacheFactory(meterRegistry = meterRegistry)
+      val cache = factory.getCache(NamedCache("referenceData"))
+      cache.get("key") { actor("key") }
+      cache.get("key") { actor("key") }
+
+      meterRegistry.find("cache.gets").tag("cache", "referenceData").tag("result", "hit")
+         .functionCounter()!!.count().should.equal(1.0)
+      meterRegistry.find("cache.gets").tag("cache", "referenceData").tag("result", "miss")
+         .functionCounter()!!.count().should.equal(1.0)
+      meterRegistry.find("vyne.operation.cache.weight").tag("cache", "referenceData").gauge().should.not.be.`null`
+   }
+}
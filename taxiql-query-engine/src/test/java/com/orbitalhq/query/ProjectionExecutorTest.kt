@@ -0,0 +1,60 @@
+package com.orbitalhq.query
+
+import com.orbitalhq.query.projection.ProjectionConcurrencySettings
+import com.orbitalhq.query.projection.ProjectionExecutor
+import com.winterbe.expekt.should
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitCancellation
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import org.junit.Test
+
+class ProjectionExecutorTest {
+
+   @Test
+   fun `cancelling one query does not cancel projections of another`() = runBlocking {
+      val executor = ProjectionExecutor(ProjectionConcurrencySettings(nodeParallelism = 2))
+      val cancelledQuery = executor.newQueryScope("query-1")
+      val otherQuery = executor.newQueryScope("query-2")
+
+      val release = CompletableDeferred<String>()
+      val cancelledProjection = cancelledQuery.async { awaitCancellation() }
+      val otherProjection = otherQuery.async { release.await() }
+
+      cancelledQuery.cancel()
+      release.complete("projected")
+
+      withTimeout(5000) { otherProjection.await() }.should.equal("projected")
+      cancelledProjection.isCancelled.should.be.`true`
+   }
+
+   @Test
+   fun `in flight projections are published as a gauge`() = runBlocking {
+      val meterRegistry = SimpleMeterRegistry()
+      val executor = ProjectionExecutor(ProjectionConcurrencySettings(nodeParallelism = 2), meterRegistry)
+      val started = CompletableDeferred<Unit>()
+      val release = CompletableDeferred<Unit>()
+
+      val projection = executor.newQueryScope("query-1").async {
+         executor.trackProjection {
+            started.complete(Unit)
+            release.await()
+         }
+      }
+      started.await()
+      meterRegistry.get("vyne.projection.in-flight").gauge().value().should.equal(1.0)
+
+      release.complete(Unit)
+      projection.await()
+      meterRegistry.get("vyne.projection.in-flight").gauge().value().should.equal(0.0)
+   }
+
+   @Test
+   fun `falls back to a fixed pool if virtual threads are not available`() = runBlocking {
+      val executor = ProjectionExecutor(ProjectionConcurrencySettings(useVirtualThreads = true))
+      executor.newQueryScope("query-1").async { "projected" }.await().should.equal("projected")
+   }
+}
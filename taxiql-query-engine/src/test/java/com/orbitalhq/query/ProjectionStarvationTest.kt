@@ -0,0 +1,192 @@
+package com.orbitalhq.query
+
+import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
+import com.orbitalhq.models.Provided
+import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.models.json.parseJsonModel
+import com.orbitalhq.query.projection.LocalProjectionProvider
+import com.orbitalhq.query.projection.ProjectionConcurrencySettings
+import com.orbitalhq.query.projection.ProjectionExecutor
+import com.orbitalhq.rawObjects
+import com.orbitalhq.testVyne
+import com.orbitalhq.utils.runBlockingManaged
+import com.winterbe.expekt.should
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeout
+import org.junit.Test
+
+/**
+ * Stress tests for projecting on a small pool, where projections block
+ * waiting on work that's scheduled on the same pool.
+ */
+class ProjectionStarvationTest {
+
+   @Test
+   fun `blocked projection threads do not starve work queued on the same pool`() = runBlocking {
+      // Every projection here blocks explicitly, so the pool needs a thread for each of them.
+      val executor = ProjectionExecutor(ProjectionConcurrencySettings(nodeParallelism = 2, maxCompensatingThreads = 500))
+      val scope = executor.newQueryScope("query-1")
+
+      // Each projection blocks its thread on work that can only run on the projection pool.
+      // On a fixed pool of 2 threads, this deadlocks as soon as two projections are blocked.
+      val projections = (0 until 500).map { index ->
+         scope.async {
+            runBlockingManaged {
+               withContext(executor.dispatcher) {
+                  delay(1)
+                  index
+               }
+            }
+         }
+      }
+
+      val results = withTimeout(30_000) { projections.awaitAll() }
+      results.should.equal((0 until 500).toList())
+   }
+
+   @Test
+   fun `blocked projections wait rather than fail once the pool can't add more threads`() = runBlocking {
+      val executor = ProjectionExecutor(
+         ProjectionConcurrencySettings(nodeParallelism = 2, maxCompensatingThreads = 4)
+      )
+      val scope = executor.newQueryScope("query-1")
+
+      // Far more blocked projections than the pool can add threads for.
+      // The blocking work doesn't need the projection pool, so these should all complete, just more slowly.
+      val projections = (0 until 100).map { index ->
+         scope.async {
+            runBlockingManaged {
+               delay(10)
+               index
+            }
+         }
+      }
+
+      val results = withTimeout(30_000) { projections.awaitAll() }
+      results.should.equal((0 until 100).toList())
+   }
+
+   @Test
+   fun `hundreds of concurrent projections which discover values complete on a small pool`(): Unit = runBlocking {
+      val executor = ProjectionExecutor(
+         ProjectionConcurrencySettings(nodeParallelism = 2, maxConcurrentProjectionsPerQuery = 256)
+      )
+      val (vyne, stub) = testVyne(
+         """
+         model Film {
+            filmId : FilmId inherits String
+            title : FilmTitle inherits String
+         }
+         model Director {
+            name : DirectorName inherits String
+         }
+         service FilmService {
+            operation findAllFilms():Film[]
+            operation findDirector(FilmId):Director
+         }
+      """.trimIndent(),
+         projectionProvider = LocalProjectionProvider(executor)
+      )
+      val filmCount = 500
+      stub.addResponse("findAllFilms") { _, _ ->
+         (0 until filmCount).map { index ->
+            val film = mapOf("filmId" to index.toString(), "title" to "Film $index")
+            vyne.parseJsonModel("Film", jacksonObjectMapper().writeValueAsString(film))
+         }
+      }
+      stub.addResponseFlow("findDirector") { _, params ->
+         val filmId = params[0].second.value as String
+         flow {
+            delay(5)
+            emit(
+               TypedInstance.from(
+                  vyne.type("Director"),
+                  """{ "name" : "Director of $filmId" }""",
+                  vyne.schema,
+                  source = Provided
+               )
+            )
+         }
+      }
+
+      // The director isn't present on the film, so each row has to search for it while projecting
+      val results = withTimeout(60_000) {
+         vyne.query(
+            """find { Film[] } as {
+               | title : FilmTitle
+               | director : DirectorName
+               |}[]""".trimMargin()
+         ).rawObjects()
+      }
+      results.should.have.size(filmCount)
+      results.all { it["director"] == "Director of ${(it["title"] as String).removePrefix("Film ")}" }.should.be.`true`
+   }
+
+   @Test
+   fun `more projections discovering values from the projection pool than the pool has threads complete`(): Unit = runBlocking {
+      val executor = ProjectionExecutor(
+         ProjectionConcurrencySettings(
+            nodeParallelism = 2,
+            maxConcurrentProjectionsPerQuery = 256,
+            maxCompensatingThreads = 4
+         )
+      )
+      val (vyne, stub) = testVyne(
+         """
+         model Film {
+            filmId : FilmId inherits String
+            title : FilmTitle inherits String
+         }
+         model Director {
+            name : DirectorName inherits String
+         }
+         service FilmService {
+            operation findAllFilms():Film[]
+            operation findDirector(FilmId):Director
+         }
+      """.trimIndent(),
+         projectionProvider = LocalProjectionProvider(executor)
+      )
+      val filmCount = 200
+      stub.addResponse("findAllFilms") { _, _ ->
+         (0 until filmCount).map { index ->
+            val film = mapOf("filmId" to index.toString(), "title" to "Film $index")
+            vyne.parseJsonModel("Film", jacksonObjectMapper().writeValueAsString(film))
+         }
+      }
+      // The director can only be looked up using a projection thread.
+      // With at most 6 threads, if each row blocked its thread while searching for the director,
+      // every thread would be blocked waiting on these lookups, and the query would never complete.
+      stub.addResponseFlow("findDirector") { _, params ->
+         val filmId = params[0].second.value as String
+         flow {
+            val director = withContext(executor.dispatcher) {
+               delay(5)
+               TypedInstance.from(
+                  vyne.type("Director"),
+                  """{ "name" : "Director of $filmId" }""",
+                  vyne.schema,
+                  source = Provided
+               )
+            }
+            emit(director)
+         }
+      }
+
+      val results = withTimeout(60_000) {
+         vyne.query(
+            """find { Film[] } as {
+               | title : FilmTitle
+               | director : DirectorName
+               |}[]""".trimMargin()
+         ).rawObjects()
+      }
+      results.should.have.size(filmCount)
+      results.all { it["director"] == "Director of ${(it["title"] as String).removePrefix("Film ")}" }.should.be.`true`
+   }
+}
@@ -0,0 +1,104 @@
+package com.orbitalhq.query
+
+import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.query.graph.operationInvocation.MemoryMappedFileStorage
+import com.orbitalhq.query.graph.operationInvocation.SerializedOperationResultCache
+import com.orbitalhq.query.graph.operationInvocation.SerializedResultWriter
+import com.orbitalhq.schemas.taxi.TaxiSchema
+import com.winterbe.expekt.should
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class SerializedOperationResultCacheTest {
+
+   @Rule
+   @JvmField
+   val folder = TemporaryFolder()
+
+   private val schema = TaxiSchema.from(
+      """
+      model Country {
+         code : CountryCode inherits String
+         name : CountryName inherits String
+         population : Population inherits Int
+      }
+   """.trimIndent()
+   )
+
+   private fun countries(count: Int): List<TypedInstance> {
+      return (1..count).map {
+         TypedInstance.from(
+            schema.type("Country"),
+            """{ "code" : "C$it", "name" : "Country $it", "population" : $it }""",
+            schema
+         )
+      }
+   }
+
+   private fun writerOf(cache: SerializedOperationResultCache, records: List<TypedInstance>): SerializedResultWriter {
+      return cache.newWriter().apply { records.forEach { append(it) } }
+   }
+
+   @Test
+   fun `rehydrates cached responses`() {
+      val cache = SerializedOperationResultCache(maxBytes = 1_000_000)
+      val countries = countries(50)
+      cache.put("countries", writerOf(cache, countries))
+
+      val rehydrated = cache.get("countries", schema)!!
+      rehydrated.map { it.toRawObject() }.should.equal(countries.map { it.toRawObject() })
+      rehydrated.first().type.should.equal(schema.type("Country"))
+   }
+
+   @Test
+   fun `rehydrates cached responses from memory mapped files`() {
+      val cache = SerializedOperationResultCache(
+         maxBytes = 1_000_000,
+         storage = MemoryMappedFileStorage(folder.root.toPath())
+      )
+      val countries = countries(50)
+      cache.put("countries", writerOf(cache, countries))
+
+      folder.root.listFiles()!!.size.should.equal(1)
+      cache.get("countries", schema)!!.map { it.toRawObject() }.should.equal(countries.map { it.toRawObject() })
+
+      cache.invalidateAll()
+      folder.root.listFiles()!!.size.should.equal(0)
+   }
+
+   @Test
+   fun `responses with too many records are not cached`() {
+      val cache = SerializedOperationResultCache(maxBytes = 1_000_000, maxRecordsPerResult = 10)
+      val writer = writerOf(cache, countries(11))
+      writer.isAbandoned.should.be.`true`
+      cache.put("countries", writer)
+      cache.get("countries", schema).should.be.`null`
+   }
+
+   @Test
+   fun `responses larger than the max bytes are not cached`() {
+      val cache = SerializedOperationResultCache(maxBytes = 1_000_000, maxBytesPerResult = 500)
+      val writer = writerOf(cache, countries(50))
+      writer.isAbandoned.should.be.`true`
+      cache.put("countries", writer)
+      cache.get("countries", schema).should.be.`null`
+   }
+
+   @Test
+   fun `responses which can't be rehydrated are removed`() {
+      val cache = SerializedOperationResultCache(maxBytes = 1_000_000)
+      cache.put("countries", writerOf(cache, countries(5)))
+      val updatedSchema = TaxiSchema.from("model Person {}")
+      cache.get("countries", updatedSchema).should.be.`null`
+      cache.size.should.equal(0L)
+   }
+
+   @Test
+   fun `evicts responses when max size is exceeded`() {
+      val cache = SerializedOperationResultCache(maxBytes = 5_000, maxBytesPerResult = 5_000)
+      (1..10).forEach { cache.put("countries$it", writerOf(cache, countries(20))) }
+      cache.cache.cleanUp()
+      cache.size.should.be.below(10L)
+   }
+}
@@ -0,0 +1,118 @@
+package com.orbitalhq.query.graph
+
+import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.schemas.Relationship
+import com.orbitalhq.schemas.fqn
+import com.orbitalhq.schemas.taxi.TaxiSchema
+import com.winterbe.expekt.should
+import es.usc.citius.hipster.model.impl.WeightedNode
+import org.junit.Test
+
+class GraphSearchPlanCacheTest {
+   private val schema = TaxiSchema.from(
+      """
+      type PersonId inherits String
+      type PersonName inherits String
+      model Person {
+         id : PersonId
+         name : PersonName
+      }
+      service PersonService {
+         operation findPerson(PersonId):Person
+      }
+   """.trimIndent()
+   )
+
+   private val personId = TypedInstance.from(schema.type("PersonId"), "jimmy", schema)
+   private val start = providedInstance("PersonId", "jimmy")
+   private val searchPlanKey = GraphSearchPlanCache.SearchPlanKey.of(schema.type("PersonId"), listOf(personId), type("PersonName"))
+
+   private fun path(vararg steps: Pair<Relationship, Element>): WeightedNode<Relationship, Element, Double> {
+      return PlannedPath(steps.toList()).toWeightedNode(start)
+   }
+
+   private val viaOperation = path(
+      Relationship.IS_INSTANCE_OF to type("PersonId"),
+      Relationship.CAN_POPULATE to parameter("PersonId"),
+      Relationship.IS_PARAMETER_ON to operation("PersonService@@findPerson", null),
+      Relationship.PROVIDES to type("Person"),
+      Relationship.HAS_ATTRIBUTE to member("Person/name"),
+      Relationship.IS_TYPE_OF to type("PersonName")
+   )
+
+   private val viaOtherOperation = path(
+      Relationship.IS_INSTANCE_OF to type("PersonId"),
+      Relationship.CAN_POPULATE to parameter("PersonId"),
+      Relationship.IS_PARAMETER_ON to operation("OtherService@@findPerson", null),
+      Relationship.PROVIDES to type("Person"),
+      Relationship.HAS_ATTRIBUTE to member("Person/name"),
+      Relationship.IS_TYPE_OF to type("PersonName")
+   )
+
+   @Test
+   fun `planned path round trips to a path from a different start`() {
+      val plannedPath = PlannedPath.fromPath(viaOperation)!!
+      val otherStart = providedInstance("PersonId", "jack")
+      val replayed = plannedPath.toWeightedNode(otherStart)
+
+      replayed.path().first().state().should.equal(otherStart)
+      replayed.state().should.equal(type("PersonName"))
+      PlannedPath.fromPath(replayed).should.equal(plannedPath)
+   }
+
+   @Test
+   fun `paths through other provided instances are not planned`() {
+      val throughInstance = path(
+         Relationship.CAN_POPULATE to providedInstance("PersonName", "Jimmy"),
+         Relationship.IS_INSTANCE_OF to type("PersonName")
+      )
+      PlannedPath.fromPath(throughInstance).should.be.`null`
+   }
+
+   @Test
+   fun `most recent successful path is returned first`() {
+      val cache = GraphSearchPlanCache()
+      cache.recordSuccess(schema, searchPlanKey, viaOperation)
+      cache.recordSuccess(schema, searchPlanKey, viaOtherOperation)
+      cache.recordSuccess(schema, searchPlanKey, viaOperation)
+
+      cache.getPlannedPaths(schema, searchPlanKey)
+         .should.equal(listOf(PlannedPath.fromPath(viaOperation), PlannedPath.fromPath(viaOtherOperation)))
+   }
+
+   @Test
+   fun `failed paths are removed`() {
+      val cache = GraphSearchPlanCache()
+      cache.recordSuccess(schema, searchPlanKey, viaOperation)
+      cache.recordSuccess(schema, searchPlanKey, viaOtherOperation)
+
+      cache.recordFailure(schema, searchPlanKey, PlannedPath.fromPath(viaOtherOperation)!!)
+      cache.getPlannedPaths(schema, searchPlanKey)
+         .should.equal(listOf(PlannedPath.fromPath(viaOperation)))
+
+      cache.invalidateAll()
+      cache.getPlannedPaths(schema, searchPlanKey).should.be.empty
+   }
+
+   @Test
+   fun `plans are not shared between searches with different known facts`() {
+      val cache = GraphSearchPlanCache()
+      cache.recordSuccess(schema, searchPlanKey, viaOperation)
+
+      val withMoreFacts = GraphSearchPlanCache.SearchPlanKey.of(
+         schema.type("PersonId"),
+         listOf(personId, TypedInstance.from(schema.type("PersonName"), "Jimmy", schema)),
+         type("PersonName")
+      )
+      cache.getPlannedPaths(schema, withMoreFacts).should.be.empty
+      cache.getPlannedPaths(schema, searchPlanKey).should.have.size(1)
+   }
+
+   @Test
+   fun `paths invoking excluded services are identified`() {
+      val plannedPath = PlannedPath.fromPath(viaOperation)!!
+      plannedPath.invokesAnyOf(emptySet(), emptySet()).should.be.`false`
+      plannedPath.invokesAnyOf(emptySet(), setOf("PersonService".fqn())).should.be.`true`
+      plannedPath.invokesAnyOf(emptySet(), setOf("OtherService".fqn())).should.be.`false`
+   }
+}
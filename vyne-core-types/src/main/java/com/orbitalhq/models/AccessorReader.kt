@@ -4,7 +4,6 @@ import com.fasterxml.jackson.databind.node.ObjectNode
 import com.jayway.jsonpath.JsonPath
 import com.jayway.jsonpath.PathNotFoundException
 import com.orbitalhq.expressions.OperatorExpressionCalculator
-import com.orbitalhq.formulas.CalculatorRegistry
 import com.orbitalhq.models.conditional.ConditionalFieldSetEvaluator
 import com.orbitalhq.models.conditional.WhenBlockEvaluator
 import com.orbitalhq.formats.csv.CsvAttributeAccessorParser
@@ -20,7 +19,8 @@ import com.orbitalhq.schemas.QualifiedName
 import com.orbitalhq.schemas.Type
 import com.orbitalhq.schemas.taxi.toVyneQualifiedName
 import com.orbitalhq.utils.log
-import com.orbitalhq.utils.timeBucket
+import com.orbitalhq.utils.EngineActivity
+import com.orbitalhq.utils.EngineInstrumentation
 import com.orbitalhq.utils.xtimed
 import lang.taxi.accessors.*
 import lang.taxi.expressions.*
@@ -57,7 +57,8 @@ class AccessorReader(
    private val schema: Schema,
    private val accessorHandlers: List<AccessorHandler<out Accessor>> = emptyList(),
    private val functionResultCache: MutableMap<FunctionResultCacheKey, Any> = mutableMapOf(),
-   private val valueProjector: ValueProjector? = null
+   private val valueProjector: ValueProjector? = null,
+   private val evaluationPlan: TypeEvaluationPlan? = null
 ) {
    val accessorsByType = accessorHandlers.associateBy { it.accessorType }
 
@@ -74,6 +75,154 @@ class AccessorReader(
             accessorHandlers
          )
       }
+
+      /**
+       * Compiles reading an accessor into the target type, for a TypeEvaluationPlan.
+       * Each compiled accessor calls its inputs' compiled accessors directly, with the types they read resolved up-front.
+       * Accessors without a specialised compilation (or whose types couldn't be planned) are read as before.
+       */
+      internal fun compileRead(accessor: Accessor, targetType: Type, plan: TypeEvaluationPlan): CompiledAccessor {
+         val schema = plan.schema
+         val compiled = when (accessor) {
+            is ColumnAccessor -> CompiledAccessor { reader, value, nullValues, source, format, nullable, _ ->
+               reader.parseColumnData(value, targetType, schema, accessor, nullValues, source, nullable, format)
+            }
+
+            is JsonPathAccessor -> CompiledAccessor { reader, value, _, source, format, _, _ ->
+               reader.parseJson(value, targetType, schema, accessor, source, format)
+            }
+
+            is LiteralAccessor -> {
+               val literalValue = accessor.value
+               // See the comments on reading LiteralAccessors, above
+               CompiledAccessor { _, _, _, source, _, _, _ ->
+                  val dataSource = if (source == MixedSources) Provided else source
+                  TypedInstance.from(targetType, literalValue, schema, source = dataSource)
+               }
+            }
+
+            is FunctionAccessor -> compileFunction(accessor, targetType, plan, useReaderResultCache = true)
+            is FunctionExpression -> compileRead(accessor.function, targetType, plan)
+            is LiteralExpression -> compileRead(accessor.literal, targetType, plan)
+            is OperatorExpression -> compileOperator(accessor, targetType, plan)
+            else -> null
+         }
+         return compiled ?: CompiledAccessor { reader, value, nullValues, source, format, nullable, allowContextQuerying ->
+            reader.readUncompiled(value, targetType, accessor, schema, nullValues, source, format, nullable, allowContextQuerying)
+         }
+      }
+
+      /**
+       * Compiles evaluating an expression into its return type, for a TypeEvaluationPlan.
+       * See compileRead()
+       */
+      internal fun compileEvaluation(expression: Expression, returnType: Type, plan: TypeEvaluationPlan): CompiledAccessor {
+         val schema = plan.schema
+         val compiled = when (expression) {
+            is OperatorExpression -> compileOperator(expression, returnType, plan)
+            is TypeExpression -> {
+               val typeName = expression.type.qualifiedName.fqn()
+               CompiledAccessor { reader, _, _, _, _, _, _ ->
+                  reader.objectFactory.getValue(typeName, queryIfNotFound = true)
+               }
+            }
+
+            is FunctionExpression -> compileFunction(expression.function, returnType, plan, useReaderResultCache = false)
+            is LiteralExpression -> {
+               val literalValue = expression.literal.value
+               CompiledAccessor { _, _, _, source, _, _, _ ->
+                  TypedInstance.from(returnType, literalValue, schema, source = source)
+               }
+            }
+
+            is LambdaExpression -> compileEvaluation(expression.expression, returnType, plan)
+            else -> null
+         }
+         return compiled ?: CompiledAccessor { reader, value, nullValues, source, format, _, _ ->
+            reader.evaluateUncompiled(value, returnType, expression, schema, nullValues, source, format)
+         }
+      }
+
+      /**
+       * As evaluateFunctionAccessor(), with the function's inputs compiled.
+       * Expressions evaluate functions without the reader's function result cache (as in evaluate()).
+       */
+      private fun compileFunction(
+         accessor: FunctionAccessor,
+         targetType: Type,
+         plan: TypeEvaluationPlan,
+         useReaderResultCache: Boolean
+      ): CompiledAccessor? {
+         val function = accessor.function
+         val parameterTypes = plan.parameterTypesOf(accessor) ?: return null
+         // Missing inputs are reported when the function is evaluated
+         if (accessor.inputs.size < function.parameters.size) return null
+
+         val declaredInputs = parameterTypes.declaredParameterTypes.mapIndexed { index, parameterType ->
+            compileRead(accessor.inputs[index], parameterType, plan)
+         }
+         val varargInputs = parameterTypes.varargType?.let { varargType ->
+            accessor.inputs.subList(function.parameters.size - 1, accessor.inputs.size)
+               .map { varargInput -> compileRead(varargInput, varargType, plan) }
+         } ?: emptyList()
+         val inputs = declaredInputs + varargInputs
+         val schema = plan.schema
+         return CompiledAccessor { reader, value, nullValues, source, format, _, _ ->
+            EngineInstrumentation.timed(EngineActivity.ACCESSOR_EVALUATION) {
+               // As when reading uncompiled, inputs are allowed to be searched for
+               val inputValues = inputs.map { input -> input.read(reader, value, nullValues, source, format, false, true) }
+               val resultCache = if (useReaderResultCache) reader.functionResultCache else mutableMapOf()
+               reader.functionRegistry.invoke(
+                  function,
+                  inputValues,
+                  schema,
+                  targetType,
+                  accessor,
+                  reader.objectFactory,
+                  format,
+                  value,
+                  resultCache
+               )
+            }
+         }
+      }
+
+      /**
+       * As evaluateOperatorExpression(), with the operands compiled, and the short-circuiting
+       * and expression text decided up-front
+       */
+      private fun compileOperator(expression: OperatorExpression, returnType: Type, plan: TypeEvaluationPlan): CompiledAccessor? {
+         val lhsReturnType = plan.returnTypeOf(expression.lhs) ?: return null
+         val rhsReturnType = plan.returnTypeOf(expression.rhs) ?: return null
+         val lhs = compileEvaluation(expression.lhs, lhsReturnType, plan)
+         val rhs = compileEvaluation(expression.rhs, rhsReturnType, plan)
+         val operator = expression.operator
+         val isBooleanLogic = lhsReturnType.taxiType.basePrimitive == PrimitiveType.BOOLEAN &&
+            returnType.taxiType == PrimitiveType.BOOLEAN &&
+            (operator == FormulaOperator.LogicalAnd || operator == FormulaOperator.LogicalOr)
+         val expressionText = expression.asTaxi()
+         val schema = plan.schema
+         return CompiledAccessor { reader, value, nullValues, source, format, _, _ ->
+            val lhsValue = lhs.read(reader, value, nullValues, source, format, false, false)
+            when {
+               isBooleanLogic && operator == FormulaOperator.LogicalAnd && lhsValue.value == false ->
+                  TypedInstance.from(returnType, false, schema, source = lhsValue.source)
+
+               isBooleanLogic && operator == FormulaOperator.LogicalOr && lhsValue.value == true ->
+                  TypedInstance.from(returnType, true, schema, source = lhsValue.source)
+
+               operator == FormulaOperator.Coalesce && lhsValue !is TypedNull -> lhsValue
+               else -> {
+                  val rhsValue = rhs.read(reader, value, nullValues, source, format, false, false)
+                  if (operator == FormulaOperator.Coalesce) {
+                     rhsValue
+                  } else {
+                     OperatorExpressionCalculator.calculate(lhsValue, rhsValue, operator, returnType, expressionText, schema)
+                  }
+               }
+            }
+         }
+      }
    }
 
    // There's a cost to building all the Xml junk - so defer if we don't need it,
@@ -86,6 +235,34 @@ class AccessorReader(
          objectFactory, schema, this
       )
    }
+   private val whenBlockEvaluator: WhenBlockEvaluator by lazy {
+      WhenBlockEvaluator(
+         objectFactory, schema, this
+      )
+   }
+
+   /**
+    * Returns the evaluation plan, if it was built against the provided schema.
+    * Otherwise, types are resolved on demand.
+    */
+   private fun planFor(schema: Schema): TypeEvaluationPlan? {
+      return evaluationPlan?.takeIf { it.schema === schema }
+   }
+
+   /**
+    * Returns the evaluation plan, if its compiled accessors can be used by this reader.
+    * Compiled accessors bypass custom AccessorHandlers, so aren't used when any are registered.
+    */
+   private fun compiledPlanFor(schema: Schema): TypeEvaluationPlan? {
+      return if (accessorsByType.isEmpty()) planFor(schema) else null
+   }
+
+   /**
+    * Returns the return type declared on the expression
+    */
+   fun declaredReturnTypeOf(expression: Expression, schema: Schema = this.schema): Type {
+      return planFor(schema)?.declaredReturnTypeOf(expression) ?: schema.type(expression.returnType)
+   }
 
    fun read(
       value: Any,
@@ -117,6 +294,23 @@ class AccessorReader(
          val accessorHandler = accessorsByType[accessor::class] as AccessorHandler<in Accessor>
          return accessorHandler.process(accessor, objectFactory, schema, targetType, source)
       }
+      compiledPlanFor(schema)?.compiledRead(accessor, targetType)?.let { compiled ->
+         return compiled.read(this, value, nullValues, source, format, nullable, allowContextQuerying)
+      }
+      return readUncompiled(value, targetType, accessor, schema, nullValues, source, format, nullable, allowContextQuerying)
+   }
+
+   private fun readUncompiled(
+      value: Any,
+      targetType: Type,
+      accessor: Accessor,
+      schema: Schema,
+      nullValues: Set<String>,
+      source: DataSource,
+      format: FormatsAndZoneOffset?,
+      nullable: Boolean,
+      allowContextQuerying: Boolean,
+   ): TypedInstance {
       return when (accessor) {
          // TODO : Gradually move these accessors out to individual classes to enable better injection / pluggability
          is JsonPathAccessor -> parseJson(value, targetType, schema, accessor, source, format)
@@ -264,11 +458,11 @@ class AccessorReader(
             if (valueProjector == null) {
                error("Cannot project, as no ValueProjector has been supplied. Understand this use-case")
             }
-            // TODO PERF: When we have projecting statements within an
+            // When we have projecting statements within an
             // expression (vs on a field or as a top-level concern), then they're not currently converted to Vyne types.
-            // So, we have to convert them here.
-            // We should find a way to convert them earlier.
-            val projectionType = schema.typeCreateIfRequired(accessor.projection.projectedType)
+            // So, we have to convert them here, unless the evaluation plan has already done so.
+            val projectionType = planFor(schema)?.projectedTypeOf(accessor)
+               ?: schema.typeCreateIfRequired(accessor.projection.projectedType)
             if (valueToProject is DeferredTypedInstance) {
                DeferredProjection(valueToProject, accessor.projection, valueProjector, projectionType, schema, nullValues, source, format, nullable, allowContextQuerying)
             } else {
@@ -276,9 +470,12 @@ class AccessorReader(
             }
          }
          is WhenExpression -> {
-            WhenBlockEvaluator(
-               this.objectFactory, schema, this
-            ).evaluate(value, accessor, source, targetType, format)
+            val evaluator = if (schema === this.schema) {
+               whenBlockEvaluator
+            } else {
+               WhenBlockEvaluator(this.objectFactory, schema, this)
+            }
+            evaluator.evaluate(value, accessor, source, targetType, format)
          }
          else -> {
             TODO("Support for accessor not implemented with type $accessor")
@@ -437,6 +634,21 @@ class AccessorReader(
       source: DataSource,
       resultCache: MutableMap<FunctionResultCacheKey, Any>,
       format: FormatsAndZoneOffset?
+   ): TypedInstance {
+      return EngineInstrumentation.timed(EngineActivity.ACCESSOR_EVALUATION) {
+         doEvaluateFunctionAccessor(value, targetType, schema, accessor, nullValues, source, resultCache, format)
+      }
+   }
+
+   private fun doEvaluateFunctionAccessor(
+      value: Any,
+      targetType: Type,
+      schema: Schema,
+      accessor: FunctionAccessor,
+      nullValues: Set<String>,
+      source: DataSource,
+      resultCache: MutableMap<FunctionResultCacheKey, Any>,
+      format: FormatsAndZoneOffset?
    ): TypedInstance {
       val function = accessor.function
       // Note - don't check for == here, because of vararg params
@@ -444,21 +656,17 @@ class AccessorReader(
          error("Function ${function.qualifiedName} expects ${function.parameters.size} arguments, but only ${accessor.inputs.size} were provided")
       }
 
-      val declaredInputs = timeBucket("lookup inputs for function ${accessor.function.qualifiedName}") {
-         function.parameters.filter { !it.isVarArg }.mapIndexed { index, parameter ->
-            require(index < accessor.inputs.size) { "Cannot read parameter ${parameter.description} as no input was provided at index $index" }
-            val parameterInputAccessor = accessor.inputs[index]
-            val targetParameterType = if (parameter.type is LambdaExpressionType) {
-               schema.typeCreateIfRequired((parameter.type as LambdaExpressionType).returnType)
-//               schema.type((parameter.type as LambdaExpressionType).returnType)
-            } else {
-               schema.typeCreateIfRequired(parameter.type)
-            }
+      val parameterTypes = planFor(schema)?.parameterTypesOf(accessor)
+         ?: ExpressionTypes.parameterTypesOf(function, schema)
+      val declaredInputs = function.parameters.filter { !it.isVarArg }.mapIndexed { index, parameter ->
+         require(index < accessor.inputs.size) { "Cannot read parameter ${parameter.description} as no input was provided at index $index" }
+         val parameterInputAccessor = accessor.inputs[index]
+         val targetParameterType = parameterTypes.declaredParameterTypes[index]
 
-            // This doesn't feel like the right place to do this, it's really
-            // treating this as an edge case, and we shouldn't be.
-            // Here, we're saying "if the thing we're trying to build is actually the input into the function, then it's ok to search".
-            // No real logic behind that, other than it's what I need to make my test pass.
+         // This doesn't feel like the right place to do this, it's really
+         // treating this as an edge case, and we shouldn't be.
+         // Here, we're saying "if the thing we're trying to build is actually the input into the function, then it's ok to search".
+         // No real logic behind that, other than it's what I need to make my test pass.
 
 //         val queryIfNotFound = if (targetType.hasExpression && targetType.expression!! is LambdaExpression) {
 //            val lambdaExpression = targetType.expression as LambdaExpression
@@ -469,41 +677,37 @@ class AccessorReader(
 //            false
 //         }
 
-            // MP, 2-Nov-21: Modifying the rules here where types that are inputs to an expression can be
-            // searched for, regardless.  I suspect this will break some stuff.
-            // I think the ACTUAL approach to use here is to introduce an operator that indicates "Search for this thing".
-            // Also, our search scope should (by default) consider the typed objects in our hand, where at the moment, it doesn't
-            // eg: Currently
-            // find { Foo } as {
-            // ... <- Here, the attributes of Foo aren't available by default, but they should be.
-            // nested1 : {
-            // ... <-- Here, the attributes one layer up aren't available, but they should be.
-            // }
-            //}
-            // MP 8-Nov-22: One year later...
-            // We had swapped back to the above logic, but without documenting why.
-            // I'd like to be able to discover expression params from services, so re-enabling this.
-            // If we revert, document the reason.
-            val queryIfNotFound = true
-
-            timeBucket("read function accessor ${accessor.function.qualifiedName}") {
-               read(
-                  value,
-                  targetParameterType,
-                  parameterInputAccessor,
-                  schema,
-                  nullValues,
-                  source,
-                  allowContextQuerying = queryIfNotFound,
-                  format = format
-               )
-            }
-         }
+         // MP, 2-Nov-21: Modifying the rules here where types that are inputs to an expression can be
+         // searched for, regardless.  I suspect this will break some stuff.
+         // I think the ACTUAL approach to use here is to introduce an operator that indicates "Search for this thing".
+         // Also, our search scope should (by default) consider the typed objects in our hand, where at the moment, it doesn't
+         // eg: Currently
+         // find { Foo } as {
+         // ... <- Here, the attributes of Foo aren't available by default, but they should be.
+         // nested1 : {
+         // ... <-- Here, the attributes one layer up aren't available, but they should be.
+         // }
+         //}
+         // MP 8-Nov-22: One year later...
+         // We had swapped back to the above logic, but without documenting why.
+         // I'd like to be able to discover expression params from services, so re-enabling this.
+         // If we revert, document the reason.
+         val queryIfNotFound = true
+
+         read(
+            value,
+            targetParameterType,
+            parameterInputAccessor,
+            schema,
+            nullValues,
+            source,
+            allowContextQuerying = queryIfNotFound,
+            format = format
+         )
       }
-      val declaredVarArgs = if (function.parameters.isNotEmpty() && function.parameters.last().isVarArg) {
+      val varargType = parameterTypes.varargType
+      val declaredVarArgs = if (varargType != null) {
          val varargFrom = function.parameters.size - 1
-         val varargParam = function.parameters.last()
-         val varargType = schema.type(varargParam.type)
          val inputs = accessor.inputs.subList(varargFrom, accessor.inputs.size)
          inputs.map { varargInputAccessor ->
             read(
@@ -756,6 +960,22 @@ class AccessorReader(
       dataSource: DataSource,
       format: FormatsAndZoneOffset?,
       resultCache: MutableMap<FunctionResultCacheKey, Any> = mutableMapOf()
+   ): TypedInstance {
+      compiledPlanFor(schema)?.compiledEvaluation(expression, returnType)?.let { compiled ->
+         return compiled.read(this, value, nullValues, dataSource, format, false, false)
+      }
+      return evaluateUncompiled(value, returnType, expression, schema, nullValues, dataSource, format, resultCache)
+   }
+
+   private fun evaluateUncompiled(
+      value: Any,
+      returnType: Type,
+      expression: Expression,
+      schema: Schema,
+      nullValues: Set<String>,
+      dataSource: DataSource,
+      format: FormatsAndZoneOffset?,
+      resultCache: MutableMap<FunctionResultCacheKey, Any> = mutableMapOf()
    ): TypedInstance {
       return when (expression) {
          is OperatorExpression -> evaluateOperatorExpression(
@@ -855,8 +1075,9 @@ class AccessorReader(
       dataSource: DataSource,
       format: FormatsAndZoneOffset?
    ): TypedInstance {
-      val lhsReturnType = getReturnTypeFromExpression(expression.lhs, schema)
-      val rhsReturnType = getReturnTypeFromExpression(expression.rhs, schema)
+      val plan = planFor(schema)
+      val lhsReturnType = plan?.returnTypeOf(expression.lhs) ?: ExpressionTypes.returnTypeOf(expression.lhs, schema)
+      val rhsReturnType = plan?.returnTypeOf(expression.rhs) ?: ExpressionTypes.returnTypeOf(expression.rhs, schema)
       val lhs = evaluate(
          value,
          lhsReturnType,
@@ -922,22 +1143,4 @@ class AccessorReader(
       )
    }
 
-   private val calculatorRegistry = CalculatorRegistry()
-   private fun getReturnTypeFromExpression(expression: Expression, schema: Schema): Type {
-      return when (expression) {
-         is TypeExpression -> schema.type(expression.type)
-         is FunctionExpression -> schema.type(expression.function.returnType)
-         is OperatorExpression -> {
-            val lhsType = getReturnTypeFromExpression(expression.lhs, schema)
-            val rhsType = getReturnTypeFromExpression(expression.rhs, schema)
-            val calculator = calculatorRegistry.getCalculator(expression.operator, listOf(lhsType, rhsType))
-               ?: error("No calculator exists to perform operation ${expression.operator} against types ${lhsType.fullyQualifiedName} and ${rhsType.fullyQualifiedName}")
-            return calculator.getReturnType(expression.operator, listOf(lhsType, rhsType), schema)
-         }
-
-         is LiteralExpression -> return schema.type(expression.literal.returnType)
-         else -> return schema.type(expression.returnType)
-      }
-   }
-
 }
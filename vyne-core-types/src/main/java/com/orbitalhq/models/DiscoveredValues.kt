@@ -0,0 +1,79 @@
+package com.orbitalhq.models
+
+import com.orbitalhq.utils.runBlockingManaged
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Values that a TypedObjectFactory (and the factories it creates for nested objects)
+ * discovered by searching with the query engine while building a single object.
+ *
+ * Building an object is synchronous, but discovering a value suspends.
+ * Rather than blocking the building thread while the query engine searches,
+ * when the build is running within discovering {}, a value which hasn't been discovered yet
+ * aborts the build with a DiscoveryRequired.  The search then runs suspended, its result is kept here,
+ * and the build is run again - this time reading the discovered value.
+ *
+ * Outside of discovering {} (eg., when build() is called from synchronous code), values are discovered
+ * by blocking with runBlockingManaged.
+ */
+class DiscoveredValues {
+   private val values = ConcurrentHashMap<Any, Any>()
+
+   /**
+    * Shared between the threads building members of a collection in parallel,
+    * so a counter, rather than a ThreadLocal
+    */
+   private val suspendingBuilds = AtomicInteger(0)
+
+   fun <T : Any> getOrDiscover(key: Any, discovery: suspend () -> T): T {
+      @Suppress("UNCHECKED_CAST")
+      val discovered = values[key] as T?
+      if (discovered != null) {
+         return discovered
+      }
+      if (suspendingBuilds.get() == 0) {
+         val value = runBlockingManaged { discovery() }
+         values[key] = value
+         return value
+      }
+      throw DiscoveryRequired(key, discovery)
+   }
+
+   /**
+    * Runs the (synchronous) block, suspending to discover any values it requires,
+    * and then running the block again, until it completes.
+    *
+    * Each attempt reuses the values discovered by previous attempts, so the block
+    * is run at most once more than the number of values it needs to discover.
+    */
+   suspend fun <T> discovering(block: () -> T): T {
+      suspendingBuilds.incrementAndGet()
+      try {
+         while (true) {
+            try {
+               return block()
+            } catch (required: DiscoveryRequired) {
+               values[required.key] = required.discovery()
+            }
+         }
+      } finally {
+         suspendingBuilds.decrementAndGet()
+      }
+   }
+}
+
+/**
+ * Thrown while building an object to abort the build until a value has been discovered.
+ *
+ * This is a Throwable, rather than an Exception, so that it passes through the
+ * catch (e: Exception) blocks used while evaluating expressions, which would otherwise
+ * record it as a failed evaluation.
+ * It has no stack trace, as it's thrown as a signal, rather than to report an error.
+ */
+class DiscoveryRequired internal constructor(
+   val key: Any,
+   internal val discovery: suspend () -> Any
+) : Throwable("A value must be discovered before the build can continue") {
+   override fun fillInStackTrace(): Throwable = this
+}
@@ -3,6 +3,7 @@ package com.orbitalhq.models
 import com.orbitalhq.schemas.AttributeName
 import com.orbitalhq.schemas.QualifiedName
 import com.orbitalhq.schemas.Type
+import com.orbitalhq.utils.runBlockingManaged
 import lang.taxi.accessors.Accessor
 import lang.taxi.accessors.Argument
 import lang.taxi.types.FormatsAndZoneOffset
@@ -22,4 +23,15 @@ interface EvaluationValueSupplier {
    fun getValue(attributeName: AttributeName): TypedInstance
    fun readAccessor(type: Type, accessor: Accessor, format: FormatsAndZoneOffset?): TypedInstance
    fun readAccessor(type: QualifiedName, accessor: Accessor, nullable: Boolean, format: FormatsAndZoneOffset?): TypedInstance
+
+   /**
+    * Returns a value which requires suspending work (such as a query engine search) to discover.
+    * Suppliers which can defer the work until the caller is able to suspend (see DiscoveredValues) should
+    * override this.  Otherwise, blocks until the value is discovered.
+    *
+    * The key identifies the value, and must be equal across repeated evaluations of the same expression.
+    */
+   fun <T : Any> discover(key: Any, discovery: suspend () -> T): T {
+      return runBlockingManaged { discovery() }
+   }
 }
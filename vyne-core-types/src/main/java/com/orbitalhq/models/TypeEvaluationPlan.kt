@@ -0,0 +1,261 @@
+package com.orbitalhq.models
+
+import com.orbitalhq.formulas.CalculatorRegistry
+import com.orbitalhq.schemas.AttributeName
+import com.orbitalhq.schemas.Field
+import com.orbitalhq.schemas.Schema
+import com.orbitalhq.schemas.Type
+import com.orbitalhq.schemas.taxi.toVyneQualifiedName
+import lang.taxi.accessors.*
+import lang.taxi.expressions.*
+import lang.taxi.functions.Function
+import lang.taxi.functions.FunctionAccessor
+import lang.taxi.functions.FunctionExpressionAccessor
+import lang.taxi.types.*
+import mu.KotlinLogging
+import java.util.IdentityHashMap
+
+/**
+ * The schema lookups needed to build a type from raw values (ie., resolving field types,
+ * the operand types of operators, and the parameter types of functions), resolved once per type and schema.
+ *
+ * Without a plan, TypedObjectFactory and AccessorReader repeat these lookups for every field of every record,
+ * which dominates the cost of ingesting large CSV / Json payloads with expressions.
+ *
+ * The accessors of fields, and the expressions of types, are also compiled into CompiledAccessors,
+ * so that reading them for each record calls straight through the accessor tree, rather than dispatching on
+ * the kind of each accessor and looking up its types again.
+ *
+ * Expressions and accessors are keyed by identity, as they're the same instances from the compiled taxi schema
+ * on every evaluation.  Anything not in the plan (eg., because it couldn't be resolved up-front) is resolved
+ * on demand, as before.
+ *
+ * Plans are immutable once built, so are safe to share across threads.
+ */
+class TypeEvaluationPlan private constructor(
+   val type: Type,
+   val schema: Schema
+) {
+   companion object {
+      private val logger = KotlinLogging.logger {}
+
+      fun build(type: Type, schema: Schema): TypeEvaluationPlan {
+         return TypeEvaluationPlan(type, schema).apply { compile() }
+      }
+   }
+
+   data class FieldPlan(
+      /**
+       * The type of the field.  Where the field is projected, this is the type
+       * that's built before projecting.
+       */
+      val sourceType: Type,
+      /**
+       * The declared type of the field (or it's anonymous type)
+       */
+      val resolvedType: Type,
+      val projectedType: Type?
+   )
+
+   private val fieldPlans = HashMap<AttributeName, FieldPlan>()
+   private val expressionReturnTypes = IdentityHashMap<Expression, Type>()
+   private val declaredReturnTypes = IdentityHashMap<Expression, Type>()
+   private val functionParameterTypes = IdentityHashMap<FunctionAccessor, FunctionParameterTypes>()
+   private val projectedTypes = IdentityHashMap<ProjectingExpression, Type>()
+   private val compiledReads = IdentityHashMap<Accessor, TypedCompiledAccessor>()
+   private val compiledEvaluations = IdentityHashMap<Expression, TypedCompiledAccessor>()
+
+   /**
+    * A compiled accessor, and the type it was compiled to read
+    */
+   private class TypedCompiledAccessor(val type: Type, val accessor: CompiledAccessor) {
+      fun isFor(targetType: Type) = type === targetType || type.paramaterizedName == targetType.paramaterizedName
+   }
+
+   fun fieldPlan(attributeName: AttributeName): FieldPlan? = fieldPlans[attributeName]
+
+   /**
+    * The type an expression evaluates to, considering the operators used within it.
+    * See ExpressionTypes.returnTypeOf()
+    */
+   fun returnTypeOf(expression: Expression): Type? = expressionReturnTypes[expression]
+
+   /**
+    * The return type declared on an expression
+    */
+   fun declaredReturnTypeOf(expression: Expression): Type? = declaredReturnTypes[expression]
+
+   fun parameterTypesOf(accessor: FunctionAccessor): FunctionParameterTypes? = functionParameterTypes[accessor]
+
+   fun projectedTypeOf(expression: ProjectingExpression): Type? = projectedTypes[expression]
+
+   /**
+    * The compiled read of a field's accessor, if it was compiled for the target type
+    */
+   fun compiledRead(accessor: Accessor, targetType: Type): CompiledAccessor? =
+      compiledReads[accessor]?.takeIf { it.isFor(targetType) }?.accessor
+
+   /**
+    * The compiled evaluation of a type's expression, if it was compiled for the return type
+    */
+   fun compiledEvaluation(expression: Expression, returnType: Type): CompiledAccessor? =
+      compiledEvaluations[expression]?.takeIf { it.isFor(returnType) }?.accessor
+
+   private fun compile() {
+      type.attributes.forEach { (attributeName, field) ->
+         val fieldPlan = resolveOrNull({ "field $attributeName" }) { compileField(field) } ?: return@forEach
+         fieldPlans[attributeName] = fieldPlan
+         field.accessor?.let { accessor ->
+            compile(accessor)
+            // Fields are read into their source type, before any projection
+            resolveOrNull({ "accessor of field $attributeName" }) {
+               AccessorReader.compileRead(accessor, fieldPlan.sourceType, this)
+            }?.let { compiledReads[accessor] = TypedCompiledAccessor(fieldPlan.sourceType, it) }
+         }
+         fieldPlan.sourceType.expression?.let { compileExpressionOf(fieldPlan.sourceType, it) }
+      }
+      type.expression?.let { compileExpressionOf(type, it) }
+   }
+
+   private fun compileExpressionOf(expressionType: Type, expression: Expression) {
+      compile(expression)
+      resolveOrNull({ "expression of ${expressionType.qualifiedName.shortDisplayName}" }) {
+         AccessorReader.compileEvaluation(expression, expressionType, this)
+      }?.let { compiledEvaluations[expression] = TypedCompiledAccessor(expressionType, it) }
+   }
+
+   private fun compileField(field: Field): FieldPlan {
+      val resolvedType = field.resolveType(schema)
+      val fieldProjection = field.fieldProjection ?: return FieldPlan(resolvedType, resolvedType, null)
+      val projectedType =
+         if (field.anonymousType != null && field.anonymousType.name.parameterizedName == fieldProjection.projectedType.toVyneQualifiedName().parameterizedName) {
+            field.anonymousType
+         } else {
+            schema.type(fieldProjection.projectedType)
+         }
+      return FieldPlan(schema.type(fieldProjection.sourceType), resolvedType, projectedType)
+   }
+
+   private fun compile(accessor: Accessor) {
+      when (accessor) {
+         is OperatorExpression -> {
+            listOf(accessor.lhs, accessor.rhs).forEach { operand ->
+               resolveOrNull({ "operand ${operand.asTaxi()}" }) { ExpressionTypes.returnTypeOf(operand, schema) }
+                  ?.let { expressionReturnTypes[operand] = it }
+               compile(operand)
+            }
+         }
+
+         is FunctionAccessor -> {
+            resolveOrNull({ "parameters of ${accessor.function.qualifiedName}" }) {
+               ExpressionTypes.parameterTypesOf(accessor.function, schema)
+            }?.let { functionParameterTypes[accessor] = it }
+            accessor.inputs.forEach { compile(it) }
+         }
+
+         is FunctionExpression -> compile(accessor.function)
+         is FunctionExpressionAccessor -> compile(accessor.functionAccessor)
+         is LambdaExpression -> compile(accessor.expression)
+         is ProjectingExpression -> {
+            resolveOrNull({ "projection to ${accessor.projection.projectedType.qualifiedName}" }) {
+               schema.typeCreateIfRequired(accessor.projection.projectedType)
+            }?.let { projectedTypes[accessor] = it }
+            compile(accessor.expression)
+         }
+
+         is WhenExpression -> {
+            val selector = accessor.selectorExpression
+            resolveOrNull({ "when selector ${selector.asTaxi()}" }) { schema.type(selector.returnType) }
+               ?.let { declaredReturnTypes[selector] = it }
+            compile(selector)
+            accessor.cases.forEach { caseBlock ->
+               if (caseBlock.matchExpression !is ElseMatchExpression) {
+                  compile(caseBlock.matchExpression)
+               }
+               resolveOrNull({ "assignment of when case" }) { caseBlock.getSingleAssignment().assignment }
+                  ?.let { compile(it) }
+            }
+         }
+
+         else -> {}
+      }
+   }
+
+   /**
+    * Failures are left to be raised when (and if) the accessor is actually evaluated,
+    * so that types which can't be fully resolved up-front behave as they did without a plan.
+    */
+   private fun <T> resolveOrNull(description: () -> String, resolver: () -> T): T? {
+      return try {
+         resolver()
+      } catch (e: Exception) {
+         logger.debug { "Not planning ${description()} on type ${type.qualifiedName.shortDisplayName} - ${e.message}" }
+         null
+      }
+   }
+}
+
+/**
+ * An accessor or expression compiled by a TypeEvaluationPlan (see AccessorReader.compileRead()).
+ *
+ * Compiled accessors are shared by every factory building the type, so are passed the reader
+ * for the record being built, which supplies its values, function registry and caches.
+ */
+fun interface CompiledAccessor {
+   fun read(
+      reader: AccessorReader,
+      value: Any,
+      nullValues: Set<String>,
+      source: DataSource,
+      format: FormatsAndZoneOffset?,
+      nullable: Boolean,
+      allowContextQuerying: Boolean
+   ): TypedInstance
+}
+
+/**
+ * The types of the parameters of a function, used to read the function's inputs
+ */
+data class FunctionParameterTypes(
+   val declaredParameterTypes: List<Type>,
+   val varargType: Type?
+)
+
+/**
+ * Resolves the types used when evaluating expressions.
+ * Used when building a TypeEvaluationPlan, and by AccessorReader for anything that isn't in a plan.
+ */
+object ExpressionTypes {
+   private val calculatorRegistry = CalculatorRegistry()
+
+   fun returnTypeOf(expression: Expression, schema: Schema): Type {
+      return when (expression) {
+         is TypeExpression -> schema.type(expression.type)
+         is FunctionExpression -> schema.type(expression.function.returnType)
+         is OperatorExpression -> {
+            val lhsType = returnTypeOf(expression.lhs, schema)
+            val rhsType = returnTypeOf(expression.rhs, schema)
+            val calculator = calculatorRegistry.getCalculator(expression.operator, listOf(lhsType, rhsType))
+               ?: error("No calculator exists to perform operation ${expression.operator} against types ${lhsType.fullyQualifiedName} and ${rhsType.fullyQualifiedName}")
+            calculator.getReturnType(expression.operator, listOf(lhsType, rhsType), schema)
+         }
+
+         is LiteralExpression -> schema.type(expression.literal.returnType)
+         else -> schema.type(expression.returnType)
+      }
+   }
+
+   fun parameterTypesOf(function: Function, schema: Schema): FunctionParameterTypes {
+      val declaredParameterTypes = function.parameters.filter { !it.isVarArg }.map { parameter ->
+         if (parameter.type is LambdaExpressionType) {
+            schema.typeCreateIfRequired((parameter.type as LambdaExpressionType).returnType)
+         } else {
+            schema.typeCreateIfRequired(parameter.type)
+         }
+      }
+      val varargType = if (function.parameters.isNotEmpty() && function.parameters.last().isVarArg) {
+         schema.type(function.parameters.last().type)
+      } else null
+      return FunctionParameterTypes(declaredParameterTypes, varargType)
+   }
+}
@@ -6,7 +6,6 @@ import com.orbitalhq.schemas.EnumValue
 import com.orbitalhq.schemas.Type
 import com.orbitalhq.schemas.TypeCache
 import com.orbitalhq.utils.Ids
-import com.orbitalhq.utils.ImmutableEquality
 import lang.taxi.types.EnumType
 import lang.taxi.types.EnumValueQualifiedName
 import mu.KotlinLogging
@@ -53,7 +52,14 @@ data class TypedEnumValue(
    override val source: DataSource,
    private val valueKind: EnumValueKind = EnumValueKind.VALUE
 ) : TypedInstance {
-   override val nodeId: String = Ids.fastUuid()
+   @Volatile
+   private var generatedNodeId: String? = null
+
+   // Only generated when needed (eg., by lineage), as most values are never referenced by id
+   override val nodeId: String
+      get() = generatedNodeId ?: synchronized(this) {
+         generatedNodeId ?: Ids.fastUuid().also { generatedNodeId = it }
+      }
 
    override fun toString(): String {
       return "${type.qualifiedName.longDisplayName}.$enumValue"
@@ -63,10 +69,15 @@ data class TypedEnumValue(
    private val enumType: EnumType = type.taxiType as EnumType
    val enumValueQualifiedName: EnumValueQualifiedName = enumType.ofName(enumValue.name).qualifiedName
 
-   private val equality = ImmutableEquality(this, TypedEnumValue::type, TypedEnumValue::enumValue)
-   override fun hashCode(): Int = equality.hash()
+   // Not using ImmutableEquality, to avoid allocating an equality holder per value
+   private val hash: Int = 31 * type.hashCode() + enumValue.hashCode()
+   override fun hashCode(): Int = hash
    override fun equals(other: Any?): Boolean {
-      return equality.isEqualTo(other)
+      if (this === other) return true
+      if (other == null) return false
+      if (this.javaClass !== other.javaClass) return false
+      other as TypedEnumValue
+      return this.type == other.type && this.enumValue == other.enumValue
    }
 
    val name: String = enumValue.name
@@ -74,6 +85,19 @@ data class TypedEnumValue(
       return TypedEnumValue(typeAlias, enumValue, typeCache, source)
    }
 
+   /**
+    * Returns a copy of this value with the provided source.
+    * If nothing has changed (eg., the value is defined in the schema, and the source is a static source)
+    * then this instance is shared, rather than allocating a new value.
+    */
+   fun withSource(source: DataSource, valueKind: EnumValueKind = this.valueKind): TypedEnumValue {
+      return if (source is StaticDataSource && source == this.source && valueKind == this.valueKind) {
+         this
+      } else {
+         copy(source = source, valueKind = valueKind)
+      }
+   }
+
    @get:JsonIgnore
    @delegate:JsonIgnore
    val synonyms: List<TypedEnumValue> by lazy {
@@ -25,7 +25,14 @@ data class TypedNull private constructor(private val wrapper: TypedNullWrapper,
           log().debug("Found a TypedNull with an UndefinedSource.  Consider updating caller to populate the datasource")
        }
    }
-   override val nodeId: String = Ids.fastUuid()
+   @Volatile
+   private var generatedNodeId: String? = null
+
+   // Only generated when needed (eg., by lineage), as most nulls are never referenced by id
+   override val nodeId: String
+      get() = generatedNodeId ?: synchronized(this) {
+         generatedNodeId ?: Ids.fastUuid().also { generatedNodeId = it }
+      }
 
    companion object {
       // Intern the wrappers, so that we can do fast equality checks
@@ -42,7 +49,6 @@ data class TypedNull private constructor(private val wrapper: TypedNullWrapper,
    }
 
    override val type: Type = wrapper.type
-   private val equality = ImmutableEquality(this, TypedNull::type)
    override fun equals(other: Any?): Boolean {
       // Don't call equality.equals() here, as it's too slow.
       // We need a fast, non-reflection based implementation.
@@ -52,7 +58,8 @@ data class TypedNull private constructor(private val wrapper: TypedNullWrapper,
       // wrapper has been interned, so check for object reference equality
       return this.wrapper === (other as TypedNull).wrapper
    }
-   override fun hashCode(): Int = equality.hash()
+   // The wrapper is interned, and caches its hash
+   override fun hashCode(): Int = wrapper.hashCode()
    override val value: Any? = null
    override fun toString(): String {
       return "TypedNull(type=${wrapper.type.fullyQualifiedName})"
@@ -12,10 +12,10 @@ import com.orbitalhq.models.json.JsonParsedStructure
 import com.orbitalhq.models.json.isJson
 import com.orbitalhq.schemas.*
 import com.orbitalhq.schemas.taxi.toVyneQualifiedName
-import com.orbitalhq.utils.timeBucket
+import com.orbitalhq.utils.EngineActivity
+import com.orbitalhq.utils.EngineInstrumentation
 import com.orbitalhq.utils.xtimed
 import kotlinx.coroutines.flow.toList
-import kotlinx.coroutines.runBlocking
 import lang.taxi.accessors.*
 import lang.taxi.expressions.Expression
 import lang.taxi.types.FieldProjection
@@ -32,6 +32,11 @@ import java.util.stream.Collectors
  * @param evaluateAccessors Determines if accessors defined in the schema should be evaluated.  Normally
  * this should be true.  However, for content served from a cask, the content is already preparsed, and so
  * does not need accessors to be evaluated.
+ * @param useEvaluationPlan Determines if the type's TypeEvaluationPlan is used to read fields and expressions.
+ * Normally this should be true.  Without a plan, types are resolved and accessors dispatched for every record.
+ * @param discoveredValues Values discovered from the query engine while building.  Shared with the factories
+ * created for nested objects, so that a build which was suspended to discover a value can be resumed by
+ * building again.
  */
 class TypedObjectFactory(
    private val type: Type,
@@ -47,7 +52,9 @@ class TypedObjectFactory(
    private val formatSpecs: List<ModelFormatSpec> = emptyList(),
    private val parsingErrorBehaviour: ParsingFailureBehaviour = ParsingFailureBehaviour.ThrowException,
    private val functionResultCache: MutableMap<FunctionResultCacheKey, Any> = mutableMapOf(),
-   private val projectionScope: ProjectionFunctionScope? = null
+   private val projectionScope: ProjectionFunctionScope? = null,
+   private val useEvaluationPlan: Boolean = true,
+   private val discoveredValues: DiscoveredValues = DiscoveredValues()
 ) : EvaluationValueSupplier, ValueProjector {
 
    companion object {
@@ -58,6 +65,14 @@ class TypedObjectFactory(
    private val buildSpecProvider = TypedInstancePredicateFactory()
 
    private val valueReader = ValueReader()
+
+   /**
+    * The field types, and types used by expressions, of the type being built.
+    * Shared across all the factories building this type, so resolved once, rather than per record.
+    */
+   private val evaluationPlan: TypeEvaluationPlan? by lazy {
+      if (useEvaluationPlan) type.evaluationPlan(schema) else null
+   }
    private val accessorReader: AccessorReader by lazy {
       AccessorReader(
          this,
@@ -65,8 +80,8 @@ class TypedObjectFactory(
          this.schema,
          this.accessorHandlers,
          this.functionResultCache,
-         valueProjector = this
-
+         valueProjector = this,
+         evaluationPlan = evaluationPlan
       )
    }
    private val conditionalFieldSetEvaluator = ConditionalFieldSetEvaluator(this, this.schema, accessorReader)
@@ -144,15 +159,16 @@ class TypedObjectFactory(
       fieldValue: TypedInstance,
       projectionScope: ProjectionFunctionScope
    ): TypedInstance {
+      val fieldPlan = evaluationPlan?.fieldPlan(attributeName)
       if (fieldValue is TypedNull) {
          // Don't attempt to project nulls
-         return TypedNull.create(field.resolveType(schema), fieldValue.source)
+         return TypedNull.create(fieldPlan?.resolvedType ?: field.resolveType(schema), fieldValue.source)
       }
       // 16-Apr-23:
       // Anonymous types for fields are now on the field directly.
       // But, I'm not sure if the fieldProjectionType is always ths same as the fieldType
-      val projectedType =
-         if (field.anonymousType != null && field.anonymousType.name.parameterizedName == field.fieldProjection!!.projectedType.toVyneQualifiedName().parameterizedName) {
+      val projectedType = fieldPlan?.projectedType
+         ?: if (field.anonymousType != null && field.anonymousType.name.parameterizedName == field.fieldProjection!!.projectedType.toVyneQualifiedName().parameterizedName) {
             field.anonymousType
          } else {
             schema.type(field.fieldProjection!!.projectedType)
@@ -269,7 +285,9 @@ class TypedObjectFactory(
          formatSpecs,
          parsingErrorBehaviour,
          functionResultCache,
-         scope
+         scope,
+         useEvaluationPlan,
+         discoveredValues
       )
    }
 
@@ -295,16 +313,29 @@ class TypedObjectFactory(
       // via the get() method
       val mappedAttributes = attributesToMap.map { (attributeName) ->
          // The value may have already been populated on-demand from a conditional
-         // field set evaluation block, prior to the iterator hitting the field
-         attributeName to getOrBuild(attributeName)
+         // field set evaluation block, prior to the iterator hitting the field.
+         // Fields which need to query for values suspend while searching, rather than blocking.
+         attributeName to discovering { getOrBuild(attributeName) }
       }.toMap()
 
       val attributes = decorator(mappedAttributes)
       return TypedObject(type, attributes, source)
    }
 
+   /**
+    * Runs synchronous evaluation against this factory (eg., evaluateExpressionType),
+    * suspending, rather than blocking, whenever a value has to be discovered from the query engine.
+    */
+   suspend fun <T> discovering(block: () -> T): T {
+      return discoveredValues.discovering(block)
+   }
+
+   override fun <T : Any> discover(key: Any, discovery: suspend () -> T): T {
+      return discoveredValues.getOrDiscover(key, discovery)
+   }
+
    fun build(decorator: (attributeMap: Map<AttributeName, TypedInstance>) -> Map<AttributeName, TypedInstance> = { attributesToMap -> attributesToMap }): TypedInstance {
-      return timeBucket("Build ${this.type.name.shortDisplayName}") {
+      return EngineInstrumentation.timed(EngineActivity.OBJECT_BUILD) {
          doBuild(decorator)
       }
    }
@@ -397,10 +428,12 @@ class TypedObjectFactory(
       accessorEvaluationSupressed = !allowAccessorEvaluation
 
       // Reading the value will trigger population the first time.
-      val value = initializer.value
-
-      accessorEvaluationSupressed = accessorEvaluationWasSupressed
-      return value
+      // Population may be abandoned (eg., to discover a value), so always restore the flag.
+      return try {
+         initializer.value
+      } finally {
+         accessorEvaluationSupressed = accessorEvaluationWasSupressed
+      }
    }
 
    override fun getScopedFact(scope: Argument): TypedInstance {
@@ -476,37 +509,30 @@ class TypedObjectFactory(
       }
       return when {
          queryIfNotFound && inPlaceQueryEngine != null -> {
-            // TODO : Remove the blocking behaviour here.
-            // TypedObjectFactory has always been blocking (but
-            // historically hasn't invoked services), so leaving as
-            // blocking when introducing type expressions with lookups.
-            // However, in future, we need to mkae the TypedObjectFactory
-            // async up the chain.
-            runBlocking {
-               val resultsFromSearch = try {
+            // TypedObjectFactory is synchronous, so the search is deferred until the build can suspend.
+            val resultsFromSearch = discover(TypeSearch(requestedType.paramaterizedName)) {
+               try {
                   inPlaceQueryEngine.findType(requestedType)
                      .toList()
                } catch (e: Exception) {
                   // handle com.orbitalhq.query.UnresolvedTypeInQueryException
                   emptyList()
                }
-               when {
-                  resultsFromSearch.isEmpty() -> createTypedNull(
-                     "No attribute with type ${requestedType.name.parameterizedName} is present on type ${type.name.parameterizedName} and attempts to discover a value from the query engine failed"
-                  )
-
-                  resultsFromSearch.size == 1 -> resultsFromSearch.first()
-                  resultsFromSearch.size > 1 && requestedType.isCollection -> {
-                     TypedCollection.from(resultsFromSearch, MixedSources.singleSourceOrMixedSources(resultsFromSearch))
-                  }
+            }
+            when {
+               resultsFromSearch.isEmpty() -> createTypedNull(
+                  "No attribute with type ${requestedType.name.parameterizedName} is present on type ${type.name.parameterizedName} and attempts to discover a value from the query engine failed"
+               )
 
-                  else -> createTypedNull(
-                     "No attribute with type ${requestedType.name.parameterizedName} is present on type ${type.name.parameterizedName} and attempts to discover a value from the query engine returned ${resultsFromSearch.size} results.  Given this is ambiguous, returning null"
-                  )
+               resultsFromSearch.size == 1 -> resultsFromSearch.first()
+               resultsFromSearch.size > 1 && requestedType.isCollection -> {
+                  TypedCollection.from(resultsFromSearch, MixedSources.singleSourceOrMixedSources(resultsFromSearch))
                }
 
+               else -> createTypedNull(
+                  "No attribute with type ${requestedType.name.parameterizedName} is present on type ${type.name.parameterizedName} and attempts to discover a value from the query engine returned ${resultsFromSearch.size} results.  Given this is ambiguous, returning null"
+               )
             }
-
          }
 
          queryIfNotFound && inPlaceQueryEngine == null -> {
@@ -582,10 +608,11 @@ class TypedObjectFactory(
       // When we're building a field, if there's a projection on it,
       // we build the source type initially.  Once the source is built, we
       // then project to the target type.
-      val fieldType = if (field.fieldProjection != null) {
-         schema.type(field.fieldProjection.sourceType)
-      } else {
-         field.resolveType(schema)
+      val fieldPlan = evaluationPlan?.fieldPlan(attributeName)
+      val fieldType = when {
+         fieldPlan != null -> fieldPlan.sourceType
+         field.fieldProjection != null -> schema.type(field.fieldProjection.sourceType)
+         else -> field.resolveType(schema)
       }
       val fieldTypeName = fieldType.qualifiedName
 
@@ -640,7 +667,12 @@ class TypedObjectFactory(
          ) -> readWithValueReader(attributeName, fieldType, field.format)
 
          considerAccessor -> {
-            readAccessor(field.resolveType(schema), field.accessor!!, field.format)
+            readAccessor(fieldPlan?.resolvedType ?: field.resolveType(schema), field.accessor!!, field.format)
+         }
+
+         // Anonymous types aren't in the schema, so are looked up by name (as before)
+         evaluateTypeExpression && fieldPlan != null && field.anonymousType == null -> {
+            evaluateExpressionType(fieldType, null)
          }
 
          evaluateTypeExpression -> {
@@ -769,7 +801,8 @@ class TypedObjectFactory(
       return if (inPlaceQueryEngine != null) {
          val fieldInstanceValidPredicate = buildSpecProvider.provide(field)
          val (additionalFacts, additionalScope) = getFactsInScopeForSearch()
-         val buildResult = runBlocking {
+         val searchKey = FieldSearch(this.type.paramaterizedName, attributeName, additionalScope)
+         val buildResult = discover(searchKey) {
             logger.debug { "Initiating query to search for attribute $attributeName (${type.name.shortDisplayName})" }
             inPlaceQueryEngine.withAdditionalFacts(additionalFacts, additionalScope)
                .findType(type, fieldInstanceValidPredicate, PermittedQueryStrategies.EXCLUDE_BUILDER_AND_MODEL_SCAN)
@@ -791,6 +824,9 @@ class TypedObjectFactory(
       }
    }
 
+   private data class TypeSearch(val typeName: String)
+   private data class FieldSearch(val typeName: String, val attributeName: AttributeName, val scopedFacts: List<ScopedFact>)
+
    private fun getFactsInScopeForSearch(): Pair<List<TypedInstance>, List<ScopedFact>> {
       return if (value is CascadingFactBag) {
          // This is a basic implementation now, which is required to make tests pass.
@@ -2,9 +2,9 @@
 
 package com.orbitalhq.models
 
+import com.google.common.cache.CacheBuilder
 import com.orbitalhq.schemas.Type
 import com.orbitalhq.utils.Ids
-import lang.taxi.ImmutableEquality
 import lang.taxi.jvm.common.PrimitiveTypes
 import lang.taxi.types.FormatsAndZoneOffset
 import mu.KotlinLogging
@@ -58,12 +58,22 @@ data class TypedValue private constructor(
    override val source: DataSource,
    val format: FormatsAndZoneOffset? = null
 ) : TypedInstance {
-   private val equality = ImmutableEquality(this, TypedValue::type, TypedValue::value)
-   private val hash: Int by lazy { equality.hash() }
+   // Large projections create millions of TypedValues, so keep the per-instance
+   // footprint small: the hash is cached in a plain field (racy, but idempotent, like String.hash),
+   // and the nodeId is only generated if something (eg., lineage) asks for it.
+   private var hash: Int = 0
+
+   @Volatile
+   private var generatedNodeId: String? = null
+
    override fun toString(): String {
       return "TypedValue(type=${type.qualifiedName.longDisplayName}, value=$value)"
    }
-   override val nodeId: String = Ids.fastUuid()
+
+   override val nodeId: String
+      get() = generatedNodeId ?: synchronized(this) {
+         generatedNodeId ?: Ids.fastUuid().also { generatedNodeId = it }
+      }
 
    init {
       if (type.isEnum) {
@@ -74,6 +84,47 @@ data class TypedValue private constructor(
 
    companion object {
       private val logger = KotlinLogging.logger {}
+
+      private data class InternedValueKey(
+         val type: Type,
+         val value: Any,
+         val source: DataSource
+      )
+
+      /**
+       * Values with a static source (ie., no per-value lineage) are immutable and indistinguishable,
+       * so common ones (booleans and small numbers) are shared, rather than allocated per cell.
+       * Values with other sources are never shared, as their lineage differs.
+       */
+      private val internedValues = CacheBuilder.newBuilder()
+         .maximumSize(10_000)
+         // Don't hold on to values (and their types) once nothing else references them, such as after a schema change.
+         .weakValues()
+         .build<InternedValueKey, TypedValue>()
+
+      /**
+       * Indicates if values like this are shared between instances, rather than allocated per value.
+       * Also used when estimating the retained size of values.
+       */
+      fun isInternable(value: Any, source: DataSource, format: FormatsAndZoneOffset?): Boolean {
+         if (source !is StaticDataSource || format != null) {
+            return false
+         }
+         return when (value) {
+            is Boolean -> true
+            is Int -> value in -128..127
+            is Long -> value in -128L..127L
+            else -> false
+         }
+      }
+
+      private fun create(type: Type, value: Any, source: DataSource, format: FormatsAndZoneOffset?): TypedValue {
+         return if (isInternable(value, source, format)) {
+            internedValues.get(InternedValueKey(type, value, source)) { TypedValue(type, value, source, format) }
+         } else {
+            TypedValue(type, value, source, format)
+         }
+      }
 //      private val conversionService by lazy {
 //         ConversionService.newDefaultConverter()
 //      }
@@ -93,7 +144,7 @@ data class TypedValue private constructor(
                val valueToUse =
                   converter.convert(value, PrimitiveTypes.getJavaType(type.taxiType.basePrimitive!!), format)
                if (valueToUse != null) {
-                  TypedValue(type, valueToUse, source, format)
+                  create(type, valueToUse, source, format)
                } else {
                   TypedNull.create(type, source)
                }
@@ -150,7 +201,14 @@ data class TypedValue private constructor(
       return this.type == otherTypedValue.type && this.value == other.value
 
    }
-   override fun hashCode(): Int = hash
+   override fun hashCode(): Int {
+      var result = hash
+      if (result == 0) {
+         result = 31 * type.hashCode() + value.hashCode()
+         hash = result
+      }
+      return result
+   }
 
    /**
     * Returns true if the two are equal, where the values are the same, and the underlying
@@ -28,7 +28,7 @@ class WhenBlockEvaluator(
       val selectorExpression = readCondition.selectorExpression
       val selectorValue = accessorReader.evaluate(
          value,
-         schema.type(selectorExpression.returnType),
+         accessorReader.declaredReturnTypeOf(selectorExpression, schema),
          selectorExpression,
          dataSource = source,
          format = format
@@ -93,6 +93,20 @@ class CascadingFactBag(private val primary: FactBag, private val secondary: Fact
       return fromPrimary + fromSecondary
    }
 
+   override fun breadthFirstFilter(
+      strategy: FactDiscoveryStrategy,
+      shouldGoDeeperPredicate: FactMapTraversalStrategy,
+      filterPredicate: FilterPredicateStrategy
+   ): List<TypedInstance> {
+      val fromPrimary = primary.breadthFirstFilter(strategy, shouldGoDeeperPredicate, filterPredicate)
+      val fromSecondary = if (strategy == FactDiscoveryStrategy.ANY_DEPTH_ALLOW_MANY) {
+         secondary.breadthFirstFilter(strategy, shouldGoDeeperPredicate, filterPredicate)
+      } else {
+         emptyList()
+      }
+      return fromPrimary + fromSecondary
+   }
+
    override fun addFact(fact: TypedInstance): FactBag {
       throw UnsupportedOperationException("CascadingFactBag does not support adds.")
    }
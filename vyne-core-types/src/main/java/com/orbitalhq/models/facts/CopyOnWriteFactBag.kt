@@ -1,10 +1,6 @@
 package com.orbitalhq.models.facts
 
-import com.diffplug.common.base.TreeDef
-import com.diffplug.common.base.TreeStream
 import com.google.common.annotations.VisibleForTesting
-import com.google.common.cache.CacheBuilder
-import com.google.common.cache.CacheLoader
 import com.orbitalhq.models.MixedSources
 import com.orbitalhq.models.TypedCollection
 import com.orbitalhq.models.TypedEnumValue
@@ -16,14 +12,17 @@ import com.orbitalhq.query.AlwaysGoodSpec
 import com.orbitalhq.query.TypedInstanceValidPredicate
 import com.orbitalhq.schemas.Schema
 import com.orbitalhq.schemas.Type
+import com.orbitalhq.utils.EngineActivity
+import com.orbitalhq.utils.EngineInstrumentation
 import com.orbitalhq.utils.ImmutableEquality
-import com.orbitalhq.utils.timeBucket
 import lang.taxi.types.PrimitiveType
 import mu.KotlinLogging
 import java.util.*
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.CopyOnWriteArrayList
-import java.util.stream.Collectors
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
 
 
 open class CopyOnWriteFactBag(
@@ -74,8 +73,17 @@ open class CopyOnWriteFactBag(
       }
 
    override fun addFact(fact: TypedInstance): CopyOnWriteFactBag {
-      this.facts.add(fact)
-      this.modelTreeCache.invalidateAll()
+      indexLock.write {
+         this.facts.add(fact)
+         this.cachedDataTreeRoot = null
+         if (scopedFacts.isEmpty()) {
+            factIndexes.values.forEach { it.addRoot(fact) }
+         } else {
+            // Scoped facts are traversed after root facts, so appending the new fact
+            // would change the breadth-first ordering.  Rebuild on next search instead.
+            factIndexes.clear()
+         }
+      }
       // Now that we have a new fact, invalidate queries where we had asked for a fact
       // previously, and had returned null.
       // This allows new queries to discover new values.
@@ -103,34 +111,60 @@ open class CopyOnWriteFactBag(
 
    private val anyArrayType by lazy { schema.type(PrimitiveType.ANY) }
 
-   // Wraps all the known facts under a root node, turning it into a tree
+   /**
+    * Guards the fact indexes and the cached data tree root, which are both derived from the facts.
+    * Adding a fact takes the write lock, so the derived state is invalidated and updated
+    * atomically with the fact being added.
+    * Searches take the read lock, so run concurrently with each other.
+    */
+   private val indexLock = ReentrantReadWriteLock()
+
+   /**
+    * Only read or written while holding indexLock.
+    * Written under the read lock when populated, which is safe, as the facts
+    * can't change while the read lock is held, so concurrent searches build the same root.
+    */
+   @Volatile
+   private var cachedDataTreeRoot: TypedInstance? = null
+
+   // Wraps all the known facts under a root node, turning it into a tree.
+   // Must be called holding indexLock
    private fun dataTreeRoot(): TypedInstance {
       // MP: 17-Nov-22
       // This used to only be root facts.
       // But that was causing lookups-by-type to incorrectly ignore things that have been scoped
       // (eg., when projecting an object, the projected element is scoped, and ignored for lookup-by-type)
-      return TypedCollection.arrayOf(anyArrayType, rootAndScopedFacts().distinct(), source = MixedSources)
+      return cachedDataTreeRoot ?: TypedCollection.arrayOf(
+         anyArrayType,
+         rootAndScopedFacts().distinct(),
+         source = MixedSources
+      ).also { cachedDataTreeRoot = it }
    }
 
-   private val modelTreeCache = CacheBuilder
-      .newBuilder()
-      .build(object : CacheLoader<FactMapTraversalStrategy, List<TypedInstance>>() {
-         override fun load(key: FactMapTraversalStrategy): List<TypedInstance> {
-            val navigator = TreeNavigator(key.predicate)
-            val treeDef: TreeDef<TypedInstance> = TreeDef.of { instance -> navigator.visit(instance) }
-            val list = TreeStream.breadthFirst(treeDef, dataTreeRoot())
-               .collect(Collectors.toList())
-            return list
-         }
-
-      })
+   /**
+    * Breadth-first indexes of the fact tree, one per traversal strategy.
+    * Indexes are built on first use, and then updated incrementally as facts are added.
+    * Guarded by indexLock.
+    */
+   private val factIndexes = ConcurrentHashMap<FactMapTraversalStrategy, FactTypeIndex>()
 
-//   private val modelTree = cached<List<TypedInstance>> {
-//      val navigator = TreeNavigator()
-//      val treeDef: TreeDef<TypedInstance> = TreeDef.of { instance -> navigator.visit(instance) }
-//      val list = TreeStream.breadthFirst(treeDef, dataTreeRoot()).toList()
-//      list
-//   }
+   /**
+    * Invokes the callback with the data tree root, and the index for the traversal strategy,
+    * holding the read lock, so both reflect the same set of facts.
+    */
+   private fun <T> withFactIndex(
+      shouldGoDeeperPredicate: FactMapTraversalStrategy,
+      callback: (TypedInstance, FactTypeIndex) -> T
+   ): T {
+      return indexLock.read {
+         val index = factIndexes.computeIfAbsent(shouldGoDeeperPredicate) {
+            // The data tree root is an Any[], so is always fully traversed by the
+            // FactMapTraversalStrategy, meaning its children are the distinct root and scoped facts.
+            FactTypeIndex(shouldGoDeeperPredicate).apply { addRoots(rootAndScopedFacts()) }
+         }
+         callback(dataTreeRoot(), index)
+      }
+   }
 
    override fun breadthFirstFilter(
       strategy: FactDiscoveryStrategy,
@@ -142,19 +176,29 @@ open class CopyOnWriteFactBag(
       return filtered
    }
 
+   override fun breadthFirstFilter(
+      strategy: FactDiscoveryStrategy,
+      shouldGoDeeperPredicate: FactMapTraversalStrategy,
+      filterPredicate: FilterPredicateStrategy
+   ): List<TypedInstance> {
+      val typeFilter = filterPredicate.typeFilter
+         ?: return breadthFirstFilter(strategy, shouldGoDeeperPredicate, filterPredicate.predicate)
+      val (root, candidates) = withFactIndex(shouldGoDeeperPredicate) { root, index ->
+         root to index.nodesMatchingType(typeFilter)
+      }
+      // Predicates are evaluated outside of the lock
+      val rootMatches = typeFilter(root.type) && filterPredicate.predicate(root)
+      val filtered = candidates.filter(filterPredicate.predicate)
+      return if (rootMatches) listOf(root) + filtered else filtered
+   }
+
    /**
-    * A breadth-first stream of data facts currently held in the collection.
+    * A breadth-first list of data facts currently held in the collection.
     * Use breadth-first, as we want to favour nodes closer to the root.
     * Deeply nested children are less likely to be relevant matches.
     */
    private fun modelTree(shouldGoDeeperPredicate: FactMapTraversalStrategy): List<TypedInstance> {
-      val modelTree = modelTreeCache.get(shouldGoDeeperPredicate)
-      return modelTree
-
-      // TODO : MP - Investigating the performance implications of caching the tree.
-      // If this turns out to be faster, we should refactor the api to be List<TypedInstance>, since
-      // the stream indicates deferred evaluation, and it's not anymore.
-//      return modelTree.get()
+      return withFactIndex(shouldGoDeeperPredicate) { root, index -> listOf(root) + index.allNodes() }
    }
 
    private data class GetFactOrNullCacheKey(
@@ -203,7 +247,7 @@ open class CopyOnWriteFactBag(
    private val factSearchCache = ConcurrentHashMap<GetFactOrNullCacheKey, Optional<TypedInstance>>()
    private fun fromFactCache(key: GetFactOrNullCacheKey): TypedInstance? {
       val optionalVal = factSearchCache.getOrPut(key) {
-         val result = timeBucket("FactBag search for ${key.search.name}") {
+         val result = EngineInstrumentation.timed(EngineActivity.FACT_SEARCH) {
             Optional.ofNullable(
                key.search.strategy.getFact(
                   this,
@@ -259,22 +303,7 @@ open class CopyOnWriteFactBag(
 
 }
 
-private class TreeNavigator(val shouldGoDeeperPredicate: (TypedInstance) -> TreeNavigationInstruction) {
-   private val visitedNodes = mutableSetOf<TypedInstance>()
-
-   fun visit(instance: TypedInstance): List<TypedInstance> {
-      return if (visitedNodes.contains(instance)) {
-         return emptyList()
-      } else {
-         visitedNodes.add(instance)
-         val next = TypedInstanceTree.visit(instance, shouldGoDeeperPredicate)
-         next
-      }
-   }
-}
-
-
-private object TypedInstanceTree {
+internal object TypedInstanceTree {
    private val logger = KotlinLogging.logger {}
 
    /**
@@ -97,6 +97,19 @@ interface FactBag : Collection<TypedInstance> {
       matchingPredicate: (TypedInstance) -> Boolean
    ): List<TypedInstance>
 
+   /**
+    * As [breadthFirstFilter], but accepts the full [FilterPredicateStrategy], allowing
+    * implementations to use [FilterPredicateStrategy.typeFilter] (where present)
+    * to narrow the candidates before evaluating the predicate.
+    */
+   fun breadthFirstFilter(
+      strategy: FactDiscoveryStrategy,
+      shouldGoDeeperPredicate: FactMapTraversalStrategy,
+      filterPredicate: FilterPredicateStrategy
+   ): List<TypedInstance> {
+      return breadthFirstFilter(strategy, shouldGoDeeperPredicate, filterPredicate.predicate)
+   }
+
    /**
     * A mutating operation.  Adds a fact to the current fact bag.
     * The current, mutated fact bag is returned for convenience
@@ -31,6 +31,18 @@ interface FilterPredicateStrategy : PredicateWithId {
     * Predicate used to select TypedInstances from the facts.
     */
    val predicate: (TypedInstance) -> Boolean
+
+   /**
+    * Optional.  If the predicate selects instances based on their type,
+    * then exposes the type-level check here.
+    *
+    * Where present, FactBags may use this to select candidates from an index of facts by type,
+    * rather than evaluating the predicate against every node in the fact tree.
+    * The [predicate] is still evaluated against each candidate, so this only needs to be
+    * consistent with it (ie., must return true for any type that the predicate could accept).
+    */
+   val typeFilter: ((Type) -> Boolean)?
+      get() = null
 }
 
 interface RefiningPredicate : PredicateWithId {
@@ -135,6 +147,9 @@ data class FactSearch(
             override val predicate: (TypedInstance) -> Boolean = { instance: TypedInstance ->
                matcher.matches(type, instance.type) && spec.isValid(instance)
             }
+            override val typeFilter: (Type) -> Boolean = { candidateType: Type ->
+               matcher.matches(type, candidateType)
+            }
          }
 
          val refiningPredicate: RefiningPredicate =
@@ -173,8 +188,9 @@ enum class FactDiscoveryStrategy {
          val matches = facts
             .breadthFirstFilter(
                ANY_DEPTH_EXPECT_ONE,
-               FactMapTraversalStrategy.enterIfHasFieldOfType(search.targetType)
-            ) { search.filterPredicate.predicate(it) }
+               FactMapTraversalStrategy.enterIfHasFieldOfType(search.targetType),
+               search.filterPredicate
+            )
             .toList()
          return when {
             matches.isEmpty() -> null
@@ -202,8 +218,9 @@ enum class FactDiscoveryStrategy {
          val matches = facts
             .breadthFirstFilter(
                ANY_DEPTH_EXPECT_ONE,
-               FactMapTraversalStrategy.enterIfHasFieldOfType(search.targetType)
-            ) { search.filterPredicate.predicate(it) }
+               FactMapTraversalStrategy.enterIfHasFieldOfType(search.targetType),
+               search.filterPredicate
+            )
             .distinct()
             .toList()
          return when {
@@ -242,8 +259,9 @@ enum class FactDiscoveryStrategy {
          val matches = factBag
             .breadthFirstFilter(
                ANY_DEPTH_ALLOW_MANY,
-               FactMapTraversalStrategy.enterIfHasFieldOfType(search.targetType)
-            ) { search.filterPredicate.predicate(it) }
+               FactMapTraversalStrategy.enterIfHasFieldOfType(search.targetType),
+               search.filterPredicate
+            )
             .distinct()
             .toList()
          return when {
@@ -0,0 +1,230 @@
+package com.orbitalhq.models.facts
+
+import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.schemas.Type
+import java.util.PriorityQueue
+
+/**
+ * A breadth-first index of the nodes in a fact tree, for a single [FactMapTraversalStrategy].
+ *
+ * Previously, CopyOnWriteFactBag discarded its traversal of the fact tree whenever a fact was
+ * added, and rebuilt it on the next search.  This index is instead updated incrementally
+ * as root facts are added.
+ *
+ * Nodes are held grouped by depth, so that appending the nodes of a new root fact
+ * preserves breadth-first ordering (the children of a new root always
+ * sort after the children of existing roots at the same depth).
+ *
+ * Nodes are also grouped by the name of their type, so that a search by type only evaluates
+ * the type matching rules once per distinct type, rather than once per node.
+ *
+ * An index may be layered on top of a parent index, in which case the nodes of the parent
+ * are treated as preceding the nodes of this index at each depth.  This allows fact bags
+ * to share the index of a large set of facts, and only index the facts they add.
+ * A parent index must not be modified once it has children.
+ *
+ * Indexes which won't be modified further can be sealed, which sorts each type's nodes once,
+ * so that searches only need to merge the (already sorted) nodes of each layer, rather than sort them.
+ *
+ * Not thread-safe - callers are responsible for synchronizing access.
+ */
+internal class FactTypeIndex(
+   private val traversalStrategy: FactMapTraversalStrategy,
+   private val parent: FactTypeIndex? = null
+) {
+
+   class IndexedNode(val depth: Int, val layer: Int, val position: Int, val instance: TypedInstance)
+
+   private val layer: Int = parent?.let { it.layer + 1 } ?: 0
+
+   /**
+    * Once sealed, the nodes for each type are held in breadth-first order, and no more roots can be added
+    */
+   private var sealed = false
+
+   private val levels = mutableListOf<MutableList<IndexedNode>>()
+   private val nodesByTypeName = mutableMapOf<String, MutableList<IndexedNode>>()
+   private val typesByName = mutableMapOf<String, Type>()
+
+   /**
+    * Roots that have been indexed.  Used to ensure we only index a root once,
+    * matching the previous behaviour of traversing the distinct set of root facts.
+    */
+   private val indexedRoots = mutableSetOf<TypedInstance>()
+
+   /**
+    * Mirrors the visited set of the tree navigator - a node that has been seen previously
+    * is still included in the index, but its children are not visited again.
+    */
+   private val expandedNodes = mutableSetOf<TypedInstance>()
+
+   val size: Int
+      get() = levels.sumOf { it.size } + (parent?.size ?: 0)
+
+   private fun containsRoot(root: TypedInstance): Boolean {
+      return indexedRoots.contains(root) || parent?.containsRoot(root) == true
+   }
+
+   private fun hasExpanded(instance: TypedInstance): Boolean {
+      return expandedNodes.contains(instance) || parent?.hasExpanded(instance) == true
+   }
+
+   fun addRoots(roots: Collection<TypedInstance>) {
+      roots.forEach { addRoot(it) }
+   }
+
+   fun addRoot(root: TypedInstance) {
+      check(!sealed) { "Cannot add roots to a sealed index" }
+      if (parent?.containsRoot(root) == true || !indexedRoots.add(root)) {
+         return
+      }
+      var currentLevel = listOf(root)
+      var depth = 0
+      while (currentLevel.isNotEmpty()) {
+         val nextLevel = mutableListOf<TypedInstance>()
+         currentLevel.forEach { instance ->
+            append(depth, instance)
+            if (parent?.hasExpanded(instance) != true && expandedNodes.add(instance)) {
+               nextLevel.addAll(TypedInstanceTree.visit(instance, traversalStrategy.predicate))
+            }
+         }
+         currentLevel = nextLevel
+         depth++
+      }
+   }
+
+   private fun append(depth: Int, instance: TypedInstance) {
+      while (levels.size <= depth) {
+         levels.add(mutableListOf())
+      }
+      val level = levels[depth]
+      val node = IndexedNode(depth, layer, level.size, instance)
+      level.add(node)
+      val typeName = instance.type.name.parameterizedName
+      typesByName.putIfAbsent(typeName, instance.type)
+      nodesByTypeName.getOrPut(typeName) { mutableListOf() }.add(node)
+   }
+
+   /**
+    * Sorts the nodes of each type into breadth-first order, once, and prevents further roots being added.
+    */
+   fun seal(): FactTypeIndex {
+      if (!sealed) {
+         nodesByTypeName.values.forEach { nodes -> nodes.sortWith(breadthFirstOrder) }
+         sealed = true
+      }
+      return this
+   }
+
+   /**
+    * Returns all indexed nodes (including those of the parent), in breadth-first order
+    */
+   fun allNodes(): List<TypedInstance> {
+      if (parent == null) {
+         return levels.flatMap { level -> level.map { it.instance } }
+      }
+      return mergeSorted(allIndexedNodesByLayer())
+   }
+
+   /**
+    * The nodes of each layer, each in breadth-first order.
+    * (Levels are appended to in order, so flattening them is already breadth-first)
+    */
+   private fun allIndexedNodesByLayer(): List<List<IndexedNode>> {
+      return (parent?.allIndexedNodesByLayer() ?: emptyList()) + listOf(levels.flatten())
+   }
+
+   /**
+    * Returns the indexed nodes (including those of the parent) whose type satisfies the typeFilter,
+    * in breadth-first order.
+    * The filter is evaluated once per distinct type, rather than once per node.
+    */
+   fun nodesMatchingType(typeFilter: (Type) -> Boolean): List<TypedInstance> {
+      return mergeSorted(indexedNodesMatchingType(typeFilter))
+   }
+
+   /**
+    * The matching nodes, as lists which are each in breadth-first order.
+    */
+   private fun indexedNodesMatchingType(typeFilter: (Type) -> Boolean): List<List<IndexedNode>> {
+      val fromParent = parent?.indexedNodesMatchingType(typeFilter) ?: emptyList()
+      val matchingBuckets = typesByName.mapNotNull { (typeName, type) ->
+         if (typeFilter(type)) nodesByTypeName[typeName] else null
+      }
+      val sortedBuckets = if (sealed) {
+         matchingBuckets
+      } else {
+         // Buckets are appended to as roots are added, so even a single bucket
+         // isn't guaranteed to be in breadth-first order.
+         matchingBuckets.map { it.sortedWith(breadthFirstOrder) }
+      }
+      return fromParent + sortedBuckets
+   }
+
+   companion object {
+      private val breadthFirstOrder = compareBy<IndexedNode> { it.depth }
+         .thenBy { it.layer }
+         .thenBy { it.position }
+
+      /**
+       * Merges lists of nodes, which are each already in breadth-first order
+       */
+      private fun mergeSorted(sortedLists: List<List<IndexedNode>>): List<TypedInstance> {
+         val nonEmpty = sortedLists.filter { it.isNotEmpty() }
+         when (nonEmpty.size) {
+            0 -> return emptyList()
+            1 -> return nonEmpty.single().map { it.instance }
+         }
+         val iterators = PriorityQueue<PeekingIterator>(nonEmpty.size, compareBy(breadthFirstOrder) { it.head })
+         nonEmpty.forEach { iterators.add(PeekingIterator(it.iterator())) }
+         val merged = ArrayList<TypedInstance>(nonEmpty.sumOf { it.size })
+         while (iterators.isNotEmpty()) {
+            val next = iterators.poll()
+            merged.add(next.head.instance)
+            if (next.advance()) {
+               iterators.add(next)
+            }
+         }
+         return merged
+      }
+   }
+
+   private class PeekingIterator(private val iterator: Iterator<IndexedNode>) {
+      var head: IndexedNode = iterator.next()
+         private set
+
+      fun advance(): Boolean {
+         if (!iterator.hasNext()) return false
+         head = iterator.next()
+         return true
+      }
+   }
+}
+
+/**
+ * An immutable set of facts, and the (lazily built) indexes over them,
+ * which may be layered on top of a parent set.
+ *
+ * Layers are safe to share between fact bags, as the facts they hold never change.
+ */
+internal class FactIndexLayer(
+   private val parent: FactIndexLayer?,
+   private val facts: List<TypedInstance>
+) {
+   private val indexes = mutableMapOf<FactMapTraversalStrategy, FactTypeIndex>()
+
+   fun <T> withIndex(traversalStrategy: FactMapTraversalStrategy, callback: (FactTypeIndex) -> T): T {
+      return callback(indexFor(traversalStrategy))
+   }
+
+   private fun indexFor(traversalStrategy: FactMapTraversalStrategy): FactTypeIndex {
+      // Build the parent outside of our lock, to avoid holding locks across layers
+      val parentIndex = parent?.indexFor(traversalStrategy)
+      return synchronized(indexes) {
+         indexes.getOrPut(traversalStrategy) {
+            // Layers are never modified once built, so sort them once, rather than on every search
+            FactTypeIndex(traversalStrategy, parentIndex).apply { addRoots(facts) }.seal()
+         }
+      }
+   }
+}
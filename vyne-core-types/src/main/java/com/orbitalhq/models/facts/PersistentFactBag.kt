@@ -0,0 +1,236 @@
+package com.orbitalhq.models.facts
+
+import com.orbitalhq.models.MixedSources
+import com.orbitalhq.models.TypedCollection
+import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.query.TypedInstanceValidPredicate
+import com.orbitalhq.schemas.Schema
+import com.orbitalhq.schemas.Type
+import kotlinx.collections.immutable.PersistentList
+import kotlinx.collections.immutable.persistentListOf
+import kotlinx.collections.immutable.toPersistentList
+import lang.taxi.types.PrimitiveType
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * A FactBag built on persistent (structurally shared) collections.
+ *
+ * Deriving a new FactBag (through merge(), copy() or withScopedFacts()) doesn't copy the
+ * facts of this bag, and the derived bag shares the indexes already built over this bag's facts,
+ * only indexing the facts that it adds.
+ *
+ * This is intended for use when many short-lived FactBags are derived from a large,
+ * common set of facts - eg., when projecting, where each row is projected in a context
+ * containing the global facts, plus the row being projected.
+ *
+ * Behaves the same as CopyOnWriteFactBag for searches.
+ * Note that addFact() re-indexes all the facts owned by this bag (and, where there are scoped facts,
+ * those inherited too), so prefer deriving a new bag over adding facts to a large one.
+ */
+class PersistentFactBag private constructor(
+   @Volatile
+   private var facts: PersistentList<TypedInstance>,
+   override val scopedFacts: PersistentList<ScopedFact>,
+   private val schema: Schema,
+   /**
+    * The indexes of the bag this was derived from.  Never mutated, but may be
+    * dropped (see addFact())
+    */
+   @Volatile
+   private var inheritedLayer: FactIndexLayer?,
+   /**
+    * The facts that this bag holds which are not covered by the inheritedLayer,
+    * in the order they're traversed.
+    */
+   @Volatile
+   private var ownFacts: PersistentList<TypedInstance>
+) : FactBag {
+
+   companion object {
+      fun of(
+         facts: Collection<TypedInstance>,
+         schema: Schema,
+         scopedFacts: List<ScopedFact> = emptyList()
+      ): PersistentFactBag {
+         val persistentFacts = facts.toPersistentList()
+         val persistentScopedFacts = scopedFacts.toPersistentList()
+         return PersistentFactBag(
+            persistentFacts,
+            persistentScopedFacts,
+            schema,
+            inheritedLayer = null,
+            ownFacts = persistentFacts.addAll(persistentScopedFacts.map { it.fact })
+         )
+      }
+   }
+
+   private val anyArrayType by lazy { schema.type(PrimitiveType.ANY) }
+   private val dataTreeRootType by lazy { anyArrayType.asArrayType() }
+
+   /**
+    * The index layer over this bag's facts.
+    * Built lazily, and discarded when this bag is mutated.
+    */
+   @Volatile
+   private var ownLayer: FactIndexLayer? = null
+
+   private fun ownLayer(): FactIndexLayer {
+      return ownLayer ?: synchronized(this) {
+         ownLayer ?: FactIndexLayer(inheritedLayer, ownFacts).also { ownLayer = it }
+      }
+   }
+
+   @Volatile
+   private var cachedDataTreeRoot: TypedInstance? = null
+
+   // Wraps all the known facts under a root node, turning it into a tree.
+   // Only used for matching against the root itself, to match the behaviour of CopyOnWriteFactBag
+   private fun dataTreeRoot(): TypedInstance {
+      return cachedDataTreeRoot ?: TypedCollection.arrayOf(
+         anyArrayType,
+         rootAndScopedFacts().distinct(),
+         source = MixedSources
+      ).also { cachedDataTreeRoot = it }
+   }
+
+   private val factSearchCache = ConcurrentHashMap<FactSearch, Optional<TypedInstance>>()
+
+   override fun rootFacts(): List<TypedInstance> = facts
+
+   // As in CopyOnWriteFactBag, scoped facts aren't counted
+   override val size: Int
+      get() = facts.size
+
+   /**
+    * Returns a new FactBag containing the facts of this bag, plus the scoped facts provided.
+    * The current instance is unchanged.
+    */
+   fun withScopedFacts(additionalScopedFacts: List<ScopedFact>): PersistentFactBag {
+      return PersistentFactBag(
+         facts,
+         scopedFacts.addAll(additionalScopedFacts),
+         schema,
+         ownLayer(),
+         additionalScopedFacts.map { it.fact }.toPersistentList()
+      )
+   }
+
+   fun copy(): PersistentFactBag {
+      return PersistentFactBag(facts, scopedFacts, schema, ownLayer(), persistentListOf())
+   }
+
+   override fun merge(other: FactBag): FactBag {
+      val otherFacts = other.toList()
+      return PersistentFactBag(
+         facts.addAll(otherFacts),
+         scopedFacts.addAll(other.scopedFacts),
+         schema,
+         ownLayer(),
+         otherFacts.toPersistentList()
+      )
+   }
+
+   override fun merge(fact: TypedInstance): FactBag {
+      return PersistentFactBag(
+         facts.add(fact),
+         scopedFacts,
+         schema,
+         ownLayer(),
+         persistentListOf(fact)
+      )
+   }
+
+   override fun excluding(facts: Set<TypedInstance>): FactBag {
+      // Removing facts invalidates the indexes, so start a fresh bag.
+      return of(this.facts.removeAll(facts), schema, scopedFacts)
+   }
+
+   override fun addFact(fact: TypedInstance): PersistentFactBag {
+      synchronized(this) {
+         facts = facts.add(fact)
+         if (scopedFacts.isEmpty()) {
+            // Layers may be shared with derived bags, so are never mutated.
+            // Only our own facts need re-indexing, the inherited layer is retained.
+            ownFacts = ownFacts.add(fact)
+         } else {
+            // As in CopyOnWriteFactBag, root facts are traversed before scoped facts.
+            // Appending the new fact would place it after the scoped facts (which may be in the
+            // inherited layer), so re-index all the facts, in order, instead.
+            inheritedLayer = null
+            ownFacts = facts.addAll(scopedFacts.map { it.fact })
+         }
+         ownLayer = null
+         cachedDataTreeRoot = null
+         factSearchCache.clear()
+      }
+      return this
+   }
+
+   override fun addFacts(facts: Collection<TypedInstance>): PersistentFactBag {
+      facts.forEach { addFact(it) }
+      return this
+   }
+
+   override fun breadthFirstFilter(
+      strategy: FactDiscoveryStrategy,
+      shouldGoDeeperPredicate: FactMapTraversalStrategy,
+      matchingPredicate: (TypedInstance) -> Boolean
+   ): List<TypedInstance> {
+      val nodes = listOf(dataTreeRoot()) + ownLayer().withIndex(shouldGoDeeperPredicate) { it.allNodes() }
+      return nodes.filter(matchingPredicate)
+   }
+
+   override fun breadthFirstFilter(
+      strategy: FactDiscoveryStrategy,
+      shouldGoDeeperPredicate: FactMapTraversalStrategy,
+      filterPredicate: FilterPredicateStrategy
+   ): List<TypedInstance> {
+      val typeFilter = filterPredicate.typeFilter
+         ?: return breadthFirstFilter(strategy, shouldGoDeeperPredicate, filterPredicate.predicate)
+      // Building the data tree root requires visiting every fact, which we want to avoid
+      // when deriving bags, so only build it if it could match.
+      val matchingRoot = if (typeFilter(dataTreeRootType)) {
+         dataTreeRoot().takeIf { filterPredicate.predicate(it) }
+      } else null
+      val candidates = ownLayer().withIndex(shouldGoDeeperPredicate) { it.nodesMatchingType(typeFilter) }
+      val filtered = candidates.filter(filterPredicate.predicate)
+      return if (matchingRoot != null) listOf(matchingRoot) + filtered else filtered
+   }
+
+   override fun hasFactOfType(
+      type: Type,
+      strategy: FactDiscoveryStrategy,
+      spec: TypedInstanceValidPredicate
+   ): Boolean {
+      return getFactOrNull(type, strategy, spec) != null
+   }
+
+   override fun getFact(
+      type: Type,
+      strategy: FactDiscoveryStrategy,
+      spec: TypedInstanceValidPredicate
+   ): TypedInstance {
+      return getFactOrNull(type, strategy, spec)
+         ?: error("Failed to resolve type ${type.name.shortDisplayName} using strategy $strategy")
+   }
+
+   override fun getFactOrNull(
+      type: Type,
+      strategy: FactDiscoveryStrategy,
+      spec: TypedInstanceValidPredicate
+   ): TypedInstance? {
+      return getFactOrNull(FactSearch.findType(type, strategy, spec))
+   }
+
+   override fun getFactOrNull(search: FactSearch): TypedInstance? {
+      val optionalVal = factSearchCache.getOrPut(search) {
+         Optional.ofNullable(search.strategy.getFact(this, search))
+      }
+      return if (optionalVal.isPresent) optionalVal.get() else null
+   }
+
+   override fun hasFact(search: FactSearch): Boolean {
+      return getFactOrNull(search) != null
+   }
+}
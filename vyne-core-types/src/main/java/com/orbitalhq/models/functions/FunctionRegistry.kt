@@ -1,6 +1,5 @@
 package com.orbitalhq.models.functions
 
-import com.google.common.base.Stopwatch
 import com.orbitalhq.models.EvaluationValueSupplier
 import com.orbitalhq.models.TypedInstance
 import com.orbitalhq.models.functions.stdlib.StdLib
@@ -10,9 +9,14 @@ import lang.taxi.functions.Function
 import lang.taxi.functions.FunctionAccessor
 import lang.taxi.types.FormatsAndZoneOffset
 import mu.KotlinLogging
+import java.util.concurrent.ConcurrentHashMap
 
 class FunctionRegistry(private val invokers: List<NamedFunctionInvoker>) {
    private val invokersByName = invokers.associateBy { it.functionName }
+
+   // Functions are invoked for every record being parsed, so avoid building a QualifiedName
+   // for each invocation
+   private val invokersByFunctionName = ConcurrentHashMap<String, NamedFunctionInvoker>()
    private val logger = KotlinLogging.logger {}
    val taxiDeclaration = invokers
       .filterIsInstance<SelfDescribingFunction>()
@@ -40,10 +44,10 @@ class FunctionRegistry(private val invokers: List<NamedFunctionInvoker>) {
        */
       resultCache: MutableMap<FunctionResultCacheKey, Any> = mutableMapOf()
    ): TypedInstance {
-      val sw = Stopwatch.createStarted()
-      val invoker = invokersByName[function.toQualifiedName()]
+      val invoker = invokersByFunctionName[function.qualifiedName]
+         ?: invokersByName[function.toQualifiedName()]?.also { invokersByFunctionName[function.qualifiedName] = it }
          ?: error("No invoker provided for function ${function.qualifiedName}")
-      val result = invoker.invoke(
+      return invoker.invoke(
          declaredInputs,
          schema,
          returnType,
@@ -53,8 +57,6 @@ class FunctionRegistry(private val invokers: List<NamedFunctionInvoker>) {
          rawMessageBeingParsed,
          resultCache
       )
-//      logger.debug { "Function ${function.qualifiedName} completed in ${sw.elapsed().toMillis()}ms" }
-      return result
    }
 
    companion object {
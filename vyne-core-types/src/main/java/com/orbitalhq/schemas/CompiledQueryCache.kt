@@ -0,0 +1,92 @@
+package com.orbitalhq.schemas
+
+import com.google.common.cache.CacheBuilder
+import com.google.common.cache.CacheStats
+import com.google.common.cache.RemovalCause
+import lang.taxi.query.TaxiQLQueryString
+import lang.taxi.query.TaxiQlQuery
+
+/**
+ * A cache of compiled queries, shared across all schemas on this node.
+ *
+ * Entries are keyed by the hash of the schema's sources, along with the query text,
+ * so compiled queries survive a schema instance being rebuilt from the same sources,
+ * and entries for old schemas are evicted once they stop being used.
+ *
+ * Compiling is often a significant part of the cost of small queries
+ * (such as the TaxiQL generated for each call to a database), which are repeated frequently.
+ *
+ * Schemas which can't be identified by their sources are keyed by instance (see instanceKey()).
+ * These are held weakly, and their compiled queries are removed once the schema is collected,
+ * so the cache doesn't keep old schemas alive.
+ */
+class CompiledQueryCache(maximumSize: Long = 1000) {
+   companion object {
+      val DEFAULT = CompiledQueryCache()
+   }
+
+   private data class CompiledQueryKey(val schemaKey: Any, val query: TaxiQLQueryString)
+
+   private val cache = CacheBuilder.newBuilder()
+      .maximumSize(maximumSize)
+      .recordStats()
+      .build<CompiledQueryKey, Pair<TaxiQlQuery, QueryOptions>>()
+
+   /**
+    * Identifies a schema instance, without referencing it.
+    * Compared by identity.
+    */
+   private class SchemaInstanceKey
+
+   private val instanceKeys = CacheBuilder.newBuilder()
+      .weakKeys()
+      .removalListener<Schema, SchemaInstanceKey> { notification ->
+         if (notification.cause == RemovalCause.COLLECTED) {
+            val instanceKey = notification.value
+            cache.asMap().keys.removeIf { it.schemaKey === instanceKey }
+         }
+      }
+      .build<Schema, SchemaInstanceKey>()
+
+   /**
+    * Returns a key for compiling queries against the schema instance, for schemas
+    * whose contents can't otherwise be identified.
+    * The key doesn't reference the schema, and compiled queries using it are removed once the schema is collected.
+    */
+   fun instanceKey(schema: Schema): Any {
+      return instanceKeys.get(schema) { SchemaInstanceKey() }
+   }
+
+   /**
+    * Returns the compiled query, compiling (and caching) it if not already present.
+    * The schemaKey should identify the contents of the schema the query is compiled against.
+    */
+   fun get(
+      schemaKey: Any,
+      query: TaxiQLQueryString,
+      compiler: () -> Pair<TaxiQlQuery, QueryOptions>
+   ): Pair<TaxiQlQuery, QueryOptions> {
+      return cache.get(CompiledQueryKey(schemaKey, query)) { compiler() }
+   }
+
+   /**
+    * Called when the schema generation changes.
+    */
+   fun invalidateAll() {
+      cache.invalidateAll()
+   }
+
+   /**
+    * Removes compiled queries for schemas which have been collected.
+    * This happens periodically anyway, as instance keys are requested.
+    */
+   fun cleanUp() {
+      instanceKeys.cleanUp()
+      cache.cleanUp()
+   }
+
+   fun stats(): CacheStats = cache.stats()
+
+   val size: Long
+      get() = cache.size()
+}
@@ -1,7 +1,8 @@
 package com.orbitalhq.schemas
 
 import com.google.common.base.Stopwatch
-import com.google.common.cache.CacheBuilder
+import com.orbitalhq.SourcePackageHasher
+import com.orbitalhq.schemas.taxi.TaxiSchema
 import com.orbitalhq.utils.log
 import lang.taxi.Compiler
 import lang.taxi.query.TaxiQLQueryString
@@ -15,22 +16,43 @@ interface QueryCompiler {
    fun compile(query: TaxiQLQueryString): Pair<TaxiQlQuery, QueryOptions>
 }
 
-class DefaultQueryCompiler(private val schema: Schema, cacheSize: Long = 0) : QueryCompiler {
-   private val queryCache = CacheBuilder.newBuilder()
-      .maximumSize(cacheSize)
-      .build<String, Pair<TaxiQlQuery, QueryOptions>>()
+/**
+ * Compiles queries against the schema, caching compiled queries in the shared CompiledQueryCache.
+ *
+ * Pass a cacheSize of 0 to disable caching.
+ */
+class DefaultQueryCompiler(
+   private val schema: Schema,
+   cacheSize: Long = 0,
+   private val compiledQueryCache: CompiledQueryCache = CompiledQueryCache.DEFAULT
+) : QueryCompiler {
+   private val cachingEnabled = cacheSize > 0
+
+   // Identifies the contents of the schema, so that compiled queries can be shared
+   // with other schema instances built from the same sources.
+   // The sources don't include imported schemas, so the hash of the compiled types is also used.
+   // Other schemas can't be identified by their sources, so use a key for the instance,
+   // which doesn't keep the schema alive once it's no longer used.
+   private val schemaKey: Any by lazy {
+      if (schema is TaxiSchema && schema.packages.isNotEmpty()) {
+         SourcePackageHasher.hash(schema.packages) to schema.hash
+      } else {
+         compiledQueryCache.instanceKey(schema)
+      }
+   }
 
    override fun compile(query: TaxiQLQueryString): Pair<TaxiQlQuery, QueryOptions> {
-      val (compiledQuery, queryOptions) = queryCache.get(query) {
-         val sw = Stopwatch.createStarted()
-         val vyneQuery = Compiler(source = query, importSources = listOf(this.schema.taxi)).queries().first()
-         log().debug("Compiled query in ${sw.elapsed().toMillis()}ms")
-         vyneQuery to QueryOptions.fromQuery(vyneQuery)
+      return if (cachingEnabled) {
+         compiledQueryCache.get(schemaKey, query) { compileQuery(query) }
+      } else {
+         compileQuery(query)
       }
-//      val sw = Stopwatch.createStarted()
-//      val vyneQuery = Compiler(source = vyneQlQuery, importSources = listOf(this.schema.taxi)).queries().first()
-//      log().debug("Compiled query in ${sw.elapsed().toMillis()}ms")
-//      return vyneQuery to QueryOptions.fromQuery(vyneQuery)
-      return compiledQuery to queryOptions
+   }
+
+   private fun compileQuery(query: TaxiQLQueryString): Pair<TaxiQlQuery, QueryOptions> {
+      val sw = Stopwatch.createStarted()
+      val vyneQuery = Compiler(source = query, importSources = listOf(this.schema.taxi)).queries().first()
+      log().debug("Compiled query in ${sw.elapsed().toMillis()}ms")
+      return vyneQuery to QueryOptions.fromQuery(vyneQuery)
    }
 }
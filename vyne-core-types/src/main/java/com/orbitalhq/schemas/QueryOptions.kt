@@ -50,7 +50,16 @@ data class QueryOptions(
     *
     * Enabling this uses a global cache, which is shared between queries
     */
-   val cachingStrategy: CachingStrategy = QueryScopedCache
+   val cachingStrategy: CachingStrategy = QueryScopedCache,
+
+   /**
+    * Indicates that projected results may be emitted in a different order to
+    * the source results, as soon as each projection completes.
+    *
+    * By default, results are emitted in the order of the source, meaning a single
+    * slow projection holds back all the results behind it.
+    */
+   val unordered: Boolean = false
 ) {
 
    /**
@@ -88,7 +97,8 @@ data class QueryOptions(
          } ?: QueryScopedCache
          return QueryOptions(
             omitNulls = query.annotation("OmitNulls") != null,
-            cachingStrategy = cachingStrategy
+            cachingStrategy = cachingStrategy,
+            unordered = query.annotation("Unordered") != null
          )
       }
    }
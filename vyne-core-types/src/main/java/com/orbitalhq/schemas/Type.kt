@@ -263,7 +263,7 @@ data class Type(
       }
       val valueKind = EnumValueKind.from(value, this.taxiType)
       return this.enumTypedInstances.firstOrNull { it.name == enumInstance.name }
-         ?.copy(source = source, valueKind = valueKind)
+         ?.withSource(source, valueKind)
          ?: error("No typed instance found for value $value on ${this.fullyQualifiedName}")
    }
 
@@ -438,6 +438,29 @@ data class Type(
       .newBuilder()
       .build<Type, Boolean>()
 
+   /**
+    * Plans are held per schema, as the same type is commonly evaluated against
+    * more than one schema (eg., a CompositeSchema, and the TaxiSchema within it),
+    * and a single slot would rebuild the plan each time the schema changed.
+    *
+    * Keys are weak (and compared by identity).  Plans reference their schema, so the size
+    * is capped to bound what's retained if a type outlives the schemas it was evaluated against.
+    */
+   private val evaluationPlans by lazy {
+      CacheBuilder.newBuilder()
+         .weakKeys()
+         .maximumSize(4)
+         .build<Schema, TypeEvaluationPlan>()
+   }
+
+   /**
+    * Returns the plan used by TypedObjectFactory to build this type against the provided schema.
+    * The plan is built on first use against each schema, and reused after that.
+    */
+   fun evaluationPlan(schema: Schema): TypeEvaluationPlan {
+      return evaluationPlans.get(schema) { TypeEvaluationPlan.build(this, schema) }
+   }
+
    fun isAssignableTo(other: Type, considerTypeParameters: Boolean = true): Boolean {
       return if (considerTypeParameters) {
          assignableCacheConsideringTypeParams.get(other) {
@@ -0,0 +1,55 @@
+package com.orbitalhq.utils
+
+import kotlinx.serialization.Serializable
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * Counts and times of engine activities within a single scope (eg., a query),
+ * used to provide a per-query breakdown alongside the node-wide metrics in EngineInstrumentation.
+ *
+ * Counters are only created when an activity is first recorded, as most scopes only see a few activities.
+ */
+class ActivityTimings {
+   private val counters = AtomicReferenceArray<ActivityCounter?>(EngineActivity.ALL.size)
+
+   fun record(activity: EngineActivity, elapsedNanos: Long) {
+      counter(activity).record(elapsedNanos)
+   }
+
+   /**
+    * Adds timings recorded elsewhere (eg., by another node projecting part of the query)
+    */
+   fun add(summary: Map<EngineActivity, ActivityTimingSummary>) {
+      summary.forEach { (activity, timing) -> counter(activity).add(timing.count, timing.totalNanos) }
+   }
+
+   fun count(activity: EngineActivity): Long = counters[activity.ordinal]?.count ?: 0
+
+   fun estimatedTotalNanos(activity: EngineActivity): Long = counters[activity.ordinal]?.estimatedTotalNanos ?: 0
+
+   fun summary(): Map<EngineActivity, ActivityTimingSummary> {
+      return EngineActivity.ALL.mapNotNull { activity ->
+         counters[activity.ordinal]?.let { counter ->
+            activity to ActivityTimingSummary(counter.count, counter.estimatedTotalNanos)
+         }
+      }.toMap()
+   }
+
+   private fun counter(activity: EngineActivity): ActivityCounter {
+      counters[activity.ordinal]?.let { return it }
+      counters.compareAndSet(activity.ordinal, null, ActivityCounter())
+      return counters[activity.ordinal]!!
+   }
+
+   companion object {
+      fun from(summary: Map<EngineActivity, ActivityTimingSummary>): ActivityTimings {
+         return ActivityTimings().apply { add(summary) }
+      }
+   }
+}
+
+@Serializable
+data class ActivityTimingSummary(
+   val count: Long,
+   val totalNanos: Long
+)
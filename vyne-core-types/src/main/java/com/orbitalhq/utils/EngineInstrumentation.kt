@@ -0,0 +1,248 @@
+package com.orbitalhq.utils
+
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.LongAccumulator
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Activities within the query engine that are timed by EngineInstrumentation.
+ *
+ * Activities are deliberately coarse (rather than keyed by type, operation or strategy names),
+ * so that recording doesn't build strings on hot paths, and exported metrics have a fixed set of tags.
+ */
+enum class EngineActivity(val description: String) {
+   GRAPH_BUILD("Building a search graph for the current facts"),
+   GRAPH_SEARCH("Searching a graph for a path to a target type"),
+   EDGE_EVALUATION("Evaluating an edge of a search path"),
+   FACT_SEARCH("Searching a FactBag for a fact"),
+   OPERATION_PARAMETERS("Resolving the parameters of an operation"),
+   OPERATION_INVOCATION("Loading the response of an operation from the remote service"),
+   OPERATION_CACHE_HIT("Loading the response of an operation from the operation cache"),
+   QUERY_STRATEGY("Invoking a query strategy"),
+   PROJECTION("Projecting a row to the target type"),
+   OBJECT_BUILD("Building a TypedObject from a value"),
+   ACCESSOR_EVALUATION("Evaluating a function accessor");
+
+   val tagValue: String = name.lowercase().replace('_', '-')
+
+   companion object {
+      internal val ALL = values()
+   }
+}
+
+/**
+ * Always-on timing of query engine internals.
+ *
+ * Timings are recorded into a lock-free histogram per activity (see ActivityHistogram), which is exported through
+ * Micrometer by EngineInstrumentationMetrics.  Callers which know the query an activity is running for
+ * can also pass the query's ActivityTimings, to build a per-query breakdown.
+ *
+ * Invocations are always counted.  Under load, timing can be sampled (see samplingRate), in which case the
+ * total time of an activity is estimated from the sampled invocations.
+ *
+ * Timings are inclusive - where activities nest (eg., a projection which searches the graph), the time is
+ * counted against both.
+ */
+object EngineInstrumentation {
+   /**
+    * Returned from startTimer() when the invocation isn't sampled
+    */
+   const val NOT_SAMPLED = Long.MIN_VALUE
+
+   /**
+    * The proportion of invocations that are timed, between 0 (count only) and 1 (time every invocation)
+    */
+   @Volatile
+   var samplingRate: Double = 1.0
+      set(value) {
+         require(value in 0.0..1.0) { "Sampling rate must be between 0 and 1, but was $value" }
+         field = value
+      }
+
+   private val histograms = Array(EngineActivity.ALL.size) { ActivityHistogram() }
+
+   /**
+    * Counts at the last call to summarizeAndReset().  Histograms themselves are never reset, as they're
+    * exported as cumulative metrics.
+    */
+   @Volatile
+   private var baseline: Map<EngineActivity, ActivityTimingSummary> = emptyMap()
+
+   fun histogram(activity: EngineActivity): ActivityHistogram = histograms[activity.ordinal]
+
+   fun startTimer(): Long {
+      val rate = samplingRate
+      return when {
+         rate >= 1.0 -> System.nanoTime()
+         rate > 0.0 && ThreadLocalRandom.current().nextDouble() < rate -> System.nanoTime()
+         else -> NOT_SAMPLED
+      }
+   }
+
+   /**
+    * Records an invocation of the activity, which started at startNanos (as returned from startTimer())
+    */
+   fun record(activity: EngineActivity, startNanos: Long, timings: ActivityTimings? = null) {
+      val elapsedNanos = if (startNanos == NOT_SAMPLED) NOT_SAMPLED else System.nanoTime() - startNanos
+      histograms[activity.ordinal].record(elapsedNanos)
+      timings?.record(activity, elapsedNanos)
+   }
+
+   inline fun <T> timed(activity: EngineActivity, timings: ActivityTimings? = null, block: () -> T): T {
+      val start = startTimer()
+      try {
+         return block()
+      } finally {
+         record(activity, start, timings)
+      }
+   }
+
+   /**
+    * Returns the activity recorded since the last call to summarizeAndReset().
+    * Percentiles and max are cumulative.
+    */
+   fun summary(): EngineActivitySummary {
+      val baseline = this.baseline
+      val activities = EngineActivity.ALL
+         .map { activity -> histogram(activity).summarize(activity, baseline[activity]) }
+         .filter { it.count > 0 }
+      return EngineActivitySummary(activities, samplingRate)
+   }
+
+   /**
+    * Returns the activity recorded since the last reset, and resets.
+    * Intended for diagnostics and tests - exported metrics are cumulative, and are not affected.
+    */
+   @Synchronized
+   fun summarizeAndReset(): EngineActivitySummary {
+      val summary = summary()
+      baseline = EngineActivity.ALL.associateWith { activity ->
+         val histogram = histogram(activity)
+         ActivityTimingSummary(histogram.count, histogram.estimatedTotalNanos)
+      }
+      return summary
+   }
+}
+
+/**
+ * Counts invocations of an activity, and the time spent in the invocations which were sampled.
+ * Uses LongAdders, which stripe updates across cells, so that concurrent recording
+ * (eg., from parallel projections) doesn't contend.
+ */
+open class ActivityCounter {
+   private val invocations = LongAdder()
+   private val sampledInvocations = LongAdder()
+   private val sampledNanos = LongAdder()
+
+   open fun record(elapsedNanos: Long) {
+      invocations.increment()
+      if (elapsedNanos != EngineInstrumentation.NOT_SAMPLED) {
+         sampledInvocations.increment()
+         sampledNanos.add(elapsedNanos)
+      }
+   }
+
+   internal fun add(count: Long, totalNanos: Long) {
+      invocations.add(count)
+      sampledInvocations.add(count)
+      sampledNanos.add(totalNanos)
+   }
+
+   val count: Long
+      get() = invocations.sum()
+
+   val sampledCount: Long
+      get() = sampledInvocations.sum()
+
+   /**
+    * The total time spent in the activity, extrapolated from the sampled invocations
+    */
+   val estimatedTotalNanos: Long
+      get() {
+         val sampled = sampledCount
+         if (sampled == 0L) {
+            return 0
+         }
+         return (sampledNanos.sum().toDouble() / sampled * count).toLong()
+      }
+
+}
+
+/**
+ * An ActivityCounter which also keeps the distribution of sampled times, in buckets of powers of two nanoseconds.
+ * Percentiles are approximate - they're reported as the upper bound of the bucket the percentile falls in.
+ */
+class ActivityHistogram : ActivityCounter() {
+   companion object {
+      private const val BUCKET_COUNT = 64
+   }
+
+   // Bucket i counts samples in the range [2^(i-1), 2^i) nanos
+   private val buckets = Array(BUCKET_COUNT) { LongAdder() }
+   private val max = LongAccumulator(Math::max, 0)
+
+   override fun record(elapsedNanos: Long) {
+      super.record(elapsedNanos)
+      if (elapsedNanos != EngineInstrumentation.NOT_SAMPLED) {
+         val nanos = elapsedNanos.coerceAtLeast(0)
+         buckets[(BUCKET_COUNT - java.lang.Long.numberOfLeadingZeros(nanos)).coerceAtMost(BUCKET_COUNT - 1)].increment()
+         max.accumulate(nanos)
+      }
+   }
+
+   val maxNanos: Long
+      get() = max.get()
+
+   fun percentileNanos(percentile: Double): Long {
+      val counts = buckets.map { it.sum() }
+      val total = counts.sum()
+      if (total == 0L) {
+         return 0
+      }
+      val rank = (total * percentile).toLong().coerceAtLeast(1)
+      var seen = 0L
+      counts.forEachIndexed { index, count ->
+         seen += count
+         if (seen >= rank) {
+            return if (index == 0) 0 else minOf(1L shl index, maxNanos)
+         }
+      }
+      return maxNanos
+   }
+
+   internal fun summarize(activity: EngineActivity, since: ActivityTimingSummary?): ActivitySummary {
+      val count = count - (since?.count ?: 0)
+      val totalNanos = estimatedTotalNanos - (since?.totalNanos ?: 0)
+      return ActivitySummary(
+         activity,
+         count,
+         TimeUnit.NANOSECONDS.toMillis(totalNanos),
+         meanMicros = if (count == 0L) 0.0 else totalNanos.toDouble() / count / 1000,
+         p50Micros = percentileNanos(0.5) / 1000,
+         p99Micros = percentileNanos(0.99) / 1000,
+         maxMicros = maxNanos / 1000
+      )
+   }
+}
+
+data class ActivitySummary(
+   val activity: EngineActivity,
+   val count: Long,
+   val totalMillis: Long,
+   val meanMicros: Double,
+   val p50Micros: Long,
+   val p99Micros: Long,
+   val maxMicros: Long
+)
+
+data class EngineActivitySummary(
+   val activities: List<ActivitySummary>,
+   val samplingRate: Double
+) {
+   fun sortedByCostDesc(): List<ActivitySummary> = activities.sortedByDescending { it.totalMillis }
+
+   override fun toString(): String {
+      return sortedByCostDesc().joinToString("\n")
+   }
+}
@@ -0,0 +1,36 @@
+package com.orbitalhq.utils
+
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.runBlocking
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinWorkerThread
+
+/**
+ * Runs suspending work from synchronous code, blocking the calling thread until it completes.
+ *
+ * Use this rather than runBlocking where synchronous code (eg., TypedObjectFactory, or an AccessorHandler)
+ * needs the result of a query engine search.  Where the calling code is already suspending, don't use this -
+ * just suspend.
+ *
+ * When called on a ForkJoinPool worker (such as the projection threads of ProjectionExecutor),
+ * the pool is told that the worker is blocked, so that it can start another thread in its place.
+ * Without this, under load every projection thread ends up blocked, waiting on work queued behind them
+ * on the same pool, and projections stall.
+ */
+fun <T> runBlockingManaged(block: suspend CoroutineScope.() -> T): T {
+   if (Thread.currentThread() !is ForkJoinWorkerThread) {
+      return runBlocking(block = block)
+   }
+   val blocker = object : ForkJoinPool.ManagedBlocker {
+      var result: Result<T>? = null
+
+      override fun block(): Boolean {
+         result = runCatching { runBlocking(block = block) }
+         return true
+      }
+
+      override fun isReleasable(): Boolean = result != null
+   }
+   ForkJoinPool.managedBlock(blocker)
+   return blocker.result!!.getOrThrow()
+}
@@ -0,0 +1,99 @@
+package com.orbitalhq.models
+
+import com.orbitalhq.schemas.taxi.TaxiSchema
+import com.winterbe.expekt.should
+import lang.taxi.expressions.OperatorExpression
+import org.junit.Test
+
+class TypeEvaluationPlanTest {
+   private val taxi = """
+         model Trade {
+            firstName : FirstName inherits String by jsonPath("/firstName")
+            lastName : LastName inherits String by jsonPath("/lastName")
+            price : Price inherits Decimal by jsonPath("/price")
+            quantity : Quantity inherits Int by jsonPath("/quantity")
+            traderName : TraderName inherits String by concat(this.firstName, " ", this.lastName)
+            consideration : Consideration inherits Decimal by (this.price * this.quantity)
+            size : TradeSize inherits String by when {
+               this.quantity > 100 -> "Large"
+               else -> "Small"
+            }
+         }
+      """.trimIndent()
+
+   @Test
+   fun `plan is reused for the same schema`() {
+      val schema = TaxiSchema.from(taxi)
+      val type = schema.type("Trade")
+      (type.evaluationPlan(schema) === type.evaluationPlan(schema)).should.be.`true`
+
+      val otherSchema = TaxiSchema.from(taxi)
+      val planForOtherSchema = type.evaluationPlan(otherSchema)
+      (planForOtherSchema.schema === otherSchema).should.be.`true`
+   }
+
+   @Test
+   fun `plans are kept when alternating between schemas`() {
+      val schema = TaxiSchema.from(taxi)
+      val otherSchema = TaxiSchema.from(taxi)
+      val type = schema.type("Trade")
+      val plan = type.evaluationPlan(schema)
+      val planForOtherSchema = type.evaluationPlan(otherSchema)
+
+      (type.evaluationPlan(schema) === plan).should.be.`true`
+      (type.evaluationPlan(otherSchema) === planForOtherSchema).should.be.`true`
+   }
+
+   @Test
+   fun `plan resolves field types and operand types up front`() {
+      val schema = TaxiSchema.from(taxi)
+      val type = schema.type("Trade")
+      val plan = type.evaluationPlan(schema)
+
+      plan.fieldPlan("traderName")!!.resolvedType.fullyQualifiedName.should.equal("TraderName")
+      plan.fieldPlan("traderName")!!.projectedType.should.be.`null`
+
+      val consideration = type.attribute("consideration").accessor as OperatorExpression
+      plan.returnTypeOf(consideration.lhs)!!.fullyQualifiedName.should.equal("Price")
+      plan.returnTypeOf(consideration.rhs)!!.fullyQualifiedName.should.equal("Quantity")
+   }
+
+   @Test
+   fun `records built using a plan evaluate expressions`() {
+      val schema = TaxiSchema.from(taxi)
+      val records = listOf(
+         """{ "firstName" : "Jimmy", "lastName" : "Smith", "price" : 2.5, "quantity" : 200 }""",
+         """{ "firstName" : "Jenny", "lastName" : "Jones", "price" : 10, "quantity" : 3 }"""
+      ).map { json -> TypedInstance.from(schema.type("Trade"), json, schema, source = Provided) as TypedObject }
+
+      records[0]["traderName"].value.should.equal("Jimmy Smith")
+      records[0]["consideration"].value.toString().toBigDecimal().compareTo("500".toBigDecimal()).should.equal(0)
+      records[0]["size"].value.should.equal("Large")
+
+      records[1]["traderName"].value.should.equal("Jenny Jones")
+      records[1]["consideration"].value.toString().toBigDecimal().compareTo("30".toBigDecimal()).should.equal(0)
+      records[1]["size"].value.should.equal("Small")
+   }
+
+   @Test
+   fun `plan compiles field accessors for the type they're read into`() {
+      val schema = TaxiSchema.from(taxi)
+      val type = schema.type("Trade")
+      val plan = type.evaluationPlan(schema)
+
+      val consideration = type.attribute("consideration").accessor!!
+      plan.compiledRead(consideration, schema.type("Consideration")).should.not.be.`null`
+      plan.compiledRead(consideration, schema.type("Price")).should.be.`null`
+   }
+
+   @Test
+   fun `records built with compiled accessors match records built without a plan`() {
+      val schema = TaxiSchema.from(taxi)
+      val type = schema.type("Trade")
+      val json = """{ "firstName" : "Jimmy", "lastName" : "Smith", "price" : 2.5, "quantity" : 200 }"""
+      val planned = TypedObjectFactory(type, json, schema, source = Provided).build()
+      val unplanned = TypedObjectFactory(type, json, schema, source = Provided, useEvaluationPlan = false).build()
+
+      planned.toRawObject().should.equal(unplanned.toRawObject())
+   }
+}
@@ -4,8 +4,12 @@ import com.winterbe.expekt.should
 import io.kotest.matchers.nulls.shouldNotBeNull
 import com.orbitalhq.models.TypedCollection
 import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.models.TypedObject
 import com.orbitalhq.schemas.taxi.TaxiSchema
 import org.junit.Test
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 
 class CopyOnWriteFactBagTest {
    val schema = TaxiSchema.from(
@@ -202,4 +206,71 @@ class CopyOnWriteFactBagTest {
       result.shouldNotBeNull()
    }
 
+   @Test
+   fun `facts added after a search are discoverable at any depth`() {
+      val film = TypedInstance.from(
+         schema.type("Film"), """{
+            "cast": [   { "name" : "Jack" } , { "name" : "Jimmy" } ],
+            "imdbScore" : 5.5
+            }""", schema
+      )
+      val factBag = CopyOnWriteFactBag(listOf(film), schema)
+      val initialCollection =
+         factBag.getFact(schema.type("Person"), FactDiscoveryStrategy.ANY_DEPTH_ALLOW_MANY) as TypedCollection
+      initialCollection.should.have.size(2)
+
+      val person = TypedInstance.from(schema.type("Person"), """ { "name" : "Pete" }""", schema)
+      factBag.addFact(person)
+      val updatedCollection =
+         factBag.getFact(schema.type("Person"), FactDiscoveryStrategy.ANY_DEPTH_ALLOW_MANY) as TypedCollection
+      updatedCollection.should.have.size(3)
+      // Root facts sort ahead of nested facts, regardless of when they were added
+      (updatedCollection.first() as TypedObject)["name"].value.should.equal("Pete")
+   }
+
+   @Test
+   fun `indexed type search returns the same matches as a full tree walk`() {
+      val catalog = TypedInstance.from(
+         schema.type("Catalog"), """{
+            "films" : [
+            {
+               "cast": [   { "name" : "Jack" } , { "name" : "Jimmy" } ],
+               "crew" : [ { "name" : "Pete" } , { "name" : "Paul" } ],
+               "imdbScore" : 5.5
+            }
+         ]
+         }""", schema
+      )
+      val factBag = CopyOnWriteFactBag(listOf(catalog), schema)
+      val search = FactSearch.findType(schema.type("Person"), FactDiscoveryStrategy.ANY_DEPTH_ALLOW_MANY)
+      val traversalStrategy = FactMapTraversalStrategy.enterIfHasFieldOfType(search.targetType)
+      val indexed = factBag.breadthFirstFilter(search.strategy, traversalStrategy, search.filterPredicate)
+      val treeWalk = factBag.breadthFirstFilter(search.strategy, traversalStrategy, search.filterPredicate.predicate)
+      indexed.should.have.size(4)
+      indexed.should.equal(treeWalk)
+   }
+
+   @Test
+   fun `facts added concurrently with searches are all visible once added`() {
+      val factBag = CopyOnWriteFactBag(emptyList(), schema)
+      val personType = schema.type("Person")
+      val traversalStrategy = FactMapTraversalStrategy.enterIfHasFieldOfType(personType)
+      val executor = Executors.newFixedThreadPool(8)
+      val tasks = (0 until 200).map { index ->
+         executor.submit(Callable {
+            if (index % 2 == 0) {
+               factBag.addFact(TypedInstance.from(personType, """{ "id" : $index }""", schema))
+            } else {
+               factBag.breadthFirstFilter(FactDiscoveryStrategy.ANY_DEPTH_ALLOW_MANY, traversalStrategy) { true }
+            }
+         })
+      }
+      tasks.forEach { it.get(10, TimeUnit.SECONDS) }
+      executor.shutdown()
+
+      // The first node is the data tree root, which wraps all the facts
+      val root = factBag.breadthFirstFilter(FactDiscoveryStrategy.ANY_DEPTH_ALLOW_MANY, traversalStrategy) { true }
+         .first() as TypedCollection
+      root.should.have.size(100)
+   }
 }
@@ -0,0 +1,100 @@
+package com.orbitalhq.models.facts
+
+import com.orbitalhq.models.TypedCollection
+import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.schemas.taxi.TaxiSchema
+import com.winterbe.expekt.should
+import lang.taxi.accessors.ProjectionFunctionScope
+import org.junit.Test
+
+class PersistentFactBagTest {
+   val schema = TaxiSchema.from(
+      """
+      model Person {
+         id : PersonId inherits Int
+         name : FirstName inherits String
+      }
+      model Actor inherits Person {
+         agentName : AgentName inherits String
+      }
+
+      model Film {
+        cast : Actor[]
+        imdbScore : ImdbScore inherits Decimal
+      }
+   """.trimIndent()
+   )
+
+   private fun film(score: Double, vararg castNames: String): TypedInstance {
+      val cast = castNames.joinToString(",") { """{ "name" : "$it", "agentName" : "Agent of $it" }""" }
+      return TypedInstance.from(schema.type("Film"), """{ "cast" : [ $cast ], "imdbScore" : $score }""", schema)
+   }
+
+   @Test
+   fun `derived bag finds facts from both the parent and the added fact`() {
+      val globalFacts = PersistentFactBag.of(listOf(film(5.5, "Jack", "Jimmy")), schema)
+      // Search the parent first, so that the index is built, and shared with the derived bag
+      (globalFacts.getFact(schema.type("AgentName"), FactDiscoveryStrategy.ANY_DEPTH_ALLOW_MANY) as TypedCollection)
+         .should.have.size(2)
+
+      val derived = globalFacts.merge(film(2.5, "Pete"))
+      val agentNames =
+         derived.getFact(schema.type("AgentName"), FactDiscoveryStrategy.ANY_DEPTH_ALLOW_MANY) as TypedCollection
+      agentNames.toRawObject().should.equal(listOf("Agent of Jack", "Agent of Jimmy", "Agent of Pete"))
+   }
+
+   @Test
+   fun `deriving a bag does not modify the parent`() {
+      val globalFacts = PersistentFactBag.of(listOf(film(5.5, "Jack")), schema)
+      val derived = globalFacts.merge(film(2.5, "Pete"))
+      derived.addFact(film(1.0, "Paul"))
+
+      derived.size.should.equal(3)
+      globalFacts.size.should.equal(1)
+      globalFacts.getFact(schema.type("ImdbScore"), FactDiscoveryStrategy.ANY_DEPTH_EXPECT_ONE)
+         .value.should.equal(5.5.toBigDecimal())
+      (derived.getFact(schema.type("ImdbScore"), FactDiscoveryStrategy.ANY_DEPTH_ALLOW_MANY) as TypedCollection)
+         .should.have.size(3)
+   }
+
+   @Test
+   fun `facts in the parent and the derived bag are not considered distinct`() {
+      val jack = film(5.5, "Jack")
+      val globalFacts = PersistentFactBag.of(listOf(jack), schema)
+      val derived = globalFacts.merge(jack)
+      derived.getFactOrNull(schema.type("FirstName"), FactDiscoveryStrategy.ANY_DEPTH_EXPECT_ONE)
+         ?.value.should.equal("Jack")
+   }
+
+   @Test
+   fun `scoped facts are searchable by type`() {
+      val globalFacts = PersistentFactBag.of(listOf(film(5.5, "Jack")), schema)
+      val person = TypedInstance.from(schema.type("Person"), """{ "name" : "Jimmy" }""", schema)
+      val scope = ProjectionFunctionScope.implicitThis(schema.type("Person").taxiType)
+      val derived = globalFacts.withScopedFacts(listOf(ScopedFact(scope, person)))
+
+      derived.scopedFacts.should.have.size(1)
+      derived.size.should.equal(CopyOnWriteFactBag(listOf(film(5.5, "Jack")), schema, derived.scopedFacts).size)
+      derived.size.should.equal(1)
+      derived.getFactOrNull(schema.type("Person"), FactDiscoveryStrategy.TOP_LEVEL_ONLY).should.equal(person)
+   }
+
+   @Test
+   fun `facts added alongside scoped facts are ordered the same as CopyOnWriteFactBag`() {
+      val jack = film(5.5, "Jack")
+      val jimmy = TypedInstance.from(schema.type("Person"), """{ "name" : "Jimmy" }""", schema)
+      val pete = TypedInstance.from(schema.type("Person"), """{ "name" : "Pete" }""", schema)
+      val scopedFacts = listOf(ScopedFact(ProjectionFunctionScope.implicitThis(schema.type("Person").taxiType), jimmy))
+
+      val copyOnWriteBag = CopyOnWriteFactBag(listOf(jack), schema, scopedFacts)
+      copyOnWriteBag.addFact(pete)
+      val persistentBag = PersistentFactBag.of(listOf(jack), schema).withScopedFacts(scopedFacts)
+      persistentBag.addFact(pete)
+
+      val expected = (copyOnWriteBag.getFact(schema.type("FirstName"), FactDiscoveryStrategy.ANY_DEPTH_ALLOW_MANY) as TypedCollection)
+         .toRawObject()
+      expected.should.have.size(3)
+      (persistentBag.getFact(schema.type("FirstName"), FactDiscoveryStrategy.ANY_DEPTH_ALLOW_MANY) as TypedCollection)
+         .toRawObject().should.equal(expected)
+   }
+}
@@ -0,0 +1,85 @@
+package com.orbitalhq.schemas
+
+import com.orbitalhq.schemas.taxi.TaxiSchema
+import com.winterbe.expekt.should
+import org.junit.Test
+
+class CompiledQueryCacheTest {
+   private val src = """
+      model Person {
+         name : PersonName inherits String
+      }
+   """.trimIndent()
+
+   @Test
+   fun `compiled queries are reused for schemas built from the same sources`() {
+      val cache = CompiledQueryCache()
+      val schema = TaxiSchema.from(src)
+      val rebuiltSchema = TaxiSchema.from(src)
+
+      val compiled = DefaultQueryCompiler(schema, 100, cache).compile("find { Person[] }")
+      DefaultQueryCompiler(rebuiltSchema, 100, cache).compile("find { Person[] }").should.equal(compiled)
+
+      cache.stats().hitCount().should.equal(1L)
+      cache.stats().missCount().should.equal(1L)
+   }
+
+   @Test
+   fun `queries are compiled separately for different schemas`() {
+      val cache = CompiledQueryCache()
+      val schema = TaxiSchema.from(src)
+      val otherSchema = TaxiSchema.from("$src\nmodel Film {}")
+
+      DefaultQueryCompiler(schema, 100, cache).compile("find { Person[] }")
+      DefaultQueryCompiler(otherSchema, 100, cache).compile("find { Person[] }")
+
+      cache.stats().missCount().should.equal(2L)
+      cache.size.should.equal(2L)
+   }
+
+   @Test
+   fun `queries are not cached when caching is disabled`() {
+      val cache = CompiledQueryCache()
+      DefaultQueryCompiler(TaxiSchema.from(src), 0, cache).compile("find { Person[] }")
+      cache.size.should.equal(0L)
+   }
+
+   @Test
+   fun `invalidating removes compiled queries`() {
+      val cache = CompiledQueryCache()
+      DefaultQueryCompiler(TaxiSchema.from(src), 100, cache).compile("find { Person[] }")
+      cache.invalidateAll()
+      cache.size.should.equal(0L)
+   }
+
+   @Test
+   fun `schemas which are not identified by their sources are cached by instance`() {
+      val cache = CompiledQueryCache()
+      val schema = CompositeSchema(listOf(TaxiSchema.from(src)))
+      val compiled = DefaultQueryCompiler(schema, 100, cache).compile("find { Person[] }")
+      DefaultQueryCompiler(schema, 100, cache).compile("find { Person[] }").should.equal(compiled)
+
+      DefaultQueryCompiler(CompositeSchema(listOf(TaxiSchema.from(src))), 100, cache).compile("find { Person[] }")
+      cache.stats().missCount().should.equal(2L)
+   }
+
+   @Test
+   fun `compiled queries are removed once a schema cached by instance is collected`() {
+      val cache = CompiledQueryCache()
+      compileAgainstDiscardedSchema(cache)
+      cache.size.should.equal(1L)
+
+      // Collection isn't guaranteed on request, so retry for a while
+      var attempts = 0
+      while (cache.size > 0 && attempts++ < 50) {
+         System.gc()
+         Thread.sleep(100)
+         cache.cleanUp()
+      }
+      cache.size.should.equal(0L)
+   }
+
+   private fun compileAgainstDiscardedSchema(cache: CompiledQueryCache) {
+      DefaultQueryCompiler(CompositeSchema(listOf(TaxiSchema.from(src))), 100, cache).compile("find { Person[] }")
+   }
+}
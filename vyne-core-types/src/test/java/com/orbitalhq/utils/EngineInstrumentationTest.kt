@@ -0,0 +1,80 @@
+package com.orbitalhq.utils
+
+import com.winterbe.expekt.should
+import org.junit.After
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class EngineInstrumentationTest {
+
+   @After
+   fun resetSamplingRate() {
+      EngineInstrumentation.samplingRate = 1.0
+   }
+
+   @Test
+   fun `histogram reports approximate percentiles`() {
+      val histogram = ActivityHistogram()
+      repeat(99) { histogram.record(TimeUnit.MICROSECONDS.toNanos(10)) }
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(50))
+
+      histogram.count.should.equal(100L)
+      histogram.maxNanos.should.equal(TimeUnit.MILLISECONDS.toNanos(50))
+      // Percentiles are reported as the upper bound of their power-of-two bucket
+      histogram.percentileNanos(0.5).should.be.at.least(TimeUnit.MICROSECONDS.toNanos(10))
+      histogram.percentileNanos(0.5).should.be.at.most(TimeUnit.MICROSECONDS.toNanos(20))
+      histogram.percentileNanos(1.0).should.equal(TimeUnit.MILLISECONDS.toNanos(50))
+   }
+
+   @Test
+   fun `total time is estimated from sampled invocations`() {
+      val counter = ActivityCounter()
+      counter.record(1000)
+      counter.record(3000)
+      counter.record(EngineInstrumentation.NOT_SAMPLED)
+      counter.record(EngineInstrumentation.NOT_SAMPLED)
+
+      counter.count.should.equal(4L)
+      counter.sampledCount.should.equal(2L)
+      counter.estimatedTotalNanos.should.equal(8000L)
+   }
+
+   @Test
+   fun `invocations are counted but not timed when sampling is disabled`() {
+      EngineInstrumentation.samplingRate = 0.0
+      val timings = ActivityTimings()
+
+      EngineInstrumentation.timed(EngineActivity.GRAPH_SEARCH, timings) { }
+
+      timings.count(EngineActivity.GRAPH_SEARCH).should.equal(1L)
+      timings.estimatedTotalNanos(EngineActivity.GRAPH_SEARCH).should.equal(0L)
+   }
+
+   @Test
+   fun `resetting the summary does not reset the exported histograms`() {
+      val histogram = EngineInstrumentation.histogram(EngineActivity.OBJECT_BUILD)
+      EngineInstrumentation.timed(EngineActivity.OBJECT_BUILD) { }
+      EngineInstrumentation.summarizeAndReset()
+      val countBeforeReset = histogram.count
+
+      EngineInstrumentation.timed(EngineActivity.OBJECT_BUILD) { }
+
+      histogram.count.should.equal(countBeforeReset + 1)
+      EngineInstrumentation.summary().activities
+         .single { it.activity == EngineActivity.OBJECT_BUILD }
+         .count.should.equal(1L)
+   }
+
+   @Test
+   fun `query timings only contain recorded activities and can be restored from their summary`() {
+      val timings = ActivityTimings()
+      timings.record(EngineActivity.PROJECTION, 500)
+      timings.record(EngineActivity.PROJECTION, 1500)
+
+      val summary = timings.summary()
+      summary.keys.should.equal(setOf(EngineActivity.PROJECTION))
+      summary[EngineActivity.PROJECTION].should.equal(ActivityTimingSummary(2, 2000))
+
+      ActivityTimings.from(summary).summary().should.equal(summary)
+   }
+}
@@ -15,6 +15,7 @@ import java.nio.file.Files
 import java.nio.file.Path
 import java.nio.file.SimpleFileVisitor
 import java.nio.file.attribute.BasicFileAttributes
+import java.util.concurrent.atomic.AtomicLong
 import kotlin.io.path.deleteExisting
 
 private val logger = KotlinLogging.logger {}
@@ -76,6 +77,19 @@ class HistoryPersistenceQueue(val queryId: String, val baseQueuePath: Path) {
 
    private val lineageRecordStore: ChronicleStore<LineageRecord>
 
+   // Counts of items written to the queue since it was opened.
+   // Consumers compare against the number they've processed to determine lag.
+   private val storedResultRows = AtomicLong(0)
+   private val storedRemoteCallResponses = AtomicLong(0)
+   private val storedLineageRecords = AtomicLong(0)
+
+   val storedResultRowCount: Long
+      get() = storedResultRows.get()
+   val storedRemoteCallResponseCount: Long
+      get() = storedRemoteCallResponses.get()
+   val storedLineageRecordCount: Long
+      get() = storedLineageRecords.get()
+
    init {
       queryResultRowStore =
          ChronicleStore(baseQueuePath.resolve("$queryBasePath/results/").toFile().canonicalPath,
@@ -104,14 +118,17 @@ class HistoryPersistenceQueue(val queryId: String, val baseQueuePath: Path) {
 
    fun storeResultRow(resultRow: QueryResultRow) {
       queryResultRowStore.store(resultRow)
+      storedResultRows.incrementAndGet()
    }
 
    fun storeRemoteCallResponse(remoteCallResponse: RemoteCallResponse) {
       remoteCallResponseStore.store(remoteCallResponse)
+      storedRemoteCallResponses.incrementAndGet()
    }
 
    fun storeLineageRecord(lineageRecord: LineageRecord) {
       lineageRecordStore.store(lineageRecord)
+      storedLineageRecords.incrementAndGet()
    }
 
    private fun queryResultRowToByteArray(queryResultRow: QueryResultRow): ByteArray {
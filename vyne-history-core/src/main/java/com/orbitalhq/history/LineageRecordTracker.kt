@@ -0,0 +1,48 @@
+package com.orbitalhq.history
+
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
+import java.time.Duration
+
+/**
+ * Tracks the data sources that lineage records have been created for, per query,
+ * so that each lineage record is only persisted once.
+ *
+ * State is released when the query completes (see queryCompleted()).
+ * As streaming queries can run indefinitely (creating new data sources as they go), the number of ids tracked per query
+ * is bounded.  Once the bound is reached, the least recently seen ids are forgotten - which means a lineage
+ * record may occasionally be created twice.  That's safe, as existing lineage records are filtered out when persisting.
+ *
+ * Queries which never signal completion (eg., if the completion event is lost) are released once idle for idleQueryExpiry.
+ */
+class LineageRecordTracker(
+   private val maxRecordsPerQuery: Long = 10_000,
+   idleQueryExpiry: Duration = Duration.ofHours(1)
+) {
+   private val recordIdsByQuery: Cache<String, Cache<String, Boolean>> = CacheBuilder.newBuilder()
+      .expireAfterAccess(idleQueryExpiry)
+      .build()
+
+   /**
+    * Records that a lineage record has been created for the data source in the query.
+    * Returns true if this is the first time the data source has been seen for the query (ie., the lineage
+    * record should be persisted), or false if it has already been created.
+    */
+   fun markCreated(queryId: String, dataSourceId: String): Boolean {
+      val queryRecordIds = recordIdsByQuery.get(queryId) {
+         CacheBuilder.newBuilder()
+            .maximumSize(maxRecordsPerQuery)
+            .build()
+      }
+      return queryRecordIds.asMap().putIfAbsent(dataSourceId, true) == null
+   }
+
+   fun queryCompleted(queryId: String) {
+      recordIdsByQuery.invalidate(queryId)
+   }
+
+   val trackedQueryCount: Long
+      get() = recordIdsByQuery.size()
+
+   fun trackedRecordCount(queryId: String): Long = recordIdsByQuery.getIfPresent(queryId)?.size() ?: 0
+}
@@ -4,6 +4,7 @@ import mu.KotlinLogging
 import org.springframework.boot.context.properties.ConfigurationProperties
 import java.nio.file.Path
 import java.nio.file.Paths
+import java.time.Duration
 
 @ConfigurationProperties(prefix = "vyne.analytics")
 data class QueryAnalyticsConfig(
@@ -22,6 +23,16 @@ data class QueryAnalyticsConfig(
    // Mutable for testing
    var persistenceQueueStorePath: Path = Paths.get("./historyPersistenceQueue"),
 
+   /**
+    * Records are read from the persistence queue and written to the database in batches
+    * of up to this many records.
+    */
+   val persistenceBatchSize: Int = 250,
+   /**
+    * Max time a record waits in a partially filled batch before the batch is written.
+    */
+   val persistenceBatchMaxWait: Duration = Duration.ofMillis(500),
+
    // Mutable for testing
    var persistResults: Boolean = true,
    // Mutable for testing
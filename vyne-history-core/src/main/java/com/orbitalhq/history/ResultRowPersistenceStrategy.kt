@@ -8,7 +8,6 @@ import com.orbitalhq.query.history.LineageRecord
 import com.orbitalhq.query.history.QueryResultRow
 import com.orbitalhq.query.history.RemoteCallResponse
 import mu.KotlinLogging
-import java.util.concurrent.ConcurrentHashMap
 import kotlin.time.ExperimentalTime
 import kotlin.time.measureTimedValue
 
@@ -29,6 +28,14 @@ interface ResultRowPersistenceStrategy {
    ): List<LineageRecord>
 
    fun createRemoteCallRecord(operationResult: OperationResult, queryId: String): RemoteCallResponse?
+
+   /**
+    * Called when a query has completed (successfully or otherwise), so that any state held for the query
+    * can be released
+    */
+   fun queryCompleted(queryId: String) {
+      // default no-op
+   }
 }
 
 object ResultRowPersistenceStrategyFactory {
@@ -74,7 +81,9 @@ open class DatabaseResultRowPersistenceStrategy(
    private val persistResults: Boolean
 ) : ResultRowPersistenceStrategy {
    private val converter = TypedInstanceConverter(TypeNamedInstanceMapper)
-   private val createdLineageRecordIds = ConcurrentHashMap<String, String>()
+   private val lineageRecordTracker = LineageRecordTracker()
+   // Shared, rather than resolving the writer config for each lineage record
+   private val lineageWriter = objectMapper.writer()
 
    companion object {
       private val logger = KotlinLogging.logger {}
@@ -89,24 +98,23 @@ open class DatabaseResultRowPersistenceStrategy(
          .filter { it !is FailedSearch }
          .distinctBy { it.id }
          .flatMap { discoveredDataSource ->
-            // Store the id of the lineage record we're creating in a hashmap.
-            // If we get a value back, that means that the record has already been created,
+            // Track the id of the lineage record we're creating against the query.
+            // If it's already tracked, that means that the record has already been created,
             // so we don't need to persist it, and return null from this mapper
 
             //+ discoveredDataSource.failedAttempts
             (listOf(discoveredDataSource))
                .mapNotNull { dataSource ->
-                  // Some data sources (eg., streaming topics) actually span multiple queries.
-                  val scopedDataSourceId = "$queryId/${dataSource.id}"
-                  val previousLineageRecordId = createdLineageRecordIds.putIfAbsent(scopedDataSourceId, dataSource.id)
-                  val recordAlreadyPersisted = previousLineageRecordId != null
+                  // Some data sources (eg., streaming topics) actually span multiple queries,
+                  // so ids are tracked per query.
+                  val recordAlreadyPersisted = !lineageRecordTracker.markCreated(queryId, dataSource.id)
 
                   try {
                      if (recordAlreadyPersisted) null else LineageRecord(
                         dataSource.id,
                         queryId,
                         dataSource.name,
-                        objectMapper.writeValueAsString(dataSource)
+                        lineageWriter.writeValueAsString(dataSource)
                      )
                   } catch (e: OutOfMemoryError) {
                      null
@@ -118,6 +126,10 @@ open class DatabaseResultRowPersistenceStrategy(
       return lineageRecords
    }
 
+   override fun queryCompleted(queryId: String) {
+      lineageRecordTracker.queryCompleted(queryId)
+   }
+
    override fun createRemoteCallRecord(operationResult: OperationResult, queryId: String): RemoteCallResponse? {
       return RemoteCallResponse.fromRemoteCall(
          operationResult.remoteCall,
@@ -79,6 +79,7 @@ class RemoteQueryEventConsumerClient(
          event.recordCount
       )
       emit(queryEndEvent)
+      resultRowPersistenceStrategy.queryCompleted(event.queryId)
    }
 
 
@@ -92,6 +93,7 @@ class RemoteQueryEventConsumerClient(
          event.message
       )
       emit(queryEndEvent)
+      resultRowPersistenceStrategy.queryCompleted(event.queryId)
    }
 
    private fun persistQueryFailureEvent(event: QueryFailureEvent) {
@@ -104,6 +106,7 @@ class RemoteQueryEventConsumerClient(
             event.failure.message
          )
       )
+      resultRowPersistenceStrategy.queryCompleted(event.queryId)
    }
 
    private fun processTaxiQlException(event: TaxiQlQueryExceptionEvent) {
@@ -116,6 +119,7 @@ class RemoteQueryEventConsumerClient(
          event.message
       )
       emit(queryEndEvent)
+      resultRowPersistenceStrategy.queryCompleted(event.queryId)
    }
 
    private fun processStreamingQueryCancelledEvent(event: StreamingQueryCancelledEvent) {
@@ -128,6 +132,7 @@ class RemoteQueryEventConsumerClient(
          event.message
       )
       emit(queryEndEvent)
+      resultRowPersistenceStrategy.queryCompleted(event.queryId)
    }
 
    override fun recordResult(operation: OperationResult, queryId: String) {
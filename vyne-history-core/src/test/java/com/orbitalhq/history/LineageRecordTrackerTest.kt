@@ -0,0 +1,37 @@
+package com.orbitalhq.history
+
+import com.winterbe.expekt.should
+import org.junit.Test
+
+class LineageRecordTrackerTest {
+
+   @Test
+   fun `records are only marked as created once per query`() {
+      val tracker = LineageRecordTracker()
+      tracker.markCreated("query1", "dataSource1").should.be.`true`
+      tracker.markCreated("query1", "dataSource1").should.be.`false`
+      // Data sources can span queries, so are tracked separately for each query
+      tracker.markCreated("query2", "dataSource1").should.be.`true`
+   }
+
+   @Test
+   fun `state for a query is released when the query completes`() {
+      val tracker = LineageRecordTracker()
+      tracker.markCreated("query1", "dataSource1")
+      tracker.markCreated("query2", "dataSource1")
+
+      tracker.queryCompleted("query1")
+
+      tracker.trackedQueryCount.should.equal(1L)
+      tracker.trackedRecordCount("query1").should.equal(0L)
+      tracker.trackedRecordCount("query2").should.equal(1L)
+   }
+
+   @Test
+   fun `records tracked per query are bounded`() {
+      val tracker = LineageRecordTracker(maxRecordsPerQuery = 100)
+      repeat(1000) { index -> tracker.markCreated("streamingQuery", "dataSource$index") }
+
+      tracker.trackedRecordCount("streamingQuery").should.be.at.most(100L)
+   }
+}
@@ -1,14 +1,18 @@
 package com.orbitalhq.queryService
 
-import com.orbitalhq.utils.TimeBucketed
+import com.orbitalhq.utils.EngineInstrumentation
+import mu.KotlinLogging
 import org.springframework.web.bind.annotation.GetMapping
 import org.springframework.web.bind.annotation.RestController
 
 @RestController
 class DebugService {
+   companion object {
+      private val logger = KotlinLogging.logger {}
+   }
 
    @GetMapping("/api/debugLog")
    fun logTimeBuckets() {
-      TimeBucketed.DEFAULT.log()
+      logger.info { "Engine activity:\n${EngineInstrumentation.summary()}" }
    }
 }
@@ -1,6 +1,7 @@
 package com.orbitalhq.queryService
 
-import com.orbitalhq.utils.StrategyPerformanceProfiler
+import com.orbitalhq.utils.EngineActivitySummary
+import com.orbitalhq.utils.EngineInstrumentation
 import org.springframework.web.bind.annotation.GetMapping
 import org.springframework.web.bind.annotation.RestController
 
@@ -8,7 +9,7 @@ import org.springframework.web.bind.annotation.RestController
 class QueryProfileService {
 
    @GetMapping("/api/profile")
-   fun getLastProfile(): StrategyPerformanceProfiler.SearchStrategySummary {
-      return StrategyPerformanceProfiler.summarizeAndReset()
+   fun getLastProfile(): EngineActivitySummary {
+      return EngineInstrumentation.summarizeAndReset()
    }
 }
@@ -38,7 +38,7 @@ import com.orbitalhq.spring.invokers.RestTemplateInvoker
 import com.orbitalhq.testVyne
 import com.orbitalhq.typedObjects
 import com.orbitalhq.utils.Benchmark
-import com.orbitalhq.utils.StrategyPerformanceProfiler
+import com.orbitalhq.utils.EngineInstrumentation
 import kotlinx.coroutines.*
 import kotlinx.coroutines.flow.onEach
 import kotlinx.coroutines.flow.toList
@@ -538,7 +538,7 @@ class QueryHistoryPersistenceTest : BaseQueryServiceTest() {
 
       }
 
-      val stats = StrategyPerformanceProfiler.summarizeAndReset().sortedByCostDesc()
+      val stats = EngineInstrumentation.summarizeAndReset().sortedByCostDesc()
       logger.warn("Perf test of $recordCount completed")
       logger.warn("Stats:\n ${jackson.writerWithDefaultPrettyPrinter().writeValueAsString(stats)}")
    }
@@ -9,9 +9,11 @@ import com.orbitalhq.models.TypedInstance
 import com.orbitalhq.query.Fact
 import com.orbitalhq.query.QueryEngineFactory
 import com.orbitalhq.query.connectors.OperationInvoker
+import com.orbitalhq.query.graph.GraphSearchPlanCache
 import com.orbitalhq.query.graph.operationInvocation.CacheAwareOperationInvocationDecorator
 import com.orbitalhq.query.graph.operationInvocation.OperationCacheFactory
 import com.orbitalhq.query.projection.LocalProjectionProvider
+import com.orbitalhq.query.projection.ProjectionExecutor
 import com.orbitalhq.schema.api.SchemaProvider
 import com.orbitalhq.schemas.QueryOptions
 import com.orbitalhq.schemas.Schema
@@ -38,7 +40,9 @@ class VyneFactory(
    private val vyneCacheConfiguration: VyneCacheConfiguration,
    private val vyneSpringProjectionConfiguration: VyneSpringProjectionConfiguration,
    private val operationCacheFactory: OperationCacheFactory = OperationCacheFactory(),
-   private val formatSpecRegistry: FormatSpecRegistry
+   private val formatSpecRegistry: FormatSpecRegistry,
+   private val searchPlanCache: GraphSearchPlanCache? = null,
+   private val projectionExecutor: ProjectionExecutor = ProjectionExecutor.DEFAULT
 ) : FactoryBean<Vyne>, VyneProvider {
 
    override fun isSingleton() = true
@@ -63,9 +67,11 @@ class VyneFactory(
          if (vyneSpringProjectionConfiguration.distributionMode == ProjectionDistribution.DISTRIBUTED)
             HazelcastProjectionProvider(
                taskSize = vyneSpringProjectionConfiguration.distributionPacketSize,
-               nonLocalDistributionClusterSize = vyneSpringProjectionConfiguration.distributionRemoteBias
+               nonLocalDistributionClusterSize = vyneSpringProjectionConfiguration.distributionRemoteBias,
+               resultChunkSize = vyneSpringProjectionConfiguration.distributionResultChunkSize,
+               maxSegmentsInFlight = vyneSpringProjectionConfiguration.distributionMaxSegmentsInFlight
             )
-         else LocalProjectionProvider()
+         else LocalProjectionProvider(projectionExecutor, preserveOrder = !queryOptions.unordered)
 
       val vyne = Vyne(
          schemas = listOf(schema),
@@ -73,10 +79,13 @@ class VyneFactory(
             vyneCacheConfiguration,
             CacheAwareOperationInvocationDecorator.decorateAll(
                operationInvokers,
-               operationCache = operationCacheFactory.getCache(queryOptions.cachingStrategy)
+               operationCache = operationCacheFactory.getCache(queryOptions.cachingStrategy),
+               refreshAfterWrite = operationCacheFactory.getSettings(queryOptions.cachingStrategy).refreshAfterWrite,
+               serializedResultCache = operationCacheFactory.getSerializedResultCache(queryOptions.cachingStrategy)
             ),
             projectionProvider = projectionProvider,
-            formatSpecs = formatSpecRegistry.formats
+            formatSpecs = formatSpecRegistry.formats,
+            searchPlanCache = searchPlanCache
          ),
       )
       facts.forEach { fact ->
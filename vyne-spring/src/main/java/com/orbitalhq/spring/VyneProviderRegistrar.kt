@@ -3,15 +3,29 @@ package com.orbitalhq.spring
 import io.micrometer.core.instrument.MeterRegistry
 import com.orbitalhq.VyneCacheConfiguration
 import com.orbitalhq.query.connectors.OperationInvoker
+import com.orbitalhq.query.graph.GraphSearchPlanCache
+import com.orbitalhq.query.graph.operationInvocation.OperationCacheFactory
+import com.orbitalhq.query.projection.ProjectionExecutor
 import com.orbitalhq.schema.api.SchemaProvider
+import com.orbitalhq.schema.consumer.SchemaStore
+import com.orbitalhq.schemas.CompiledQueryCache
+import com.orbitalhq.spring.config.EngineInstrumentationSettings
+import com.orbitalhq.spring.config.VyneSpringOperationCacheConfiguration
 import com.orbitalhq.spring.config.VyneSpringProjectionConfiguration
 import com.orbitalhq.spring.http.auth.schemes.AuthWebClientCustomizer
+import com.orbitalhq.spring.invokers.HttpResponseSettings
 import com.orbitalhq.spring.invokers.RestTemplateInvoker
+import com.orbitalhq.spring.query.CompiledQueryCacheMetrics
+import com.orbitalhq.spring.query.EngineInstrumentationMetrics
 import com.orbitalhq.spring.query.formats.FormatSpecRegistry
+import mu.KotlinLogging
+import org.springframework.beans.factory.ObjectProvider
+import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.Configuration
 import org.springframework.context.annotation.Import
 import org.springframework.web.reactive.function.client.WebClient
+import reactor.core.publisher.Flux
 
 @Target(AnnotationTarget.CLASS)
 @Retention(AnnotationRetention.RUNTIME)
@@ -19,16 +33,101 @@ import org.springframework.web.reactive.function.client.WebClient
 annotation class EnableVyne
 
 @Configuration
+@EnableConfigurationProperties(
+   VyneSpringOperationCacheConfiguration::class,
+   HttpResponseSettings::class,
+   EngineInstrumentationSettings::class
+)
 class EnableVyneConfiguration {
+   companion object {
+      private val logger = KotlinLogging.logger {}
+   }
+
+   @Bean
+   fun operationCacheFactory(
+      operationCacheConfiguration: VyneSpringOperationCacheConfiguration,
+      meterRegistry: MeterRegistry
+   ): OperationCacheFactory {
+      return OperationCacheFactory(operationCacheConfiguration.toOperationCacheConfig(), meterRegistry)
+   }
+
+   /**
+    * Shared by all queries on this node, so that projection threads are sized per node,
+    * rather than per query
+    */
+   @Bean
+   fun projectionExecutor(
+      vyneSpringProjectionConfiguration: VyneSpringProjectionConfiguration,
+      meterRegistry: MeterRegistry
+   ): ProjectionExecutor {
+      return ProjectionExecutor(vyneSpringProjectionConfiguration.local, meterRegistry)
+   }
+
+   /**
+    * Engine instrumentation is node-wide, so is published once per node.
+    * The sampling rate is applied by EngineInstrumentationSettings.
+    */
+   @Bean
+   fun engineInstrumentationMetrics(meterRegistry: MeterRegistry): EngineInstrumentationMetrics {
+      return EngineInstrumentationMetrics().apply { bindTo(meterRegistry) }
+   }
+
+   /**
+    * Search plans are held across queries, so need discarding when the schema changes
+    */
+   @Bean
+   fun graphSearchPlanCache(schemaStore: ObjectProvider<SchemaStore>): GraphSearchPlanCache {
+      val searchPlanCache = GraphSearchPlanCache()
+      val store = schemaStore.ifUnique
+      if (store != null) {
+         Flux.from(store.schemaChanged).subscribe { event ->
+            logger.info { "Schema changed to generation ${event.newSchemaSet.generation}.  Invalidating graph search plans" }
+            searchPlanCache.invalidateAll()
+         }
+      } else {
+         logger.warn { "No SchemaStore present, so graph search plans will not be invalidated when the schema changes" }
+      }
+      return searchPlanCache
+   }
+
+   /**
+    * Compiled queries are shared across schemas, and keyed by schema contents,
+    * so entries for previous schemas are discarded when the schema changes
+    */
+   @Bean
+   fun compiledQueryCache(schemaStore: ObjectProvider<SchemaStore>, meterRegistry: MeterRegistry): CompiledQueryCache {
+      val compiledQueryCache = CompiledQueryCache.DEFAULT
+      CompiledQueryCacheMetrics(compiledQueryCache).bindTo(meterRegistry)
+      schemaStore.ifUnique?.let { store ->
+         Flux.from(store.schemaChanged).subscribe { event ->
+            logger.info { "Schema changed to generation ${event.newSchemaSet.generation}.  Invalidating compiled queries" }
+            compiledQueryCache.invalidateAll()
+         }
+      }
+      return compiledQueryCache
+   }
+
    @Bean
    fun vyneFactory(
       schemaProvider: SchemaProvider,
       operationInvokers: List<OperationInvoker>,
       vyneCacheConfiguration: VyneCacheConfiguration,
       vyneSpringProjectionConfiguration: VyneSpringProjectionConfiguration,
-      formatSpecRegistry: FormatSpecRegistry
+      formatSpecRegistry: FormatSpecRegistry,
+      operationCacheFactory: OperationCacheFactory,
+      graphSearchPlanCache: GraphSearchPlanCache,
+      projectionExecutor: ProjectionExecutor
    ): VyneFactory {
-      return VyneFactory(schemaProvider, operationInvokers, vyneCacheConfiguration, vyneSpringProjectionConfiguration, formatSpecRegistry = formatSpecRegistry)
+      return VyneFactory(
+         schemaProvider,
+         operationInvokers,
+         vyneCacheConfiguration,
+         vyneSpringProjectionConfiguration,
+         operationCacheFactory,
+         formatSpecRegistry = formatSpecRegistry,
+         searchPlanCache = graphSearchPlanCache,
+         projectionExecutor = projectionExecutor
+      )
    }
 
    @Bean
@@ -37,12 +136,18 @@ class EnableVyneConfiguration {
       webClientBuilder: WebClient.Builder,
       authWebClientCustomizer: AuthWebClientCustomizer,
       meterRegistry: MeterRegistry,
+      httpResponseSettings: HttpResponseSettings,
    ): RestTemplateInvoker {
 //      val requestFactory = AuthTokenInjectingRequestFactory(
 //         DefaultRequestFactory(),
 //         authTokenRepository
 //      )
-      return RestTemplateInvoker(schemaProvider, webClientBuilder, authWebClientCustomizer)
+      return RestTemplateInvoker(
+         schemaProvider,
+         webClientBuilder,
+         authWebClientCustomizer,
+         responseSettings = httpResponseSettings
+      )
    }
 
 }
@@ -0,0 +1,34 @@
+package com.orbitalhq.spring.config
+
+import com.orbitalhq.utils.EngineInstrumentation
+import mu.KotlinLogging
+import org.springframework.beans.factory.InitializingBean
+import org.springframework.boot.context.properties.ConfigurationProperties
+
+/**
+ * Controls the instrumentation of query engine internals (see EngineInstrumentation).
+ *
+ * eg:
+ * vyne.instrumentation.sampling-rate=0.1
+ */
+@ConfigurationProperties(prefix = "vyne.instrumentation")
+data class EngineInstrumentationSettings(
+   /**
+    * The proportion of engine activity invocations that are timed, between 0 and 1.
+    * Invocations are always counted.  Lower values reduce the overhead of instrumentation
+    * under heavy load, with total times estimated from the sampled invocations.
+    */
+   val samplingRate: Double = 1.0
+) : InitializingBean {
+   companion object {
+      private val logger = KotlinLogging.logger {}
+   }
+
+   /**
+    * Engine instrumentation is node-wide, so is configured once, when the settings are bound
+    */
+   override fun afterPropertiesSet() {
+      EngineInstrumentation.samplingRate = samplingRate
+      logger.info { "Engine instrumentation will time ${samplingRate * 100}% of engine activity" }
+   }
+}
@@ -0,0 +1,22 @@
+package com.orbitalhq.spring.config
+
+import com.orbitalhq.query.graph.operationInvocation.OperationCacheConfig
+import com.orbitalhq.query.graph.operationInvocation.OperationCacheSettings
+import org.springframework.boot.context.properties.ConfigurationProperties
+
+/**
+ * Spring annotated version of OperationCacheConfig.
+ *
+ * eg:
+ * vyne.operation-cache.defaults.max-entries=5000
+ * vyne.operation-cache.caches.GLOBAL.max-weight-bytes=268435456
+ * vyne.operation-cache.caches.referenceData.refresh-after-write=1h
+ * vyne.operation-cache.caches.referenceData.serialized-tier-max-bytes=1073741824
+ */
+@ConfigurationProperties(prefix = "vyne.operation-cache")
+data class VyneSpringOperationCacheConfiguration(
+   val defaults: OperationCacheSettings = OperationCacheSettings(),
+   val caches: Map<String, OperationCacheSettings> = emptyMap()
+) {
+   fun toOperationCacheConfig() = OperationCacheConfig(defaults, caches)
+}
@@ -1,12 +1,32 @@
 package com.orbitalhq.spring.config
 
+import com.orbitalhq.query.projection.ProjectionConcurrencySettings
 import org.springframework.boot.context.properties.ConfigurationProperties
 
+/**
+ * eg:
+ * vyne.projection.local.node-parallelism=64
+ * vyne.projection.local.max-concurrent-projections-per-query=32
+ * vyne.projection.local.use-virtual-threads=true
+ * vyne.projection.distribution-result-chunk-size=50
+ */
 @ConfigurationProperties(prefix = "vyne.projection")
 data class VyneSpringProjectionConfiguration(
     val distributionMode: ProjectionDistribution = ProjectionDistribution.LOCAL,
     val distributionPacketSize: Int = 100,
-    val distributionRemoteBias: Int = 10
+    val distributionRemoteBias: Int = 10,
+    /**
+     * When distributing projections, results are streamed back from members in chunks of this size
+     */
+    val distributionResultChunkSize: Int = 50,
+    /**
+     * The max number of segments of a query being projected across the cluster at once
+     */
+    val distributionMaxSegmentsInFlight: Int = 16,
+    /**
+     * Concurrency of projections run on this node
+     */
+    val local: ProjectionConcurrencySettings = ProjectionConcurrencySettings()
 )
 
 enum class ProjectionDistribution {
@@ -0,0 +1,28 @@
+package com.orbitalhq.spring.invokers
+
+import org.springframework.boot.context.properties.ConfigurationProperties
+
+/**
+ * Controls how responses from HTTP services are read.
+ *
+ * eg:
+ * vyne.http.response.stream-json-arrays=true
+ * vyne.http.response.max-captured-response-bytes=1048576
+ */
+@ConfigurationProperties(prefix = "vyne.http.response")
+data class HttpResponseSettings(
+   /**
+    * When a JSON array is returned from an operation with a collection return type,
+    * parse and emit each member as it's read, rather than reading the full response first.
+    */
+   val streamJsonArrays: Boolean = true,
+   /**
+    * Whether to keep the response body of streamed responses, so it's available in query history
+    */
+   val captureResponseBody: Boolean = true,
+   /**
+    * The max bytes of a streamed response body that are kept for query history.
+    * Longer responses are truncated.
+    */
+   val maxCapturedResponseBytes: Int = 1024 * 1024
+)
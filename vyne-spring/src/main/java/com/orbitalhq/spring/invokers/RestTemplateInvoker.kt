@@ -3,9 +3,11 @@ package com.orbitalhq.spring.invokers
 import io.netty.channel.ChannelOption
 import com.orbitalhq.http.HttpHeaders.STREAM_ESTIMATED_RECORD_COUNT
 import com.orbitalhq.http.UriVariableProvider
+import com.orbitalhq.models.DataSource
 import com.orbitalhq.models.OperationResult
 import com.orbitalhq.models.TypedCollection
 import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.models.json.Jackson
 import com.orbitalhq.query.HttpExchange
 import com.orbitalhq.query.QueryContextEventDispatcher
 import com.orbitalhq.query.RemoteCall
@@ -26,17 +28,23 @@ import kotlinx.coroutines.reactive.asFlow
 import lang.taxi.annotations.HttpService
 import mu.KotlinLogging
 import org.springframework.core.ParameterizedTypeReference
+import org.springframework.core.ResolvableType
+import org.springframework.core.io.buffer.DataBuffer
 import org.springframework.http.HttpMethod
 import org.springframework.http.MediaType
 import org.springframework.http.client.reactive.ReactorClientHttpConnector
+import org.springframework.http.codec.json.Jackson2JsonDecoder
 import org.springframework.web.reactive.function.client.*
 import org.springframework.web.util.DefaultUriBuilderFactory
 import org.springframework.web.util.UriComponentsBuilder
 import reactor.core.publisher.Flux
 import reactor.core.publisher.Mono
+import reactor.core.publisher.SignalType
 import reactor.core.scheduler.Schedulers
 import reactor.netty.http.client.HttpClient
 import reactor.netty.resources.ConnectionProvider
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
 import java.time.Duration
 import java.time.Instant
 import java.util.*
@@ -49,6 +57,7 @@ class RestTemplateInvoker(
    val webClient: WebClient,
    private val requestFactory: HttpRequestFactory = DefaultRequestFactory(),
    val formats: FormatSpecRegistry = FormatSpecRegistry.default(),
+   private val responseSettings: HttpResponseSettings = HttpResponseSettings(),
 ) : OperationInvoker {
    private val logger = KotlinLogging.logger {}
 
@@ -56,7 +65,8 @@ class RestTemplateInvoker(
       schemaProvider: SchemaProvider,
       webClientBuilder: WebClient.Builder,
       authRequestCustomizer: AuthWebClientCustomizer,
-      requestFactory: HttpRequestFactory = DefaultRequestFactory()
+      requestFactory: HttpRequestFactory = DefaultRequestFactory(),
+      responseSettings: HttpResponseSettings = HttpResponseSettings()
    )
       : this(
       schemaProvider,
@@ -84,12 +94,18 @@ class RestTemplateInvoker(
          )
          .filter(authRequestCustomizer.authFromServiceNameAttribute)
          .build(),
-      requestFactory
+      requestFactory,
+      responseSettings = responseSettings
    )
 
    private val uriVariableProvider = UriVariableProvider()
    private val defaultUriBuilderFactory = DefaultUriBuilderFactory()
 
+   // Uses the same mapper as when parsing a full response, so that values are read consistently
+   private val jsonArrayDecoder = Jackson2JsonDecoder(Jackson.defaultObjectMapper).apply {
+      maxInMemorySize = 16 * 1024 * 1024
+   }
+
    init {
       logger.info { "Rest template invoker started" }
    }
@@ -193,10 +209,15 @@ class RestTemplateInvoker(
                "[$queryId] - $httpMethod to ${expandedUri.toASCIIString()} returned status ${clientResponse.statusCode()} after ${duration}ms"
             }
 
-            fun remoteCall(responseBody: String, failed: Boolean = false): RemoteCall {
+            fun remoteCall(
+               responseBody: String?,
+               failed: Boolean = false,
+               responseId: String = UUID.randomUUID().toString(),
+               responseSize: Int = responseBody?.length ?: 0
+            ): RemoteCall {
                return RemoteCall(
                   remoteCallId = remoteCallId,
-                  responseId = UUID.randomUUID().toString(),
+                  responseId = responseId,
                   service = service.name,
                   address = expandedUri.toASCIIString(),
                   operation = operation.name,
@@ -214,9 +235,9 @@ class RestTemplateInvoker(
                      verb = httpMethod.name(),
                      requestBody = httpEntity.body?.toString(),
                      responseCode = clientResponse.statusCode().value(),
-                     // Strictly, this isn't the size in bytes,
+                     // Strictly, this isn't always the size in bytes,
                      // but it's close enough until someone complains.
-                     responseSize = responseBody.length,
+                     responseSize = responseSize,
                   )
                )
             }
@@ -255,6 +276,33 @@ class RestTemplateInvoker(
                         queryId
                      )
                   }
+            } else if (canStreamJsonArray(operation, clientResponse.headers())) {
+               logger.debug { "Request to ${expandedUri.toASCIIString()} returned json, which will be parsed as it's read" }
+               // Elements are emitted before the response has been fully read, so they reference a
+               // response id that is reported (along with the captured body) once the response completes.
+               val responseId = UUID.randomUUID().toString()
+               val dataSource = OperationResult.from(parameters, remoteCall(responseBody = null, responseId = responseId))
+                  .asOperationReferenceDataSource()
+               val capturedBody = CappedResponseBody(
+                  if (responseSettings.captureResponseBody) responseSettings.maxCapturedResponseBytes else 0
+               )
+               fun reportRemoteCall(failed: Boolean) {
+                  val remoteCall = remoteCall(
+                     responseBody = capturedBody.bodyOrNull(),
+                     failed = failed,
+                     responseId = responseId,
+                     responseSize = capturedBody.totalBytes.toInt()
+                  )
+                  eventDispatcher.reportRemoteOperationInvoked(OperationResult.from(parameters, remoteCall), queryId)
+               }
+               streamJsonArray(
+                  clientResponse.bodyToFlux<DataBuffer>().doOnNext { capturedBody.append(it) },
+                  operation,
+                  dataSource,
+                  clientResponse.headers()
+               )
+                  // Also report when cancelled (ie., the query only needed the first few results)
+                  .doFinally { signal -> reportRemoteCall(failed = signal == SignalType.ON_ERROR) }
             } else {
                logger.debug { "Request to ${expandedUri.toASCIIString()} is not streaming" }
                if (!firstResultReceived) {
@@ -281,6 +329,55 @@ class RestTemplateInvoker(
 
    }
 
+   /**
+    * Json arrays returned for collection types are parsed incrementally, emitting each
+    * member as soon as it's read, rather than reading (and holding) the full response first.
+    *
+    * Not used where the member type has a format spec, as those parse the raw content.
+    */
+   private fun canStreamJsonArray(operation: RemoteOperation, headers: ClientResponse.Headers): Boolean {
+      if (!responseSettings.streamJsonArrays || !operation.returnType.isCollection) {
+         return false
+      }
+      val contentType = headers.contentType().orElse(null) ?: return false
+      if (!contentType.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+         return false
+      }
+      val memberType = operation.returnType.collectionType ?: return false
+      return formats.forType(operation.returnType) == null && formats.forType(memberType) == null
+   }
+
+   private fun streamJsonArray(
+      body: Flux<DataBuffer>,
+      operation: RemoteOperation,
+      dataSource: DataSource,
+      headers: ClientResponse.Headers
+   ): Flux<TypedInstance> {
+      val memberType = operation.returnType.collectionType!!
+      val evaluateAccessors = !isPreparsed(headers)
+      val schema = schemaProvider.schema
+      // When decoding to a Flux, the decoder tokenizes a top-level array, and emits each member
+      // (or the whole document, if it isn't an array)
+      return jsonArrayDecoder.decode(body, ResolvableType.forClass(Any::class.java), MediaType.APPLICATION_JSON, null)
+         .map { member ->
+            TypedInstance.from(
+               memberType,
+               member,
+               schema,
+               source = dataSource,
+               evaluateAccessors = evaluateAccessors,
+               formatSpecs = formats.formats
+            )
+         }
+   }
+
+   private fun isPreparsed(headers: ClientResponse.Headers): Boolean {
+      return headers
+         .header(com.orbitalhq.http.HttpHeaders.CONTENT_PREPARSED).let { headerValues ->
+            headerValues != null && headerValues.isNotEmpty() && headerValues.first() == true.toString()
+         }
+   }
+
    private fun getContentTypeFromResponseType(returnType: Type): MediaType {
       val formatSpec = formats.forType(returnType)
       val mediaType = if (formatSpec != null) {
@@ -331,12 +428,8 @@ class RestTemplateInvoker(
       // Logging responses in our logs is a security issue.  Let's not do this.
 //      logger.debug { "Result of ${operation.name} was $result" }
 
-      val isPreparsed = headers
-         .header(com.orbitalhq.http.HttpHeaders.CONTENT_PREPARSED).let { headerValues ->
-            headerValues != null && headerValues.isNotEmpty() && headerValues.first() == true.toString()
-         }
       // If the content has been pre-parsed upstream, we don't evaluate accessors
-      val evaluateAccessors = !isPreparsed
+      val evaluateAccessors = !isPreparsed(headers)
       val operationResult = OperationResult.from(parameters, remoteCall)
 
       val type = inferContentType(operation, headers, result)
@@ -366,3 +459,29 @@ class RestTemplateInvoker(
       return operation.returnType.collectionType ?: operation.returnType
    }
 }
+
+/**
+ * Keeps the first maxBytes of a response that is being streamed,
+ * so that it can be stored in query history without holding the full response.
+ */
+internal class CappedResponseBody(private val maxBytes: Int) {
+   private val captured = ByteArrayOutputStream()
+   var totalBytes: Long = 0
+      private set
+
+   fun append(buffer: DataBuffer) {
+      val readable = buffer.readableByteCount()
+      totalBytes += readable
+      val length = minOf(readable, maxBytes - captured.size())
+      if (length > 0) {
+         val bytes = ByteArray(length)
+         // Copies without moving the read position, so the buffer can still be decoded
+         buffer.toByteBuffer(buffer.readPosition(), ByteBuffer.wrap(bytes), 0, length)
+         captured.write(bytes)
+      }
+   }
+
+   fun bodyOrNull(): String? {
+      return if (maxBytes == 0) null else captured.toString(Charsets.UTF_8)
+   }
+}
@@ -11,13 +11,13 @@ import com.orbitalhq.query.QueryProfiler
 import com.orbitalhq.query.SearchGraphExclusion
 import com.orbitalhq.query.SerializableVyneQueryStatistics
 import com.orbitalhq.schemas.QualifiedName
-import kotlinx.coroutines.GlobalScope
-import kotlinx.coroutines.async
+import com.orbitalhq.utils.ActivityTimingSummary
+import com.orbitalhq.utils.EngineActivity
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.asFlow
-import kotlinx.coroutines.flow.buffer
 import kotlinx.coroutines.flow.flatMapMerge
+import kotlinx.coroutines.flow.flowOn
 import kotlinx.coroutines.flow.map
-import kotlinx.coroutines.flow.toList
 import kotlinx.coroutines.runBlocking
 import kotlinx.serialization.cbor.Cbor
 import kotlinx.serialization.decodeFromByteArray
@@ -28,23 +28,51 @@ import org.springframework.context.ApplicationContext
 import org.springframework.context.ApplicationContextAware
 import org.springframework.stereotype.Component
 import java.io.Serializable
+import java.time.Duration
 import java.time.LocalDateTime
 import java.util.concurrent.Callable
+import java.util.concurrent.CancellationException
 import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
 
 private val logger = KotlinLogging.logger {}
 
+/**
+ * Projects a segment of inputs on a cluster member.
+ *
+ * Rather than returning the projected results once the whole segment is complete, results are published
+ * in chunks (of up to chunkSize results) to the Hazelcast queue named resultsQueueName as they're projected.
+ * The queue is bounded, so if the caller falls behind, projection pauses until it catches up.
+ *
+ * Returns the number of results published.  Once the task has completed, all results have been published to the queue.
+ *
+ * Cancelling the task's future (with mayInterruptIfRunning) cancels the projections in flight.
+ * As the caller doesn't wait for the task to stop before destroying the results queue, the task also checks
+ * whether the caller has flagged the segment as cancelled (see HazelcastProjectionProvider.CANCELLED_SEGMENTS_MAP)
+ * before each publish, and stops if so.
+ */
 class HazelcastProjectingTask(
     val queryId: String,
     val input: List<ByteArray>,
     val excludedServices: ByteArray,
     val qualifiedName: QualifiedName,
-    val segment: Long
-) : Callable<ByteArray>, Serializable, HazelcastInstanceAware {
+    val segment: Long,
+    val resultsQueueName: String,
+    val chunkSize: Int,
+    val projectionConcurrency: Int = 16
+) : Callable<Int>, Serializable, HazelcastInstanceAware {
+
+    companion object {
+        /**
+         * How long to wait for the caller to make space in the results queue, before
+         * assuming it's gone away.
+         */
+        private val PUBLISH_TIMEOUT = Duration.ofMinutes(10)
+    }
 
     lateinit var localHazelcastInstance: HazelcastInstance
 
-    override fun call(): ByteArray {
+    override fun call(): Int {
 
        val executorServiceStats = localHazelcastInstance.getExecutorService("executorService").localExecutorStats
        logger.info { "Task for queryId/segment ${queryId}/${segment} starting on node/endpoint ${localHazelcastInstance.name}/${localHazelcastInstance.localEndpoint} in cluster of [${localHazelcastInstance.cluster.members}] at time [${LocalDateTime.now()}] local executor = [${executorServiceStats}]" }
@@ -60,25 +88,68 @@ class HazelcastProjectingTask(
        )
         context.excludedServices.addAll( Cbor.decodeFromByteArray<MutableSet<SearchGraphExclusion<QualifiedName>>>(excludedServices) )
 
+        val resultsQueue = localHazelcastInstance.getQueue<ByteArray>(resultsQueueName)
+        val cancelledSegments = localHazelcastInstance.getMap<String, Boolean>(HazelcastProjectionProvider.CANCELLED_SEGMENTS_MAP)
+
         val flow = input
            .asFlow()
            .map { SerializableTypedInstance.fromBytes(it) }  // Deserialize from CBor
            .map { it.toTypedInstance(vyne.schema) }
-                .map {
-                    GlobalScope.async {
-                        val projectionContext = context.only(it)
-                        val buildResult = projectionContext.build(qualifiedName)
-                        buildResult.results.map { it.toSerializable().toBytes() to  SerializableVyneQueryStatistics.from(projectionContext.vyneQueryStatistics)  }
-                    }
-                }
-                .buffer(16)
-                .flatMapMerge { it.await() }.map { it  }
+           .flatMapMerge(projectionConcurrency) { instance ->
+              val projectionContext = context.only(instance)
+              projectionContext.build(qualifiedName).results
+                 .map {
+                    // Activity timings are shared by every row in the segment, so are published per chunk (below)
+                    val statistics = SerializableVyneQueryStatistics.from(projectionContext.vyneQueryStatistics)
+                    it.toSerializable().toBytes() to statistics.copy(activityTimings = emptyMap())
+                 }
+           }
+           .flowOn(Dispatchers.Default)
+
+        // The timings recorded since the previous chunk, which the caller adds to the query's timings
+        val activityTimings = context.vyneQueryStatistics.activityTimings
+        var publishedTimings = emptyMap<EngineActivity, ActivityTimingSummary>()
+        fun unpublishedTimings(): Map<EngineActivity, ActivityTimingSummary> {
+            val currentTimings = activityTimings.summary()
+            val unpublished = currentTimings.mapValues { (activity, timing) ->
+                val published = publishedTimings[activity] ?: return@mapValues timing
+                ActivityTimingSummary(timing.count - published.count, timing.totalNanos - published.totalNanos)
+            }.filterValues { it.count > 0 }
+            publishedTimings = currentTimings
+            return unpublished
+        }
 
-        //Run blocking is necessary here as the results need to be hydrated and serialised ByteArray
+        // The projections run in this task's own scope (rather than GlobalScope), so are cancelled
+        // if the task fails, or the thread is interrupted because the caller cancelled the task.
         return runBlocking {
-            val list:List<Pair<ByteArray, SerializableVyneQueryStatistics>> = flow.toList()
-            val encoded = Cbor.encodeToByteArray( list )
-            encoded
+            var resultCount = 0
+            val chunk = mutableListOf<Pair<ByteArray, SerializableVyneQueryStatistics>>()
+            fun publishChunk() {
+                if (chunk.isEmpty()) return
+                if (cancelledSegments.containsKey(resultsQueueName)) {
+                    logger.info { "Task for queryId/segment ${queryId}/${segment} was cancelled by the caller, stopping" }
+                    // A publish made before the cancellation was flagged may have recreated the queue after the caller destroyed it
+                    resultsQueue.destroy()
+                    throw CancellationException("Projection of queryId/segment ${queryId}/${segment} was cancelled")
+                }
+                val (lastResult, lastStatistics) = chunk.last()
+                chunk[chunk.lastIndex] = lastResult to lastStatistics.copy(activityTimings = unpublishedTimings())
+                val published = resultsQueue.offer(Cbor.encodeToByteArray<List<Pair<ByteArray, SerializableVyneQueryStatistics>>>(chunk), PUBLISH_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
+                if (!published) {
+                    error("Timed out publishing results for queryId/segment ${queryId}/${segment} - the caller is no longer reading results")
+                }
+                resultCount += chunk.size
+                chunk.clear()
+            }
+            flow.collect { result ->
+                chunk.add(result)
+                if (chunk.size >= chunkSize) {
+                    publishChunk()
+                }
+            }
+            publishChunk()
+            logger.info { "Task for queryId/segment ${queryId}/${segment} published $resultCount results at time [${LocalDateTime.now()}]" }
+            resultCount
         }
     }
 
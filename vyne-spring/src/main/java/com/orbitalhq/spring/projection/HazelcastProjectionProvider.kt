@@ -1,11 +1,10 @@
 package com.orbitalhq.spring.projection
 
 import com.hazelcast.cluster.Member
-import com.hazelcast.cluster.MemberSelector
+import com.hazelcast.config.QueueConfig
 import com.hazelcast.core.Hazelcast
 import com.hazelcast.core.HazelcastInstance
 import com.hazelcast.core.IExecutorService
-import com.spikhalskiy.futurity.Futurity
 import com.orbitalhq.Vyne
 import com.orbitalhq.models.TypedInstance
 import com.orbitalhq.models.facts.FactBag
@@ -16,102 +15,192 @@ import com.orbitalhq.query.QueryContext
 import com.orbitalhq.query.SerializableVyneQueryStatistics
 import com.orbitalhq.query.VyneQueryStatistics
 import com.orbitalhq.query.projection.ProjectionProvider
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.flatMapMerge
+import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.reactive.asFlow
 import kotlinx.coroutines.reactor.asFlux
+import kotlinx.coroutines.runInterruptible
 import kotlinx.serialization.cbor.Cbor
 import kotlinx.serialization.decodeFromByteArray
 import kotlinx.serialization.encodeToByteArray
 import mu.KotlinLogging
-import reactor.core.publisher.Mono
-import reactor.core.scheduler.Scheduler
-import reactor.core.scheduler.Schedulers
-import reactor.kotlin.core.publisher.toFlux
-import reactor.kotlin.core.publisher.toMono
+import java.time.Duration
 import java.time.Instant
 import java.time.LocalDateTime
-import kotlin.random.Random
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
 
 private val logger = KotlinLogging.logger {}
 
-class HazelcastProjectionProvider(val taskSize: Int, private val nonLocalDistributionClusterSize: Int = 10) :
-    ProjectionProvider {
-
-    val hazelcastScheduler: Scheduler = Schedulers.parallel()
+/**
+ * Projects results across the members of the Hazelcast cluster.
+ *
+ * Results are split into segments of taskSize, and each segment is projected on the member chosen by
+ * the ProjectionMemberBalancer.
+ * Projected results are streamed back from the member as they're produced (see HazelcastProjectingTask), rather than
+ * once the whole segment has completed.
+ */
+class HazelcastProjectionProvider(
+    val taskSize: Int,
+    private val nonLocalDistributionClusterSize: Int = 10,
+    private val resultChunkSize: Int = 50,
+    private val maxSegmentsInFlight: Int = 16,
+    private val balancer: ProjectionMemberBalancer = ProjectionMemberBalancer.DEFAULT
+) : ProjectionProvider {
+
+    companion object {
+        const val RESULTS_QUEUE_PREFIX = "projection-results-"
+
+        /**
+         * Results queues of segments which the caller has stopped reading (eg., because the query was cancelled).
+         * Cancelling a task's future doesn't wait for the task to stop, so the task checks this before
+         * publishing, rather than recreating a queue that the caller has destroyed.
+         */
+        const val CANCELLED_SEGMENTS_MAP = "projection-cancelled-segments"
+
+        /**
+         * How long cancelled segments are remembered.  Longer than a task can wait to publish
+         * (see HazelcastProjectingTask.PUBLISH_TIMEOUT), after which the task fails anyway.
+         */
+        private val CANCELLED_SEGMENT_TTL = Duration.ofMinutes(15)
+
+        /**
+         * The max number of chunks of results waiting to be read for each segment.
+         * Once full, the member pauses projecting until the caller catches up.
+         */
+        const val MAX_QUEUED_RESULT_CHUNKS = 64
+
+        private val POLL_INTERVAL = Duration.ofMillis(100)
+
+        /**
+         * When the cluster has at least nonLocalDistributionClusterSize members, the local member (where the query is running)
+         * is treated as having half its observed throughput, so on average it performs half the work of other members.
+         * This leaves it CPU capacity for orchestrating the query and deserialising results from remote members.
+         */
+        private const val LOCAL_MEMBER_WEIGHT_IN_LARGE_CLUSTERS = 0.5
+
+        private val configuredInstances = ConcurrentHashMap.newKeySet<String>()
+    }
 
     override fun project(results: Flow<TypedInstance>, projection: Projection, context: QueryContext, globalFacts: FactBag):Flow<Pair<TypedInstance, VyneQueryStatistics>> {
 
         val instance:HazelcastInstance = Hazelcast.getAllHazelcastInstances().first()
+        configureResultsQueues(instance)
         val executorService:IExecutorService = instance.getExecutorService("projectionExecutorService")
 
         val vyne = ApplicationContextProvider.context()!!.getBean("vyneFactory") as Vyne
 
-        val selector = if (instance.cluster.members.size >= nonLocalDistributionClusterSize) {
-            RemoteBiasedMemberSelector()
-        } else {
-            MemberSelector { true }
-        }
-
-        val projectedResults = results
+        return results
             .asFlux()
             .filter { !context.cancelRequested }
             .buffer(taskSize) //Take buffers of provided buffer size - this determines the size of distributed work packet
             .index()
-            .parallel()
-            .runOn( hazelcastScheduler )
-            .map { toDistributableTask(context, projection, it.t2, it.t1) } //Serialize to task
-            .map { Futurity.shift(executorService.submit(it.first, selector)).toMono() to it.second } //Distribute on hazelcast
-            .map { deserialiseTaskResults(context, vyne, it.first, it.second) }
+            .asFlow()
+            .flatMapMerge(maxSegmentsInFlight) { indexedSegment ->
+                projectSegment(instance, executorService, vyne, context, projection, indexedSegment.t2, indexedSegment.t1)
+            }
+    }
 
-        return projectedResults.asFlow().flatMapMerge { it }
+    /**
+     * Submits the segment to the selected member, and emits results as they're published to the segment's results queue.
+     *
+     * If the flow is cancelled (eg., because the query was cancelled), the task is cancelled on the member.
+     */
+    private fun projectSegment(
+        instance: HazelcastInstance,
+        executorService: IExecutorService,
+        vyne: Vyne,
+        context: QueryContext,
+        projection: Projection,
+        input: List<TypedInstance>,
+        segment: Long
+    ): Flow<Pair<TypedInstance, VyneQueryStatistics>> = flow {
+        val resultsQueueName = "$RESULTS_QUEUE_PREFIX${context.queryId}-$segment"
+        val task = toDistributableTask(context, projection, input, segment, resultsQueueName)
+        val resultsQueue = instance.getQueue<ByteArray>(resultsQueueName)
+        val member = selectMember(instance, input.size)
+        val startTime = System.nanoTime()
+        var completed = false
+        logger.info { "Distributing segment $segment for query ${context.queryId} to member ${member.address} at ${LocalDateTime.now()}" }
+        val resultsFuture = executorService.submitToMember(task, member)
+        try {
+            while (true) {
+                val chunk = runInterruptible(Dispatchers.IO) { resultsQueue.poll(POLL_INTERVAL.toMillis(), TimeUnit.MILLISECONDS) }
+                if (chunk != null) {
+                    deserialiseResults(vyne, context, chunk).forEach { emit(it) }
+                } else if (resultsFuture.isDone) {
+                    // The task publishes all its results before completing, so whatever is left in the queue is the end of the segment
+                    generateSequence { resultsQueue.poll() }.forEach { remainingChunk ->
+                        deserialiseResults(vyne, context, remainingChunk).forEach { emit(it) }
+                    }
+                    // Rethrows if the task failed
+                    val resultCount = resultsFuture.get()
+                    logger.info { "Received segment $segment ($resultCount results) for query ${context.queryId} at ${Instant.now()}" }
+                    break
+                }
+            }
+            completed = true
+        } finally {
+            balancer.segmentFinished(member, input.size, System.nanoTime() - startTime, completed)
+            if (!resultsFuture.isDone) {
+                logger.info { "Cancelling segment $segment for query ${context.queryId}" }
+                // Flag the segment before destroying the queue, as the task may still be running after
+                // the cancel returns, and would otherwise recreate the queue with its next publish.
+                instance.getMap<String, Boolean>(CANCELLED_SEGMENTS_MAP)
+                    .put(resultsQueueName, true, CANCELLED_SEGMENT_TTL.toMillis(), TimeUnit.MILLISECONDS)
+                resultsFuture.cancel(true)
+            }
+            resultsQueue.destroy()
+        }
+    }
 
+    private fun selectMember(instance: HazelcastInstance, rows: Int): Member {
+        val members = instance.cluster.members
+        return if (members.size >= nonLocalDistributionClusterSize) {
+            val queryServiceMembers = members.filter { member -> member.attributes[VyneHazelcastMemberTags.VYNE_TAG.tag] == VyneHazelcastMemberTags.QUERY_SERVICE_TAG.tag }
+            balancer.assign(queryServiceMembers.ifEmpty { members }, rows, LOCAL_MEMBER_WEIGHT_IN_LARGE_CLUSTERS)
+        } else {
+            balancer.assign(members, rows)
+        }
     }
 
-    private fun toDistributableTask(context: QueryContext, projection: Projection, input: List<TypedInstance>, segment:Long):Pair<HazelcastProjectingTask, Long> {
+    /**
+     * Results queues are bounded, so that members can't get too far ahead of the caller.
+     */
+    private fun configureResultsQueues(instance: HazelcastInstance) {
+        if (configuredInstances.add(instance.name)) {
+            instance.config.addQueueConfig(
+                QueueConfig("$RESULTS_QUEUE_PREFIX*")
+                    .setMaxSize(MAX_QUEUED_RESULT_CHUNKS)
+                    .setBackupCount(0)
+            )
+        }
+    }
+
+    private fun toDistributableTask(context: QueryContext, projection: Projection, input: List<TypedInstance>, segment:Long, resultsQueueName: String):HazelcastProjectingTask {
 
-        logger.info { "Distributing segment $segment for query ${context.queryId} at ${LocalDateTime.now()}" }
         val serializedTypedInstancesAsByteList = input.map { it.toSerializable().toBytes() }
         val serializedExcludedServices = Cbor.encodeToByteArray(context.excludedServices)
         val actualProjectedType = projection.type.collectionType ?: projection.type
         val qualifiedName = actualProjectedType.qualifiedName
-        return HazelcastProjectingTask(context.queryId, serializedTypedInstancesAsByteList, serializedExcludedServices, qualifiedName, segment) to segment
+        return HazelcastProjectingTask(context.queryId, serializedTypedInstancesAsByteList, serializedExcludedServices, qualifiedName, segment, resultsQueueName, resultChunkSize)
     }
 
-    private fun deserialiseTaskResults(context: QueryContext, vyne:Vyne, resultsFuture: Mono<ByteArray>, segment:Long):Flow<Pair<TypedInstance, VyneQueryStatistics>> {
-
-        val deserialised =
-            resultsFuture
-                .map {
-                    val decoded = Cbor.decodeFromByteArray<List<Pair<ByteArray, SerializableVyneQueryStatistics>>>(it)
-                        .map{
-                            SerializableTypedInstance.fromBytes(it.first).toTypedInstance(vyne.schema) to VyneQueryStatistics.from(it.second)
-                        }
-                        .toFlux()
-                    logger.info { "Received and deserialised segment $segment for query ${context.queryId} at ${Instant.now()}" }
-                    decoded
-                }
-        return deserialised.flatMapMany { it }.asFlow()
-
+    private fun deserialiseResults(vyne:Vyne, context: QueryContext, chunk: ByteArray):List<Pair<TypedInstance, VyneQueryStatistics>> {
+        val activityTimings = context.vyneQueryStatistics.activityTimings
+        return Cbor.decodeFromByteArray<List<Pair<ByteArray, SerializableVyneQueryStatistics>>>(chunk)
+            .map{ (result, statistics) ->
+                // Members send the timings recorded since their previous chunk, which are added to this query's timings
+                activityTimings.add(statistics.activityTimings)
+                SerializableTypedInstance.fromBytes(result).toTypedInstance(vyne.schema) to
+                    VyneQueryStatistics.from(statistics).copy(activityTimings = activityTimings)
+            }
     }
 
 }
 
-/**
- * Hazelcast member selector class allow inclusion of work on the local instance only 1/2 of the time
- * averaged the local node will only perform half of the work of other nodes - allowing the localnode - where
- * the query is running CPU capacity for orchestration and deserialising of work remote work results
- */
-class RemoteBiasedMemberSelector : MemberSelector {
-    override fun select(member: Member): Boolean {
-        return if ( Random.nextBoolean() ) {
-            !member.localMember() && member.attributes[VyneHazelcastMemberTags.VYNE_TAG.tag] == VyneHazelcastMemberTags.QUERY_SERVICE_TAG.tag
-        } else {
-            member.attributes[VyneHazelcastMemberTags.VYNE_TAG.tag]  == VyneHazelcastMemberTags.QUERY_SERVICE_TAG.tag
-        }
-    }
-}
-
 enum class VyneHazelcastMemberTags(val tag:String) {
     VYNE_TAG("vyneTag"),
     QUERY_SERVICE_TAG("vyne-query-service")
@@ -0,0 +1,79 @@
+package com.orbitalhq.spring.projection
+
+import com.hazelcast.cluster.Member
+import java.util.UUID
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Chooses the cluster member to project each segment on.
+ *
+ * Members are chosen by the estimated time to work through the rows already in flight on the member, plus the new segment,
+ * based on the throughput (rows per second) observed for previous segments projected on that member.
+ * This means faster (or less busy) members are given more segments, rather than sharing segments evenly.
+ *
+ * Throughput is shared across queries, so is held in a single instance (see DEFAULT)
+ */
+class ProjectionMemberBalancer(
+   /**
+    * How much weight a new observation of a member's throughput has, vs previous observations
+    */
+   private val smoothingFactor: Double = 0.3
+) {
+   companion object {
+      val DEFAULT = ProjectionMemberBalancer()
+   }
+
+   private class MemberLoad {
+      val rowsInFlight = AtomicLong()
+
+      @Volatile
+      var rowsPerSecond: Double? = null
+   }
+
+   private val loads = ConcurrentHashMap<UUID, MemberLoad>()
+
+   /**
+    * Selects the member to project a segment of rows on, and records the rows as in flight on that member.
+    * Callers must call segmentFinished() once the segment has completed (or failed).
+    *
+    * @param localMemberWeight Scales the throughput of the local member.  Passing a value less than 1 biases
+    * work towards remote members, leaving the local member (where the query is running) capacity for orchestrating the query
+    * and deserializing results.
+    */
+   fun assign(members: Collection<Member>, rows: Int, localMemberWeight: Double = 1.0): Member {
+      require(members.isNotEmpty()) { "No members are available to project on" }
+      val observedThroughputs = members.mapNotNull { loads[it.uuid]?.rowsPerSecond }
+      // Members without any observations are assumed to be average, so that they're given work, and we learn their throughput
+      val defaultThroughput = if (observedThroughputs.isEmpty()) 1.0 else observedThroughputs.average()
+      val member = members.minByOrNull { member ->
+         val load = load(member)
+         val weight = if (member.localMember()) localMemberWeight else 1.0
+         val throughput = (load.rowsPerSecond ?: defaultThroughput) * weight
+         (load.rowsInFlight.get() + rows) / throughput
+      }!!
+      load(member).rowsInFlight.addAndGet(rows.toLong())
+      return member
+   }
+
+   /**
+    * Records a segment as finished.
+    * Throughput is only updated from segments that completed successfully, as failed or cancelled
+    * segments don't tell us how fast the member is.
+    */
+   fun segmentFinished(member: Member, rows: Int, elapsedNanos: Long, completed: Boolean) {
+      val load = load(member)
+      load.rowsInFlight.addAndGet(-rows.toLong())
+      if (!completed || elapsedNanos <= 0 || rows == 0) {
+         return
+      }
+      val observed = rows / (elapsedNanos.toDouble() / TimeUnit.SECONDS.toNanos(1))
+      val previous = load.rowsPerSecond
+      load.rowsPerSecond = if (previous == null) observed else previous + smoothingFactor * (observed - previous)
+   }
+
+   fun rowsPerSecond(member: Member): Double? = loads[member.uuid]?.rowsPerSecond
+
+   private fun load(member: Member): MemberLoad = loads.computeIfAbsent(member.uuid) { MemberLoad() }
+}
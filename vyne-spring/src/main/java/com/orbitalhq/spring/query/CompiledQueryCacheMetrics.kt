@@ -0,0 +1,31 @@
+package com.orbitalhq.spring.query
+
+import com.orbitalhq.schemas.CompiledQueryCache
+import io.micrometer.core.instrument.FunctionCounter
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.binder.MeterBinder
+
+/**
+ * Publishes the hits, misses and size of the compiled query cache
+ */
+class CompiledQueryCacheMetrics(
+   private val compiledQueryCache: CompiledQueryCache = CompiledQueryCache.DEFAULT
+) : MeterBinder {
+   override fun bindTo(registry: MeterRegistry) {
+      FunctionCounter.builder("vyne.query.compiled-cache.requests", compiledQueryCache) { it.stats().hitCount().toDouble() }
+         .tag("result", "hit")
+         .description("Number of queries served from the compiled query cache")
+         .register(registry)
+      FunctionCounter.builder("vyne.query.compiled-cache.requests", compiledQueryCache) { it.stats().missCount().toDouble() }
+         .tag("result", "miss")
+         .description("Number of queries that needed compiling")
+         .register(registry)
+      Gauge.builder("vyne.query.compiled-cache.hit-rate", compiledQueryCache) { it.stats().hitRate() }
+         .description("Ratio of queries served from the compiled query cache")
+         .register(registry)
+      Gauge.builder("vyne.query.compiled-cache.size", compiledQueryCache) { it.size.toDouble() }
+         .description("Number of compiled queries currently cached")
+         .register(registry)
+   }
+}
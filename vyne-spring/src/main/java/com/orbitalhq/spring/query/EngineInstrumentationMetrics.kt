@@ -0,0 +1,49 @@
+package com.orbitalhq.spring.query
+
+import com.orbitalhq.utils.EngineActivity
+import com.orbitalhq.utils.EngineInstrumentation
+import io.micrometer.core.instrument.FunctionTimer
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.TimeGauge
+import io.micrometer.core.instrument.binder.MeterBinder
+import java.util.concurrent.TimeUnit
+
+/**
+ * Publishes the engine activity timings recorded by EngineInstrumentation.
+ *
+ * Meters read the instrumentation's histograms when scraped, so publishing adds no cost when activities are recorded.
+ * Percentiles and max are cumulative since the node started.
+ */
+class EngineInstrumentationMetrics(
+   private val instrumentation: EngineInstrumentation = EngineInstrumentation,
+   private val percentiles: List<Double> = listOf(0.5, 0.99)
+) : MeterBinder {
+   override fun bindTo(registry: MeterRegistry) {
+      EngineActivity.values().forEach { activity ->
+         val histogram = instrumentation.histogram(activity)
+         FunctionTimer.builder(
+            "vyne.engine.activity",
+            histogram,
+            { it.count.toDouble() },
+            { it.estimatedTotalNanos.toDouble() },
+            TimeUnit.NANOSECONDS
+         )
+            .tag("activity", activity.tagValue)
+            .description(activity.description)
+            .register(registry)
+         TimeGauge.builder("vyne.engine.activity.max", histogram, TimeUnit.NANOSECONDS) { it.maxNanos.toDouble() }
+            .tag("activity", activity.tagValue)
+            .description("Longest sampled time of: ${activity.description}")
+            .register(registry)
+         percentiles.forEach { percentile ->
+            TimeGauge.builder("vyne.engine.activity.percentile", histogram, TimeUnit.NANOSECONDS) {
+               it.percentileNanos(percentile).toDouble()
+            }
+               .tag("activity", activity.tagValue)
+               .tag("phi", percentile.toString())
+               .description("Approximate percentile of sampled times of: ${activity.description}")
+               .register(registry)
+         }
+      }
+   }
+}
@@ -9,18 +9,22 @@ import com.orbitalhq.expectTypedObject
 import com.orbitalhq.http.MockWebServerRule
 import com.orbitalhq.http.respondWith
 import com.orbitalhq.http.response
+import com.orbitalhq.models.OperationResult
 import com.orbitalhq.models.OperationResultReference
 import com.orbitalhq.models.Provided
 import com.orbitalhq.models.TypedCollection
 import com.orbitalhq.models.TypedInstance
+import com.orbitalhq.query.HttpExchange
 import com.orbitalhq.query.QueryContext
+import com.orbitalhq.query.QueryContextEventDispatcher
 import com.orbitalhq.rawObjects
 import com.orbitalhq.schema.api.SimpleSchemaProvider
 import com.orbitalhq.schemas.Parameter
+import com.orbitalhq.schemas.RemoteOperation
 import com.orbitalhq.schemas.taxi.TaxiSchema
 import com.orbitalhq.typedObjects
 import com.orbitalhq.utils.Benchmark
-import com.orbitalhq.utils.StrategyPerformanceProfiler
+import com.orbitalhq.utils.EngineInstrumentation
 import com.orbitalhq.withBuiltIns
 import io.kotest.matchers.shouldBe
 import kotlinx.coroutines.ExperimentalCoroutinesApi
@@ -628,6 +632,66 @@ namespace vyne {
    }
 
 
+   @Test
+   fun `json arrays are parsed member by member, and the captured response is capped`() {
+      val webClient = WebClient.builder().build()
+      val responseJson = """[
+         { "animalsId": 100, "animalName": "Fluffy" },
+         { "animalsId": 101, "animalName": "Spot" }
+         ]
+      """.trimIndent()
+
+      server.prepareResponse { response ->
+         response.setHeader("Content-Type", MediaType.APPLICATION_JSON)
+            .setBody(responseJson)
+      }
+
+      val schema = TaxiSchema.from(
+         """
+         service PetService {
+            @HttpOperation(method = "GET",url = "http://localhost:${server.port}/pets")
+            operation getPets():Animal[]
+         }
+         model Animal {
+            id : String by jsonPath("$.animalsId")
+            name : String by jsonPath("$.animalName")
+         }
+      """
+      ).withBuiltIns()
+
+      val service = schema.service("PetService")
+      val operation = service.operation("getPets")
+      val reportedResults = mutableListOf<OperationResult>()
+      val eventDispatcher = object : QueryContextEventDispatcher {
+         override fun reportIncrementalEstimatedRecordCount(operation: RemoteOperation, estimatedRecordCount: Int) {}
+         override fun requestCancel() {}
+         override fun reportRemoteOperationInvoked(operation: OperationResult, queryId: String) {
+            reportedResults.add(operation)
+         }
+      }
+
+      runTest {
+         val turbine = RestTemplateInvoker(
+            webClient = webClient,
+            schemaProvider = SimpleSchemaProvider(schema),
+            responseSettings = HttpResponseSettings(maxCapturedResponseBytes = 10)
+         )
+            .invoke(service, operation, emptyList(), eventDispatcher, "MOCK_QUERY_ID")
+            .testIn(this)
+
+         val first = turbine.expectTypedObject()
+         first["id"].value.should.equal("100")
+         first["name"].value.should.equal("Fluffy")
+         turbine.expectTypedObject()["name"].value.should.equal("Spot")
+         turbine.awaitComplete()
+
+         val remoteCall = reportedResults.single().remoteCall
+         remoteCall.response.should.equal(responseJson.take(10))
+         (remoteCall.exchange as HttpExchange).responseSize.should.equal(responseJson.length)
+         (first.source as OperationResultReference).remoteCallResponseId.should.equal(remoteCall.responseId)
+      }
+   }
+
    @Test
    fun `large result set performance test`(): Unit = runBlocking {
       val recordCount = 5000
@@ -724,7 +788,7 @@ namespace vyne {
 
       }
 
-      val stats = StrategyPerformanceProfiler.summarizeAndReset().sortedByCostDesc()
+      val stats = EngineInstrumentation.summarizeAndReset().sortedByCostDesc()
       logger.warn("Perf test of $recordCount completed")
       logger.warn("Stats:\n ${jackson.writerWithDefaultPrettyPrinter().writeValueAsString(stats)}")
    }
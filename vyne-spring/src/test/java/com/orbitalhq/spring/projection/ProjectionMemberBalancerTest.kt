@@ -0,0 +1,71 @@
+package com.orbitalhq.spring.projection
+
+import com.hazelcast.cluster.Member
+import com.nhaarman.mockito_kotlin.doReturn
+import com.nhaarman.mockito_kotlin.mock
+import com.winterbe.expekt.should
+import org.junit.Test
+import java.util.UUID
+import java.util.concurrent.TimeUnit
+
+class ProjectionMemberBalancerTest {
+
+   private fun member(local: Boolean = false): Member {
+      val uuid = UUID.randomUUID()
+      return mock {
+         on { this.uuid } doReturn uuid
+         on { localMember() } doReturn local
+      }
+   }
+
+   @Test
+   fun `segments are shared between members when throughput is unknown`() {
+      val balancer = ProjectionMemberBalancer()
+      val memberA = member()
+      val memberB = member()
+
+      val assigned = (0 until 4).map { balancer.assign(listOf(memberA, memberB), rows = 100) }
+
+      assigned.count { it == memberA }.should.equal(2)
+      assigned.count { it == memberB }.should.equal(2)
+   }
+
+   @Test
+   fun `faster members are assigned more segments`() {
+      val balancer = ProjectionMemberBalancer()
+      val fastMember = member()
+      val slowMember = member()
+      val members = listOf(fastMember, slowMember)
+
+      balancer.segmentFinished(balancer.assign(listOf(fastMember), 100), 100, TimeUnit.MILLISECONDS.toNanos(100), completed = true)
+      balancer.segmentFinished(balancer.assign(listOf(slowMember), 100), 100, TimeUnit.SECONDS.toNanos(1), completed = true)
+
+      val assigned = (0 until 11).map { balancer.assign(members, rows = 100) }
+
+      assigned.count { it == fastMember }.should.equal(10)
+      assigned.count { it == slowMember }.should.equal(1)
+   }
+
+   @Test
+   fun `throughput is not updated from failed segments`() {
+      val balancer = ProjectionMemberBalancer()
+      val member = member()
+
+      balancer.segmentFinished(balancer.assign(listOf(member), 100), 100, TimeUnit.SECONDS.toNanos(1), completed = false)
+
+      balancer.rowsPerSecond(member).should.be.`null`
+   }
+
+   @Test
+   fun `local member is given less work when weighted`() {
+      val balancer = ProjectionMemberBalancer()
+      val localMember = member(local = true)
+      val remoteMember = member()
+      val members = listOf(localMember, remoteMember)
+
+      val assigned = (0 until 6).map { balancer.assign(members, rows = 100, localMemberWeight = 0.5) }
+
+      assigned.count { it == localMember }.should.equal(2)
+      assigned.count { it == remoteMember }.should.equal(4)
+   }
+}